@@ -17,10 +17,17 @@
 
 package edu.usf.cutr.gtfsrtvalidator;
 
+import edu.usf.cutr.gtfsrtvalidator.background.BackgroundTask;
+import edu.usf.cutr.gtfsrtvalidator.background.FeedScheduler;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsFeedData;
+import edu.usf.cutr.gtfsrtvalidator.background.IngestPipeline;
 import edu.usf.cutr.gtfsrtvalidator.db.GTFSDB;
+import edu.usf.cutr.gtfsrtvalidator.helper.FeedFetcher;
 import edu.usf.cutr.gtfsrtvalidator.helper.GetFile;
 import edu.usf.cutr.gtfsrtvalidator.hibernate.HibernateUtil;
 import edu.usf.cutr.gtfsrtvalidator.servlets.GetFeedJSON;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceLimits;
 import org.apache.commons.cli.*;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.DefaultServlet;
@@ -38,10 +45,43 @@ public class Main {
     static String BASE_RESOURCE = Main.class.getResource("/webroot").toExternalForm();
     static String jsonFilePath = new GetFile().getJarLocation().getParentFile() + "/classes" + File.separator + "/webroot";
     private static String PORT_NUMBER_OPTION = "port";
+    private static String POLL_THREADS_OPTION = "pollThreads";
+    private static String FETCH_MODE_OPTION = "fetchMode";
+    private static String MAX_IN_FLIGHT_OPTION = "maxInFlight";
+    private static String MAX_CONNECTIONS_PER_HOST_OPTION = "maxConnectionsPerHost";
+    private static String FINGERPRINT_OPTION = "fingerprint";
+    private static String DECODE_THREADS_OPTION = "decodeThreads";
+    private static String VALIDATE_THREADS_OPTION = "validateThreads";
+    private static String PERSIST_THREADS_OPTION = "persistThreads";
+    private static String MIN_POLL_INTERVAL_OPTION = "minPollInterval";
+    private static String MAX_POLL_INTERVAL_OPTION = "maxPollInterval";
+    private static String NO_JITTER_OPTION = "noJitter";
+    private static String MAX_REQUESTS_PER_HOST_OPTION = "maxRequestsPerHost";
+    private static String PARALLEL_RULES_OPTION = "parallelRules";
+    private static String PARTITION_SIZE_OPTION = "partitionSize";
+    private static String MAX_OCCURRENCES_OPTION = "maxOccurrences";
+    private static String RULE_MAX_OCCURRENCES_OPTION = "ruleMaxOccurrences";
+    private static String RELEASE_GTFS_OPTION = "releaseGtfs";
+    private static String NO_GTFS_SNAPSHOTS_OPTION = "noGtfsSnapshots";
 
     public static void main(String[] args) throws InterruptedException, ParseException {
         // Parse command line parameters
-        int port = getPortFromArgs(args);
+        CommandLine cmd = parseArgs(args);
+        int port = getPortFromArgs(cmd);
+        FeedScheduler.setPoolSize(getPollThreadsFromArgs(cmd));
+        FeedScheduler.setFetchMode(getFetchModeFromArgs(cmd), getMaxInFlightFromArgs(cmd));
+        FeedScheduler.setLoadSpreading(!cmd.hasOption(NO_JITTER_OPTION), getMaxRequestsPerHostFromArgs(cmd));
+        FeedScheduler.setAdaptiveIntervalBounds(getIntervalFromArgs(cmd, MIN_POLL_INTERVAL_OPTION, FeedScheduler.DEFAULT_MIN_ADAPTIVE_INTERVAL),
+                getIntervalFromArgs(cmd, MAX_POLL_INTERVAL_OPTION, FeedScheduler.DEFAULT_MAX_ADAPTIVE_INTERVAL));
+        FeedFetcher.setMaxConnectionsPerHost(getMaxConnectionsPerHostFromArgs(cmd));
+        FingerprintStrategy.setDefault(getFingerprintFromArgs(cmd));
+        IngestPipeline.setWorkers(getThreadsFromArgs(cmd, DECODE_THREADS_OPTION, IngestPipeline.DEFAULT_DECODE_WORKERS),
+                getThreadsFromArgs(cmd, VALIDATE_THREADS_OPTION, IngestPipeline.DEFAULT_VALIDATE_WORKERS),
+                getThreadsFromArgs(cmd, PERSIST_THREADS_OPTION, IngestPipeline.DEFAULT_PERSIST_WORKERS));
+        BackgroundTask.setParallelRules(cmd.hasOption(PARALLEL_RULES_OPTION), getPartitionSizeFromArgs(cmd));
+        BackgroundTask.setOccurrenceLimits(OccurrenceLimits.parse(getMaxOccurrencesFromArgs(cmd), cmd.getOptionValue(RULE_MAX_OCCURRENCES_OPTION)));
+        GtfsFeedData.setReleaseGtfsData(cmd.hasOption(RELEASE_GTFS_OPTION));
+        GtfsFeedData.setSnapshotGtfsMetadata(!cmd.hasOption(NO_GTFS_SNAPSHOTS_OPTION));
         HibernateUtil.configureSessionFactory();
         GTFSDB.initializeDB();
 
@@ -90,24 +130,272 @@ public class Main {
     }
 
     /**
-     * Returns the port to use from command line arguments, or 8080 if no args are provided
+     * Parses the command line arguments
      *
      * @param args
-     * @return the port to use from command line arguments, or 8080 if no args are provided
+     * @return the parsed command line arguments
      */
-    private static int getPortFromArgs(String[] args) throws ParseException {
-        int port = 8080;
+    private static CommandLine parseArgs(String[] args) throws ParseException {
         Option portOption = Option.builder(PORT_NUMBER_OPTION)
                 .hasArg()
                 .desc("Port number the server should run on")
                 .build();
+        Option pollThreadsOption = Option.builder(POLL_THREADS_OPTION)
+                .hasArg()
+                .desc("Number of threads shared by all monitored GTFS-realtime feeds")
+                .build();
+        Option fetchModeOption = Option.builder(FETCH_MODE_OPTION)
+                .hasArg()
+                .desc("Where feed iterations run - 'pooled' (on the polling threads, the default) or 'virtual' (on virtual threads)")
+                .build();
+        Option maxInFlightOption = Option.builder(MAX_IN_FLIGHT_OPTION)
+                .hasArg()
+                .desc("Maximum number of feed iterations running at the same time when using the 'virtual' fetch mode")
+                .build();
+        Option maxConnectionsPerHostOption = Option.builder(MAX_CONNECTIONS_PER_HOST_OPTION)
+                .hasArg()
+                .desc("Maximum number of connections open to the same GTFS-realtime server at once")
+                .build();
+        Option fingerprintOption = Option.builder(FINGERPRINT_OPTION)
+                .hasArg()
+                .desc("Algorithm used to detect changed feeds - 'murmur3_128' (the default) or 'md5'")
+                .build();
+        Option decodeThreadsOption = Option.builder(DECODE_THREADS_OPTION)
+                .hasArg()
+                .desc("Number of threads parsing downloaded GTFS-realtime feeds and checking whether they changed")
+                .build();
+        Option validateThreadsOption = Option.builder(VALIDATE_THREADS_OPTION)
+                .hasArg()
+                .desc("Number of threads running validation rules on changed GTFS-realtime feeds")
+                .build();
+        Option persistThreadsOption = Option.builder(PERSIST_THREADS_OPTION)
+                .hasArg()
+                .desc("Number of threads storing iterations and errors in the database")
+                .build();
+        Option minPollIntervalOption = Option.builder(MIN_POLL_INTERVAL_OPTION)
+                .hasArg()
+                .desc("Shortest interval in seconds between polls of a feed monitored with an adaptive interval")
+                .build();
+        Option maxPollIntervalOption = Option.builder(MAX_POLL_INTERVAL_OPTION)
+                .hasArg()
+                .desc("Longest interval in seconds between polls of a feed monitored with an adaptive interval")
+                .build();
+        Option noJitterOption = Option.builder(NO_JITTER_OPTION)
+                .desc("Start polling all feeds immediately, instead of spreading them over their update interval")
+                .build();
+        Option maxRequestsPerHostOption = Option.builder(MAX_REQUESTS_PER_HOST_OPTION)
+                .hasArg()
+                .desc("Maximum number of requests per second to the same GTFS-realtime server, or 0 for no limit")
+                .build();
+        Option parallelRulesOption = Option.builder(PARALLEL_RULES_OPTION)
+                .desc("Run the validation rules for each feed iteration in parallel, instead of in a single pass over the feed")
+                .build();
+        Option partitionSizeOption = Option.builder(PARTITION_SIZE_OPTION)
+                .hasArg()
+                .desc("Split feeds into chunks of this many entities and validate the chunks in parallel, or 0 to not split feeds")
+                .build();
+        Option maxOccurrencesOption = Option.builder(MAX_OCCURRENCES_OPTION)
+                .hasArg()
+                .desc("Maximum number of occurrences of each error or warning stored per feed iteration, or 0 for no limit")
+                .build();
+        Option ruleMaxOccurrencesOption = Option.builder(RULE_MAX_OCCURRENCES_OPTION)
+                .hasArg()
+                .desc("Occurrence limits for specific rules that override maxOccurrences, e.g. E022=100,W009=50")
+                .build();
+        Option releaseGtfsOption = Option.builder(RELEASE_GTFS_OPTION)
+                .desc("Release the parsed GTFS data from memory once the metadata used by the validation rules has been built")
+                .build();
+        Option noGtfsSnapshotsOption = Option.builder(NO_GTFS_SNAPSHOTS_OPTION)
+                .desc("Don't save the metadata used by the validation rules next to each GTFS zip file, and always build it again from the GTFS zip file")
+                .build();
         CommandLineParser parser = new DefaultParser();
         Options options = new Options();
         options.addOption(portOption);
-        CommandLine cmd = parser.parse(options, args);
+        options.addOption(pollThreadsOption);
+        options.addOption(fetchModeOption);
+        options.addOption(maxInFlightOption);
+        options.addOption(maxConnectionsPerHostOption);
+        options.addOption(fingerprintOption);
+        options.addOption(decodeThreadsOption);
+        options.addOption(validateThreadsOption);
+        options.addOption(persistThreadsOption);
+        options.addOption(minPollIntervalOption);
+        options.addOption(maxPollIntervalOption);
+        options.addOption(noJitterOption);
+        options.addOption(maxRequestsPerHostOption);
+        options.addOption(parallelRulesOption);
+        options.addOption(partitionSizeOption);
+        options.addOption(maxOccurrencesOption);
+        options.addOption(ruleMaxOccurrencesOption);
+        options.addOption(releaseGtfsOption);
+        options.addOption(noGtfsSnapshotsOption);
+        return parser.parse(options, args);
+    }
+
+    /**
+     * Returns the port to use from command line arguments, or 8080 if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the port to use from command line arguments, or 8080 if no args are provided
+     */
+    private static int getPortFromArgs(CommandLine cmd) {
+        int port = 8080;
         if (cmd.hasOption(PORT_NUMBER_OPTION)) {
             port = Integer.valueOf(cmd.getOptionValue(PORT_NUMBER_OPTION));
         }
         return port;
     }
+
+    /**
+     * Returns the number of threads used to poll GTFS-realtime feeds from command line arguments, or
+     * FeedScheduler.DEFAULT_POOL_SIZE if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the number of threads used to poll GTFS-realtime feeds from command line arguments, or FeedScheduler.DEFAULT_POOL_SIZE if no args are provided
+     */
+    private static int getPollThreadsFromArgs(CommandLine cmd) {
+        int pollThreads = FeedScheduler.DEFAULT_POOL_SIZE;
+        if (cmd.hasOption(POLL_THREADS_OPTION)) {
+            pollThreads = Integer.valueOf(cmd.getOptionValue(POLL_THREADS_OPTION));
+        }
+        return pollThreads;
+    }
+
+    /**
+     * Returns the fetch mode from command line arguments, or FetchMode.POOLED if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the fetch mode from command line arguments, or FetchMode.POOLED if no args are provided
+     */
+    private static FeedScheduler.FetchMode getFetchModeFromArgs(CommandLine cmd) {
+        FeedScheduler.FetchMode fetchMode = FeedScheduler.FetchMode.POOLED;
+        if (cmd.hasOption(FETCH_MODE_OPTION)) {
+            fetchMode = FeedScheduler.FetchMode.valueOf(cmd.getOptionValue(FETCH_MODE_OPTION).toUpperCase());
+        }
+        return fetchMode;
+    }
+
+    /**
+     * Returns the maximum number of feed iterations in flight from command line arguments, or
+     * FeedScheduler.DEFAULT_MAX_IN_FLIGHT if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the maximum number of feed iterations in flight from command line arguments, or FeedScheduler.DEFAULT_MAX_IN_FLIGHT if no args are provided
+     */
+    private static int getMaxInFlightFromArgs(CommandLine cmd) {
+        int maxInFlight = FeedScheduler.DEFAULT_MAX_IN_FLIGHT;
+        if (cmd.hasOption(MAX_IN_FLIGHT_OPTION)) {
+            maxInFlight = Integer.valueOf(cmd.getOptionValue(MAX_IN_FLIGHT_OPTION));
+        }
+        return maxInFlight;
+    }
+
+    /**
+     * Returns the maximum number of connections open to the same host from command line arguments, or
+     * FeedFetcher.DEFAULT_MAX_CONNECTIONS_PER_HOST if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the maximum number of connections open to the same host from command line arguments, or FeedFetcher.DEFAULT_MAX_CONNECTIONS_PER_HOST if no args are provided
+     */
+    private static int getMaxConnectionsPerHostFromArgs(CommandLine cmd) {
+        int maxConnectionsPerHost = FeedFetcher.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        if (cmd.hasOption(MAX_CONNECTIONS_PER_HOST_OPTION)) {
+            maxConnectionsPerHost = Integer.valueOf(cmd.getOptionValue(MAX_CONNECTIONS_PER_HOST_OPTION));
+        }
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the algorithm used to fingerprint feeds from command line arguments, or FingerprintStrategy.MURMUR3_128
+     * if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the algorithm used to fingerprint feeds from command line arguments, or FingerprintStrategy.MURMUR3_128 if no args are provided
+     */
+    private static FingerprintStrategy getFingerprintFromArgs(CommandLine cmd) {
+        FingerprintStrategy fingerprint = FingerprintStrategy.MURMUR3_128;
+        if (cmd.hasOption(FINGERPRINT_OPTION)) {
+            fingerprint = FingerprintStrategy.valueOf(cmd.getOptionValue(FINGERPRINT_OPTION).toUpperCase());
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of threads for an ingest pipeline stage from command line arguments, or defaultThreads if
+     * the option isn't provided
+     *
+     * @param cmd            parsed command line arguments
+     * @param option         name of the option for the stage
+     * @param defaultThreads number of threads to use if the option isn't provided
+     * @return the number of threads for an ingest pipeline stage from command line arguments, or defaultThreads if the option isn't provided
+     */
+    private static int getThreadsFromArgs(CommandLine cmd, String option, int defaultThreads) {
+        int threads = defaultThreads;
+        if (cmd.hasOption(option)) {
+            threads = Integer.valueOf(cmd.getOptionValue(option));
+        }
+        return threads;
+    }
+
+    /**
+     * Returns the number of seconds for a polling interval bound from command line arguments, or defaultSeconds if
+     * the option isn't provided
+     *
+     * @param cmd            parsed command line arguments
+     * @param option         name of the option for the bound
+     * @param defaultSeconds number of seconds to use if the option isn't provided
+     * @return the number of seconds for a polling interval bound from command line arguments, or defaultSeconds if the option isn't provided
+     */
+    private static int getIntervalFromArgs(CommandLine cmd, String option, int defaultSeconds) {
+        int seconds = defaultSeconds;
+        if (cmd.hasOption(option)) {
+            seconds = Integer.valueOf(cmd.getOptionValue(option));
+        }
+        return seconds;
+    }
+
+    /**
+     * Returns the maximum number of requests per second to the same host from command line arguments, or
+     * FeedScheduler.DEFAULT_MAX_REQUESTS_PER_HOST if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the maximum number of requests per second to the same host from command line arguments, or FeedScheduler.DEFAULT_MAX_REQUESTS_PER_HOST if no args are provided
+     */
+    private static double getMaxRequestsPerHostFromArgs(CommandLine cmd) {
+        double maxRequestsPerHost = FeedScheduler.DEFAULT_MAX_REQUESTS_PER_HOST;
+        if (cmd.hasOption(MAX_REQUESTS_PER_HOST_OPTION)) {
+            maxRequestsPerHost = Double.valueOf(cmd.getOptionValue(MAX_REQUESTS_PER_HOST_OPTION));
+        }
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Returns the number of entities in each chunk feeds are split into from command line arguments, or 0 (don't split
+     * feeds) if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the number of entities in each chunk feeds are split into from command line arguments, or 0 if no args are provided
+     */
+    private static int getPartitionSizeFromArgs(CommandLine cmd) {
+        int partitionSize = 0;
+        if (cmd.hasOption(PARTITION_SIZE_OPTION)) {
+            partitionSize = Integer.valueOf(cmd.getOptionValue(PARTITION_SIZE_OPTION));
+        }
+        return partitionSize;
+    }
+
+    /**
+     * Returns the maximum number of occurrences of each error or warning stored per iteration from command line
+     * arguments, or OccurrenceLimits.DEFAULT_MAX_OCCURRENCES if no args are provided
+     *
+     * @param cmd parsed command line arguments
+     * @return the maximum number of occurrences of each error or warning stored per iteration from command line arguments, or OccurrenceLimits.DEFAULT_MAX_OCCURRENCES if no args are provided
+     */
+    private static int getMaxOccurrencesFromArgs(CommandLine cmd) {
+        int maxOccurrences = OccurrenceLimits.DEFAULT_MAX_OCCURRENCES;
+        if (cmd.hasOption(MAX_OCCURRENCES_OPTION)) {
+            maxOccurrences = Integer.valueOf(cmd.getOptionValue(MAX_OCCURRENCES_OPTION));
+        }
+        return maxOccurrences;
+    }
 }
@@ -41,6 +41,9 @@ public class GtfsFeedModel implements Serializable {
     @Column(name="fileChecksum")
     @Lob
     private byte[] checksum;
+    // Name of the FingerprintStrategy used to create 'checksum', or null for MD5 checksums stored before this column was added
+    @Column(name = "checksumAlgorithm")
+    private String checksumAlgorithm;
     @Column(name = "errorCount")
     private int errorCount;
 
@@ -94,6 +97,14 @@ public class GtfsFeedModel implements Serializable {
         this.checksum = checksum;
     }
 
+    public String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    public void setChecksumAlgorithm(String checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
     public int getErrorCount() {
         return errorCount;
     }
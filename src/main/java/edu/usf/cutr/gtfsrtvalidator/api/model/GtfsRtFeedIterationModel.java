@@ -28,12 +28,13 @@ public class GtfsRtFeedIterationModel implements Serializable {
 
     public GtfsRtFeedIterationModel() {}
 
-    public GtfsRtFeedIterationModel(long timeStamp, long feedTimestamp, byte[] feedprotobuf, GtfsRtFeedModel gtfsRtFeedModel, byte[] feedHash) {
+    public GtfsRtFeedIterationModel(long timeStamp, long feedTimestamp, byte[] feedprotobuf, GtfsRtFeedModel gtfsRtFeedModel, byte[] feedHash, String feedHashAlgorithm) {
         this.timeStamp = timeStamp;
         this.feedTimestamp = feedTimestamp;
         this.feedprotobuf = feedprotobuf;
         this.gtfsRtFeedModel = gtfsRtFeedModel;
         this.feedHash = feedHash;
+        this.feedHashAlgorithm = feedHashAlgorithm;
     }
 
     @Id
@@ -52,6 +53,12 @@ public class GtfsRtFeedIterationModel implements Serializable {
     private GtfsRtFeedModel gtfsRtFeedModel;
     @Column(name = "feedHash")
     private byte[] feedHash;
+    /*
+     * Name of the FingerprintStrategy used to create 'feedHash'.  Iterations stored before this column was added
+     * used MD5 - see GTFSDB.migrateFeedHashAlgorithm().
+     */
+    @Column(name = "feedHashAlgorithm")
+    private String feedHashAlgorithm;
 
     /*
      * '@Transient' does not persist 'dateFormat' to the database i.e., 'dateFormat' is not added as a column in this table.
@@ -108,6 +115,14 @@ public class GtfsRtFeedIterationModel implements Serializable {
         this.feedHash = feedHash;
     }
 
+    public String getFeedHashAlgorithm() {
+        return feedHashAlgorithm;
+    }
+
+    public void setFeedHashAlgorithm(String feedHashAlgorithm) {
+        this.feedHashAlgorithm = feedHashAlgorithm;
+    }
+
     public String getDateFormat() {
         return dateFormat;
     }
@@ -19,6 +19,7 @@ package edu.usf.cutr.gtfsrtvalidator.api.model;
 
 import javax.persistence.*;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import java.io.Serializable;
 
 @XmlRootElement
@@ -38,6 +39,12 @@ public class GtfsRtFeedModel implements Serializable {
     @Column(name="rtFeedID")
     private int gtfsRtId;
 
+    // HTTP cache validators from the last successful response, used to send conditional requests for this feed
+    @Transient
+    private String eTag;
+    @Transient
+    private String lastModified;
+
     public GtfsRtFeedModel(){}
 
     public String getGtfsUrl() {
@@ -72,6 +79,24 @@ public class GtfsRtFeedModel implements Serializable {
         this.gtfsRtId = gtfsRtId;
     }
 
+    @XmlTransient
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    @XmlTransient
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
     @Override
     public String toString() {
         return "GtfsRtFeedModel{" +
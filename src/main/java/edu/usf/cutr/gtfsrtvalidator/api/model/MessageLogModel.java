@@ -44,6 +44,9 @@ public class MessageLogModel implements Serializable {
     private ValidationRule validationRule;
     @Column(name = "errorDetails")
     private String errorDetails;
+    // Number of occurrences that were found but not stored, because the rule hit its occurrence limit
+    @Column(name = "overflowCount", columnDefinition = "INTEGER DEFAULT 0 NOT NULL")
+    private int overflowCount;
 
     public int getMessageId() {
         return messageId;
@@ -76,4 +79,12 @@ public class MessageLogModel implements Serializable {
     public void setErrorDetails(String errorDetails) {
         this.errorDetails = errorDetails;
     }
-}
\ No newline at end of file
+
+    public int getOverflowCount() {
+        return overflowCount;
+    }
+
+    public void setOverflowCount(int overflowCount) {
+        this.overflowCount = overflowCount;
+    }
+}
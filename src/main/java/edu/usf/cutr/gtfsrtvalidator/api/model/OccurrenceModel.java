@@ -17,9 +17,13 @@
 
 package edu.usf.cutr.gtfsrtvalidator.api.model;
 
+import edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils;
+
 import javax.persistence.*;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import java.io.Serializable;
+import java.util.TimeZone;
 
 @XmlRootElement
 @Entity
@@ -30,6 +34,19 @@ public class OccurrenceModel implements Serializable {
         this.prefix = prefix;
     }
 
+    /**
+     * Creates an occurrence whose prefix is only built from its values when it is needed (i.e., when the occurrence
+     * is stored, served, or logged).  Rules can then record the values of an occurrence (entity IDs, trip_ids,
+     * stop_ids, times, etc.) without building text that may never be read.
+     *
+     * @param template  the text of the prefix, with {} where each value goes (e.g., "trip_id {} stop_id {}")
+     * @param arguments the values of the occurrence, in the order they appear in the template
+     */
+    public OccurrenceModel(String template, Object... arguments) {
+        this.template = template;
+        this.arguments = arguments;
+    }
+
     public OccurrenceModel() {
     }
 
@@ -59,6 +76,10 @@ public class OccurrenceModel implements Serializable {
     @Column(name = "prefix", length = 500)
     private String prefix;
 
+    // Template and values of the prefix until it is rendered - transient, so only the prefix is stored and serialized
+    private transient String template;
+    private transient Object[] arguments;
+
     public int getOccurrenceId() {
         return occurrenceId;
     }
@@ -75,11 +96,99 @@ public class OccurrenceModel implements Serializable {
         this.messageLogModel = messageLogModel;
     }
 
+    /**
+     * Returns the prefix of this occurrence, building it from the template and values first if needed
+     *
+     * @return the prefix of this occurrence
+     */
     public String getPrefix() {
+        render();
         return prefix;
     }
 
     public void setPrefix(String prefix) {
         this.prefix = prefix;
+        template = null;
+        arguments = null;
+    }
+
+    /**
+     * Returns the values of this occurrence, or null if it was created with its prefix text
+     *
+     * @return the values of this occurrence, or null if it was created with its prefix text
+     */
+    @XmlTransient
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Builds the prefix from the template and values, if it hasn't been built yet.  Must be called before the
+     * occurrence is stored, as Hibernate reads the prefix field directly.
+     */
+    public void render() {
+        if (template != null) {
+            StringBuilder builder = new StringBuilder(template.length() + 16 * arguments.length);
+            int start = 0;
+            for (Object argument : arguments) {
+                int placeholder = template.indexOf("{}", start);
+                if (placeholder < 0) {
+                    break;
+                }
+                builder.append(template, start, placeholder);
+                if (argument instanceof Value) {
+                    ((Value) argument).appendTo(builder);
+                } else {
+                    builder.append(argument);
+                }
+                start = placeholder + 2;
+            }
+            prefix = builder.append(template, start, template.length()).toString();
+            template = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getPrefix();
+    }
+
+    /**
+     * A value of an occurrence that is only turned into text when the prefix is rendered, for values that take work to
+     * format (clock times, decimals, IDs that are chosen from several fields)
+     */
+    public interface Value {
+        void appendTo(StringBuilder builder);
+    }
+
+    /**
+     * Returns a value that renders as the clock time (e.g., 10:15:30) of the POSIX time in the given time zone
+     *
+     * @param posixTime POSIX time, in seconds
+     * @param timeZone  time zone in which to show the clock time
+     * @return a value that renders as the clock time (e.g., 10:15:30) of the POSIX time in the given time zone
+     */
+    public static Value clock(long posixTime, TimeZone timeZone) {
+        return builder -> builder.append(TimestampUtils.posixToClock(posixTime, timeZone));
+    }
+
+    /**
+     * Returns a value that renders as the clock time (e.g., 10:15:30) of a number of seconds after midnight
+     *
+     * @param secondsAfterMidnight number of seconds after midnight
+     * @return a value that renders as the clock time (e.g., 10:15:30) of a number of seconds after midnight
+     */
+    public static Value timeOfDay(int secondsAfterMidnight) {
+        return builder -> builder.append(TimestampUtils.secondsAfterMidnightToClock(secondsAfterMidnight));
+    }
+
+    /**
+     * Returns a value that renders as the number with two decimal places (e.g., 12.35)
+     *
+     * @param value the number to render
+     * @return a value that renders as the number with two decimal places (e.g., 12.35)
+     */
+    public static Value decimal(double value) {
+        return builder -> builder.append(String.format("%.2f", value));
     }
 }
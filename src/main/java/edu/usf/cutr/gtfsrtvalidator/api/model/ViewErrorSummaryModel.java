@@ -26,11 +26,12 @@ import java.io.Serializable;
 @NamedNativeQuery(name = "ErrorSummaryByrtfeedID",
     query = "SELECT ? AS rtFeedID, errorID AS id, " +
                 "title, severity, totalCount, lastTime, " +
-                "lastFeedTime, lastIterationId, lastRowId " +
+                "lastFeedTime, lastIterationId, lastRowId, overflowCount " +
             "FROM Error " +
                 "INNER JOIN " +
                 "(SELECT errorID, MAX(rowIdentifier) AS lastRowId, " +
                     "count(*) AS totalCount, MAX(iterationId) AS lastIterationId, " +
+                    "SUM(overflowCount) AS overflowCount, " +
                     "MAX(iterationTimestamp) AS lastTime, " +
                     "MAX(feedTimestamp) AS lastFeedTime " +
                 "FROM MessageLog " +
@@ -85,6 +86,8 @@ public class ViewErrorSummaryModel implements Serializable{
     private int lastIterationId;
     @Column(name = "lastRowId")
     private int lastRowId;
+    @Column(name = "overflowCount")
+    private long overflowCount; // number of occurrences that weren't stored because of occurrence limits
     @Transient
     private String formattedTimestamp;
     @Transient
@@ -177,6 +180,14 @@ public class ViewErrorSummaryModel implements Serializable{
         this.lastRowId = lastRowId;
     }
 
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    public void setOverflowCount(long overflowCount) {
+        this.overflowCount = overflowCount;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -24,11 +24,11 @@ import com.conveyal.gtfs.validator.json.FeedValidationResultSet;
 import com.conveyal.gtfs.validator.json.backends.FileSystemFeedBackend;
 import com.conveyal.gtfs.validator.json.serialization.JsonSerializer;
 import edu.usf.cutr.gtfsrtvalidator.api.model.GtfsFeedModel;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsFeedData;
 import edu.usf.cutr.gtfsrtvalidator.db.GTFSDB;
 import edu.usf.cutr.gtfsrtvalidator.helper.GetFile;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
 import org.hibernate.Session;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
-import org.onebusaway.gtfs.serialization.GtfsReader;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -41,10 +41,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -61,7 +58,7 @@ public class GtfsFeed {
 
     private static final int BUFFER_SIZE = 4096;
     private static final String jsonFilePath = "classes"+File.separator+"webroot";
-    public static Map<Integer, GtfsDaoImpl> GtfsDaoMap = new ConcurrentHashMap<>();
+    public static Map<Integer, GtfsFeedData> GtfsDataMap = new ConcurrentHashMap<>();
 
     //DELETE {id} remove feed with the given id
     @DELETE
@@ -143,10 +140,12 @@ public class GtfsFeed {
             gtfsFeed = createGtfsFeedModel(gtfsFeedUrl, saveFileName);
         } else {
             _log.info("GTFS URL already exists exists in database - checking if data has changed...");
-            byte[] newChecksum = calculateMD5checksum(gtfsFeed.getFeedLocation());
+            byte[] newChecksum = calculateChecksum(gtfsFeed.getFeedLocation());
             byte[] oldChecksum = gtfsFeed.getChecksum();
+            // Checksums created with a different algorithm can't be compared, so treat the data as changed
+            boolean sameAlgorithm = FingerprintStrategy.fromName(gtfsFeed.getChecksumAlgorithm()) == FingerprintStrategy.getDefault();
             // If file digest are equal, check whether validated json file exists
-            if (MessageDigest.isEqual(newChecksum, oldChecksum)) {
+            if (sameAlgorithm && MessageDigest.isEqual(newChecksum, oldChecksum)) {
                 _log.info("GTFS data hasn't changed since last execution");
                 String projectPath = new GetFile().getJarLocation().getParentFile().getAbsolutePath();
                 if (new File(projectPath + File.separator + jsonFilePath + File.separator + saveFileName + "_out.json").exists())
@@ -154,21 +153,22 @@ public class GtfsFeed {
             } else {
                 _log.info("GTFS data has changed, updating database...");
                 gtfsFeed.setChecksum(newChecksum);
+                gtfsFeed.setChecksumAlgorithm(FingerprintStrategy.getDefault().name());
                 updateGtfsFeedModel(gtfsFeed);
             }
         }
 
         //Saves GTFS data to store and validates GTFS feed
-        GtfsDaoImpl store = saveGtfsFeed(gtfsFeed);
-        if (store == null) {
+        GtfsFeedData gtfsData = saveGtfsFeed(gtfsFeed);
+        if (gtfsData == null) {
             return generateError("Can't read content", "Can't read content from the GTFS URL", Response.Status.NOT_FOUND);
         }
         // Save gtfs agency to the database
-        gtfsFeed.setAgency(store.getAllAgencies().iterator().next().getTimezone());
+        gtfsFeed.setAgency(gtfsData.getAgencyTimeZone());
         session.update(gtfsFeed);
         GTFSDB.commitAndCloseSession(session);
 
-        GtfsDaoMap.put(gtfsFeed.getFeedId(), store);
+        GtfsDataMap.put(gtfsFeed.getFeedId(), gtfsData);
         
         if(canReturn)
             return Response.ok(gtfsFeed).build();
@@ -239,8 +239,9 @@ public class GtfsFeed {
         gtfsFeed.setGtfsUrl(gtfsFeedUrl);
         gtfsFeed.setStartTime(System.currentTimeMillis());
         
-        byte[] checksum = calculateMD5checksum(saveFilePath);
+        byte[] checksum = calculateChecksum(saveFilePath);
         gtfsFeed.setChecksum(checksum);
+        gtfsFeed.setChecksumAlgorithm(FingerprintStrategy.getDefault().name());
 
         //Create GTFS feed row in database
         Session session = GTFSDB.initSessionBeginTrans();
@@ -256,39 +257,22 @@ public class GtfsFeed {
         GTFSDB.commitAndCloseSession(session);
         return gtfsFeed;
     }
-    private byte[] calculateMD5checksum(String inputFile) {
+    private byte[] calculateChecksum(String inputFile) {
         byte[] digest = null;
-        byte[] dataBytes = new byte[1024];
-        int nread;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            try {
-                InputStream is = Files.newInputStream(Paths.get(inputFile));
-                while ((nread = is.read(dataBytes)) != -1)
-                    md.update(dataBytes, 0, nread);
-                } catch (IOException ex) {
-                    Logger.getLogger(GtfsFeed.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            digest = md.digest();
-            }   catch (NoSuchAlgorithmException ex) {
-                Logger.getLogger(GtfsFeed.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            digest = FingerprintStrategy.getDefault().fingerprint(inputFile);
+        } catch (IOException ex) {
+            Logger.getLogger(GtfsFeed.class.getName()).log(Level.SEVERE, null, ex);
+        }
         return digest;
     }
-    private GtfsDaoImpl saveGtfsFeed(GtfsFeedModel gtfsFeed) {
-        GtfsDaoImpl store = new GtfsDaoImpl();
-
+    private GtfsFeedData saveGtfsFeed(GtfsFeedModel gtfsFeed) {
         try {
-            //Read GTFS data into a GtfsDaoImpl
-            GtfsReader reader = new GtfsReader();
-            reader.setInputLocation(new File(gtfsFeed.getFeedLocation()));
-
-            reader.setEntityStore(store);
-            reader.run();
+            //Read GTFS data into a GtfsDaoImpl, or its metadata from a snapshot if the GTFS data hasn't changed
+            return GtfsFeedData.load(new File(gtfsFeed.getFeedLocation()), gtfsFeed.getGtfsUrl(), gtfsFeed.getChecksum());
         } catch (Exception ex) {
             return null;
         }
-        return store;
     }
 
     private Response.Status downloadGtfsFeed(String saveFilePath, HttpURLConnection connection) {
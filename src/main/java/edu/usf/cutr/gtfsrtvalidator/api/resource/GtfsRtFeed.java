@@ -23,9 +23,15 @@ import edu.usf.cutr.gtfsrtvalidator.api.model.*;
 import edu.usf.cutr.gtfsrtvalidator.api.model.combined.CombinedIterationMessageModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.combined.CombinedMessageOccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.BackgroundTask;
+import edu.usf.cutr.gtfsrtvalidator.background.FeedScheduler;
+import edu.usf.cutr.gtfsrtvalidator.background.IngestPipeline;
+import edu.usf.cutr.gtfsrtvalidator.background.PipelineStage;
 import edu.usf.cutr.gtfsrtvalidator.db.GTFSDB;
+import edu.usf.cutr.gtfsrtvalidator.helper.FeedFetcher;
+import edu.usf.cutr.gtfsrtvalidator.helper.FeedScheduleHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.helper.IterationErrorListHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.helper.MergeMonitorData;
+import edu.usf.cutr.gtfsrtvalidator.helper.PipelineStageHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.helper.QueryHelper;
 import org.hibernate.Session;
 import org.slf4j.LoggerFactory;
@@ -35,16 +41,10 @@ import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Path("/gtfs-rt-feed")
@@ -78,26 +78,18 @@ public class GtfsRtFeed {
             return generateError("GTFS Feed id is required");
         }
 
-        //Check if URL is valid
-        try {
-            URL feedUrl = new URL(feedInfo.getGtfsUrl());
-            HttpURLConnection connection = (HttpURLConnection) feedUrl.openConnection();
-            connection.setRequestMethod("GET");
-            connection.connect();
-            boolean connectionSuccessful = connection.getResponseCode() / 100 == 2;
-            if (!connectionSuccessful) {
-                return generateError("URL returns code: " + connection.getResponseCode());
+        //Check if URL is valid and returns valid protobuf, downloading the feed only once
+        try (FeedFetcher.Response response = FeedFetcher.getInstance().fetch(feedInfo.getGtfsUrl())) {
+            if (!response.isSuccessful()) {
+                return generateError("URL returns code: " + response.getStatusCode());
+            }
+            if (checkFeedType(feedInfo.getGtfsUrl(), response) == INVALID_FEED) {
+                return generateError("The GTFS-RT URL given is not a valid feed");
             }
         } catch (Exception ex) {
             return generateError("Invalid URL");
         }
 
-
-        //Checks if the GTFS-RT feed returns valid protobuf
-        if (checkFeedType(feedInfo.getGtfsUrl()) == INVALID_FEED) {
-            return generateError("The GTFS-RT URL given is not a valid feed");
-        }
-
         Session session = GTFSDB.initSessionBeginTrans();
         GtfsRtFeedModel storedFeedInfo = (GtfsRtFeedModel) session.createQuery(" FROM GtfsRtFeedModel WHERE "
                 + "gtfsUrl= '"+feedInfo.getGtfsUrl()+"' AND gtfsFeedModel.feedId = "+feedInfo.getGtfsFeedModel().getFeedId()).uniqueResult();
@@ -128,14 +120,13 @@ public class GtfsRtFeed {
         return Response.ok(feedList).build();
     }
 
-    private static HashMap<String, ScheduledExecutorService> runningTasks = new HashMap<>();
-
     @PUT
     @Path("/monitor/{id}")
     public Response startMonitor(
             @PathParam("id") int id,
             @QueryParam("clientId") String clientId,
-            @DefaultValue("10") @QueryParam("updateInterval") int updateInterval) {
+            @DefaultValue("10") @QueryParam("updateInterval") int updateInterval,
+            @DefaultValue("false") @QueryParam("adaptive") boolean adaptive) {
         // Store the timestamp when we start monitoring feeds that can be used to query database
         currentTimestamp = System.currentTimeMillis();
         //Get RtFeedModel from id
@@ -153,11 +144,39 @@ public class GtfsRtFeed {
         GTFSDB.commitAndCloseSession(session);
 
         //Extract the Url and gtfsId to start the background process
-        startBackgroundTask(gtfsRtFeed, updateInterval);
+        startBackgroundTask(gtfsRtFeed, updateInterval, adaptive);
 
         return Response.ok(sessionModel, MediaType.APPLICATION_JSON).build();
     }
 
+    // Returns the scheduling lag of all monitored feeds
+    @GET
+    @Path("/schedule")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSchedule() {
+        List<FeedScheduleHelperModel> schedule = new ArrayList<>();
+        for (FeedScheduler.ScheduledFeed scheduledFeed : FeedScheduler.getInstance().getScheduledFeeds()) {
+            schedule.add(new FeedScheduleHelperModel(scheduledFeed));
+        }
+        GenericEntity<List<FeedScheduleHelperModel>> scheduleList = new GenericEntity<List<FeedScheduleHelperModel>>(schedule) {
+        };
+        return Response.ok(scheduleList).build();
+    }
+
+    // Returns the queue depth and throughput of each stage of the ingest pipeline
+    @GET
+    @Path("/pipeline")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPipeline() {
+        List<PipelineStageHelperModel> stages = new ArrayList<>();
+        for (PipelineStage<?> stage : IngestPipeline.getInstance().getStages()) {
+            stages.add(new PipelineStageHelperModel(stage));
+        }
+        GenericEntity<List<PipelineStageHelperModel>> stageList = new GenericEntity<List<PipelineStageHelperModel>>(stages) {
+        };
+        return Response.ok(stageList).build();
+    }
+
     // Get Monitor data for requested gtfsRtId
     @GET
     @Path("/monitor-data/{id : \\d+}")
@@ -281,7 +300,7 @@ public class GtfsRtFeed {
         IterationErrorListHelperModel iterationErrorListHelperModel;
         List<IterationErrorListHelperModel> iterationErrorListHelperModelList = new ArrayList<>();
 
-        List<Integer> messageIdList;
+        List<Object[]> messageList;
         Session session = GTFSDB.initSessionBeginTrans();
 
         /*
@@ -289,10 +308,10 @@ public class GtfsRtFeed {
          * Each messageId corresponds to an errorId whose list of error occurrences are retrieved from Occurrence table
          * ORDER BY errorId helps to have errors/warnings in ascending order i.e., first errors in ascending order then warnings in ascending order
          */
-        messageIdList = session.createQuery(" SELECT messageId FROM MessageLogModel" +
-                                                " WHERE iterationId = " + iterationId +
-                                                " ORDER BY errorId")
-                                            .list();
+        messageList = session.createQuery(" SELECT messageId, overflowCount FROM MessageLogModel" +
+                                              " WHERE iterationId = " + iterationId +
+                                              " ORDER BY errorId")
+                                          .list();
 
         GTFSDB.closeSession(session);
 
@@ -303,7 +322,8 @@ public class GtfsRtFeed {
          * We separately retrieve list of ViewIterationErrorsModel for each error/warning so that we can have
          *  rowIds in increasing order starting from 1 and have separate list for each error/warning.
          */
-        for (int messageId: messageIdList) {
+        for (Object[] message : messageList) {
+            int messageId = (Integer) message[0];
             session = GTFSDB.initSessionBeginTrans();
             viewIterationErrorsModelList = session.createNamedQuery("IterationIdErrors", ViewIterationErrorsModel.class)
                     .setParameter(0, iterationId)
@@ -321,6 +341,8 @@ public class GtfsRtFeed {
                 iterationErrorListHelperModel.setTitle(viewIterationErrorsModelList.get(0).getTitle());
                 // Get the number of occurrences of each error/warning
                 iterationErrorListHelperModel.setErrorOccurrences(viewIterationErrorsModelList.size());
+                // Occurrences above the rule's occurrence limit were counted, but not stored
+                iterationErrorListHelperModel.setOverflowCount((Integer) message[1]);
 
                 iterationErrorListHelperModelList.add(iterationErrorListHelperModel);
             }
@@ -467,13 +489,11 @@ public class GtfsRtFeed {
     }
 
     //TODO: DELETE {id} remove feed with {id}
-    private int checkFeedType(String FeedURL) {
+    private int checkFeedType(String FeedURL, FeedFetcher.Response response) {
         GtfsRealtime.FeedMessage feed;
         try {
-            URI FeedURI = new URI(FeedURL);
-            URL url = FeedURI.toURL();
-            feed = GtfsRealtime.FeedMessage.parseFrom(url.openStream());
-        } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+            feed = GtfsRealtime.FeedMessage.parseFrom(response.getInputStream());
+        } catch (IOException e) {
             return INVALID_FEED;
         }
         if (feed.hasHeader()) {
@@ -483,17 +503,13 @@ public class GtfsRtFeed {
         return INVALID_FEED;
     }
 
-    public synchronized static ScheduledExecutorService startBackgroundTask(GtfsRtFeedModel gtfsRtFeed, int updateInterval) {
-        String rtFeedUrl = gtfsRtFeed.getGtfsUrl();
-
-        if (!runningTasks.containsKey(rtFeedUrl)) {
-            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-            scheduler.scheduleAtFixedRate(new BackgroundTask(gtfsRtFeed), 0, updateInterval, TimeUnit.SECONDS);
-            runningTasks.put(rtFeedUrl, scheduler);
-            return scheduler;
-        } else {
-            return runningTasks.get(rtFeedUrl);
+    public static FeedScheduler.ScheduledFeed startBackgroundTask(GtfsRtFeedModel gtfsRtFeed, int updateInterval, boolean adaptive) {
+        // All feeds share the same pool of worker threads - a feed that is already being monitored keeps its schedule
+        if (adaptive) {
+            // updateInterval is only used until we learn how often the feed changes
+            return FeedScheduler.getInstance().scheduleAdaptive(gtfsRtFeed.getGtfsUrl(), new BackgroundTask(gtfsRtFeed), updateInterval);
         }
+        return FeedScheduler.getInstance().schedule(gtfsRtFeed.getGtfsUrl(), new BackgroundTask(gtfsRtFeed), updateInterval);
     }
 
     public String getDateFormat(long feedTimestamp, int gtfsRtId) {
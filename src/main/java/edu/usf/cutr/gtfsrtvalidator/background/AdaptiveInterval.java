@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import java.util.Arrays;
+
+/**
+ * Learns how often a GTFS-realtime producer publishes a new feed from the header timestamps of the feeds we download,
+ * and plans each poll for just after the next update is expected:
+ * <ul>
+ * <li>The refresh period is the median of the differences between the last few distinct header timestamps</li>
+ * <li>The delay between the producer creating a feed and us seeing it (latency and clock differences) is the
+ * smallest difference between when a new feed was downloaded and its header timestamp</li>
+ * <li>If the expected update is late, the feed is polled again after a quarter of the refresh period</li>
+ * </ul>
+ * Until two refresh periods have been seen, the initial interval is used.  All delays are kept between a floor and
+ * a ceiling.  Because polls are planned from updates that were actually seen, the initial interval should be no
+ * longer than the producer's refresh period, or the learned period will be a multiple of it.
+ */
+public class AdaptiveInterval {
+
+    // How long after the expected update to poll, so the new feed is usually already published
+    public static final long MARGIN_MILLIS = 1000;
+    // Number of recent refresh periods the estimate is based on
+    private static final int HISTORY = 8;
+
+    private final long mInitialMillis;
+    private final long mFloorMillis;
+    private final long mCeilingMillis;
+
+    private final long[] mPeriods = new long[HISTORY];
+    private final long[] mLatencies = new long[HISTORY];
+    private int mPeriodCount = 0;
+    private int mLatencyCount = 0;
+    private int mNextPeriod = 0;
+    private int mNextLatency = 0;
+    private long mLastFeedTimestamp = -1;
+
+    /**
+     * @param initialMillis interval used until the refresh period of the feed is known
+     * @param floorMillis   shortest allowed interval between polls
+     * @param ceilingMillis longest allowed interval between polls
+     */
+    public AdaptiveInterval(long initialMillis, long floorMillis, long ceilingMillis) {
+        if (floorMillis < 1 || ceilingMillis < floorMillis) {
+            throw new IllegalArgumentException("Interval floor must be at least 1 ms and not above the ceiling");
+        }
+        mFloorMillis = floorMillis;
+        mCeilingMillis = ceilingMillis;
+        mInitialMillis = clamp(initialMillis);
+    }
+
+    /**
+     * Records the header timestamp of a downloaded feed
+     *
+     * @param fetchTimeMillis     when the feed was downloaded, from System.currentTimeMillis()
+     * @param feedTimestampMillis the header timestamp of the feed, in milliseconds
+     * @return true if this is a newer feed than any seen before (so the next poll may need to be planned again), false if it is not
+     */
+    public synchronized boolean observe(long fetchTimeMillis, long feedTimestampMillis) {
+        if (feedTimestampMillis <= 0 || feedTimestampMillis <= mLastFeedTimestamp) {
+            // Missing header timestamp, or the same (or an older) feed as before
+            return false;
+        }
+        if (mLastFeedTimestamp > 0) {
+            mPeriods[mNextPeriod] = feedTimestampMillis - mLastFeedTimestamp;
+            mNextPeriod = (mNextPeriod + 1) % HISTORY;
+            mPeriodCount = Math.min(HISTORY, mPeriodCount + 1);
+        }
+        mLatencies[mNextLatency] = fetchTimeMillis - feedTimestampMillis;
+        mNextLatency = (mNextLatency + 1) % HISTORY;
+        mLatencyCount = Math.min(HISTORY, mLatencyCount + 1);
+        mLastFeedTimestamp = feedTimestampMillis;
+        return true;
+    }
+
+    /**
+     * Returns how long to wait before the next poll
+     *
+     * @param nowMillis the current time, from System.currentTimeMillis()
+     * @return how long to wait before the next poll, in milliseconds
+     */
+    public synchronized long getNextDelayMillis(long nowMillis) {
+        long period = getRefreshPeriodMillis();
+        if (period <= 0) {
+            return mInitialMillis;
+        }
+        long latency = Long.MAX_VALUE;
+        for (int i = 0; i < mLatencyCount; i++) {
+            latency = Math.min(latency, mLatencies[i]);
+        }
+        long expectedUpdateMillis = mLastFeedTimestamp + period + latency;
+        long delay = expectedUpdateMillis + MARGIN_MILLIS - nowMillis;
+        if (delay <= 0) {
+            // The update is late - check again soon, but not as often as the floor allows
+            delay = period / 4;
+        }
+        return clamp(delay);
+    }
+
+    /**
+     * Returns the learned refresh period of the feed, or 0 if it isn't known yet
+     *
+     * @return the learned refresh period of the feed in milliseconds, or 0 if it isn't known yet
+     */
+    public synchronized long getRefreshPeriodMillis() {
+        if (mPeriodCount < 2) {
+            return 0;
+        }
+        long[] periods = Arrays.copyOf(mPeriods, mPeriodCount);
+        Arrays.sort(periods);
+        return periods[periods.length / 2];
+    }
+
+    public long getFloorMillis() {
+        return mFloorMillis;
+    }
+
+    public long getCeilingMillis() {
+        return mCeilingMillis;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(mFloorMillis, Math.min(mCeilingMillis, millis));
+    }
+}
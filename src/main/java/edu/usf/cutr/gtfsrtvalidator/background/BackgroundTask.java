@@ -17,6 +17,7 @@
 
 package edu.usf.cutr.gtfsrtvalidator.background;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.transit.realtime.GtfsRealtime;
 import edu.usf.cutr.gtfsrtvalidator.api.model.GtfsRtFeedIterationModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.GtfsRtFeedModel;
@@ -24,23 +25,24 @@ import edu.usf.cutr.gtfsrtvalidator.api.resource.GtfsFeed;
 import edu.usf.cutr.gtfsrtvalidator.db.GTFSDB;
 import edu.usf.cutr.gtfsrtvalidator.helper.DBHelper;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.helper.FeedFetcher;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceLimits;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationEngine;
 import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
 import edu.usf.cutr.gtfsrtvalidator.validation.rules.*;
-import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.logDuration;
@@ -51,10 +53,44 @@ public class BackgroundTask implements Runnable {
 
     private static Map<Integer, Map<Integer, GtfsRealtime.FeedMessage>> mFeedEntityList = new ConcurrentHashMap<>();
     private static Map<Integer, GtfsRealtime.FeedMessage> mGtfsRtFeedMap = new ConcurrentHashMap<>();
-    private static Map<Integer, edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata> mGtfsMetadata = new ConcurrentHashMap<>();
     private final static List<FeedEntityValidator> mValidationRules = new ArrayList<>();
+    private static volatile ValidationEngine mValidationEngine;
+    private static boolean mParallelRules = false;
+    private static int mPartitionSize = 0;
+    private static volatile OccurrenceLimits mOccurrenceLimits = new OccurrenceLimits(OccurrenceLimits.DEFAULT_MAX_OCCURRENCES, Collections.emptyMap());
+
+    private final GtfsRtFeedModel mCurrentGtfsRtFeed;
+
+    /**
+     * Sets whether the validation rules for each feed iteration run in parallel on the shared ForkJoinPool, instead of
+     * in a single pass over the feed on the validate stage thread.  Must be called before the first task is created.
+     *
+     * @param parallelRules true to run the rules for each iteration in parallel, false to run them in a single pass
+     * @param partitionSize number of entities in each chunk large feeds are split into, with the chunks validated in
+     *                      parallel, or 0 to not split feeds.  Takes precedence over parallelRules.
+     */
+    public static void setParallelRules(boolean parallelRules, int partitionSize) {
+        if (partitionSize < 0) {
+            throw new IllegalArgumentException("partitionSize must not be negative");
+        }
+        synchronized (mValidationRules) {
+            if (mValidationEngine != null) {
+                _log.warn("Validation rules already initialized - ignoring new parallel rules setting");
+                return;
+            }
+            mParallelRules = parallelRules;
+            mPartitionSize = partitionSize;
+        }
+    }
 
-    private GtfsRtFeedModel mCurrentGtfsRtFeed = null;
+    /**
+     * Sets how many occurrences of each error or warning are stored for a feed iteration
+     *
+     * @param occurrenceLimits limits for the number of occurrences stored per rule and iteration
+     */
+    public static void setOccurrenceLimits(OccurrenceLimits occurrenceLimits) {
+        mOccurrenceLimits = occurrenceLimits;
+    }
 
     public BackgroundTask(GtfsRtFeedModel gtfsRtFeed) {
         // Accept the gtfs feed id and save entities of the same feed in an array
@@ -72,145 +108,314 @@ public class BackgroundTask implements Runnable {
                 mValidationRules.add(new FrequencyTypeZeroValidator());
                 mValidationRules.add(new FrequencyTypeOneValidator());
                 mValidationRules.add(new HeaderValidator());
+                boolean parallel = mParallelRules || mPartitionSize > 0;
+                mValidationEngine = new ValidationEngine(mValidationRules, parallel ? ForkJoinPool.commonPool() : null, mPartitionSize);
             }
         }
     }
 
+    /**
+     * Downloads the feed (the fetch stage) and hands it off to the ingest pipeline for decoding, validation and
+     * storage, so this thread is free to download the next feed
+     */
     @Override
     public void run() {
-        try {
-            long startTimeNanos = System.nanoTime();
-            GtfsRealtime.FeedMessage currentFeedMessage;
-            GtfsRealtime.FeedMessage previousFeedMessage = null;
-            GtfsDaoImpl gtfsData;
-            GtfsMetadata gtfsMetadata;
-
-            // Holds data needed in the database under each iteration
-            GtfsRtFeedIterationModel feedIteration;
-
-            // Get the GTFS feed from the GtfsDaoMap using the gtfsFeedId of the current feed.
-            gtfsData = GtfsFeed.GtfsDaoMap.get(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId());
-            // Create the GTFS metadata if it doesn't already exist
-            gtfsMetadata = mGtfsMetadata.computeIfAbsent(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId(),
-                    k -> new GtfsMetadata(mCurrentGtfsRtFeed.getGtfsFeedModel().getGtfsUrl(),
-                            TimeZone.getTimeZone(mCurrentGtfsRtFeed.getGtfsFeedModel().getAgency()),
-                            gtfsData));
-
-            // Read the GTFS-rt feed from the feed URL
-            URL gtfsRtFeedUrl;
-            try {
-                gtfsRtFeedUrl = new URL(mCurrentGtfsRtFeed.getGtfsUrl());
-            } catch (MalformedURLException e) {
-                _log.error("Malformed Url: " + mCurrentGtfsRtFeed.getGtfsUrl(), e);
-                e.printStackTrace();
-                return;
+        long startTimeNanos = System.nanoTime();
+        String gtfsRtFeedUrl = mCurrentGtfsRtFeed.getGtfsUrl();
+        PendingIteration iteration = new PendingIteration(this, startTimeNanos, System.currentTimeMillis());
+
+        // The cache validators are only set once a valid feed has been decoded, so there is always a last feed to compare against
+        try (FeedFetcher.Response response = FeedFetcher.getInstance().fetch(gtfsRtFeedUrl, mCurrentGtfsRtFeed.getETag(), mCurrentGtfsRtFeed.getLastModified())) {
+            if (!response.isNotModified()) {
+                if (!response.isSuccessful()) {
+                    _log.error("The URL '" + gtfsRtFeedUrl + "' returned code " + response.getStatusCode());
+                    return;
+                }
+                iteration.mETag = response.getHeader("ETag");
+                iteration.mLastModified = response.getHeader("Last-Modified");
+
+                // Get the GTFS-RT feed for this iteration, fingerprinting it while it downloads
+                iteration.mPayload = GtfsRtPayload.read(response.getInputStream(), response.getContentLength(), FingerprintStrategy.getDefault());
             }
+        } catch (Exception e) {
+            _log.error("The URL '" + gtfsRtFeedUrl + "' could not be read", e);
+            return;
+        }
 
-            try {
-                // Get the GTFS-RT feedMessage for this method
-                InputStream in = gtfsRtFeedUrl.openStream();
-                byte[] gtfsRtProtobuf = IOUtils.toByteArray(in);
-
-                boolean isUniqueFeed = true;
-                MessageDigest md = MessageDigest.getInstance("MD5");
-                byte[] prevFeedDigest = null;
-                byte[] currentFeedDigest = md.digest(gtfsRtProtobuf);
-
-                Session session = GTFSDB.initSessionBeginTrans();
-                feedIteration = (GtfsRtFeedIterationModel) session.createQuery("FROM GtfsRtFeedIterationModel"
-                        + " WHERE rtFeedId = " + mCurrentGtfsRtFeed.getGtfsRtId()
-                            + " ORDER BY IterationId DESC").setMaxResults(1).uniqueResult();
-                if (feedIteration != null) {
-                    prevFeedDigest = feedIteration.getFeedHash();
-                }
+        IngestPipeline.getInstance().decode(iteration);
+    }
 
-                if(MessageDigest.isEqual(currentFeedDigest, prevFeedDigest)) {
-                    // If previous feed digest and newly fetched/current feed digest are equal means, we received the same feed again.
-                    isUniqueFeed = false;
-                }
+    /**
+     * Parses the downloaded feed and checks whether it is different from the last one (the decode stage).  Changed
+     * feeds keep their feed messages for the validate stage, and unchanged feeds only keep their fingerprint.
+     *
+     * @param iteration the iteration to decode
+     * @return true if the iteration should be passed on to the next stages, false if it should be dropped
+     */
+    boolean decode(PendingIteration iteration) {
+        String gtfsRtFeedUrl = mCurrentGtfsRtFeed.getGtfsUrl();
+
+        // Fingerprint of the last feed and the last unique feed, from memory if possible so we don't need to read and parse it from the database
+        LastIterationCache.LastIteration lastIteration = getLastIteration();
+
+        if (iteration.mPayload == null) {
+            // Server returned 304 Not Modified - record the iteration with the fingerprint of the last feed
+            if (lastIteration.getFeedDigest() == null) {
+                _log.error("The URL '" + gtfsRtFeedUrl + "' was not modified, but there is no previous feed");
+                return false;
+            }
+            iteration.mFeedIteration = new GtfsRtFeedIterationModel(iteration.mTimestamp, lastIteration.getFeedTimestamp(), null, mCurrentGtfsRtFeed,
+                    lastIteration.getFeedDigest(), lastIteration.getFingerprintStrategy().name());
+            _log.debug(gtfsRtFeedUrl + " was not modified");
+            return true;
+        }
 
-                InputStream is = new ByteArrayInputStream(gtfsRtProtobuf);
-                currentFeedMessage = GtfsRealtime.FeedMessage.parseFrom(is);
+        GtfsRtPayload payload = iteration.mPayload;
+        GtfsRealtime.FeedMessage currentFeedMessage;
+        try {
+            currentFeedMessage = payload.parse();
+        } catch (IOException e) {
+            _log.error("The URL '" + gtfsRtFeedUrl + "' does not contain valid Gtfs-Rt data", e);
+            return false;
+        }
 
-                long feedTimestamp = TimeUnit.SECONDS.toMillis(currentFeedMessage.getHeader().getTimestamp());
+        long feedTimestamp = TimeUnit.SECONDS.toMillis(currentFeedMessage.getHeader().getTimestamp());
+        byte[] currentFeedDigest = payload.getDigest();
+        FingerprintStrategy fingerprintStrategy = payload.getFingerprintStrategy();
 
-                // Create new feedIteration object and save the iteration to the database
-                if(isUniqueFeed) {
-                    if (feedIteration != null && feedIteration.getFeedprotobuf() != null) {
-                        // Get the previous feed message
-                        InputStream previousIs = new ByteArrayInputStream(feedIteration.getFeedprotobuf());
-                        previousFeedMessage = GtfsRealtime.FeedMessage.parseFrom(previousIs);
-                    }
+        boolean isUniqueFeed = true;
+        if (lastIteration.getFeedDigest() != null && lastIteration.getFingerprintStrategy() == fingerprintStrategy
+                && feedTimestamp == lastIteration.getFeedTimestamp()
+                && (lastIteration.getFeedLength() == -1 || payload.getLength() == lastIteration.getFeedLength())) {
+            // A feed with a different header timestamp or size has changed, so only compare fingerprints if both match
+            isUniqueFeed = !MessageDigest.isEqual(currentFeedDigest, lastIteration.getFeedDigest());
+        }
 
-                    feedIteration = new GtfsRtFeedIterationModel(System.currentTimeMillis(), feedTimestamp, gtfsRtProtobuf, mCurrentGtfsRtFeed, currentFeedDigest);
-                } else {
-                    feedIteration = new GtfsRtFeedIterationModel(System.currentTimeMillis(), feedTimestamp, null, mCurrentGtfsRtFeed, currentFeedDigest);
-                }
-                session.save(feedIteration);
-                GTFSDB.commitAndCloseSession(session);
+        // The feed is valid, so remember the cache validators for the next conditional request
+        mCurrentGtfsRtFeed.setETag(iteration.mETag);
+        mCurrentGtfsRtFeed.setLastModified(iteration.mLastModified);
 
-                if (!isUniqueFeed) {
-                    return;
-                }
-            } catch (Exception e) {
-                _log.error("The URL '" + gtfsRtFeedUrl + "' does not contain valid Gtfs-Rt data", e);
-                return;
-            }
+        // Let adaptive scheduling learn how often this feed changes
+        FeedScheduler.ScheduledFeed scheduledFeed = FeedScheduler.getInstance().getScheduledFeed(gtfsRtFeedUrl);
+        if (scheduledFeed != null) {
+            scheduledFeed.onFeedTimestamp(iteration.mTimestamp, feedTimestamp);
+        }
 
-            // Read all GTFS-rt entities for the current feed
-            mGtfsRtFeedMap.put(feedIteration.getGtfsRtFeedModel().getGtfsRtId(), currentFeedMessage);
-            mFeedEntityList.put(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId(), mGtfsRtFeedMap);
+        // Create new feedIteration object to save to the database
+        if (isUniqueFeed) {
+            iteration.mFeedIteration = new GtfsRtFeedIterationModel(iteration.mTimestamp, feedTimestamp, payload.toByteArray(), mCurrentGtfsRtFeed, currentFeedDigest, fingerprintStrategy.name());
+            iteration.mCurrentFeedMessage = currentFeedMessage;
+            iteration.mPreviousFeedMessage = lastIteration.getLastUniqueFeed();
+            // The feed just parsed is the previous feed of the next changed iteration, so it doesn't need to be parsed again
+            LastIterationCache.getInstance().put(mCurrentGtfsRtFeed.getGtfsRtId(), new LastIterationCache.LastIteration(
+                    feedTimestamp, payload.getLength(), currentFeedDigest, fingerprintStrategy, currentFeedMessage));
+        } else {
+            iteration.mFeedIteration = new GtfsRtFeedIterationModel(iteration.mTimestamp, feedTimestamp, null, mCurrentGtfsRtFeed, currentFeedDigest, fingerprintStrategy.name());
+            LastIterationCache.getInstance().put(mCurrentGtfsRtFeed.getGtfsRtId(), new LastIterationCache.LastIteration(
+                    feedTimestamp, payload.getLength(), currentFeedDigest, fingerprintStrategy, lastIteration.getLastUniqueFeed()));
+        }
+        // The payload isn't needed anymore - don't hold on to it while the iteration waits in the next queues
+        iteration.mPayload = null;
+        return true;
+    }
 
-            Map<Integer, GtfsRealtime.FeedMessage> feedEntityInstance = mFeedEntityList.get(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId());
+    /**
+     * Runs the validation rules on a changed feed, combined with the other GTFS-realtime feeds for the same GTFS
+     * feed (the validate stage).  Unchanged feeds pass through without running the rules, so they are still stored
+     * after any changed feed of the same GTFS-realtime feed that was fetched before them.
+     *
+     * @param iteration the iteration to validate
+     */
+    void validate(PendingIteration iteration) {
+        if (iteration.mCurrentFeedMessage == null) {
+            // Feed didn't change
+            return;
+        }
 
-            List<GtfsRealtime.FeedEntity> allEntitiesArrayList = new ArrayList<>();
+        // Get the GTFS feed from the GtfsDataMap using the gtfsFeedId of the current feed (its metadata is created the first time it's needed)
+        GtfsFeedData gtfsData = GtfsFeed.GtfsDataMap.get(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId());
 
-            GtfsRealtime.FeedHeader header = null;
+        // Read all GTFS-rt entities for the current feed
+        mGtfsRtFeedMap.put(mCurrentGtfsRtFeed.getGtfsRtId(), iteration.mCurrentFeedMessage);
+        mFeedEntityList.put(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId(), mGtfsRtFeedMap);
 
-            for (Map.Entry<Integer, GtfsRealtime.FeedMessage> allFeeds : feedEntityInstance.entrySet()) {
-                int key = allFeeds.getKey();
-                GtfsRealtime.FeedMessage message = feedEntityInstance.get(key);
-                if (header == null) {
-                    // Save one header to use in our combined feed below
-                    header = feedEntityInstance.get(key).getHeader();
-                }
-                allEntitiesArrayList.addAll(message.getEntityList());
+        Map<Integer, GtfsRealtime.FeedMessage> feedEntityInstance = mFeedEntityList.get(mCurrentGtfsRtFeed.getGtfsFeedModel().getFeedId());
+
+        List<GtfsRealtime.FeedEntity> allEntitiesArrayList = new ArrayList<>();
+
+        GtfsRealtime.FeedHeader header = null;
+
+        for (Map.Entry<Integer, GtfsRealtime.FeedMessage> allFeeds : feedEntityInstance.entrySet()) {
+            int key = allFeeds.getKey();
+            GtfsRealtime.FeedMessage message = feedEntityInstance.get(key);
+            if (header == null) {
+                // Save one header to use in our combined feed below
+                header = feedEntityInstance.get(key).getHeader();
             }
+            allEntitiesArrayList.addAll(message.getEntityList());
+        }
 
-            GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
-            feedMessageBuilder.setHeader(header);
-            feedMessageBuilder.addAllEntity(allEntitiesArrayList);
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(header);
+        feedMessageBuilder.addAllEntity(allEntitiesArrayList);
 
-            GtfsRealtime.FeedMessage combinedFeed = feedMessageBuilder.build();
+        GtfsRealtime.FeedMessage combinedFeed = feedMessageBuilder.build();
 
-            // Use the same current time for all rules for consistency
-            long currentTimeMillis = System.currentTimeMillis();
+        // Use the same current time for all rules for consistency
+        long currentTimeMillis = System.currentTimeMillis();
 
-            // Run validation rules
-            for (FeedEntityValidator rule : mValidationRules) {
-                validateEntity(currentTimeMillis, combinedFeed, previousFeedMessage, gtfsData, gtfsMetadata, feedIteration, rule);
+        // Run all validation rules in a single pass over the feed entities
+        long startTimeNanos = System.nanoTime();
+        ValidationContext context = new ValidationContext(currentTimeMillis, gtfsData, combinedFeed, iteration.mPreviousFeedMessage);
+        // Rules stop building occurrences at the limits, and lists merged from several chunks are capped below
+        OccurrenceLimits occurrenceLimits = mOccurrenceLimits;
+        context.setAttribute(OccurrenceLimits.KEY, occurrenceLimits);
+        iteration.mErrorLists = new ArrayList<>();
+        for (ErrorListHelperModel errorList : mValidationEngine.validate(context)) {
+            if (!errorList.getOccurrenceList().isEmpty()) {
+                occurrenceLimits.apply(errorList);
+                iteration.mErrorLists.add(errorList);
             }
+        }
+        logDuration(_log, "Processed validation rules for " + mCurrentGtfsRtFeed.getGtfsUrl() + " in ", startTimeNanos);
+        // The feed messages are still referenced from the cache, but the iteration doesn't need them anymore
+        iteration.mCurrentFeedMessage = null;
+        iteration.mPreviousFeedMessage = null;
+    }
 
-            logDuration(_log, "Processed " + mCurrentGtfsRtFeed.getGtfsUrl() + " in ", startTimeNanos);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+    /**
+     * Saves the iteration and any errors found in it to the database (the persist stage)
+     *
+     * @param iteration the iteration to save
+     */
+    void persist(PendingIteration iteration) {
+        Session session = GTFSDB.initSessionBeginTrans();
+        session.save(iteration.mFeedIteration);
+        GTFSDB.commitAndCloseSession(session);
+
+        if (iteration.mErrorLists == null) {
+            // Feed wasn't validated because it didn't change
+            return;
         }
+        for (ErrorListHelperModel errorList : iteration.mErrorLists) {
+            //Set iteration Id
+            errorList.getErrorMessage().setGtfsRtFeedIterationModel(iteration.mFeedIteration);
+            //Save the captured errors to the database
+            DBHelper.saveError(errorList);
+        }
+
+        logDuration(_log, "Processed " + mCurrentGtfsRtFeed.getGtfsUrl() + " in ", iteration.mStartTimeNanos);
     }
 
-    private void validateEntity(long currentTimeMillis, GtfsRealtime.FeedMessage currentFeedMessage, GtfsRealtime.FeedMessage previousFeedMessage, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRtFeedIterationModel feedIteration, FeedEntityValidator feedEntityValidator) {
-        long startTimeNanos = System.nanoTime();
-        List<ErrorListHelperModel> errorLists = feedEntityValidator.validate(currentTimeMillis, gtfsData, gtfsMetadata, currentFeedMessage, previousFeedMessage);
-        logDuration(_log, "Processed " + feedEntityValidator.getClass().getSimpleName() + " in ", startTimeNanos);
-
-        if (errorLists != null) {
-            for (ErrorListHelperModel errorList : errorLists) {
-                if (!errorList.getOccurrenceList().isEmpty()) {
-                    //Set iteration Id
-                    errorList.getErrorMessage().setGtfsRtFeedIterationModel(feedIteration);
-                    //Save the captured errors to the database
-                    DBHelper.saveError(errorList);
-                }
+    /**
+     * Returns the last iteration of the current feed from the cache, loading it from the database if it isn't cached
+     * (i.e., on the first iteration since the application started, or if it was evicted)
+     *
+     * @return the last iteration of the current feed
+     */
+    private LastIterationCache.LastIteration getLastIteration() {
+        int gtfsRtId = mCurrentGtfsRtFeed.getGtfsRtId();
+        LastIterationCache.LastIteration lastIteration = LastIterationCache.getInstance().get(gtfsRtId);
+        if (lastIteration != null) {
+            return lastIteration;
+        }
+
+        Session session = GTFSDB.initSessionBeginTrans();
+        GtfsRtFeedIterationModel lastFeedIteration = (GtfsRtFeedIterationModel) session.createQuery("FROM GtfsRtFeedIterationModel"
+                + " WHERE rtFeedId = " + gtfsRtId
+                + " ORDER BY IterationId DESC").setMaxResults(1).uniqueResult();
+        GtfsRtFeedIterationModel lastUniqueFeedIteration = null;
+        if (lastFeedIteration != null) {
+            lastUniqueFeedIteration = lastFeedIteration.getFeedprotobuf() != null ? lastFeedIteration :
+                    (GtfsRtFeedIterationModel) session.createQuery("FROM GtfsRtFeedIterationModel"
+                            + " WHERE rtFeedId = " + gtfsRtId + " AND feedprotobuf IS NOT NULL"
+                            + " ORDER BY IterationId DESC").setMaxResults(1).uniqueResult();
+        }
+        GTFSDB.closeSession(session);
+
+        GtfsRealtime.FeedMessage lastUniqueFeed = null;
+        if (lastUniqueFeedIteration != null) {
+            try {
+                lastUniqueFeed = GtfsRealtime.FeedMessage.parseFrom(lastUniqueFeedIteration.getFeedprotobuf());
+            } catch (InvalidProtocolBufferException e) {
+                _log.error("Couldn't parse the last feed stored for " + mCurrentGtfsRtFeed.getGtfsUrl(), e);
             }
         }
+        if (lastFeedIteration == null) {
+            lastIteration = new LastIterationCache.LastIteration(0, -1, null, null, null);
+        } else {
+            lastIteration = new LastIterationCache.LastIteration(lastFeedIteration.getFeedTimestamp(), -1, lastFeedIteration.getFeedHash(),
+                    FingerprintStrategy.fromName(lastFeedIteration.getFeedHashAlgorithm()), lastUniqueFeed);
+        }
+        LastIterationCache.getInstance().put(gtfsRtId, lastIteration);
+        return lastIteration;
+    }
+
+    /**
+     * Runs each stage of the ingest pipeline on the BackgroundTask of the feed the iteration belongs to
+     */
+    static class PipelineHandler implements IngestPipeline.Handler<PendingIteration> {
+        @Override
+        public Object getKey(PendingIteration iteration) {
+            return iteration.getKey();
+        }
+
+        @Override
+        public boolean decode(PendingIteration iteration) {
+            return iteration.getTask().decode(iteration);
+        }
+
+        @Override
+        public void validate(PendingIteration iteration) {
+            iteration.getTask().validate(iteration);
+        }
+
+        @Override
+        public void persist(PendingIteration iteration) {
+            iteration.getTask().persist(iteration);
+        }
+    }
+
+    /**
+     * A feed iteration on its way through the ingest pipeline.  Each stage fills in what the next stage needs, and
+     * releases what it doesn't.
+     */
+    static class PendingIteration {
+        private final BackgroundTask mTask;
+        private final long mStartTimeNanos;
+        // When the feed was fetched, recorded as the time of the iteration
+        private final long mTimestamp;
+
+        // Set by the fetch stage - payload is null if the server returned 304 Not Modified
+        private GtfsRtPayload mPayload;
+        private String mETag;
+        private String mLastModified;
+
+        // Set by the decode stage - feed messages are only set if the feed changed
+        private GtfsRtFeedIterationModel mFeedIteration;
+        private GtfsRealtime.FeedMessage mCurrentFeedMessage;
+        private GtfsRealtime.FeedMessage mPreviousFeedMessage;
+
+        // Set by the validate stage
+        private List<ErrorListHelperModel> mErrorLists;
+
+        PendingIteration(BackgroundTask task, long startTimeNanos, long timestamp) {
+            mTask = task;
+            mStartTimeNanos = startTimeNanos;
+            mTimestamp = timestamp;
+        }
+
+        BackgroundTask getTask() {
+            return mTask;
+        }
+
+        /**
+         * Returns the ID of the GTFS-realtime feed, so all iterations of the same feed are processed in order by the same workers
+         *
+         * @return the ID of the GTFS-realtime feed
+         */
+        Integer getKey() {
+            return mTask.mCurrentGtfsRtFeed.getGtfsRtId();
+        }
     }
-}
\ No newline at end of file
+}
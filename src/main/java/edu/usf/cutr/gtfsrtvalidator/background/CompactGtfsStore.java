@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import edu.usf.cutr.gtfsrtvalidator.util.StringDictionary;
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import org.onebusaway.gtfs.model.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadataSnapshot.*;
+import static edu.usf.cutr.gtfsrtvalidator.util.StringDictionary.NO_ID;
+import static org.hibernate.internal.util.StringHelper.isEmpty;
+
+/**
+ * The parts of a GTFS feed that rules need, stored column by column in primitive arrays instead of as onebusaway
+ * entity objects.  Trips, routes, stops and shapes are identified by dense int indexes from a StringDictionary of
+ * their GTFS ids, and the stop_times.txt and shapes.txt rows of each trip and shape are stored next to each other,
+ * sorted by stop_sequence and shape_pt_sequence.
+ * <p>
+ * The store doesn't keep any references to the onebusaway entities it was built from, and is immutable once built.
+ */
+public class CompactGtfsStore {
+
+    private final StringDictionary mRouteIds;
+    private final StringDictionary mStopIds;
+    private final StringDictionary mTripIds;
+    private final StringDictionary mShapeIds;
+    private final StringDictionary mDirectionIds;
+
+    // Indexed by stop
+    private final int[] mStopLocationTypes;
+
+    // Indexed by trip
+    private final int[] mTripRoutes;
+    private final int[] mTripShapes;
+    private final int[] mTripDirections;
+    // The stop times of trip i are at [mTripStopTimeStart[i], mTripStopTimeStart[i + 1])
+    private final int[] mTripStopTimeStart;
+
+    // Indexed by stop time
+    private final int[] mStopTimeStops;
+    private final int[] mArrivalTimes;
+    private final int[] mDepartureTimes;
+    private final int[] mStopSequences;
+
+    // The points of shape i are at [mShapePointStart[i], mShapePointStart[i + 1])
+    private final int[] mShapePointStart;
+    private final float[] mShapeLats;
+    private final float[] mShapeLons;
+
+    /**
+     * Builds the store on the common fork/join pool
+     *
+     * @param gtfsData GTFS feed to build the store from
+     */
+    public CompactGtfsStore(GtfsDaoImpl gtfsData) {
+        this(gtfsData, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param gtfsData GTFS feed to build the store from
+     * @param pool     pool used to process shapes.txt while the other files are processed, and to look up and sort the
+     *                 rows of each trip and shape in parallel, or null to build the store on the calling thread
+     */
+    public CompactGtfsStore(GtfsDaoImpl gtfsData, ForkJoinPool pool) {
+        // Shapes don't depend on any other file, so they are grouped and sorted while the other files are processed
+        ForkJoinTask<ShapeColumns> shapesTask = ForkJoinTask.adapt(() -> new ShapeColumns(gtfsData.getAllShapePoints(), pool));
+        if (pool == null) {
+            shapesTask.invoke();
+        } else {
+            pool.execute(shapesTask);
+        }
+
+        Collection<Route> routes = gtfsData.getAllRoutes();
+        mRouteIds = new StringDictionary(routes.size());
+        for (Route route : routes) {
+            mRouteIds.add(route.getId().getId());
+        }
+
+        Collection<Stop> stops = gtfsData.getAllStops();
+        mStopIds = new StringDictionary(stops.size());
+        mStopLocationTypes = new int[stops.size()];
+        for (Stop stop : stops) {
+            mStopLocationTypes[mStopIds.add(stop.getId().getId())] = stop.getLocationType();
+        }
+
+        /**
+         * Process GTFS trips.txt - shape_ids are resolved once shapes.txt has been processed
+         */
+        Collection<Trip> trips = gtfsData.getAllTrips();
+        mTripIds = new StringDictionary(trips.size());
+        mDirectionIds = new StringDictionary(2);
+        mTripRoutes = new int[trips.size()];
+        mTripShapes = new int[trips.size()];
+        mTripDirections = new int[trips.size()];
+        String[] tripShapeIds = new String[trips.size()];
+        for (Trip trip : trips) {
+            int t = mTripIds.add(trip.getId().getId());
+            mTripRoutes[t] = trip.getRoute() == null ? NO_ID : mRouteIds.getId(trip.getRoute().getId().getId());
+            AgencyAndId shapeId = trip.getShapeId();
+            tripShapeIds[t] = shapeId == null || isEmpty(shapeId.getId()) ? null : shapeId.getId();
+            mTripDirections[t] = trip.getDirectionId() == null ? NO_ID : mDirectionIds.add(trip.getDirectionId());
+        }
+
+        /**
+         * Process GTFS stop_times.txt - group stop times by trip_id, and sort each trip by stop_sequence (stop_times.txt
+         * isn't necessarily sorted).  The dictionaries are complete at this point, so they can be read from any thread.
+         */
+        StopTime[] stopTimes = gtfsData.getAllStopTimes().toArray(new StopTime[0]);
+        int[] tripOfStopTime = new int[stopTimes.length];
+        forEach(pool, stopTimes.length, i -> tripOfStopTime[i] = mTripIds.getId(stopTimes[i].getTrip().getId().getId()));
+        StopTime[] orderedStopTimes = new StopTime[stopTimes.length];
+        mTripStopTimeStart = groupBy(stopTimes, tripOfStopTime, mTripIds.size(), orderedStopTimes);
+        sortGroups(pool, orderedStopTimes, mTripStopTimeStart, Comparator.comparingInt(StopTime::getStopSequence));
+        int stopTimeCount = mTripStopTimeStart[mTripIds.size()];
+        mStopTimeStops = new int[stopTimeCount];
+        mArrivalTimes = new int[stopTimeCount];
+        mDepartureTimes = new int[stopTimeCount];
+        mStopSequences = new int[stopTimeCount];
+        forEach(pool, stopTimeCount, i -> {
+            StopTime stopTime = orderedStopTimes[i];
+            mStopTimeStops[i] = mStopIds.getId(stopTime.getStop().getId().getId());
+            mArrivalTimes[i] = stopTime.getArrivalTime();
+            mDepartureTimes[i] = stopTime.getDepartureTime();
+            mStopSequences[i] = stopTime.getStopSequence();
+        });
+
+        ShapeColumns shapes = shapesTask.join();
+        mShapeIds = shapes.mShapeIds;
+        mShapePointStart = shapes.mShapePointStart;
+        mShapeLats = shapes.mShapeLats;
+        mShapeLons = shapes.mShapeLons;
+        for (int t = 0; t < tripShapeIds.length; t++) {
+            mTripShapes[t] = tripShapeIds[t] == null ? NO_ID : mShapeIds.getId(tripShapeIds[t]);
+        }
+    }
+
+    /**
+     * Reads a store written by write() from a GtfsMetadataSnapshot
+     *
+     * @param in snapshot positioned at the start of the store
+     */
+    CompactGtfsStore(ByteBuffer in) {
+        mRouteIds = readDictionary(in);
+        mStopIds = readDictionary(in);
+        mTripIds = readDictionary(in);
+        mShapeIds = readDictionary(in);
+        mDirectionIds = readDictionary(in);
+        mStopLocationTypes = readInts(in);
+        mTripRoutes = readInts(in);
+        mTripShapes = readInts(in);
+        mTripDirections = readInts(in);
+        mTripStopTimeStart = readInts(in);
+        mStopTimeStops = readInts(in);
+        mArrivalTimes = readInts(in);
+        mDepartureTimes = readInts(in);
+        mStopSequences = readInts(in);
+        mShapePointStart = readInts(in);
+        mShapeLats = readFloats(in);
+        mShapeLons = readFloats(in);
+    }
+
+    /**
+     * Writes the store to a GtfsMetadataSnapshot
+     *
+     * @param out snapshot to write the store to
+     * @throws IOException if the store can't be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        writeDictionary(out, mRouteIds);
+        writeDictionary(out, mStopIds);
+        writeDictionary(out, mTripIds);
+        writeDictionary(out, mShapeIds);
+        writeDictionary(out, mDirectionIds);
+        writeInts(out, mStopLocationTypes);
+        writeInts(out, mTripRoutes);
+        writeInts(out, mTripShapes);
+        writeInts(out, mTripDirections);
+        writeInts(out, mTripStopTimeStart);
+        writeInts(out, mStopTimeStops);
+        writeInts(out, mArrivalTimes);
+        writeInts(out, mDepartureTimes);
+        writeInts(out, mStopSequences);
+        writeInts(out, mShapePointStart);
+        writeFloats(out, mShapeLats);
+        writeFloats(out, mShapeLons);
+    }
+
+    /**
+     * Returns the index of the given trips.txt trip_id, or StringDictionary.NO_ID if it isn't in the GTFS data
+     *
+     * @param tripId trips.txt trip_id
+     * @return the index of the given trips.txt trip_id, or StringDictionary.NO_ID if it isn't in the GTFS data
+     */
+    public int getTripIndex(String tripId) {
+        return mTripIds.getId(tripId);
+    }
+
+    public int getTripCount() {
+        return mTripIds.size();
+    }
+
+    public String getTripId(int trip) {
+        return mTripIds.get(trip);
+    }
+
+    /**
+     * Returns the route_id of the given trip, or null if the trip's route isn't in routes.txt
+     *
+     * @param trip index of the trip
+     * @return the route_id of the given trip, or null if the trip's route isn't in routes.txt
+     */
+    public String getTripRouteId(int trip) {
+        return mTripRoutes[trip] == NO_ID ? null : mRouteIds.get(mTripRoutes[trip]);
+    }
+
+    /**
+     * Returns the direction_id of the given trip, or null if it doesn't have one
+     *
+     * @param trip index of the trip
+     * @return the direction_id of the given trip, or null if it doesn't have one
+     */
+    public String getTripDirectionId(int trip) {
+        return mTripDirections[trip] == NO_ID ? null : mDirectionIds.get(mTripDirections[trip]);
+    }
+
+    /**
+     * Returns the index of the shape of the given trip, or StringDictionary.NO_ID if the trip doesn't have a shape in shapes.txt
+     *
+     * @param trip index of the trip
+     * @return the index of the shape of the given trip, or StringDictionary.NO_ID if the trip doesn't have a shape in shapes.txt
+     */
+    public int getTripShape(int trip) {
+        return mTripShapes[trip];
+    }
+
+    public int getStopTimeCount(int trip) {
+        return mTripStopTimeStart[trip + 1] - mTripStopTimeStart[trip];
+    }
+
+    /**
+     * Returns the arrival_time of a stop time of the given trip, in seconds after midnight
+     *
+     * @param trip     index of the trip
+     * @param stopTime position of the stop time in the trip, from 0 to getStopTimeCount(trip) - 1, in stop_sequence order
+     * @return the arrival_time of the stop time in seconds after midnight, or StopTime.MISSING_VALUE if it isn't set
+     */
+    public int getArrivalTime(int trip, int stopTime) {
+        return mArrivalTimes[mTripStopTimeStart[trip] + stopTime];
+    }
+
+    /**
+     * Returns the departure_time of a stop time of the given trip, in seconds after midnight
+     *
+     * @param trip     index of the trip
+     * @param stopTime position of the stop time in the trip, from 0 to getStopTimeCount(trip) - 1, in stop_sequence order
+     * @return the departure_time of the stop time in seconds after midnight, or StopTime.MISSING_VALUE if it isn't set
+     */
+    public int getDepartureTime(int trip, int stopTime) {
+        return mDepartureTimes[mTripStopTimeStart[trip] + stopTime];
+    }
+
+    public int getStopSequence(int trip, int stopTime) {
+        return mStopSequences[mTripStopTimeStart[trip] + stopTime];
+    }
+
+    /**
+     * Returns the stop_id of a stop time of the given trip, or null if the stop isn't in stops.txt
+     *
+     * @param trip     index of the trip
+     * @param stopTime position of the stop time in the trip, from 0 to getStopTimeCount(trip) - 1, in stop_sequence order
+     * @return the stop_id of the stop time, or null if the stop isn't in stops.txt
+     */
+    public String getStopTimeStopId(int trip, int stopTime) {
+        int stop = mStopTimeStops[mTripStopTimeStart[trip] + stopTime];
+        return stop == NO_ID ? null : mStopIds.get(stop);
+    }
+
+    public boolean hasRouteId(String routeId) {
+        return mRouteIds.contains(routeId);
+    }
+
+    /**
+     * Returns the index of the given stops.txt stop_id, or StringDictionary.NO_ID if it isn't in the GTFS data
+     *
+     * @param stopId stops.txt stop_id
+     * @return the index of the given stops.txt stop_id, or StringDictionary.NO_ID if it isn't in the GTFS data
+     */
+    public int getStopIndex(String stopId) {
+        return mStopIds.getId(stopId);
+    }
+
+    public int getStopLocationType(int stop) {
+        return mStopLocationTypes[stop];
+    }
+
+    public int getShapeCount() {
+        return mShapeIds.size();
+    }
+
+    public String getShapeId(int shape) {
+        return mShapeIds.get(shape);
+    }
+
+    public int getShapePointCount(int shape) {
+        return mShapePointStart[shape + 1] - mShapePointStart[shape];
+    }
+
+    /**
+     * Returns the latitude of a point of the given shape
+     *
+     * @param shape index of the shape
+     * @param point position of the point in the shape, from 0 to getShapePointCount(shape) - 1, in shape_pt_sequence order
+     * @return the latitude of the point
+     */
+    public float getShapeLat(int shape, int point) {
+        return mShapeLats[mShapePointStart[shape] + point];
+    }
+
+    /**
+     * Returns the longitude of a point of the given shape
+     *
+     * @param shape index of the shape
+     * @param point position of the point in the shape, from 0 to getShapePointCount(shape) - 1, in shape_pt_sequence order
+     * @return the longitude of the point
+     */
+    public float getShapeLon(int shape, int point) {
+        return mShapeLons[mShapePointStart[shape] + point];
+    }
+
+    /**
+     * Places items into ordered so that the items of each group are next to each other, in group order, and returns
+     * where each group starts.  Items in group NO_ID are left out.
+     *
+     * @param items      items to group
+     * @param groupOf    group of each item, in the iteration order of items
+     * @param groupCount number of groups
+     * @param ordered    array to place the grouped items in
+     * @return an array of groupCount + 1 elements, where group g is at [result[g], result[g + 1]) in ordered
+     */
+    private static <T> int[] groupBy(T[] items, int[] groupOf, int groupCount, T[] ordered) {
+        int[] start = new int[groupCount + 1];
+        for (int group : groupOf) {
+            if (group != NO_ID) {
+                start[group + 1]++;
+            }
+        }
+        for (int g = 0; g < groupCount; g++) {
+            start[g + 1] += start[g];
+        }
+        int[] next = Arrays.copyOf(start, groupCount);
+        for (int i = 0; i < items.length; i++) {
+            int group = groupOf[i];
+            if (group != NO_ID) {
+                ordered[next[group]++] = items[i];
+            }
+        }
+        return start;
+    }
+
+    private static <T> void sortGroups(ForkJoinPool pool, T[] ordered, int[] start, Comparator<T> comparator) {
+        forEach(pool, start.length - 1, g -> Arrays.sort(ordered, start[g], start[g + 1], comparator));
+    }
+
+    /**
+     * Runs the action for each index in [0, count), split across the pool, or on the calling thread if pool is null
+     */
+    private static void forEach(ForkJoinPool pool, int count, IntConsumer action) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else {
+            // A parallel stream started from a task runs on that task's pool
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+        }
+    }
+
+    /**
+     * GTFS shapes.txt - points grouped by shape_id, and each shape sorted by shape_pt_sequence
+     */
+    private static class ShapeColumns {
+        private final StringDictionary mShapeIds = new StringDictionary();
+        private final int[] mShapePointStart;
+        private final float[] mShapeLats;
+        private final float[] mShapeLons;
+
+        ShapeColumns(Collection<ShapePoint> shapePoints, ForkJoinPool pool) {
+            ShapePoint[] points = shapePoints.toArray(new ShapePoint[0]);
+            int[] shapeOfPoint = new int[points.length];
+            for (int i = 0; i < points.length; i++) {
+                shapeOfPoint[i] = mShapeIds.add(points[i].getShapeId().getId());
+            }
+            mShapeIds.trim();
+            ShapePoint[] orderedPoints = new ShapePoint[points.length];
+            mShapePointStart = groupBy(points, shapeOfPoint, mShapeIds.size(), orderedPoints);
+            sortGroups(pool, orderedPoints, mShapePointStart, Comparator.comparingInt(ShapePoint::getSequence));
+            mShapeLats = new float[orderedPoints.length];
+            mShapeLons = new float[orderedPoints.length];
+            forEach(pool, orderedPoints.length, i -> {
+                mShapeLats[i] = (float) orderedPoints[i].getLat();
+                mShapeLons[i] = (float) orderedPoints[i].getLon();
+            });
+        }
+    }
+}
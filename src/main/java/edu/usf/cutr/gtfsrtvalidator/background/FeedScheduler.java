@@ -0,0 +1,708 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Polls all monitored GTFS-realtime feeds from a single, bounded pool of worker threads.  Each feed is registered
+ * once (keyed by its URL) and the scheduler keeps track of how late each iteration started compared to when it was
+ * supposed to start, so an undersized pool shows up as scheduling lag instead of as extra threads.
+ * <p>
+ * In {@link FetchMode#POOLED} mode iterations run directly on the scheduler threads.  In {@link FetchMode#VIRTUAL}
+ * mode the scheduler threads only hand each iteration off to a virtual thread (or, on Java versions without virtual
+ * threads, to a cached thread pool), and the number of iterations in flight at the same time is capped so slow agency
+ * servers can't tie up the scheduler.
+ * <p>
+ * Feeds are either polled at a fixed rate, or at an adaptive rate that follows how often the producer actually
+ * publishes a new feed (see {@link AdaptiveInterval}).
+ * <p>
+ * To avoid bursts of downloads (and of validation and database work) when many feeds are started at once, each new
+ * feed can be given a phase offset within its interval, and the number of requests per second to the same host can be
+ * limited (see {@link HostRateLimiter}).  Iterations held back by the rate limit are delayed, not skipped.
+ */
+public class FeedScheduler {
+
+    /**
+     * Where feed iterations are executed
+     */
+    public enum FetchMode {
+        /**
+         * Iterations run on the bounded pool of scheduler threads
+         */
+        POOLED,
+        /**
+         * Iterations run on their own virtual thread, with a cap on the number of iterations in flight
+         */
+        VIRTUAL
+    }
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(FeedScheduler.class);
+
+    public static final int DEFAULT_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    public static final int DEFAULT_MIN_ADAPTIVE_INTERVAL = 5;
+    public static final int DEFAULT_MAX_ADAPTIVE_INTERVAL = 120;
+    public static final double DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    // Fractional part of the golden ratio - consecutive multiples of it are spread evenly over [0, 1)
+    private static final double PHASE_STEP = 0.6180339887498949;
+
+    private static int mPoolSize = DEFAULT_POOL_SIZE;
+    private static FetchMode mFetchMode = FetchMode.POOLED;
+    private static int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private static int mMinAdaptiveInterval = DEFAULT_MIN_ADAPTIVE_INTERVAL;
+    private static int mMaxAdaptiveInterval = DEFAULT_MAX_ADAPTIVE_INTERVAL;
+    private static boolean mJitter = true;
+    private static double mMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private static FeedScheduler mInstance;
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private final FetchMode mMode;
+    private final ExecutorService mFetchExecutor;
+    private final Semaphore mInFlight;
+    private final int mMaxInFlightPermits;
+    private final boolean mJitterEnabled;
+    private final HostRateLimiter mRateLimiter;
+    private final AtomicInteger mRegistrationCount = new AtomicInteger();
+    private final ConcurrentMap<String, ScheduledFeed> mScheduledFeeds = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the number of worker threads used to poll feeds.  Must be called before the scheduler is first used.
+     *
+     * @param poolSize number of worker threads used to poll feeds
+     */
+    public synchronized static void setPoolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be at least 1");
+        }
+        if (mInstance != null) {
+            _log.warn("Feed scheduler already started with " + mPoolSize + " threads - ignoring new pool size " + poolSize);
+            return;
+        }
+        mPoolSize = poolSize;
+    }
+
+    /**
+     * Sets where feed iterations are executed.  Must be called before the scheduler is first used.
+     *
+     * @param fetchMode   where feed iterations are executed
+     * @param maxInFlight maximum number of iterations executing at the same time in VIRTUAL mode
+     */
+    public synchronized static void setFetchMode(FetchMode fetchMode, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        if (mInstance != null) {
+            _log.warn("Feed scheduler already started in " + mFetchMode + " mode - ignoring new fetch mode " + fetchMode);
+            return;
+        }
+        mFetchMode = fetchMode;
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets the shortest and longest interval between polls of feeds scheduled with an adaptive interval.  Applies to
+     * feeds scheduled after this is called.
+     *
+     * @param minInterval shortest interval between polls, in seconds
+     * @param maxInterval longest interval between polls, in seconds
+     */
+    public synchronized static void setAdaptiveIntervalBounds(int minInterval, int maxInterval) {
+        if (minInterval < 1 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("minInterval must be at least 1 and not more than maxInterval");
+        }
+        mMinAdaptiveInterval = minInterval;
+        mMaxAdaptiveInterval = maxInterval;
+    }
+
+    /**
+     * Sets how the load of many feeds is spread out.  Must be called before the scheduler is first used.
+     *
+     * @param jitter             true to start each new feed at a different offset within its interval, false to start it immediately
+     * @param maxRequestsPerHost maximum number of requests per second to the same host, or 0 for no limit
+     */
+    public synchronized static void setLoadSpreading(boolean jitter, double maxRequestsPerHost) {
+        if (maxRequestsPerHost < 0) {
+            throw new IllegalArgumentException("maxRequestsPerHost can't be negative");
+        }
+        if (mInstance != null) {
+            _log.warn("Feed scheduler already started - ignoring new jitter and host rate limit");
+            return;
+        }
+        mJitter = jitter;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Returns the shared scheduler used to poll all GTFS-realtime feeds, creating it on first use
+     *
+     * @return the shared scheduler used to poll all GTFS-realtime feeds
+     */
+    public synchronized static FeedScheduler getInstance() {
+        if (mInstance == null) {
+            mInstance = new FeedScheduler(mPoolSize, mFetchMode, mMaxInFlight, mJitter, mMaxRequestsPerHost);
+        }
+        return mInstance;
+    }
+
+    public FeedScheduler(int poolSize) {
+        this(poolSize, FetchMode.POOLED, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public FeedScheduler(int poolSize, FetchMode fetchMode, int maxInFlight) {
+        this(poolSize, fetchMode, maxInFlight, false, 0);
+    }
+
+    /**
+     * @param poolSize           number of worker threads used to poll feeds
+     * @param fetchMode          where feed iterations are executed
+     * @param maxInFlight        maximum number of iterations executing at the same time in VIRTUAL mode
+     * @param jitter             true to start each new feed at a different offset within its interval, false to start it immediately
+     * @param maxRequestsPerHost maximum number of requests per second to the same host, or 0 for no limit
+     */
+    public FeedScheduler(int poolSize, FetchMode fetchMode, int maxInFlight, boolean jitter, double maxRequestsPerHost) {
+        mJitterEnabled = jitter;
+        // Allow up to a second's worth of requests to an idle host at once
+        mRateLimiter = maxRequestsPerHost > 0 ? new HostRateLimiter(maxRequestsPerHost, Math.max(1, (int) maxRequestsPerHost)) : null;
+        mExecutor = new ScheduledThreadPoolExecutor(poolSize, new FeedThreadFactory("feed-scheduler-"));
+        mExecutor.setRemoveOnCancelPolicy(true);
+        mMode = fetchMode;
+        mMaxInFlightPermits = maxInFlight;
+        if (fetchMode == FetchMode.VIRTUAL) {
+            mFetchExecutor = newVirtualThreadExecutor();
+            mInFlight = new Semaphore(maxInFlight);
+            _log.info("Started feed scheduler with " + poolSize + " worker threads, running at most " + maxInFlight + " iterations at once");
+        } else {
+            mFetchExecutor = null;
+            mInFlight = null;
+            _log.info("Started feed scheduler with " + poolSize + " worker threads");
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task.  Virtual threads only exist on Java 21 and
+     * higher, and we still target Java 8, so the factory method is looked up at runtime.  On older JVMs a cached
+     * thread pool is used instead.
+     *
+     * @return an executor that starts a new virtual thread for each task, or a cached thread pool if virtual threads aren't supported
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            _log.warn("Virtual threads require Java 21 or higher - using a cached thread pool for feed iterations instead");
+            return Executors.newCachedThreadPool(new FeedThreadFactory("feed-fetch-"));
+        }
+    }
+
+    /**
+     * Schedules the task to run every updateInterval seconds, unless a task is already registered for the same key,
+     * in which case the existing registration is returned
+     *
+     * @param key            unique key for the feed (e.g., the GTFS-realtime feed URL)
+     * @param task           the task to run for each iteration
+     * @param updateInterval the number of seconds between the start of two iterations
+     * @return the registration for this key
+     */
+    public ScheduledFeed schedule(String key, Runnable task, int updateInterval) {
+        return mScheduledFeeds.computeIfAbsent(key, k -> {
+            ScheduledFeed scheduledFeed = new ScheduledFeed(this, k, task, TimeUnit.SECONDS.toMillis(updateInterval), null);
+            scheduledFeed.start(mExecutor, getInitialDelayMillis(scheduledFeed.getUpdateIntervalMillis()));
+            _log.info("Scheduled " + k + " every " + updateInterval + " seconds");
+            return scheduledFeed;
+        });
+    }
+
+    /**
+     * Schedules the task to run just after the feed is expected to change, based on the header timestamps reported
+     * to {@link ScheduledFeed#onFeedTimestamp(long, long)}, unless a task is already registered for the same key, in
+     * which case the existing registration is returned.  The interval between polls is kept between the bounds set
+     * by {@link #setAdaptiveIntervalBounds(int, int)}.
+     *
+     * @param key             unique key for the feed (e.g., the GTFS-realtime feed URL)
+     * @param task            the task to run for each iteration
+     * @param initialInterval the number of seconds between iterations until the feed's refresh period is known
+     * @return the registration for this key
+     */
+    public ScheduledFeed scheduleAdaptive(String key, Runnable task, int initialInterval) {
+        AdaptiveInterval adaptiveInterval;
+        synchronized (FeedScheduler.class) {
+            adaptiveInterval = new AdaptiveInterval(TimeUnit.SECONDS.toMillis(initialInterval),
+                    TimeUnit.SECONDS.toMillis(mMinAdaptiveInterval), TimeUnit.SECONDS.toMillis(mMaxAdaptiveInterval));
+        }
+        return scheduleAdaptive(key, task, adaptiveInterval);
+    }
+
+    /**
+     * Schedules the task using the given adaptive interval, unless a task is already registered for the same key, in
+     * which case the existing registration is returned
+     *
+     * @param key              unique key for the feed (e.g., the GTFS-realtime feed URL)
+     * @param task             the task to run for each iteration
+     * @param adaptiveInterval plans the delay before each iteration
+     * @return the registration for this key
+     */
+    public ScheduledFeed scheduleAdaptive(String key, Runnable task, AdaptiveInterval adaptiveInterval) {
+        return mScheduledFeeds.computeIfAbsent(key, k -> {
+            ScheduledFeed scheduledFeed = new ScheduledFeed(this, k, task, adaptiveInterval.getNextDelayMillis(System.currentTimeMillis()), adaptiveInterval);
+            scheduledFeed.start(mExecutor, getInitialDelayMillis(scheduledFeed.getUpdateIntervalMillis()));
+            _log.info("Scheduled " + k + " adaptively, every " + adaptiveInterval.getFloorMillis() / 1000 + " to "
+                    + adaptiveInterval.getCeilingMillis() / 1000 + " seconds");
+            return scheduledFeed;
+        });
+    }
+
+    /**
+     * Returns the delay before the first iteration of a new feed.  With jitter, the n-th feed registered starts at
+     * the fractional part of n times the golden ratio of its interval, so feeds started at the same time are spread
+     * evenly over the interval no matter how many there are.
+     *
+     * @param intervalMillis interval between iterations of the new feed
+     * @return the delay before the first iteration of a new feed, in milliseconds
+     */
+    private long getInitialDelayMillis(long intervalMillis) {
+        if (!mJitterEnabled) {
+            return 0;
+        }
+        double phase = (mRegistrationCount.getAndIncrement() * PHASE_STEP) % 1;
+        return (long) (phase * intervalMillis);
+    }
+
+    /**
+     * Stops polling the feed registered under the given key
+     *
+     * @param key unique key for the feed (e.g., the GTFS-realtime feed URL)
+     * @return true if a feed was registered under this key, false if it was not
+     */
+    public boolean cancel(String key) {
+        ScheduledFeed scheduledFeed = mScheduledFeeds.remove(key);
+        if (scheduledFeed == null) {
+            return false;
+        }
+        scheduledFeed.cancel();
+        return true;
+    }
+
+    /**
+     * Returns the registration for the given key, or null if no feed is registered under this key
+     *
+     * @param key unique key for the feed (e.g., the GTFS-realtime feed URL)
+     * @return the registration for the given key, or null if no feed is registered under this key
+     */
+    public ScheduledFeed getScheduledFeed(String key) {
+        return mScheduledFeeds.get(key);
+    }
+
+    /**
+     * Returns all feeds currently registered with this scheduler
+     *
+     * @return all feeds currently registered with this scheduler
+     */
+    public Collection<ScheduledFeed> getScheduledFeeds() {
+        return new ArrayList<>(mScheduledFeeds.values());
+    }
+
+    /**
+     * Returns the number of worker threads used to poll feeds
+     *
+     * @return the number of worker threads used to poll feeds
+     */
+    public int getPoolSize() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    /**
+     * Returns where feed iterations are executed
+     *
+     * @return where feed iterations are executed
+     */
+    public FetchMode getFetchMode() {
+        return mMode;
+    }
+
+    /**
+     * Returns the number of iterations currently executing (VIRTUAL mode), or 0 in POOLED mode
+     *
+     * @return the number of iterations currently executing (VIRTUAL mode), or 0 in POOLED mode
+     */
+    public int getInFlightCount() {
+        return mInFlight == null ? 0 : mMaxInFlightPermits - mInFlight.availablePermits();
+    }
+
+    /**
+     * Stops all feeds and shuts down the worker threads
+     */
+    public void shutdown() {
+        mScheduledFeeds.clear();
+        mExecutor.shutdownNow();
+        if (mFetchExecutor != null) {
+            mFetchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one iteration of the feed, either directly on the calling scheduler thread (POOLED) or on a new virtual
+     * thread once one of the in-flight permits is available (VIRTUAL).  If requests to the feed's host are rate
+     * limited, the iteration is first delayed until the host's rate limit allows it.
+     *
+     * @param scheduledFeed      the feed to run
+     * @param expectedStartNanos the time this iteration was supposed to start, from System.nanoTime()
+     */
+    private void dispatch(ScheduledFeed scheduledFeed, long expectedStartNanos) {
+        // A fixed-rate schedule won't overlap iterations of the same feed on its own, but iterations that are delayed
+        // by the rate limit or running on virtual threads can
+        if (!scheduledFeed.mInFlight.compareAndSet(false, true)) {
+            scheduledFeed.mSkippedCount.incrementAndGet();
+            _log.warn(scheduledFeed.getKey() + " is still processing the previous iteration - skipping this iteration");
+            return;
+        }
+        long waitNanos = mRateLimiter == null ? 0 : mRateLimiter.reserve(scheduledFeed.getHost());
+        if (waitNanos > 0) {
+            scheduledFeed.mRateLimitedCount.incrementAndGet();
+            _log.debug(scheduledFeed.getKey() + " delayed " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms by the rate limit for " + scheduledFeed.getHost());
+            try {
+                mExecutor.schedule(() -> execute(scheduledFeed, expectedStartNanos, waitNanos), waitNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduledFeed.mInFlight.set(false);
+            }
+            return;
+        }
+        execute(scheduledFeed, expectedStartNanos, 0);
+    }
+
+    /**
+     * @param rateLimitNanos how long the iteration was delayed by the per-host rate limit, which doesn't count as
+     *                       scheduling lag
+     */
+    private void execute(ScheduledFeed scheduledFeed, long expectedStartNanos, long rateLimitNanos) {
+        if (mFetchExecutor == null) {
+            try {
+                scheduledFeed.runIteration(expectedStartNanos, rateLimitNanos);
+            } finally {
+                scheduledFeed.mInFlight.set(false);
+            }
+            return;
+        }
+        try {
+            mFetchExecutor.execute(() -> {
+                try {
+                    mInFlight.acquire();
+                } catch (InterruptedException e) {
+                    scheduledFeed.mInFlight.set(false);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    scheduledFeed.runIteration(expectedStartNanos, rateLimitNanos);
+                } finally {
+                    mInFlight.release();
+                    scheduledFeed.mInFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduledFeed.mInFlight.set(false);
+        }
+    }
+
+    /**
+     * A single feed registered with the scheduler, along with the scheduling lag of its iterations
+     */
+    public static class ScheduledFeed implements Runnable {
+
+        private final FeedScheduler mScheduler;
+        private final String mKey;
+        private final Runnable mTask;
+        private final AdaptiveInterval mAdaptiveInterval;
+        private final String mHost;
+        private final AtomicBoolean mInFlight = new AtomicBoolean(false);
+
+        private ScheduledThreadPoolExecutor mExecutor;
+        private ScheduledFuture<?> mFuture;
+        // Adaptive feeds are scheduled one iteration at a time - only the iteration scheduled most recently may run
+        private long mGeneration = 0;
+        private boolean mCancelled = false;
+        private volatile long mUpdateIntervalMillis;
+        private volatile long mExpectedStartNanos;
+        // Counters are updated from several scheduler threads
+        private final AtomicLong mIterationCount = new AtomicLong();
+        private final AtomicLong mSkippedCount = new AtomicLong();
+        private final AtomicLong mRateLimitedCount = new AtomicLong();
+        private volatile long mLastRateLimitWaitMillis = 0;
+        private volatile long mLastLagMillis = 0;
+        private volatile long mMaxLagMillis = 0;
+
+        ScheduledFeed(FeedScheduler scheduler, String key, Runnable task, long updateIntervalMillis, AdaptiveInterval adaptiveInterval) {
+            mScheduler = scheduler;
+            mKey = key;
+            mTask = task;
+            mUpdateIntervalMillis = updateIntervalMillis;
+            mAdaptiveInterval = adaptiveInterval;
+            mHost = getHost(key);
+        }
+
+        /**
+         * Returns the host name from the key if it is a URL, or the key itself if it is not
+         *
+         * @param key unique key for the feed
+         * @return the host name from the key if it is a URL, or the key itself if it is not
+         */
+        private static String getHost(String key) {
+            try {
+                String host = new URL(key).getHost();
+                return host.isEmpty() ? key : host.toLowerCase();
+            } catch (MalformedURLException e) {
+                return key;
+            }
+        }
+
+        synchronized void start(ScheduledThreadPoolExecutor executor, long initialDelayMillis) {
+            mExecutor = executor;
+            if (mAdaptiveInterval == null) {
+                mExpectedStartNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelayMillis);
+                mFuture = executor.scheduleAtFixedRate(this, initialDelayMillis, mUpdateIntervalMillis, TimeUnit.MILLISECONDS);
+            } else {
+                scheduleNext(initialDelayMillis);
+            }
+        }
+
+        synchronized void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        /**
+         * Schedules the next iteration of an adaptive feed, replacing the one already scheduled
+         *
+         * @param delayMillis delay before the next iteration
+         */
+        private synchronized void scheduleNext(long delayMillis) {
+            if (mCancelled) {
+                return;
+            }
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+            long generation = ++mGeneration;
+            mExpectedStartNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            try {
+                mFuture = mExecutor.schedule(() -> runAdaptive(generation), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Scheduler was shut down
+                mCancelled = true;
+            }
+        }
+
+        private void runAdaptive(long generation) {
+            long expectedStartNanos;
+            synchronized (this) {
+                if (generation != mGeneration || mCancelled) {
+                    return;
+                }
+                expectedStartNanos = mExpectedStartNanos;
+            }
+            mScheduler.dispatch(this, expectedStartNanos);
+
+            long delayMillis = mAdaptiveInterval.getNextDelayMillis(System.currentTimeMillis());
+            synchronized (this) {
+                // If a new feed was seen while this iteration ran, the next iteration is already planned
+                if (generation == mGeneration) {
+                    mUpdateIntervalMillis = delayMillis;
+                    scheduleNext(delayMillis);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long expectedStartNanos = mExpectedStartNanos;
+            mExpectedStartNanos += TimeUnit.MILLISECONDS.toNanos(mUpdateIntervalMillis);
+            mScheduler.dispatch(this, expectedStartNanos);
+        }
+
+        /**
+         * Reports the header timestamp of a feed downloaded for this registration.  For adaptive feeds, a newer feed
+         * than any seen before updates the learned refresh period and re-plans the next iteration.
+         *
+         * @param fetchTimeMillis     when the feed was downloaded, from System.currentTimeMillis()
+         * @param feedTimestampMillis the header timestamp of the feed, in milliseconds
+         */
+        public void onFeedTimestamp(long fetchTimeMillis, long feedTimestampMillis) {
+            if (mAdaptiveInterval == null || !mAdaptiveInterval.observe(fetchTimeMillis, feedTimestampMillis)) {
+                return;
+            }
+            long delayMillis = mAdaptiveInterval.getNextDelayMillis(System.currentTimeMillis());
+            synchronized (this) {
+                mUpdateIntervalMillis = delayMillis;
+                scheduleNext(delayMillis);
+            }
+        }
+
+        private void runIteration(long expectedStartNanos, long rateLimitNanos) {
+            // Time spent waiting for the rate limit isn't caused by too few threads, so it's reported separately
+            long rateLimitMillis = TimeUnit.NANOSECONDS.toMillis(rateLimitNanos);
+            long lagMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - expectedStartNanos - rateLimitNanos));
+            mLastRateLimitWaitMillis = rateLimitMillis;
+            mLastLagMillis = lagMillis;
+            mMaxLagMillis = Math.max(mMaxLagMillis, lagMillis);
+            mIterationCount.incrementAndGet();
+            if (lagMillis > mUpdateIntervalMillis) {
+                _log.warn(mKey + " started " + lagMillis + " ms late - consider increasing the number of feed scheduler threads or in-flight iterations");
+            } else {
+                _log.debug(mKey + " started " + lagMillis + " ms late");
+            }
+            if (rateLimitMillis > mUpdateIntervalMillis) {
+                _log.warn(mKey + " waited " + rateLimitMillis + " ms for the rate limit for " + mHost + " - consider allowing more requests per host");
+            }
+
+            try {
+                mTask.run();
+            } catch (RuntimeException e) {
+                // An exception would otherwise silently cancel all future iterations of this feed
+                _log.error("Error processing " + mKey, e);
+            }
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the host requests for this feed are sent to, which the per-host rate limit applies to
+         *
+         * @return the host requests for this feed are sent to
+         */
+        public String getHost() {
+            return mHost;
+        }
+
+        /**
+         * Returns the interval between iterations - for adaptive feeds, the delay planned before the next iteration
+         *
+         * @return the interval between iterations in milliseconds
+         */
+        public long getUpdateIntervalMillis() {
+            return mUpdateIntervalMillis;
+        }
+
+        /**
+         * Returns true if the interval between iterations follows the feed's refresh period, false if it is fixed
+         *
+         * @return true if the interval between iterations follows the feed's refresh period, false if it is fixed
+         */
+        public boolean isAdaptive() {
+            return mAdaptiveInterval != null;
+        }
+
+        /**
+         * Returns the learned refresh period of an adaptive feed, or 0 if it isn't known yet or the feed isn't adaptive
+         *
+         * @return the learned refresh period of an adaptive feed in milliseconds, or 0 if it isn't known yet or the feed isn't adaptive
+         */
+        public long getRefreshPeriodMillis() {
+            return mAdaptiveInterval == null ? 0 : mAdaptiveInterval.getRefreshPeriodMillis();
+        }
+
+        public long getIterationCount() {
+            return mIterationCount.get();
+        }
+
+        /**
+         * Returns the number of iterations that were skipped because the previous iteration was still running
+         *
+         * @return the number of iterations that were skipped because the previous iteration was still running
+         */
+        public long getSkippedCount() {
+            return mSkippedCount.get();
+        }
+
+        /**
+         * Returns the number of iterations that were delayed by the per-host rate limit
+         *
+         * @return the number of iterations that were delayed by the per-host rate limit
+         */
+        public long getRateLimitedCount() {
+            return mRateLimitedCount.get();
+        }
+
+        /**
+         * Returns how long, in milliseconds, the most recent iteration was delayed by the per-host rate limit
+         *
+         * @return how long, in milliseconds, the most recent iteration was delayed by the per-host rate limit
+         */
+        public long getLastRateLimitWaitMillis() {
+            return mLastRateLimitWaitMillis;
+        }
+
+        /**
+         * Returns how late, in milliseconds, the most recent iteration started compared to its scheduled start time,
+         * not counting time it was delayed by the per-host rate limit
+         *
+         * @return how late, in milliseconds, the most recent iteration started compared to its scheduled start time, not counting rate limit delays
+         */
+        public long getLastLagMillis() {
+            return mLastLagMillis;
+        }
+
+        /**
+         * Returns the largest scheduling lag, in milliseconds, seen since this feed was registered
+         *
+         * @return the largest scheduling lag, in milliseconds, seen since this feed was registered
+         */
+        public long getMaxLagMillis() {
+            return mMaxLagMillis;
+        }
+    }
+
+    private static class FeedThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        FeedThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, mPrefix + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.serialization.GtfsReader;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.logDuration;
+
+/**
+ * The static GTFS data loaded for a GTFS feed - the parsed GtfsDaoImpl, and the GtfsMetadata the validation rules
+ * read.  The built-in rules only need the metadata, so if releasing is enabled with setReleaseGtfsData() the
+ * GtfsDaoImpl is dropped as soon as the metadata has been built.  Rules that still ask for the GtfsDaoImpl after that
+ * get it read again from the GTFS zip file it was loaded from, and it is kept from then on.
+ * <p>
+ * When the checksum of the GTFS zip file is known, the metadata is saved as a GtfsMetadataSnapshot next to the zip file
+ * once it has been built, and load() uses a snapshot with the same checksum instead of reading the zip file again
+ * (unless snapshots are disabled with setSnapshotGtfsMetadata()).
+ */
+public class GtfsFeedData {
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(GtfsFeedData.class);
+
+    private static volatile boolean mReleaseGtfsData = false;
+    private static volatile boolean mSnapshotGtfsMetadata = true;
+
+    private final File mGtfsFile;
+    private final String mGtfsUrl;
+    private final TimeZone mTimeZone;
+    private final String mAgencyTimeZone;
+    // Checksum of mGtfsFile that snapshots are keyed by, or null if the metadata isn't saved to a snapshot
+    private final byte[] mChecksum;
+    private volatile GtfsDaoImpl mGtfsData;
+    private volatile GtfsMetadata mGtfsMetadata;
+
+    /**
+     * Sets whether the GtfsDaoImpl of each GTFS feed is released once its GtfsMetadata has been built
+     *
+     * @param releaseGtfsData true to release the GtfsDaoImpl once the metadata has been built, false to keep it in memory
+     */
+    public static void setReleaseGtfsData(boolean releaseGtfsData) {
+        mReleaseGtfsData = releaseGtfsData;
+    }
+
+    public static boolean isReleaseGtfsData() {
+        return mReleaseGtfsData;
+    }
+
+    /**
+     * Sets whether the GtfsMetadata of each GTFS feed is saved to and loaded from a snapshot next to its GTFS zip file
+     *
+     * @param snapshotGtfsMetadata true to use GtfsMetadataSnapshot files, false to always build the metadata from the GTFS zip file
+     */
+    public static void setSnapshotGtfsMetadata(boolean snapshotGtfsMetadata) {
+        mSnapshotGtfsMetadata = snapshotGtfsMetadata;
+    }
+
+    public static boolean isSnapshotGtfsMetadata() {
+        return mSnapshotGtfsMetadata;
+    }
+
+    /**
+     * @param gtfsFile the GTFS zip file the data was read from
+     * @param gtfsUrl  URL the GTFS zip file was downloaded from
+     * @param timeZone the agency_timezone from GTFS agency.txt, or null if the current time zone should be used
+     * @param gtfsData GTFS data read from gtfsFile
+     */
+    public GtfsFeedData(File gtfsFile, String gtfsUrl, TimeZone timeZone, GtfsDaoImpl gtfsData) {
+        this(gtfsFile, gtfsUrl, timeZone, gtfsData, null);
+    }
+
+    /**
+     * @param gtfsFile the GTFS zip file the data was read from
+     * @param gtfsUrl  URL the GTFS zip file was downloaded from
+     * @param timeZone the agency_timezone from GTFS agency.txt, or null if the current time zone should be used
+     * @param gtfsData GTFS data read from gtfsFile
+     * @param checksum checksum of gtfsFile to save a snapshot of the metadata for, or null to not save a snapshot
+     */
+    public GtfsFeedData(File gtfsFile, String gtfsUrl, TimeZone timeZone, GtfsDaoImpl gtfsData, byte[] checksum) {
+        mGtfsFile = gtfsFile;
+        mGtfsUrl = gtfsUrl;
+        mTimeZone = timeZone;
+        mAgencyTimeZone = getAgencyTimeZone(gtfsData);
+        mGtfsData = gtfsData;
+        mChecksum = checksum;
+        if (mReleaseGtfsData) {
+            // Build the metadata now, so the GtfsDaoImpl can be released right away
+            getGtfsMetadata();
+        }
+    }
+
+    /**
+     * Creates the data for a GTFS feed from metadata loaded from a snapshot - the GtfsDaoImpl is read from the GTFS zip
+     * file only if something asks for it
+     */
+    private GtfsFeedData(File gtfsFile, String gtfsUrl, GtfsMetadata gtfsMetadata, byte[] checksum) {
+        mGtfsFile = gtfsFile;
+        mGtfsUrl = gtfsUrl;
+        mTimeZone = gtfsMetadata.getTimeZone();
+        mAgencyTimeZone = gtfsMetadata.getAgencyTimeZone();
+        mGtfsMetadata = gtfsMetadata;
+        mChecksum = checksum;
+    }
+
+    /**
+     * Loads a GTFS zip file, using the GtfsMetadataSnapshot for it if there is one with the given checksum.  Otherwise
+     * the zip file is read, and the time zone is the agency_timezone of the first agency in GTFS agency.txt.
+     *
+     * @param gtfsFile the GTFS zip file to load
+     * @param gtfsUrl  URL the GTFS zip file was downloaded from
+     * @param checksum checksum of gtfsFile, or null if it isn't known (then snapshots aren't used)
+     * @return the data for the GTFS feed
+     * @throws IOException if the GTFS zip file can't be read
+     */
+    public static GtfsFeedData load(File gtfsFile, String gtfsUrl, byte[] checksum) throws IOException {
+        if (mSnapshotGtfsMetadata && checksum != null) {
+            File snapshotFile = GtfsMetadataSnapshot.getSnapshotFile(gtfsFile);
+            try {
+                GtfsMetadata gtfsMetadata = GtfsMetadataSnapshot.read(snapshotFile, gtfsUrl, checksum);
+                if (gtfsMetadata != null) {
+                    _log.info("Loaded GtfsMetadata for " + gtfsUrl + " from snapshot " + snapshotFile);
+                    return new GtfsFeedData(gtfsFile, gtfsUrl, gtfsMetadata, checksum);
+                }
+            } catch (IOException e) {
+                _log.warn("Can't read GtfsMetadata snapshot " + snapshotFile + " - reading " + gtfsFile + " instead", e);
+            }
+        }
+        GtfsDaoImpl gtfsData = read(gtfsFile);
+        TimeZone timeZone = TimeZone.getTimeZone(getAgencyTimeZone(gtfsData));
+        return new GtfsFeedData(gtfsFile, gtfsUrl, timeZone, gtfsData, checksum);
+    }
+
+    /**
+     * Reads a GTFS zip file
+     *
+     * @param gtfsFile the GTFS zip file to read
+     * @return the GTFS data in the file
+     * @throws IOException if the file can't be read
+     */
+    public static GtfsDaoImpl read(File gtfsFile) throws IOException {
+        GtfsDaoImpl gtfsData = new GtfsDaoImpl();
+        GtfsReader reader = new GtfsReader();
+        reader.setInputLocation(gtfsFile);
+        reader.setEntityStore(gtfsData);
+        reader.run();
+        return gtfsData;
+    }
+
+    /**
+     * Returns the metadata for this GTFS feed, building it the first time it is needed
+     *
+     * @return the metadata for this GTFS feed
+     */
+    public GtfsMetadata getGtfsMetadata() {
+        GtfsMetadata gtfsMetadata = mGtfsMetadata;
+        if (gtfsMetadata != null) {
+            return gtfsMetadata;
+        }
+        synchronized (this) {
+            if (mGtfsMetadata == null) {
+                mGtfsMetadata = new GtfsMetadata(mGtfsUrl, mTimeZone, getGtfsData());
+                if (mSnapshotGtfsMetadata && mChecksum != null) {
+                    File snapshotFile = GtfsMetadataSnapshot.getSnapshotFile(mGtfsFile);
+                    try {
+                        GtfsMetadataSnapshot.write(mGtfsMetadata, mChecksum, snapshotFile);
+                    } catch (IOException e) {
+                        _log.warn("Can't write GtfsMetadata snapshot " + snapshotFile, e);
+                    }
+                }
+                if (mReleaseGtfsData) {
+                    _log.info("Releasing GTFS data for " + mGtfsUrl + " - rules that need it will read it again from " + mGtfsFile);
+                    mGtfsData = null;
+                }
+            }
+            return mGtfsMetadata;
+        }
+    }
+
+    /**
+     * Returns the GTFS data for this feed, reading it again from the GTFS zip file if it was released
+     *
+     * @return the GTFS data for this feed
+     */
+    public GtfsDaoImpl getGtfsData() {
+        GtfsDaoImpl gtfsData = mGtfsData;
+        if (gtfsData != null) {
+            return gtfsData;
+        }
+        synchronized (this) {
+            if (mGtfsData == null) {
+                long startTime = System.nanoTime();
+                try {
+                    mGtfsData = read(mGtfsFile);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Can't read GTFS data for " + mGtfsUrl + " again from " + mGtfsFile, e);
+                }
+                logDuration(_log, "Read released GTFS data for " + mGtfsUrl + " again in ", startTime);
+            }
+            return mGtfsData;
+        }
+    }
+
+    /**
+     * Returns the agency_timezone from GTFS agency.txt, or null if the current time zone should be used
+     *
+     * @return the agency_timezone from GTFS agency.txt, or null if the current time zone should be used
+     */
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    /**
+     * Returns the agency_timezone of the first agency in GTFS agency.txt exactly as it is written in the file (unlike
+     * getTimeZone(), which falls back to GMT for a time zone Java doesn't know), or null if there isn't an agency
+     *
+     * @return the agency_timezone of the first agency in GTFS agency.txt exactly as it is written in the file, or null if there isn't an agency
+     */
+    public String getAgencyTimeZone() {
+        return mAgencyTimeZone;
+    }
+
+    /**
+     * Returns the agency_timezone of the first agency in GTFS agency.txt, or null if there isn't an agency
+     *
+     * @param gtfsData GTFS data to get the agency_timezone from
+     * @return the agency_timezone of the first agency in GTFS agency.txt, or null if there isn't an agency
+     */
+    static String getAgencyTimeZone(GtfsDaoImpl gtfsData) {
+        Iterator<Agency> agencies = gtfsData.getAllAgencies().iterator();
+        return agencies.hasNext() ? agencies.next().getTimezone() : null;
+    }
+
+    /**
+     * Returns true if the GtfsDaoImpl for this feed is currently in memory, or false if it was released
+     *
+     * @return true if the GtfsDaoImpl for this feed is currently in memory, or false if it was released
+     */
+    public boolean isGtfsDataLoaded() {
+        return mGtfsData != null;
+    }
+}
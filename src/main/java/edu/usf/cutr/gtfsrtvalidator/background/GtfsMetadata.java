@@ -17,6 +17,7 @@
 
 package edu.usf.cutr.gtfsrtvalidator.background;
 
+import edu.usf.cutr.gtfsrtvalidator.util.PolylineIndex;
 import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
 import org.locationtech.spatial4j.distance.DistanceUtils;
 import org.locationtech.spatial4j.shape.Rectangle;
@@ -27,10 +28,13 @@ import org.onebusaway.gtfs.model.*;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.logDuration;
-import static org.hibernate.internal.util.StringHelper.isEmpty;
+import static edu.usf.cutr.gtfsrtvalidator.util.StringDictionary.NO_ID;
 
 /**
  * This is a container class for metadata about a GTFS feed that's used in rule validation
@@ -42,27 +46,20 @@ public class GtfsMetadata {
     // Spatial operation buffer values
     public static final double REGION_BUFFER_METERS = 1609; // Roughly 1 mile
     public static final double TRIP_BUFFER_METERS = 200; // Roughly 1/8 of a mile
-    public static final double TRIP_BUFFER_DEGREES = DistanceUtils.KM_TO_DEG * (TRIP_BUFFER_METERS / 1000.0d);
 
     String mFeedUrl;
     TimeZone mTimeZone;
+    // agency_timezone of the first agency in GTFS agency.txt as written in the file, or null if there isn't an agency
+    private String mAgencyTimeZone;
 
     private Set<String> mAgencyIds = new HashSet<>();
-    private Set<String> mRouteIds = new HashSet<>();
-    // Maps trip_ids to the GTFS trip
-    private Map<String, Trip> mTrips = new HashMap<>();
-    // Maps trip_ids to a list of StopTimes
-    private Map<String, List<StopTime>> mTripStopTimes = new HashMap<>();
-    private Set<String> mStopIds = new HashSet<>();
+    // Trips, routes, stops, stop times and shapes in primitive arrays
+    private CompactGtfsStore mStore;
     private Set<String> mExactTimesZeroTripIds = new HashSet<>();
-    // Maps trip_id to a list of Frequency objects
-    private Map<String, List<Frequency>> mExactTimesOneTrips = new HashMap<>();
-    // Maps shape_id to a list of ShapePoints
-    private Map<String, List<ShapePoint>> mShapePoints = new HashMap<>();
-    // Map trip_id to a polyline of the trip shape from shapes.txt
-    private Map<String, Shape> mTripShapes = new HashMap<>();
-    // Map trip_id to a buffered polyline of the trip shape from shapes.txt
-    private Map<String, Shape> mTripShapesBuffered = new ConcurrentHashMap<>();
+    // Maps trip_id to the frequencies.txt windows of exact_times=1 trips, sorted by start_time
+    private Map<String, FrequencyWindow[]> mExactTimesOneWindows = new HashMap<>();
+    // Map shape_id to an index of the shape from shapes.txt for checking if locations are within TRIP_BUFFER_METERS of it
+    private Map<String, PolylineIndex> mShapeIndexes = new ConcurrentHashMap<>();
 
     // A geographic bounding box that includes all the stops from GTFS stops.txt
     private Rectangle mStopBoundingBox;
@@ -77,12 +74,15 @@ public class GtfsMetadata {
     private Rectangle mShapeBoundingBoxWithBuffer = null;
 
     /**
-     * key is stops.txt stop_id, value is stops.txt location_type
-     * <p>
-     * Note that we can't consolidate this with the mStopIds HashSet, because location_type is an optional
-     * field in stops.txt and therefore can be null.
+     * Builds the metadata for a particular GTFS feed on the common fork/join pool
+     *
+     * @param feedUrl URL for the GTFS zip file
+     * @param timeZone the agency_timezone from GTFS agency.txt, or null if the current time zone should be used.
+     * @param gtfsData GTFS feed to build the metadata for
      */
-    private Map<String, Integer> mStopToLocationTypeMap = new HashMap<>();
+    public GtfsMetadata(String feedUrl, TimeZone timeZone, GtfsDaoImpl gtfsData) {
+        this(feedUrl, timeZone, gtfsData, ForkJoinPool.commonPool());
+    }
 
     /**
      * Builds the metadata for a particular GTFS feed
@@ -90,8 +90,10 @@ public class GtfsMetadata {
      * @param feedUrl URL for the GTFS zip file
      * @param timeZone the agency_timezone from GTFS agency.txt, or null if the current time zone should be used.
      * @param gtfsData GTFS feed to build the metadata for
+     * @param pool pool used to build the compact store and the shapes.txt bounding box while stops.txt and
+     *             frequencies.txt are processed, or null to build everything on the calling thread
      */
-    public GtfsMetadata(String feedUrl, TimeZone timeZone, GtfsDaoImpl gtfsData) {
+    public GtfsMetadata(String feedUrl, TimeZone timeZone, GtfsDaoImpl gtfsData, ForkJoinPool pool) {
         long startTime = System.nanoTime();
         _log.info("Building GtfsMetadata for " + feedUrl + "...");
 
@@ -103,12 +105,19 @@ public class GtfsMetadata {
         for (Agency a : agencyAndIds) {
             mAgencyIds.add(a.getId());
         }
+        mAgencyTimeZone = GtfsFeedData.getAgencyTimeZone(gtfsData);
 
-        // Get all route_ids from the GTFS feed
-        Collection<Route> gtfsRouteList = gtfsData.getAllRoutes();
-        for (Route r : gtfsRouteList) {
-            mRouteIds.add(r.getId().getId());
-        }
+        /**
+         * Process GTFS trips.txt, stop_times.txt and shapes.txt - this is a long-running operation for feeds with huge
+         * stop_times.txt and shapes.txt, so log to INFO
+         */
+        _log.info("Building compact store of trips, stop times and shapes for " + feedUrl + "...");
+        ForkJoinTask<CompactGtfsStore> storeTask = fork(pool, () -> {
+            long storeStartTime = System.nanoTime();
+            CompactGtfsStore store = new CompactGtfsStore(gtfsData, pool);
+            logDuration(_log, "Compact store built for " + feedUrl + " in ", storeStartTime);
+            return store;
+        });
 
         /**
          * Process GTFS shapes.txt
@@ -116,72 +125,18 @@ public class GtfsMetadata {
         double regionBufferDegrees = DistanceUtils.KM_TO_DEG * (REGION_BUFFER_METERS / 1000.0d);
 
         ShapeFactory sf = JtsSpatialContext.GEO.getShapeFactory();
-        ShapeFactory.MultiPointBuilder shapeBuilder = sf.multiPoint();
         Collection<ShapePoint> shapePoints = gtfsData.getAllShapePoints();
+        ForkJoinTask<Rectangle> shapeBoundingBoxTask = null;
         if (shapePoints != null && shapePoints.size() > 3) {
-            for (ShapePoint p : shapePoints) {
-                String shapeId = p.getShapeId().getId();
-                // If there isn't already a list for this shape_id, create one
-                List<ShapePoint> shapePointList = mShapePoints.computeIfAbsent(shapeId, k -> new ArrayList<>());
-                shapePointList.add(p);
-                // Create GTFS shapes.txt bounding box
-                shapeBuilder.pointXY(p.getLon(), p.getLat());
-            }
-            _log.debug("Loaded shapes.txt points for " + feedUrl);
-
-            Shape shapePointShape = shapeBuilder.build();
-            mShapeBoundingBox = shapePointShape.getBoundingBox();
-            mShapeBoundingBoxWithBuffer = mShapeBoundingBox.getBuffered(regionBufferDegrees, mShapeBoundingBox.getContext()).getBoundingBox();
-            _log.debug("Generated shapes.txt bounding boxes for " + feedUrl);
-
-            // Order shape points by GTFS shapes.txt shape_pt_sequence
-            _log.debug("Sorting shape points for " + feedUrl + "...");
-            Collection<List<ShapePoint>> shapePointLists = mShapePoints.values();
-            for (List<ShapePoint> shapePointList : shapePointLists) {
-                shapePointList.sort(Comparator.comparing(shapePoint -> (shapePoint.getSequence())));
-            }
-            _log.debug("Shape points for " + feedUrl + " are sorted.");
-        }
-
-        // Get all StopTimes and map them to trip_ids
-        for (StopTime stopTime : gtfsData.getAllStopTimes()) {
-            String tripId = stopTime.getTrip().getId().getId();
-
-            // If there isn't already a list for this trip, create one
-            List<StopTime> stopTimes = mTripStopTimes.computeIfAbsent(tripId, k -> new ArrayList<>());
-            stopTimes.add(stopTime);
-        }
-
-        /**
-         * Process GTFS trips.txt - this is a long-running operation for feeds with huge shapes.txt, so log to INFO
-         */
-        _log.info("Processing trips and building trip shapes for " + feedUrl + "...");
-        long tripStartTime = System.nanoTime();
-        Collection<Trip> gtfsTripList = gtfsData.getAllTrips();
-        for (Trip trip : gtfsTripList) {
-            String tripId = trip.getId().getId();
-            mTrips.put(tripId, trip);
-
-            List<StopTime> stopTimes = mTripStopTimes.get(tripId);
-            if (stopTimes != null) {
-                // Make sure StopTimes are sorted by stop_sequence for this trip (stop_times.txt isn't necessary sorted)
-                stopTimes.sort(Comparator.comparing(stopTime -> (stopTime.getStopSequence())));
-            }
-
-            // Create a polyline for each trip if the GTFS shapes.txt data exists
-            AgencyAndId shapeAgencyAndId = trip.getShapeId();
-            if (shapeAgencyAndId != null && !isEmpty(shapeAgencyAndId.getId())) {
-                List<ShapePoint> tripShape = mShapePoints.get(shapeAgencyAndId.getId());
-                if (tripShape != null) {
-                    ShapeFactory.LineStringBuilder lineBuilder = sf.lineString();
-                    for (ShapePoint p : tripShape) {
-                        lineBuilder.pointXY(p.getLon(), p.getLat());
-                    }
-                    mTripShapes.put(tripId, lineBuilder.build());
+            // Create GTFS shapes.txt bounding box
+            shapeBoundingBoxTask = fork(pool, () -> {
+                ShapeFactory.MultiPointBuilder shapeBuilder = sf.multiPoint();
+                for (ShapePoint p : shapePoints) {
+                    shapeBuilder.pointXY(p.getLon(), p.getLat());
                 }
-            }
+                return shapeBuilder.build().getBoundingBox();
+            });
         }
-        logDuration(_log, "Trips polylines processed for " + feedUrl + " in ", tripStartTime);
 
         /**
          * Process GTFS stops.txt
@@ -189,9 +144,6 @@ public class GtfsMetadata {
         ShapeFactory.MultiPointBuilder stopBuilder = sf.multiPoint();
         Collection<Stop> stops = gtfsData.getAllStops();
         for (Stop stop : stops) {
-            // Create a set of stop_ids from the GTFS feeds stops.txt, and store their location_type in a map
-            mStopIds.add(stop.getId().getId());
-            mStopToLocationTypeMap.put(stop.getId().getId(), stop.getLocationType());
             // Create GTFS stops.txt bounding box
             stopBuilder.pointXY(stop.getLon(), stop.getLat());
         }
@@ -203,6 +155,7 @@ public class GtfsMetadata {
         /**
          * Process GTFS frequencies.txt
          */
+        Map<String, List<FrequencyWindow>> exactTimesOneTrips = new HashMap<>();
         Collection<Frequency> frequencies = gtfsData.getAllFrequencies();
         for (Frequency f : frequencies) {
             if (f.getExactTimes() == 0) {
@@ -210,42 +163,139 @@ public class GtfsMetadata {
                 mExactTimesZeroTripIds.add(f.getTrip().getId().getId());
             } else if (f.getExactTimes() == 1) {
                 // All exact_times=1 trips
-                List<Frequency> frequencyList = mExactTimesOneTrips.get(f.getTrip().getId().getId());
-                if (frequencyList == null) {
-                    frequencyList = new ArrayList<>();
-                }
-                frequencyList.add(f);
-                mExactTimesOneTrips.put(f.getTrip().getId().getId(), frequencyList);
+                exactTimesOneTrips.computeIfAbsent(f.getTrip().getId().getId(), k -> new ArrayList<>())
+                        .add(new FrequencyWindow(f.getStartTime(), f.getEndTime(), f.getHeadwaySecs()));
             }
         }
+        for (Map.Entry<String, List<FrequencyWindow>> entry : exactTimesOneTrips.entrySet()) {
+            FrequencyWindow[] windows = entry.getValue().toArray(new FrequencyWindow[0]);
+            Arrays.sort(windows, Comparator.comparingInt(FrequencyWindow::getStartTime));
+            mExactTimesOneWindows.put(entry.getKey(), windows);
+        }
+
+        if (shapeBoundingBoxTask != null) {
+            mShapeBoundingBox = shapeBoundingBoxTask.join();
+            mShapeBoundingBoxWithBuffer = mShapeBoundingBox.getBuffered(regionBufferDegrees, mShapeBoundingBox.getContext()).getBoundingBox();
+            _log.debug("Generated shapes.txt bounding boxes for " + feedUrl);
+        }
+        mStore = storeTask.join();
 
         logDuration(_log, "Built GtfsMetadata for " + feedUrl + " in ", startTime);
     }
 
-    public Set<String> getRouteIds() {
-        return mRouteIds;
+    /**
+     * Creates the metadata for a particular GTFS feed from parts that were already built, such as parts read from a
+     * GtfsMetadataSnapshot
+     *
+     * @param feedUrl URL for the GTFS zip file
+     * @param timeZone the agency_timezone from GTFS agency.txt, or null if the current time zone should be used.
+     * @param agencyTimeZone agency_timezone of the first agency in GTFS agency.txt as written in the file
+     * @param agencyIds agency_ids from GTFS agency.txt
+     * @param store compact store of the trips, routes, stops, stop times and shapes
+     * @param stopBoundingBox bounding box of the stops from GTFS stops.txt
+     * @param shapeBoundingBox bounding box of the points from GTFS shapes.txt, or null if shapes.txt isn't used
+     * @param exactTimesZeroTripIds trip_ids of exact_times=0 trips
+     * @param exactTimesOneWindows frequencies.txt windows of exact_times=1 trips sorted by start_time, by trip_id
+     */
+    GtfsMetadata(String feedUrl, TimeZone timeZone, String agencyTimeZone, Set<String> agencyIds, CompactGtfsStore store, Rectangle stopBoundingBox,
+                 Rectangle shapeBoundingBox, Set<String> exactTimesZeroTripIds, Map<String, FrequencyWindow[]> exactTimesOneWindows) {
+        double regionBufferDegrees = DistanceUtils.KM_TO_DEG * (REGION_BUFFER_METERS / 1000.0d);
+        mFeedUrl = feedUrl;
+        mTimeZone = timeZone;
+        mAgencyTimeZone = agencyTimeZone;
+        mAgencyIds = agencyIds;
+        mStore = store;
+        mStopBoundingBox = stopBoundingBox;
+        mStopBoundingBoxWithBuffer = mStopBoundingBox.getBuffered(regionBufferDegrees, mStopBoundingBox.getContext()).getBoundingBox();
+        if (shapeBoundingBox != null) {
+            mShapeBoundingBox = shapeBoundingBox;
+            mShapeBoundingBoxWithBuffer = mShapeBoundingBox.getBuffered(regionBufferDegrees, mShapeBoundingBox.getContext()).getBoundingBox();
+        }
+        mExactTimesZeroTripIds = exactTimesZeroTripIds;
+        mExactTimesOneWindows = exactTimesOneWindows;
     }
 
     /**
-     * Returns a map where key is trips.txt trip_id, and value is an object representing the GTFS trip
+     * Starts the given section of the metadata on the pool, or runs it on the calling thread if pool is null
      *
-     * @return a map where key is trips.txt trip_id, and value is an object representing the GTFS trip
+     * @return the task running the section, to join() when its result is needed
      */
-    public Map<String, Trip> getTrips() {
-        return mTrips;
+    private static <T> ForkJoinTask<T> fork(ForkJoinPool pool, Callable<T> section) {
+        ForkJoinTask<T> task = ForkJoinTask.adapt(section);
+        if (pool == null) {
+            task.invoke();
+        } else {
+            pool.execute(task);
+        }
+        return task;
     }
 
-    public Set<String> getStopIds() {
-        return mStopIds;
+    /**
+     * Returns the compact store of the trips, routes, stops, stop times and shapes of this GTFS feed
+     *
+     * @return the compact store of the trips, routes, stops, stop times and shapes of this GTFS feed
+     */
+    public CompactGtfsStore getStore() {
+        return mStore;
+    }
+
+    public boolean hasRouteId(String routeId) {
+        return mStore.hasRouteId(routeId);
+    }
+
+    public boolean hasTripId(String tripId) {
+        return mStore.getTripIndex(tripId) != NO_ID;
     }
 
     /**
-     * Returns a map where key is stops.txt stop_id, value is stops.txt location_type
+     * Returns the route_id of the given trip from GTFS trips.txt, or null if the trip isn't in the GTFS data
      *
-     * @return a map where key is stops.txt stop_id, value is stops.txt location_type
+     * @param tripId trips.txt trip_id
+     * @return the route_id of the given trip from GTFS trips.txt, or null if the trip isn't in the GTFS data
      */
-    public Map<String, Integer> getStopToLocationTypeMap() {
-        return mStopToLocationTypeMap;
+    public String getTripRouteId(String tripId) {
+        int trip = mStore.getTripIndex(tripId);
+        return trip == NO_ID ? null : mStore.getTripRouteId(trip);
+    }
+
+    /**
+     * Returns the direction_id of the given trip from GTFS trips.txt, or null if the trip isn't in the GTFS data or doesn't have a direction_id
+     *
+     * @param tripId trips.txt trip_id
+     * @return the direction_id of the given trip from GTFS trips.txt, or null if the trip isn't in the GTFS data or doesn't have a direction_id
+     */
+    public String getTripDirectionId(String tripId) {
+        int trip = mStore.getTripIndex(tripId);
+        return trip == NO_ID ? null : mStore.getTripDirectionId(trip);
+    }
+
+    /**
+     * Returns the arrival_time of the first stop (by stop_sequence) of the given trip, or null if the trip isn't in the GTFS data or doesn't have any stop times
+     *
+     * @param tripId trips.txt trip_id
+     * @return the arrival_time in seconds after midnight of the first stop of the given trip, or null if the trip isn't in the GTFS data or doesn't have any stop times
+     */
+    public Integer getTripFirstArrivalTime(String tripId) {
+        int trip = mStore.getTripIndex(tripId);
+        if (trip == NO_ID || mStore.getStopTimeCount(trip) == 0) {
+            return null;
+        }
+        return mStore.getArrivalTime(trip, 0);
+    }
+
+    public boolean hasStopId(String stopId) {
+        return mStore.getStopIndex(stopId) != NO_ID;
+    }
+
+    /**
+     * Returns the location_type of the given stop from GTFS stops.txt, or null if the stop isn't in the GTFS data
+     *
+     * @param stopId stops.txt stop_id
+     * @return the location_type of the given stop from GTFS stops.txt, or null if the stop isn't in the GTFS data
+     */
+    public Integer getStopLocationType(String stopId) {
+        int stop = mStore.getStopIndex(stopId);
+        return stop == NO_ID ? null : mStore.getStopLocationType(stop);
     }
 
     public Set<String> getExactTimesZeroTripIds() {
@@ -253,21 +303,20 @@ public class GtfsMetadata {
     }
 
     /**
-     * Returns a map where key is trips.txt trip_id, value is a list of Frequency objects representing frequencies.txt data for that trip_id
+     * Returns the frequencies.txt windows for an exact_times=1 trip sorted by start_time, or null if the trip isn't an exact_times=1 trip
      *
-     * @return a map where key is trips.txt trip_id, value is a list of Frequency objects representing frequencies.txt data for that trip_id
+     * @param tripId trips.txt trip_id
+     * @return the frequencies.txt windows for an exact_times=1 trip sorted by start_time, or null if the trip isn't an exact_times=1 trip
      */
-    public Map<String, List<Frequency>> getExactTimesOneTrips() {
-        return mExactTimesOneTrips;
+    public FrequencyWindow[] getExactTimesOneWindows(String tripId) {
+        return mExactTimesOneWindows.get(tripId);
     }
 
     /**
-     * Returns a map where key is trips.txt trip_id, and the value is a list of StopTime objects from stop_times.txt sorted by stop_sequence
-     *
-     * @return a map where key is trips.txt trip_id, and the value is a list of StopTime objects from stop_times.txt sorted by stop_sequence
+     * Returns the frequencies.txt windows of all exact_times=1 trips, by trip_id
      */
-    public Map<String, List<StopTime>> getTripStopTimes() {
-        return mTripStopTimes;
+    Map<String, FrequencyWindow[]> getExactTimesOneWindows() {
+        return mExactTimesOneWindows;
     }
 
     /**
@@ -279,6 +328,13 @@ public class GtfsMetadata {
         return mTimeZone;
     }
 
+    /**
+     * Returns the agency_timezone of the first agency in GTFS agency.txt exactly as it is written in the file, or null if there isn't an agency
+     */
+    String getAgencyTimeZone() {
+        return mAgencyTimeZone;
+    }
+
     /**
      * Returns a geographic bounding box for the stop locations from GTFS stops.txt
      *
@@ -316,44 +372,39 @@ public class GtfsMetadata {
     }
 
     /**
-     * Returns a map of GTFS shape_id to a list of ShapePoints from GTFS shapes.txt
+     * Returns an index of the GTFS trip shape from shapes.txt for the given tripId that tells if a location is within
+     * TRIP_BUFFER_METERS of the shape, or null if a shape doesn't exist for the given tripId.  The index is built the
+     * first time it is needed, and shared by all trips with the same shape_id.
      *
-     * @return a map of GTFS shape_id to a list of ShapePoints from GTFS shapes.txt
+     * @param tripId the GTFS trip_id to retrieve a trip shape index for
+     * @return an index of the GTFS trip shape from shapes.txt for the given tripId, or null if a shape doesn't exist for the given trip.
      */
-    public Map<String, List<ShapePoint>> getShapePoints() {
-        return mShapePoints;
-    }
-
-    /**
-     * Returns a map of GTFS trip_ids to a polyline of that trip's shape from shapes.txt
-     *
-     * @return a map of GTFS trip_ids to a polyline of that trip's shape from shapes.txt
-     */
-    public Map<String, Shape> getTripShapes() {
-        return mTripShapes;
+    public PolylineIndex getTripShapeIndex(String tripId) {
+        int shape = getTripShape(tripId);
+        if (shape == NO_ID) {
+            // No shape for this trip_id
+            return null;
+        }
+        return mShapeIndexes.computeIfAbsent(mStore.getShapeId(shape), k -> {
+            double[] latitudes = new double[mStore.getShapePointCount(shape)];
+            double[] longitudes = new double[latitudes.length];
+            for (int i = 0; i < latitudes.length; i++) {
+                latitudes[i] = mStore.getShapeLat(shape, i);
+                longitudes[i] = mStore.getShapeLon(shape, i);
+            }
+            return new PolylineIndex(latitudes, longitudes, TRIP_BUFFER_METERS);
+        });
     }
 
     /**
-     * Returns a buffered representation (TRIP_BUFFER_METERS) of a GTFS trip shape from shapes.txt for the given tripId,
-     * or null if a shape doesn't exist for the given tripId.
-     * <p>
-     *
-     * @param tripId the GTFS trip_id to retrieve a buffered trip shape for
-     * @return a buffered representation (TRIP_BUFFER_METERS) of a GTFS trip shape from shapes.txt for the given tripId,
-     * or null if a shape doesn't exist for the given trip.
+     * Returns the index of the shape of the given trip in the compact store, or NO_ID if there isn't one (or shapes.txt has too few points to use)
      */
-    public Shape getBufferedTripShape(String tripId) {
-        if (mTripShapes == null) {
-            // No shapes at all
-            return null;
+    private int getTripShape(String tripId) {
+        int trip = mStore.getTripIndex(tripId);
+        if (trip == NO_ID || mShapeBoundingBox == null) {
+            return NO_ID;
         }
-        Shape s = mTripShapes.get(tripId);
-        if (s == null) {
-            // No shape for this trip_id
-            return null;
-        }
-        // Create the buffered version of the trip shape if it doesn't yet exist
-        return mTripShapesBuffered.computeIfAbsent(tripId, k -> s.getBuffered(TRIP_BUFFER_DEGREES, s.getContext()));
+        return mStore.getTripShape(trip);
     }
 
     /**
@@ -364,4 +415,47 @@ public class GtfsMetadata {
     public Set<String> getAgencyIds() {
         return mAgencyIds;
     }
+
+    /**
+     * A frequencies.txt window for an exact_times=1 trip - trips start at start_time and every headway_secs after it,
+     * until (but not including) end_time
+     */
+    public static final class FrequencyWindow {
+
+        private final int mStartTime;
+        private final int mEndTime;
+        private final int mHeadwaySecs;
+
+        FrequencyWindow(int startTime, int endTime, int headwaySecs) {
+            mStartTime = startTime;
+            mEndTime = endTime;
+            mHeadwaySecs = headwaySecs;
+        }
+
+        public int getStartTime() {
+            return mStartTime;
+        }
+
+        public int getEndTime() {
+            return mEndTime;
+        }
+
+        public int getHeadwaySecs() {
+            return mHeadwaySecs;
+        }
+
+        /**
+         * Returns true if a trip in this window starts at the given time, or false if one does not
+         *
+         * @param secondsAfterMidnight the trip start time, in seconds after midnight
+         * @return true if a trip in this window starts at the given time (start_time plus some multiple, including zero, of headway_secs), or false if one does not
+         */
+        public boolean isTripStart(int secondsAfterMidnight) {
+            if (secondsAfterMidnight < mStartTime || secondsAfterMidnight >= mEndTime) {
+                return false;
+            }
+            int offset = secondsAfterMidnight - mStartTime;
+            return mHeadwaySecs > 0 ? offset % mHeadwaySecs == 0 : offset == 0;
+        }
+    }
 }
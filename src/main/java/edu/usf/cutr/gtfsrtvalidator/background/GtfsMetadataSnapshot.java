@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import edu.usf.cutr.gtfsrtvalidator.util.StringDictionary;
+import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.logDuration;
+
+/**
+ * Saves the GtfsMetadata built for a GTFS zip file to a binary snapshot file next to it, so after a restart the
+ * metadata can be loaded from the snapshot instead of parsing the GTFS zip file and building the metadata again.
+ * <p>
+ * Each snapshot starts with the checksum of the GTFS zip file it was built from, and is only used for a GTFS zip file
+ * with the same checksum.  Snapshots are read by memory mapping the file and copying the primitive columns of the
+ * CompactGtfsStore straight out of the mapped file.  Caches that GtfsMetadata builds the first time they are
+ * needed (such as shape indexes) aren't saved.
+ */
+public final class GtfsMetadataSnapshot {
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(GtfsMetadataSnapshot.class);
+
+    private static final int MAGIC = 0x47545253; // "GTRS"
+    // Increase when the format changes, so snapshots written by older versions are built again
+    private static final int VERSION = 2;
+    private static final String FILE_EXTENSION = ".metadata";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private GtfsMetadataSnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file for the given GTFS zip file
+     *
+     * @param gtfsFile the GTFS zip file
+     * @return the snapshot file for the given GTFS zip file
+     */
+    public static File getSnapshotFile(File gtfsFile) {
+        return new File(gtfsFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Writes a snapshot of the metadata.  The snapshot is written to a temporary file first and then moved into place,
+     * so a snapshot is never read while it is only partly written.
+     *
+     * @param metadata metadata to save
+     * @param checksum checksum of the GTFS zip file the metadata was built from
+     * @param file     the snapshot file to write
+     * @throws IOException if the snapshot can't be written
+     */
+    public static void write(GtfsMetadata metadata, byte[] checksum, File file) throws IOException {
+        long startTime = System.nanoTime();
+        // A unique temporary file, so feeds that write a snapshot for the same file at the same time don't clash
+        Path tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        boolean moved = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), COPY_BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(checksum.length);
+                out.write(checksum);
+
+                writeString(out, metadata.getTimeZone() == null ? null : metadata.getTimeZone().getID());
+                writeString(out, metadata.getAgencyTimeZone());
+                writeStrings(out, metadata.getAgencyIds());
+                metadata.getStore().write(out);
+                writeRectangle(out, metadata.getStopBoundingBox());
+                writeRectangle(out, metadata.getShapeBoundingBox());
+                writeStrings(out, metadata.getExactTimesZeroTripIds());
+                Map<String, GtfsMetadata.FrequencyWindow[]> exactTimesOneWindows = metadata.getExactTimesOneWindows();
+                out.writeInt(exactTimesOneWindows.size());
+                for (Map.Entry<String, GtfsMetadata.FrequencyWindow[]> entry : exactTimesOneWindows.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (GtfsMetadata.FrequencyWindow window : entry.getValue()) {
+                        out.writeInt(window.getStartTime());
+                        out.writeInt(window.getEndTime());
+                        out.writeInt(window.getHeadwaySecs());
+                    }
+                }
+            }
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        logDuration(_log, "Wrote GtfsMetadata snapshot " + file + " in ", startTime);
+    }
+
+    /**
+     * Reads the metadata from a snapshot, if the snapshot exists and was built from a GTFS zip file with the given checksum
+     *
+     * @param file     the snapshot file to read
+     * @param feedUrl  URL for the GTFS zip file
+     * @param checksum checksum of the GTFS zip file the metadata is needed for
+     * @return the metadata saved in the snapshot, or null if the snapshot doesn't exist, is from an older version, or
+     * was built from a different GTFS zip file
+     * @throws IOException if the snapshot exists but can't be read
+     */
+    public static GtfsMetadata read(File file, String feedUrl, byte[] checksum) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                _log.info("Ignoring GtfsMetadata snapshot " + file + " written by a different version");
+                return null;
+            }
+            byte[] snapshotChecksum = new byte[readLength(in, 1)];
+            in.get(snapshotChecksum);
+            if (!Arrays.equals(snapshotChecksum, checksum)) {
+                _log.info("Ignoring GtfsMetadata snapshot " + file + " built from different GTFS data");
+                return null;
+            }
+
+            String timeZone = readString(in);
+            String agencyTimeZone = readString(in);
+            Set<String> agencyIds = readStrings(in);
+            CompactGtfsStore store = new CompactGtfsStore(in);
+            Rectangle stopBoundingBox = readRectangle(in);
+            Rectangle shapeBoundingBox = readRectangle(in);
+            Set<String> exactTimesZeroTripIds = readStrings(in);
+            // Each trip has at least an id length and a window count
+            int tripCount = readLength(in, 8);
+            Map<String, GtfsMetadata.FrequencyWindow[]> exactTimesOneWindows = new HashMap<>();
+            for (int i = 0; i < tripCount; i++) {
+                String tripId = readString(in);
+                GtfsMetadata.FrequencyWindow[] windows = new GtfsMetadata.FrequencyWindow[readLength(in, 12)];
+                for (int w = 0; w < windows.length; w++) {
+                    windows[w] = new GtfsMetadata.FrequencyWindow(in.getInt(), in.getInt(), in.getInt());
+                }
+                exactTimesOneWindows.put(tripId, windows);
+            }
+
+            GtfsMetadata metadata = new GtfsMetadata(feedUrl, timeZone == null ? null : TimeZone.getTimeZone(timeZone),
+                    agencyTimeZone, agencyIds, store, stopBoundingBox, shapeBoundingBox, exactTimesZeroTripIds, exactTimesOneWindows);
+            logDuration(_log, "Read GtfsMetadata snapshot " + file + " in ", startTime);
+            return metadata;
+        } catch (RuntimeException e) {
+            // Truncated or corrupt file - the caller builds the metadata again
+            throw new IOException("Can't read GtfsMetadata snapshot " + file, e);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the length of an array, string or collection in the snapshot, and checks that the snapshot has enough
+     * bytes left for that many elements, so a truncated or corrupt snapshot doesn't allocate a huge array
+     *
+     * @param in          snapshot positioned at the length
+     * @param elementSize the number of bytes each element takes up at least
+     * @return the length
+     * @throws IllegalStateException if the length is negative, or the snapshot doesn't have enough bytes left
+     */
+    private static int readLength(ByteBuffer in, int elementSize) {
+        return checkLength(in, in.getInt(), elementSize);
+    }
+
+    private static int checkLength(ByteBuffer in, int length, int elementSize) {
+        if (length < 0 || length > in.remaining() / elementSize) {
+            throw new IllegalStateException("Invalid length " + length + " with " + in.remaining() + " bytes left");
+        }
+        return length;
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[checkLength(in, length, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDictionary(DataOutputStream out, StringDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) {
+            writeString(out, dictionary.get(i));
+        }
+    }
+
+    /**
+     * Reads a StringDictionary written by writeDictionary() - strings are added in id order, so they get the same ids
+     */
+    static StringDictionary readDictionary(ByteBuffer in) {
+        // Each string has at least its length
+        int size = readLength(in, 4);
+        StringDictionary dictionary = new StringDictionary(size);
+        for (int i = 0; i < size; i++) {
+            dictionary.add(readString(in));
+        }
+        return dictionary;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        for (int start = 0; start < values.length; start += COPY_BUFFER_SIZE / 4) {
+            int count = Math.min(COPY_BUFFER_SIZE / 4, values.length - start);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, start, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[readLength(in, 4)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        for (int start = 0; start < values.length; start += COPY_BUFFER_SIZE / 4) {
+            int count = Math.min(COPY_BUFFER_SIZE / 4, values.length - start);
+            buffer.clear();
+            buffer.asFloatBuffer().put(values, start, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    static float[] readFloats(ByteBuffer in) {
+        float[] values = new float[readLength(in, 4)];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static Set<String> readStrings(ByteBuffer in) {
+        int size = readLength(in, 4);
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeRectangle(DataOutputStream out, Rectangle rectangle) throws IOException {
+        out.writeBoolean(rectangle != null);
+        if (rectangle != null) {
+            out.writeDouble(rectangle.getMinX());
+            out.writeDouble(rectangle.getMaxX());
+            out.writeDouble(rectangle.getMinY());
+            out.writeDouble(rectangle.getMaxY());
+        }
+    }
+
+    private static Rectangle readRectangle(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        return JtsSpatialContext.GEO.getShapeFactory().rect(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import com.google.common.hash.Hasher;
+import com.google.protobuf.CodedInputStream;
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A GTFS-realtime payload read from the network in a single pass - the fingerprint is updated as bytes arrive, and the
+ * feed is parsed from the same buffer the bytes were read into, so the payload isn't copied between reading, hashing
+ * and parsing.
+ */
+public class GtfsRtPayload {
+
+    // Initial buffer size when the server doesn't tell us the length of the payload (e.g., compressed responses)
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private byte[] mBuffer;
+    private final int mLength;
+    private final FingerprintStrategy mFingerprintStrategy;
+    private final byte[] mDigest;
+
+    private GtfsRtPayload(byte[] buffer, int length, FingerprintStrategy fingerprintStrategy, byte[] digest) {
+        mBuffer = buffer;
+        mLength = length;
+        mFingerprintStrategy = fingerprintStrategy;
+        mDigest = digest;
+    }
+
+    /**
+     * Reads the payload from the input stream to the end, updating the fingerprint as bytes are read.  The input
+     * stream isn't closed.
+     *
+     * @param in                  stream to read the payload from
+     * @param contentLength       the expected length of the payload (e.g., from the Content-Length header), or -1 if it isn't known
+     * @param fingerprintStrategy algorithm used to fingerprint the payload
+     * @return the payload read from the input stream
+     * @throws IOException if the payload can't be read
+     */
+    public static GtfsRtPayload read(InputStream in, long contentLength, FingerprintStrategy fingerprintStrategy) throws IOException {
+        Hasher digest = fingerprintStrategy.newHasher();
+        int bufferSize = contentLength > 0 && contentLength < Integer.MAX_VALUE ? (int) contentLength : DEFAULT_BUFFER_SIZE;
+        byte[] buffer = new byte[bufferSize];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // Buffer is full - either we're done (the usual case if Content-Length was correct) or we need more room
+                int next = in.read();
+                if (next == -1) {
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, Math.max(DEFAULT_BUFFER_SIZE, (int) Math.min(Integer.MAX_VALUE - 8, 2L * buffer.length)));
+                buffer[length] = (byte) next;
+                digest.putBytes(buffer, length, 1);
+                length++;
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            digest.putBytes(buffer, length, read);
+            length += read;
+        }
+        return new GtfsRtPayload(buffer, length, fingerprintStrategy, digest.hash().asBytes());
+    }
+
+    /**
+     * Parses the payload as a GTFS-realtime feed, directly from the buffer it was read into
+     *
+     * @return the payload parsed as a GTFS-realtime feed
+     * @throws IOException if the payload isn't a valid GTFS-realtime feed
+     */
+    public GtfsRealtime.FeedMessage parse() throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(mBuffer, 0, mLength);
+        GtfsRealtime.FeedMessage feedMessage = GtfsRealtime.FeedMessage.parseFrom(input);
+        // Same check as FeedMessage.parseFrom(byte[]) - make sure we didn't stop at a stray end-group tag
+        input.checkLastTagWas(0);
+        return feedMessage;
+    }
+
+    /**
+     * Returns the fingerprint of the payload
+     *
+     * @return the fingerprint of the payload
+     */
+    public byte[] getDigest() {
+        return mDigest;
+    }
+
+    /**
+     * Returns the algorithm used to fingerprint the payload
+     *
+     * @return the algorithm used to fingerprint the payload
+     */
+    public FingerprintStrategy getFingerprintStrategy() {
+        return mFingerprintStrategy;
+    }
+
+    /**
+     * Returns the length of the payload in bytes
+     *
+     * @return the length of the payload in bytes
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Returns the payload as an array of exactly getLength() bytes.  If the read buffer was sized correctly (i.e.,
+     * the server sent an accurate Content-Length) this is the read buffer itself, otherwise it is trimmed once.
+     *
+     * @return the payload as an array of exactly getLength() bytes
+     */
+    public byte[] toByteArray() {
+        if (mBuffer.length != mLength) {
+            mBuffer = Arrays.copyOf(mBuffer, mLength);
+        }
+        return mBuffer;
+    }
+}
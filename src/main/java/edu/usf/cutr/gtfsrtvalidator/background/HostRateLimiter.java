@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often requests are sent to the same host, using a token bucket per host.  Each host's bucket holds up to
+ * a burst of tokens and refills at a fixed rate.  A request that finds the bucket empty reserves the next token
+ * anyway and is told how long to wait for it, so requests to a busy host are spread out in the order they arrived
+ * instead of retrying.
+ */
+public class HostRateLimiter {
+
+    private final double mPermitsPerNano;
+    private final double mBurst;
+    private final Map<String, Bucket> mBuckets = new HashMap<>();
+
+    /**
+     * @param requestsPerSecond maximum sustained number of requests per second to the same host
+     * @param burst             number of requests that may be sent to a host at once after it has been idle
+     */
+    public HostRateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive and burst must be at least 1");
+        }
+        mPermitsPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        mBurst = burst;
+    }
+
+    /**
+     * Reserves a request to the given host
+     *
+     * @param host host the request will be sent to
+     * @return how long to wait before sending the request, in nanoseconds (0 if it can be sent now)
+     */
+    public long reserve(String host) {
+        return reserve(host, System.nanoTime());
+    }
+
+    /**
+     * Reserves a request to the given host at the given time
+     *
+     * @param host     host the request will be sent to
+     * @param nowNanos the current time, from System.nanoTime()
+     * @return how long to wait before sending the request, in nanoseconds (0 if it can be sent now)
+     */
+    public synchronized long reserve(String host, long nowNanos) {
+        Bucket bucket = mBuckets.get(host);
+        if (bucket == null) {
+            bucket = new Bucket(mBurst, nowNanos);
+            mBuckets.put(host, bucket);
+        }
+        bucket.mTokens = Math.min(mBurst, bucket.mTokens + (nowNanos - bucket.mLastRefillNanos) * mPermitsPerNano);
+        bucket.mLastRefillNanos = nowNanos;
+        bucket.mTokens -= 1;
+        if (bucket.mTokens >= 0) {
+            return 0;
+        }
+        // Bucket is in debt - wait until the tokens reserved by earlier requests and this one have been refilled
+        return (long) Math.ceil(-bucket.mTokens / mPermitsPerNano);
+    }
+
+    private static class Bucket {
+        private double mTokens;
+        private long mLastRefillNanos;
+
+        Bucket(double tokens, long nowNanos) {
+            mTokens = tokens;
+            mLastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processes downloaded GTFS-realtime feeds in stages connected by bounded queues, so the time spent validating a feed
+ * and writing the results to the database doesn't delay the next download:
+ * <p>
+ * fetch (FeedScheduler threads) -&gt; decode -&gt; validate -&gt; persist
+ * <p>
+ * Decode parses the feed and checks whether it changed, validate runs the rules on changed feeds, and persist stores
+ * the iteration and its errors.  Every iteration goes through every stage - unchanged feeds pass through validate
+ * without running the rules - and iterations of the same feed are always handled by the same worker in each stage, so
+ * they are processed and stored in the order they were fetched.
+ *
+ * @param <T> type of the iterations processed by the pipeline
+ */
+public class IngestPipeline<T> {
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(IngestPipeline.class);
+
+    public static final int DEFAULT_DECODE_WORKERS = 2;
+    public static final int DEFAULT_VALIDATE_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_PERSIST_WORKERS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static int mDecodeWorkers = DEFAULT_DECODE_WORKERS;
+    private static int mValidateWorkers = DEFAULT_VALIDATE_WORKERS;
+    private static int mPersistWorkers = DEFAULT_PERSIST_WORKERS;
+    private static IngestPipeline<BackgroundTask.PendingIteration> mInstance;
+
+    private final Handler<T> mHandler;
+    private final PipelineStage<T> mDecodeStage;
+    private final PipelineStage<T> mValidateStage;
+    private final PipelineStage<T> mPersistStage;
+
+    /**
+     * Sets the number of worker threads in each stage.  Must be called before the pipeline is first used.
+     *
+     * @param decodeWorkers   number of threads parsing feeds and checking whether they changed
+     * @param validateWorkers number of threads running validation rules
+     * @param persistWorkers  number of threads writing iterations and errors to the database
+     */
+    public synchronized static void setWorkers(int decodeWorkers, int validateWorkers, int persistWorkers) {
+        if (decodeWorkers < 1 || validateWorkers < 1 || persistWorkers < 1) {
+            throw new IllegalArgumentException("Each pipeline stage needs at least 1 worker");
+        }
+        if (mInstance != null) {
+            _log.warn("Ingest pipeline already started - ignoring new worker counts");
+            return;
+        }
+        mDecodeWorkers = decodeWorkers;
+        mValidateWorkers = validateWorkers;
+        mPersistWorkers = persistWorkers;
+    }
+
+    /**
+     * Returns the pipeline shared by all feeds, creating it on first use
+     *
+     * @return the pipeline shared by all feeds
+     */
+    public synchronized static IngestPipeline<BackgroundTask.PendingIteration> getInstance() {
+        if (mInstance == null) {
+            mInstance = new IngestPipeline<>(mDecodeWorkers, mValidateWorkers, mPersistWorkers, DEFAULT_QUEUE_CAPACITY,
+                    new BackgroundTask.PipelineHandler());
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param decodeWorkers   number of threads in the decode stage
+     * @param validateWorkers number of threads in the validate stage
+     * @param persistWorkers  number of threads in the persist stage
+     * @param queueCapacity   maximum number of iterations waiting for each worker
+     * @param handler         does the work of each stage
+     */
+    public IngestPipeline(int decodeWorkers, int validateWorkers, int persistWorkers, int queueCapacity, Handler<T> handler) {
+        mHandler = handler;
+        // Created from the last stage to the first, so each stage can hand iterations on to the next
+        mPersistStage = new PipelineStage<>("persist", persistWorkers, queueCapacity, handler::persist);
+        mValidateStage = new PipelineStage<>("validate", validateWorkers, queueCapacity, iteration -> {
+            handler.validate(iteration);
+            submit(mPersistStage, iteration);
+        });
+        mDecodeStage = new PipelineStage<>("decode", decodeWorkers, queueCapacity, iteration -> {
+            if (handler.decode(iteration)) {
+                submit(mValidateStage, iteration);
+            }
+        });
+        _log.info("Started ingest pipeline with " + decodeWorkers + " decode, " + validateWorkers + " validate and "
+                + persistWorkers + " persist workers");
+    }
+
+    /**
+     * Queues a fetched iteration for the decode stage, waiting if the decode queue for its feed is full
+     *
+     * @param iteration the fetched iteration
+     */
+    public void decode(T iteration) {
+        submit(mDecodeStage, iteration);
+    }
+
+    private void submit(PipelineStage<T> stage, T iteration) {
+        try {
+            stage.submit(mHandler.getKey(iteration), iteration);
+        } catch (InterruptedException e) {
+            _log.warn("Interrupted while waiting to queue an iteration for the " + stage.getName() + " stage - dropping it");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the stages of the pipeline, in order
+     *
+     * @return the stages of the pipeline, in order
+     */
+    public List<PipelineStage<?>> getStages() {
+        List<PipelineStage<?>> stages = new ArrayList<>();
+        stages.add(mDecodeStage);
+        stages.add(mValidateStage);
+        stages.add(mPersistStage);
+        return stages;
+    }
+
+    /**
+     * Stops all stages - iterations still waiting in the queues are discarded
+     */
+    public void shutdown() {
+        mDecodeStage.shutdown();
+        mValidateStage.shutdown();
+        mPersistStage.shutdown();
+    }
+
+    /**
+     * Does the work of each stage of the pipeline
+     *
+     * @param <T> type of the iterations processed by the pipeline
+     */
+    public interface Handler<T> {
+
+        /**
+         * Returns the key of the feed the iteration belongs to - iterations with equal keys are processed in order
+         *
+         * @param iteration an iteration
+         * @return the key of the feed the iteration belongs to
+         */
+        Object getKey(T iteration);
+
+        /**
+         * Parses the iteration and checks whether it changed
+         *
+         * @param iteration the iteration to decode
+         * @return true to pass the iteration on to be validated and stored, false to drop it (e.g., it couldn't be parsed)
+         */
+        boolean decode(T iteration);
+
+        /**
+         * Runs the validation rules on the iteration if it changed, and does nothing if it didn't
+         *
+         * @param iteration the iteration to validate
+         */
+        void validate(T iteration);
+
+        /**
+         * Stores the iteration and any errors found in it
+         *
+         * @param iteration the iteration to store
+         */
+        void persist(T iteration);
+    }
+}
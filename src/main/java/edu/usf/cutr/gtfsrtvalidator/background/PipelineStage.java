@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.background;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One stage of the feed ingest pipeline - a fixed number of worker threads, each taking items from its own bounded
+ * queue.  Items with the same key (e.g., iterations of the same feed) always go to the same worker, so they are
+ * processed in the order they were submitted.  When a worker's queue is full, submit() blocks until there is room,
+ * which slows down the stage feeding this one instead of letting work pile up in memory.
+ *
+ * @param <T> type of the items processed by this stage
+ */
+public class PipelineStage<T> {
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(PipelineStage.class);
+
+    private final String mName;
+    private final int mQueueCapacity;
+    private final Consumer<T> mHandler;
+    private final List<BlockingQueue<T>> mQueues = new ArrayList<>();
+    private final List<Thread> mWorkers = new ArrayList<>();
+
+    private final AtomicLong mProcessedCount = new AtomicLong();
+    private final AtomicLong mBlockedCount = new AtomicLong();
+    private volatile int mMaxQueueDepth = 0;
+
+    /**
+     * @param name          name of the stage, used for logging and thread names
+     * @param workers       number of worker threads
+     * @param queueCapacity maximum number of items waiting for each worker
+     * @param handler       processes each item - items are dropped (and logged) if it throws a RuntimeException
+     */
+    public PipelineStage(String name, int workers, int queueCapacity, Consumer<T> handler) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(name + " workers must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(name + " queue capacity must be at least 1");
+        }
+        mName = name;
+        mQueueCapacity = queueCapacity;
+        mHandler = handler;
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread worker = new Thread(() -> work(queue));
+            worker.setName("pipeline-" + name + "-" + (i + 1));
+            worker.setDaemon(true);
+            mQueues.add(queue);
+            mWorkers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the item for processing, waiting if the queue of the worker responsible for this key is full
+     *
+     * @param key  items with equal keys are processed in order by the same worker
+     * @param item the item to process
+     * @throws InterruptedException if the thread was interrupted while waiting for room in the queue
+     */
+    public void submit(Object key, T item) throws InterruptedException {
+        BlockingQueue<T> queue = mQueues.get(Math.floorMod(key.hashCode(), mQueues.size()));
+        if (!queue.offer(item)) {
+            mBlockedCount.incrementAndGet();
+            _log.debug(mName + " queue is full - waiting for room");
+            queue.put(item);
+        }
+        int depth = queue.size();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+    }
+
+    private void work(BlockingQueue<T> queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                mHandler.accept(item);
+            } catch (RuntimeException e) {
+                _log.error("Error in " + mName + " stage", e);
+            }
+            mProcessedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the worker threads - items still waiting in the queues are discarded
+     */
+    public void shutdown() {
+        for (Thread worker : mWorkers) {
+            worker.interrupt();
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getWorkerCount() {
+        return mWorkers.size();
+    }
+
+    /**
+     * Returns the maximum number of items waiting for each worker
+     *
+     * @return the maximum number of items waiting for each worker
+     */
+    public int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+
+    /**
+     * Returns the number of items currently waiting to be processed by this stage, across all workers
+     *
+     * @return the number of items currently waiting to be processed by this stage
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<T> queue : mQueues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the largest number of items seen waiting for a single worker since the stage started
+     *
+     * @return the largest number of items seen waiting for a single worker since the stage started
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    /**
+     * Returns the number of items processed by this stage
+     *
+     * @return the number of items processed by this stage
+     */
+    public long getProcessedCount() {
+        return mProcessedCount.get();
+    }
+
+    /**
+     * Returns the number of times submit() had to wait because a queue was full
+     *
+     * @return the number of times submit() had to wait because a queue was full
+     */
+    public long getBlockedCount() {
+        return mBlockedCount.get();
+    }
+}
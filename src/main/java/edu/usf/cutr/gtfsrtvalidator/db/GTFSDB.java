@@ -19,6 +19,7 @@ package edu.usf.cutr.gtfsrtvalidator.db;
 
 import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
 import edu.usf.cutr.gtfsrtvalidator.hibernate.HibernateUtil;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
 import edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
@@ -67,9 +68,36 @@ public class GTFSDB {
             ex.printStackTrace();
         }
 
+        migrateFeedHashAlgorithm();
+
         _log.info("Table initialized successfully");
     }
 
+    /**
+     * Records MD5 as the algorithm for feed fingerprints stored before the algorithm name was stored, so they are
+     * never compared with fingerprints created by a different algorithm
+     */
+    private static void migrateFeedHashAlgorithm() {
+        Session session = initSessionBeginTrans();
+        try {
+            int iterations = session.createQuery("UPDATE GtfsRtFeedIterationModel SET feedHashAlgorithm = :algorithm " +
+                    "WHERE feedHashAlgorithm IS NULL AND feedHash IS NOT NULL")
+                    .setParameter("algorithm", FingerprintStrategy.MD5.name())
+                    .executeUpdate();
+            int gtfsFeeds = session.createQuery("UPDATE GtfsFeedModel SET checksumAlgorithm = :algorithm " +
+                    "WHERE checksumAlgorithm IS NULL AND checksum IS NOT NULL")
+                    .setParameter("algorithm", FingerprintStrategy.MD5.name())
+                    .executeUpdate();
+            commitAndCloseSession(session);
+            if (iterations > 0 || gtfsFeeds > 0) {
+                _log.info("Marked " + iterations + " GTFS-rt iteration and " + gtfsFeeds + " GTFS feed fingerprints as " + FingerprintStrategy.MD5.name());
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            closeSession(session);
+        }
+    }
+
     public static Session initSessionBeginTrans() {
         Session session = null;
         Transaction tx = null;
@@ -30,6 +30,7 @@ public class DBHelper {
         session = GTFSDB.initSessionBeginTrans();
         for (OccurrenceModel occurrence : errorListHelperModel.getOccurrenceList()) {
             occurrence.setMessageLogModel(errorListHelperModel.getErrorMessage());
+            occurrence.render();
             session.save(occurrence);
         }
         GTFSDB.commitAndCloseSession(session);
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.helper;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads GTFS-realtime feeds using one shared HTTP client, so connections (and TLS sessions) to agency servers are
+ * kept alive and reused between polls.  Responses are requested with gzip/deflate compression and transparently
+ * decompressed, all requests have connect and read timeouts, and the number of connections open to a single host is
+ * limited.
+ */
+public class FeedFetcher {
+
+    private static final org.slf4j.Logger _log = LoggerFactory.getLogger(FeedFetcher.class);
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+    private static int mMaxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private static FeedFetcher mInstance;
+
+    private final PoolingHttpClientConnectionManager mConnectionManager;
+    private final CloseableHttpClient mHttpClient;
+
+    /**
+     * Sets the maximum number of connections open to the same host at once.  Must be called before the fetcher is
+     * first used.
+     *
+     * @param maxConnectionsPerHost maximum number of connections open to the same host at once
+     */
+    public synchronized static void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+        }
+        if (mInstance != null) {
+            _log.warn("Feed fetcher already started - ignoring new connection limit " + maxConnectionsPerHost);
+            return;
+        }
+        mMaxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the fetcher shared by all feeds, creating it on first use
+     *
+     * @return the fetcher shared by all feeds
+     */
+    public synchronized static FeedFetcher getInstance() {
+        if (mInstance == null) {
+            mInstance = new FeedFetcher(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS,
+                    mMaxConnectionsPerHost, Math.max(DEFAULT_MAX_CONNECTIONS, mMaxConnectionsPerHost));
+        }
+        return mInstance;
+    }
+
+    public FeedFetcher(int connectTimeoutMillis, int readTimeoutMillis, int maxConnectionsPerHost, int maxConnections) {
+        mConnectionManager = new PoolingHttpClientConnectionManager();
+        mConnectionManager.setMaxTotal(maxConnections);
+        mConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                // Wait at most as long as a read for another feed on the same host to release its connection
+                .setConnectionRequestTimeout(readTimeoutMillis)
+                .build();
+
+        // HttpClientBuilder sends "Accept-Encoding: gzip,deflate" and decompresses responses by default
+        mHttpClient = HttpClients.custom()
+                .setConnectionManager(mConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Requests the given URL.  The returned response must be closed by the caller.
+     *
+     * @param url URL to request
+     * @return the response from the server
+     * @throws IOException if the request fails, or IllegalArgumentException if the URL isn't valid
+     */
+    public Response fetch(String url) throws IOException {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Requests the given URL, asking the server to return 304 Not Modified if the content hasn't changed since the
+     * response with the given ETag and/or Last-Modified values.  The returned response must be closed by the caller.
+     *
+     * @param url          URL to request
+     * @param eTag         ETag of the previous response, or null to not send If-None-Match
+     * @param lastModified Last-Modified value of the previous response, or null to not send If-Modified-Since
+     * @return the response from the server
+     * @throws IOException if the request fails, or IllegalArgumentException if the URL isn't valid
+     */
+    public Response fetch(String url, String eTag, String lastModified) throws IOException {
+        HttpGet get = new HttpGet(url);
+        if (eTag != null) {
+            get.setHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        if (lastModified != null) {
+            get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        return new Response(mHttpClient.execute(get));
+    }
+
+    /**
+     * Stops the fetcher and closes all connections
+     */
+    public void shutdown() {
+        try {
+            mHttpClient.close();
+        } catch (IOException e) {
+            _log.error("Error closing feed fetcher", e);
+        }
+    }
+
+    /**
+     * A response to a feed request.  Reading the body to the end returns the connection to the pool, and closing the
+     * response releases it if the body wasn't read.
+     */
+    public static class Response implements Closeable {
+
+        private final CloseableHttpResponse mResponse;
+
+        Response(CloseableHttpResponse response) {
+            mResponse = response;
+        }
+
+        public int getStatusCode() {
+            return mResponse.getStatusLine().getStatusCode();
+        }
+
+        /**
+         * Returns true if the server returned a 2xx status code, false if it did not
+         *
+         * @return true if the server returned a 2xx status code, false if it did not
+         */
+        public boolean isSuccessful() {
+            return getStatusCode() / 100 == 2;
+        }
+
+        /**
+         * Returns true if the server returned 304 Not Modified for a conditional request, false if it did not
+         *
+         * @return true if the server returned 304 Not Modified for a conditional request, false if it did not
+         */
+        public boolean isNotModified() {
+            return getStatusCode() == HttpStatus.SC_NOT_MODIFIED;
+        }
+
+        /**
+         * Returns the value of the first response header with the given name, or null if there is no such header
+         *
+         * @param name name of the header
+         * @return the value of the first response header with the given name, or null if there is no such header
+         */
+        public String getHeader(String name) {
+            Header header = mResponse.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        /**
+         * Returns the length of the (decompressed) body, or -1 if it isn't known in advance
+         *
+         * @return the length of the (decompressed) body, or -1 if it isn't known in advance
+         */
+        public long getContentLength() {
+            HttpEntity entity = mResponse.getEntity();
+            return entity == null ? -1 : entity.getContentLength();
+        }
+
+        /**
+         * Returns the (decompressed) body of the response
+         *
+         * @return the (decompressed) body of the response
+         * @throws IOException if the body can't be read
+         */
+        public InputStream getInputStream() throws IOException {
+            HttpEntity entity = mResponse.getEntity();
+            return entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mResponse.close();
+        }
+    }
+}
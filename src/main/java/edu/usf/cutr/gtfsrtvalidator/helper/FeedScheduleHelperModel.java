@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.helper;
+
+import edu.usf.cutr.gtfsrtvalidator.background.FeedScheduler;
+
+public class FeedScheduleHelperModel {
+
+    private String gtfsRtUrl;
+    private long updateIntervalMillis;
+    private boolean adaptive;
+    private long refreshPeriodMillis;
+    private long iterationCount;
+    private long skippedCount;
+    private long rateLimitedCount;
+    private long lastRateLimitWaitMillis;
+    private long lastLagMillis;
+    private long maxLagMillis;
+
+    public FeedScheduleHelperModel() {
+    }
+
+    public FeedScheduleHelperModel(FeedScheduler.ScheduledFeed scheduledFeed) {
+        this.gtfsRtUrl = scheduledFeed.getKey();
+        this.updateIntervalMillis = scheduledFeed.getUpdateIntervalMillis();
+        this.adaptive = scheduledFeed.isAdaptive();
+        this.refreshPeriodMillis = scheduledFeed.getRefreshPeriodMillis();
+        this.iterationCount = scheduledFeed.getIterationCount();
+        this.skippedCount = scheduledFeed.getSkippedCount();
+        this.rateLimitedCount = scheduledFeed.getRateLimitedCount();
+        this.lastRateLimitWaitMillis = scheduledFeed.getLastRateLimitWaitMillis();
+        this.lastLagMillis = scheduledFeed.getLastLagMillis();
+        this.maxLagMillis = scheduledFeed.getMaxLagMillis();
+    }
+
+    public String getGtfsRtUrl() {
+        return gtfsRtUrl;
+    }
+
+    public void setGtfsRtUrl(String gtfsRtUrl) {
+        this.gtfsRtUrl = gtfsRtUrl;
+    }
+
+    public long getUpdateIntervalMillis() {
+        return updateIntervalMillis;
+    }
+
+    public void setUpdateIntervalMillis(long updateIntervalMillis) {
+        this.updateIntervalMillis = updateIntervalMillis;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getRefreshPeriodMillis() {
+        return refreshPeriodMillis;
+    }
+
+    public void setRefreshPeriodMillis(long refreshPeriodMillis) {
+        this.refreshPeriodMillis = refreshPeriodMillis;
+    }
+
+    public long getIterationCount() {
+        return iterationCount;
+    }
+
+    public void setIterationCount(long iterationCount) {
+        this.iterationCount = iterationCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void setSkippedCount(long skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount;
+    }
+
+    public void setRateLimitedCount(long rateLimitedCount) {
+        this.rateLimitedCount = rateLimitedCount;
+    }
+
+    public long getLastRateLimitWaitMillis() {
+        return lastRateLimitWaitMillis;
+    }
+
+    public void setLastRateLimitWaitMillis(long lastRateLimitWaitMillis) {
+        this.lastRateLimitWaitMillis = lastRateLimitWaitMillis;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public void setLastLagMillis(long lastLagMillis) {
+        this.lastLagMillis = lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+}
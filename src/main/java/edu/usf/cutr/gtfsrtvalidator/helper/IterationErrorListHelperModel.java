@@ -27,6 +27,7 @@ public class IterationErrorListHelperModel {
     private String errorId;
     private String title;
     private int errorOccurrences;
+    private int overflowCount;
 
     public IterationErrorListHelperModel() {
         this.viewIterationErrorsModelList = new ArrayList<>();
@@ -63,4 +64,12 @@ public class IterationErrorListHelperModel {
     public void setErrorOccurrences(int errorOccurrences) {
         this.errorOccurrences = errorOccurrences;
     }
+
+    public int getOverflowCount() {
+        return overflowCount;
+    }
+
+    public void setOverflowCount(int overflowCount) {
+        this.overflowCount = overflowCount;
+    }
 }
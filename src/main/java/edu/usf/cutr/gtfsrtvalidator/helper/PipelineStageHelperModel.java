@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.helper;
+
+import edu.usf.cutr.gtfsrtvalidator.background.PipelineStage;
+
+public class PipelineStageHelperModel {
+
+    private String name;
+    private int workerCount;
+    private int queueCapacity;
+    private int queueDepth;
+    private int maxQueueDepth;
+    private long processedCount;
+    private long blockedCount;
+
+    public PipelineStageHelperModel() {
+    }
+
+    public PipelineStageHelperModel(PipelineStage<?> stage) {
+        this.name = stage.getName();
+        this.workerCount = stage.getWorkerCount();
+        this.queueCapacity = stage.getQueueCapacity();
+        this.queueDepth = stage.getQueueDepth();
+        this.maxQueueDepth = stage.getMaxQueueDepth();
+        this.processedCount = stage.getProcessedCount();
+        this.blockedCount = stage.getBlockedCount();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public void setMaxQueueDepth(int maxQueueDepth) {
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(long processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    public void setBlockedCount(long blockedCount) {
+        this.blockedCount = blockedCount;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Algorithms used to fingerprint GTFS-realtime payloads and GTFS zip files so we can tell whether they changed.  The
+ * name of the algorithm is stored along with each fingerprint, so fingerprints created with different algorithms are
+ * never compared with each other.
+ */
+public enum FingerprintStrategy {
+
+    /**
+     * 128-bit MD5 - the algorithm used before fingerprints were pluggable, so it is assumed for fingerprints stored without an algorithm name
+     */
+    MD5(Hashing.md5()),
+
+    /**
+     * 128-bit MurmurHash3 - a non-cryptographic hash that is several times faster than MD5, which is all we need to detect changes
+     */
+    MURMUR3_128(Hashing.murmur3_128());
+
+    private static volatile FingerprintStrategy mDefault = MURMUR3_128;
+
+    private final HashFunction mHashFunction;
+
+    FingerprintStrategy(HashFunction hashFunction) {
+        mHashFunction = hashFunction;
+    }
+
+    /**
+     * Returns the algorithm used for new fingerprints
+     *
+     * @return the algorithm used for new fingerprints
+     */
+    public static FingerprintStrategy getDefault() {
+        return mDefault;
+    }
+
+    /**
+     * Sets the algorithm used for new fingerprints
+     *
+     * @param strategy the algorithm used for new fingerprints
+     */
+    public static void setDefault(FingerprintStrategy strategy) {
+        mDefault = strategy;
+    }
+
+    /**
+     * Returns the algorithm with the given name, or MD5 if no name is provided (i.e., fingerprints stored before
+     * the algorithm name was stored)
+     *
+     * @param name name of the algorithm, or null
+     * @return the algorithm with the given name, or MD5 if no name is provided
+     */
+    public static FingerprintStrategy fromName(String name) {
+        return name == null ? MD5 : valueOf(name);
+    }
+
+    /**
+     * Returns a new hasher that can be fed the payload incrementally as it is read
+     *
+     * @return a new hasher that can be fed the payload incrementally as it is read
+     */
+    public Hasher newHasher() {
+        return mHashFunction.newHasher();
+    }
+
+    /**
+     * Returns the fingerprint of the given bytes
+     *
+     * @param bytes the bytes to fingerprint
+     * @return the fingerprint of the given bytes
+     */
+    public byte[] fingerprint(byte[] bytes) {
+        return mHashFunction.hashBytes(bytes).asBytes();
+    }
+
+    /**
+     * Returns the fingerprint of the given file
+     *
+     * @param file path of the file to fingerprint
+     * @return the fingerprint of the given file
+     * @throws IOException if the file can't be read
+     */
+    public byte[] fingerprint(String file) throws IOException {
+        Hasher hasher = newHasher();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        try (InputStream is = Files.newInputStream(Paths.get(file))) {
+            while ((read = is.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+            }
+        }
+        return hasher.hash().asBytes();
+    }
+}
@@ -17,6 +17,7 @@
 package edu.usf.cutr.gtfsrtvalidator.util;
 
 import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import org.locationtech.spatial4j.shape.Shape;
 import org.locationtech.spatial4j.shape.ShapeFactory;
 import org.locationtech.spatial4j.shape.SpatialRelation;
@@ -163,6 +164,17 @@ public class GtfsUtils {
         return bounds.relate(p).equals(SpatialRelation.CONTAINS);
     }
 
+    /**
+     * Returns true if the provided vehiclePosition is within the distance the provided shape index was built with, false if it is not
+     *
+     * @param vehiclePosition the vehiclePosition to test against the shape
+     * @param shape           index of the shape to test against the vehiclePosition
+     * @return true if the provided vehiclePosition is within the distance the provided shape index was built with, false if it is not
+     */
+    public static boolean isPositionWithinShape(GtfsRealtime.Position vehiclePosition, PolylineIndex shape) {
+        return shape.isWithinDistance(vehiclePosition.getLatitude(), vehiclePosition.getLongitude());
+    }
+
     /**
      * Returns the trip_id for the given TripUpdate if one exists, if not the entity ID is returned in the format
      * "trip_id 1234" or "entity ID 4321".
@@ -204,4 +216,56 @@ public class GtfsUtils {
             return "stop_id " + stopTimeUpdate.getStopId();
         }
     }
+
+    /**
+     * Returns an occurrence value that renders as {@link #getTripId(GtfsRealtime.FeedEntity, GtfsRealtime.TripUpdate)}
+     *
+     * @param entity     the entity that the TripUpdate belongs to
+     * @param tripUpdate the tripUpdate to get the ID for
+     * @return an occurrence value that renders as {@link #getTripId(GtfsRealtime.FeedEntity, GtfsRealtime.TripUpdate)}
+     */
+    public static OccurrenceModel.Value tripIdValue(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+        return builder -> builder.append(getTripId(entity, tripUpdate));
+    }
+
+    /**
+     * Returns an occurrence value that renders as {@link #getTripId(GtfsRealtime.FeedEntity, GtfsRealtime.TripDescriptor)}
+     *
+     * @param entity         the entity that the TripDescriptor belongs to
+     * @param tripDescriptor the tripDescriptor to get the ID for
+     * @return an occurrence value that renders as {@link #getTripId(GtfsRealtime.FeedEntity, GtfsRealtime.TripDescriptor)}
+     */
+    public static OccurrenceModel.Value tripIdValue(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripDescriptor tripDescriptor) {
+        return builder -> builder.append(getTripId(entity, tripDescriptor));
+    }
+
+    /**
+     * Returns an occurrence value that renders as {@link #getStopTimeUpdateId(GtfsRealtime.TripUpdate.StopTimeUpdate)}
+     *
+     * @param stopTimeUpdate the stop_time_update to generate the stop_sequence or stop_id text from
+     * @return an occurrence value that renders as {@link #getStopTimeUpdateId(GtfsRealtime.TripUpdate.StopTimeUpdate)}
+     */
+    public static OccurrenceModel.Value stopTimeUpdateIdValue(GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate) {
+        return builder -> builder.append(getStopTimeUpdateId(stopTimeUpdate));
+    }
+
+    /**
+     * Returns an occurrence value that renders as {@link #getVehicleAndTripIdText(Object)}
+     *
+     * @param entity Either the VehiclePosition or TripUpdate for which to generate the ID text
+     * @return an occurrence value that renders as {@link #getVehicleAndTripIdText(Object)}
+     */
+    public static OccurrenceModel.Value vehicleAndTripIdValue(Object entity) {
+        return builder -> builder.append(getVehicleAndTripIdText(entity));
+    }
+
+    /**
+     * Returns an occurrence value that renders as {@link #getVehicleAndRouteId(Object)}
+     *
+     * @param entity Either the VehiclePosition or TripUpdate for which to generate the ID text
+     * @return an occurrence value that renders as {@link #getVehicleAndRouteId(Object)}
+     */
+    public static OccurrenceModel.Value vehicleAndRouteIdValue(Object entity) {
+        return builder -> builder.append(getVehicleAndRouteId(entity));
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.util;
+
+import org.locationtech.spatial4j.distance.DistanceUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers whether a location is within a fixed distance of a polyline (e.g., a GTFS shapes.txt shape), without
+ * building a buffered polygon around it.  The polyline is projected onto a local plane in meters and its segments are
+ * registered in a grid of square cells as wide as the distance, so a location only needs to be checked against the
+ * segments in its own cell and the eight cells around it.
+ * <p>
+ * The projection is equirectangular around the polyline's mean latitude, which is accurate to well under a meter over
+ * the area a transit shape covers.
+ */
+public class PolylineIndex {
+
+    private static final double METERS_PER_DEGREE = DistanceUtils.DEG_TO_KM * 1000;
+
+    private final double mDistanceMeters;
+    private final double mDistanceSquared;
+    private final double mMetersPerDegreeLon;
+    // Projected polyline vertices, in meters
+    private final double[] mX;
+    private final double[] mY;
+    // Maps a grid cell key (see key()) to the indexes of the segments that pass through that cell
+    private final Map<Long, int[]> mCells = new HashMap<>();
+
+    /**
+     * @param latitudes      latitudes of the polyline vertices, in order
+     * @param longitudes     longitudes of the polyline vertices, in order
+     * @param distanceMeters distance from the polyline that is still considered to be on it
+     */
+    public PolylineIndex(double[] latitudes, double[] longitudes, double distanceMeters) {
+        if (latitudes.length == 0 || latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("A polyline needs at least one vertex, and the same number of latitudes and longitudes");
+        }
+        if (distanceMeters <= 0) {
+            throw new IllegalArgumentException("distanceMeters must be positive");
+        }
+        mDistanceMeters = distanceMeters;
+        mDistanceSquared = distanceMeters * distanceMeters;
+
+        double latitudeSum = 0;
+        for (double latitude : latitudes) {
+            latitudeSum += latitude;
+        }
+        mMetersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitudeSum / latitudes.length));
+
+        mX = new double[latitudes.length];
+        mY = new double[latitudes.length];
+        for (int i = 0; i < latitudes.length; i++) {
+            mX[i] = longitudes[i] * mMetersPerDegreeLon;
+            mY[i] = latitudes[i] * METERS_PER_DEGREE;
+        }
+
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        for (int segment = 0; segment < getSegmentCount(); segment++) {
+            addSegment(cells, segment);
+        }
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            List<Integer> segments = entry.getValue();
+            int[] indexes = new int[segments.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = segments.get(i);
+            }
+            mCells.put(entry.getKey(), indexes);
+        }
+    }
+
+    /**
+     * Returns true if the given location is within the distance this index was built with of the polyline, or false if it is not
+     *
+     * @param latitude  latitude of the location
+     * @param longitude longitude of the location
+     * @return true if the given location is within the distance this index was built with of the polyline, or false if it is not
+     */
+    public boolean isWithinDistance(double latitude, double longitude) {
+        double x = longitude * mMetersPerDegreeLon;
+        double y = latitude * METERS_PER_DEGREE;
+        long column = cell(x);
+        long row = cell(y);
+        for (long c = column - 1; c <= column + 1; c++) {
+            for (long r = row - 1; r <= row + 1; r++) {
+                int[] segments = mCells.get(key(c, r));
+                if (segments == null) {
+                    continue;
+                }
+                for (int segment : segments) {
+                    if (distanceSquared(segment, x, y) <= mDistanceSquared) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public double getDistanceMeters() {
+        return mDistanceMeters;
+    }
+
+    /**
+     * Returns the number of segments in the polyline - a polyline with a single vertex has one zero-length segment
+     *
+     * @return the number of segments in the polyline
+     */
+    public int getSegmentCount() {
+        return Math.max(1, mX.length - 1);
+    }
+
+    /**
+     * Registers a segment in every grid cell it passes through, one row of cells at a time
+     */
+    private void addSegment(Map<Long, List<Integer>> cells, int segment) {
+        double x0 = mX[segment];
+        double y0 = mY[segment];
+        double x1 = mX[end(segment)];
+        double y1 = mY[end(segment)];
+        long firstRow = cell(Math.min(y0, y1));
+        long lastRow = cell(Math.max(y0, y1));
+        for (long row = firstRow; row <= lastRow; row++) {
+            // Clip the segment to the horizontal band of this row to find the columns it passes through
+            double minX;
+            double maxX;
+            if (y0 == y1) {
+                minX = Math.min(x0, x1);
+                maxX = Math.max(x0, x1);
+            } else {
+                double bandBottom = Math.max(row * mDistanceMeters, Math.min(y0, y1));
+                double bandTop = Math.min((row + 1) * mDistanceMeters, Math.max(y0, y1));
+                double xAtBottom = x0 + (x1 - x0) * (bandBottom - y0) / (y1 - y0);
+                double xAtTop = x0 + (x1 - x0) * (bandTop - y0) / (y1 - y0);
+                minX = Math.min(xAtBottom, xAtTop);
+                maxX = Math.max(xAtBottom, xAtTop);
+            }
+            for (long column = cell(minX); column <= cell(maxX); column++) {
+                cells.computeIfAbsent(key(column, row), k -> new ArrayList<>()).add(segment);
+            }
+        }
+    }
+
+    /**
+     * Returns the squared distance in meters from a projected location to a segment
+     */
+    private double distanceSquared(int segment, double x, double y) {
+        double x0 = mX[segment];
+        double y0 = mY[segment];
+        double dx = mX[end(segment)] - x0;
+        double dy = mY[end(segment)] - y0;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            // Position of the closest point along the segment, from 0 (start) to 1 (end)
+            t = Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+        }
+        double ex = x0 + t * dx - x;
+        double ey = y0 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private int end(int segment) {
+        return Math.min(segment + 1, mX.length - 1);
+    }
+
+    private long cell(double meters) {
+        return (long) Math.floor(meters / mDistanceMeters);
+    }
+
+    private static long key(long column, long row) {
+        return (column << 32) ^ (row & 0xffffffffL);
+    }
+}
@@ -33,12 +33,13 @@ public class RuleUtils {
     /**
      * Adds occurrence for rule W009 - "schedule_relationship not populated" to the provided warnings list
      *
-     * @param occurrencePrefix prefix to use for the OccurrenceModel constructor
-     * @param warnings         list to add occurence for W009 to
+     * @param warnings  list to add occurence for W009 to
+     * @param template  template of the prefix to use for the OccurrenceModel constructor
+     * @param arguments values of the prefix to use for the OccurrenceModel constructor
      */
-    public static void addW009Occurrence(String occurrencePrefix, List<OccurrenceModel> warnings) {
-        OccurrenceModel om = new OccurrenceModel(occurrencePrefix);
+    public static void addW009Occurrence(List<OccurrenceModel> warnings, String template, Object... arguments) {
+        OccurrenceModel om = new OccurrenceModel(template, arguments);
         warnings.add(om);
-        _log.debug(om.getPrefix() + " " + W009.getOccurrenceSuffix());
+        _log.debug("{} {}", om, W009.getOccurrenceSuffix());
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.util;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids (0, 1, 2...) to strings such as GTFS trip_ids or stop_ids, in the order they are added, so
+ * data about them can be kept in arrays indexed by id.  Lookups use an open-addressing hash table of ids, so each
+ * entry costs a few ints on top of the string itself instead of a map entry and a boxed Integer.
+ * <p>
+ * Adding strings is not thread-safe, but once all strings have been added the dictionary can be read from any thread.
+ */
+public class StringDictionary {
+
+    public static final int NO_ID = -1;
+
+    private String[] mValues;
+    // Each slot is an id + 1, or 0 if the slot is empty
+    private int[] mSlots;
+    private int mSize = 0;
+
+    public StringDictionary() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of strings expected to be added, so the dictionary doesn't need to grow
+     */
+    public StringDictionary(int expectedSize) {
+        mValues = new String[Math.max(1, expectedSize)];
+        mSlots = new int[tableSize(expectedSize)];
+    }
+
+    /**
+     * Returns the id of the given string, adding it to the dictionary if it isn't in it yet
+     *
+     * @param value the string to get the id for
+     * @return the id of the given string
+     */
+    public int add(String value) {
+        int slot = findSlot(mSlots, value);
+        if (mSlots[slot] != 0) {
+            return mSlots[slot] - 1;
+        }
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, Math.max(1, mValues.length * 2));
+        }
+        mValues[mSize] = value;
+        mSlots[slot] = ++mSize;
+        if (mSize * 2 > mSlots.length) {
+            rehash();
+        }
+        return mSize - 1;
+    }
+
+    /**
+     * Returns the id of the given string, or NO_ID if it isn't in the dictionary
+     *
+     * @param value the string to get the id for
+     * @return the id of the given string, or NO_ID if it isn't in the dictionary
+     */
+    public int getId(String value) {
+        if (value == null) {
+            return NO_ID;
+        }
+        return mSlots[findSlot(mSlots, value)] - 1;
+    }
+
+    public boolean contains(String value) {
+        return getId(value) != NO_ID;
+    }
+
+    /**
+     * Returns the string with the given id
+     *
+     * @param id an id returned by add()
+     * @return the string with the given id
+     */
+    public String get(int id) {
+        if (id < 0 || id >= mSize) {
+            throw new IndexOutOfBoundsException("No string with id " + id);
+        }
+        return mValues[id];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Releases the room kept for strings that were never added
+     */
+    public void trim() {
+        mValues = Arrays.copyOf(mValues, mSize);
+    }
+
+    private int findSlot(int[] slots, String value) {
+        int mask = slots.length - 1;
+        int slot = mix(value.hashCode()) & mask;
+        while (slots[slot] != 0 && !mValues[slots[slot] - 1].equals(value)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] slots = new int[mSlots.length * 2];
+        for (int id = 0; id < mSize; id++) {
+            slots[findSlot(slots, mValues[id])] = id + 1;
+        }
+        mSlots = slots;
+    }
+
+    private static int tableSize(int expectedSize) {
+        // Keep the table at most half full
+        int size = 2;
+        while (size < expectedSize * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int mix(int hash) {
+        // Spread the bits of String.hashCode(), which are weak in the low bits for similar ids like "1001", "1002"
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -16,25 +16,30 @@
  */
 package edu.usf.cutr.gtfsrtvalidator.util;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.Month;
+import java.time.Year;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * Utility methods that help in processing timestamps
+ * Utility methods that help in processing timestamps.  All methods are thread-safe - times are parsed and formatted
+ * by hand instead of with DateFormat, and the UTC offsets of each time zone are cached between its transitions.
  */
 public class TimestampUtils {
 
     public static long MIN_POSIX_TIME = 1104537600L;  // Minimum valid time for a timestamp to be POSIX (Jan 1, 2005)
     public static long MAX_POSIX_TIME = 1991620134L;  // Maximum valid time for a timestamp to be POSIX (Feb 10, 2033)
 
-    private static DateFormat mDateFormat = new SimpleDateFormat("yyyyMMdd");
-    private static DateFormat mTimeFormat = new SimpleDateFormat("HH:mm:ss");
-    private static Pattern mTimePattern = Pattern.compile("^[0-2][0-9]:[0-5][0-9]:[0-5][0-9]$"); // Up to 29 hrs
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final int MAX_START_TIME_HOURS = 29; // GTFS-rt start_times are currently capped at 29 hrs
+
+    // Offsets of the time zones of the agencies we've seen, keyed by time zone ID
+    private static final Map<String, ZoneOffsets> mZoneOffsets = new ConcurrentHashMap<>();
 
     /**
      * Returns true if the timestamp is a valid POSIX time, false if it is not
@@ -65,7 +70,17 @@ public class TimestampUtils {
      * @return A converted version of time in 24hr clock time like "06:00:00"
      */
     public static String secondsAfterMidnightToClock(int secondsAfterMidnight) {
-        return String.format("%02d:%02d:%02d", secondsAfterMidnight / 3600, (secondsAfterMidnight / 60) % 60, secondsAfterMidnight % 60);
+        int hours = secondsAfterMidnight / 3600;
+        if (secondsAfterMidnight < 0 || hours > 99) {
+            return String.format("%02d:%02d:%02d", hours, (secondsAfterMidnight / 60) % 60, secondsAfterMidnight % 60);
+        }
+        char[] clock = new char[8];
+        writeTwoDigits(clock, 0, hours);
+        clock[2] = ':';
+        writeTwoDigits(clock, 3, (secondsAfterMidnight / 60) % 60);
+        clock[5] = ':';
+        writeTwoDigits(clock, 6, secondsAfterMidnight % 60);
+        return new String(clock);
     }
 
     /**
@@ -76,10 +91,50 @@ public class TimestampUtils {
      * @return A converted version of time in 24hr clock time like "06:00:00"
      */
     public static String posixToClock(long posixTime, TimeZone timeZone) {
-        if (timeZone != null) {
-            mTimeFormat.setTimeZone(timeZone);
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+        }
+        long localTime = posixTime + getZoneOffsets(timeZone).getOffsetSeconds(posixTime);
+        return secondsAfterMidnightToClock((int) Math.floorMod(localTime, SECONDS_PER_DAY));
+    }
+
+    /**
+     * Parses a time in HH:MM:SS format (e.g., a GTFS-rt start_time like "25:15:35"), where hours may exceed 24 if
+     * service goes into the next service day
+     *
+     * @param time the time to parse
+     * @return the number of seconds after midnight, or -1 if the time isn't in HH:MM:SS format
+     */
+    public static int parseClockTime(String time) {
+        if (time == null || time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+            return -1;
+        }
+        int hours = parseTwoDigits(time, 0);
+        int minutes = parseTwoDigits(time, 3);
+        int seconds = parseTwoDigits(time, 6);
+        if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return -1;
         }
-        return mTimeFormat.format(TimeUnit.SECONDS.toMillis(posixTime));
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Parses a date in YYYYMMDD format (e.g., a GTFS-rt start_date like "20170427")
+     *
+     * @param date the date to parse
+     * @return the date as an int in YYYYMMDD form, or -1 if the date isn't in YYYYMMDD format or doesn't exist
+     */
+    public static int parseDate(String date) {
+        if (date == null || date.length() != 8) {
+            return -1;
+        }
+        int year = parseTwoDigits(date, 0) * 100 + parseTwoDigits(date, 2);
+        int month = parseTwoDigits(date, 4);
+        int day = parseTwoDigits(date, 6);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+            return -1;
+        }
+        return year * 10000 + month * 100 + day;
     }
 
     /**
@@ -90,12 +145,8 @@ public class TimestampUtils {
      * @return true if the provided GTFS-rt start_time is in 25:15:35 format, false if it is not
      */
     public static boolean isValidTimeFormat(String startTime) {
-        if (startTime.length() != 8) {
-            return false;
-        }
-
-        Matcher m = mTimePattern.matcher(startTime);
-        return m.matches();
+        int seconds = parseClockTime(startTime);
+        return seconds >= 0 && seconds / 3600 <= MAX_START_TIME_HOURS;
     }
 
     /**
@@ -105,19 +156,68 @@ public class TimestampUtils {
      * @return true if the provided GTFS-rt start_date is in YYYYMMDD format, false if it is not
      */
     public static boolean isValidDateFormat(String startDate) {
-        mDateFormat.setLenient(false);
+        return parseDate(startDate) >= 0;
+    }
+
+    private static ZoneOffsets getZoneOffsets(TimeZone timeZone) {
+        return mZoneOffsets.computeIfAbsent(timeZone.getID(), id -> new ZoneOffsets(timeZone.toZoneId().getRules()));
+    }
+
+    /**
+     * Returns the value of the two digits at the given position, or -1 if they aren't both digits
+     */
+    private static int parseTwoDigits(String text, int start) {
+        char tens = text.charAt(start);
+        char ones = text.charAt(start + 1);
+        if (tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    private static void writeTwoDigits(char[] text, int start, int value) {
+        text[start] = (char) ('0' + value / 10);
+        text[start + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * The UTC offsets of a time zone.  The offset is looked up in the zone rules once per period between transitions
+     * (e.g., daylight saving time changes), and kept until a time outside that period is converted.
+     */
+    private static final class ZoneOffsets {
+
+        private final ZoneRules mRules;
+        private volatile Period mPeriod;
 
-        if (startDate.length() != 8) {
-            // SimpleDateFormat doesn't catch 2017011 as bad format, so check length first
-            return false;
+        ZoneOffsets(ZoneRules rules) {
+            mRules = rules;
         }
 
-        try {
-            mDateFormat.parse(startDate);
-        } catch (ParseException e) {
-            // Date format or value is invalid
-            return false;
+        int getOffsetSeconds(long posixTime) {
+            Period period = mPeriod;
+            if (period == null || posixTime < period.mStart || posixTime >= period.mEnd) {
+                Instant instant = Instant.ofEpochSecond(posixTime);
+                // previousTransition() and nextTransition() are exclusive, so this period includes posixTime
+                ZoneOffsetTransition previous = mRules.previousTransition(instant.plusSeconds(1));
+                ZoneOffsetTransition next = mRules.nextTransition(instant);
+                period = new Period(previous != null ? previous.toEpochSecond() : Long.MIN_VALUE,
+                        next != null ? next.toEpochSecond() : Long.MAX_VALUE,
+                        mRules.getOffset(instant).getTotalSeconds());
+                mPeriod = period;
+            }
+            return period.mOffsetSeconds;
+        }
+    }
+
+    private static final class Period {
+        private final long mStart;
+        private final long mEnd;
+        private final int mOffsetSeconds;
+
+        Period(long start, long end, int offsetSeconds) {
+            mStart = start;
+            mEnd = end;
+            mOffsetSeconds = offsetSeconds;
         }
-        return true;
     }
 }
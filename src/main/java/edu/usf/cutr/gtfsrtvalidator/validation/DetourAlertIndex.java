@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import com.google.transit.realtime.GtfsRealtime;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The trip_ids and route_ids that DETOUR service alerts in a GTFS-realtime feed iteration apply to.  The index is
+ * built once per feed iteration from the alerts' informed_entity trip descriptors, so rules can check whether a trip
+ * is on detour without scanning every alert for every vehicle.
+ */
+public class DetourAlertIndex {
+
+    private static final ValidationContext.Key<DetourAlertIndex> KEY = new ValidationContext.Key<>("DetourAlertIndex");
+
+    private final Set<String> mTripIds = new HashSet<>();
+    private final Set<String> mRouteIds = new HashSet<>();
+
+    /**
+     * @param feedMessage GTFS-rt feed to read DETOUR service alerts from
+     */
+    public DetourAlertIndex(GtfsRealtime.FeedMessage feedMessage) {
+        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
+            if (!entity.hasAlert()) {
+                continue;
+            }
+            GtfsRealtime.Alert alert = entity.getAlert();
+            if (!alert.hasEffect() || alert.getEffect() != GtfsRealtime.Alert.Effect.DETOUR) {
+                continue;
+            }
+            for (GtfsRealtime.EntitySelector entitySelector : alert.getInformedEntityList()) {
+                if (entitySelector.hasTrip()) {
+                    mTripIds.add(entitySelector.getTrip().getTripId());
+                    mRouteIds.add(entitySelector.getTrip().getRouteId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index for the feed iteration being validated, building it the first time any rule asks for it
+     *
+     * @param context the feed iteration being validated
+     * @return the index for the feed iteration being validated
+     */
+    public static DetourAlertIndex get(ValidationContext context) {
+        return context.getAttribute(KEY, c -> new DetourAlertIndex(c.getFeedMessage()));
+    }
+
+    /**
+     * Returns true if there is a DETOUR service alert for either the provided trip_id or the provided route_id, or false if there is not
+     *
+     * @param tripId  trip_id to check in the service alerts
+     * @param routeId route_id to check in the service alerts, or null if it isn't known
+     * @return true if there is a DETOUR service alert for either the provided trip_id or the provided route_id, or false if there is not
+     */
+    public boolean hasDetour(String tripId, String routeId) {
+        return mTripIds.contains(tripId) || (routeId != null && mRouteIds.contains(routeId));
+    }
+}
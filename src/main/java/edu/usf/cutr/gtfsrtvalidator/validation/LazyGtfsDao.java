@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import org.onebusaway.gtfs.model.*;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A GtfsDaoImpl handed to rules that still take the GTFS data as a parameter, which only asks the supplier for the
+ * actual GTFS data the first time the rule reads from it.  This way the GTFS data isn't read again after it was
+ * released just because a rule that never looks at it is run.
+ */
+class LazyGtfsDao extends GtfsDaoImpl {
+
+    private final Supplier<GtfsDaoImpl> mSupplier;
+    private volatile GtfsDaoImpl mGtfsData;
+
+    LazyGtfsDao(Supplier<GtfsDaoImpl> supplier) {
+        mSupplier = supplier;
+    }
+
+    private GtfsDaoImpl get() {
+        GtfsDaoImpl gtfsData = mGtfsData;
+        if (gtfsData == null) {
+            synchronized (this) {
+                if (mGtfsData == null) {
+                    mGtfsData = mSupplier.get();
+                }
+                gtfsData = mGtfsData;
+            }
+        }
+        return gtfsData;
+    }
+
+    @Override
+    public boolean isPackStopTimes() {
+        return get().isPackStopTimes();
+    }
+
+    @Override
+    public void setPackStopTimes(boolean packStopTimes) {
+        get().setPackStopTimes(packStopTimes);
+    }
+
+    @Override
+    public boolean isPackShapePoints() {
+        return get().isPackShapePoints();
+    }
+
+    @Override
+    public void setPackShapePoints(boolean packShapePoints) {
+        get().setPackShapePoints(packShapePoints);
+    }
+
+    @Override
+    public Agency getAgencyForId(String id) {
+        return get().getAgencyForId(id);
+    }
+
+    @Override
+    public Collection<Agency> getAllAgencies() {
+        return get().getAllAgencies();
+    }
+
+    @Override
+    public Collection<ServiceCalendarDate> getAllCalendarDates() {
+        return get().getAllCalendarDates();
+    }
+
+    @Override
+    public Collection<ServiceCalendar> getAllCalendars() {
+        return get().getAllCalendars();
+    }
+
+    @Override
+    public Collection<FareAttribute> getAllFareAttributes() {
+        return get().getAllFareAttributes();
+    }
+
+    @Override
+    public Collection<FareRule> getAllFareRules() {
+        return get().getAllFareRules();
+    }
+
+    @Override
+    public Collection<FeedInfo> getAllFeedInfos() {
+        return get().getAllFeedInfos();
+    }
+
+    @Override
+    public Collection<Frequency> getAllFrequencies() {
+        return get().getAllFrequencies();
+    }
+
+    @Override
+    public Collection<Route> getAllRoutes() {
+        return get().getAllRoutes();
+    }
+
+    @Override
+    public Collection<ShapePoint> getAllShapePoints() {
+        return get().getAllShapePoints();
+    }
+
+    @Override
+    public Collection<StopTime> getAllStopTimes() {
+        return get().getAllStopTimes();
+    }
+
+    @Override
+    public Collection<Stop> getAllStops() {
+        return get().getAllStops();
+    }
+
+    @Override
+    public Collection<Transfer> getAllTransfers() {
+        return get().getAllTransfers();
+    }
+
+    @Override
+    public Collection<Trip> getAllTrips() {
+        return get().getAllTrips();
+    }
+
+    @Override
+    public ServiceCalendarDate getCalendarDateForId(int id) {
+        return get().getCalendarDateForId(id);
+    }
+
+    @Override
+    public ServiceCalendar getCalendarForId(int id) {
+        return get().getCalendarForId(id);
+    }
+
+    @Override
+    public FareAttribute getFareAttributeForId(AgencyAndId id) {
+        return get().getFareAttributeForId(id);
+    }
+
+    @Override
+    public FareRule getFareRuleForId(int id) {
+        return get().getFareRuleForId(id);
+    }
+
+    @Override
+    public FeedInfo getFeedInfoForId(int id) {
+        return get().getFeedInfoForId(id);
+    }
+
+    @Override
+    public Frequency getFrequencyForId(int id) {
+        return get().getFrequencyForId(id);
+    }
+
+    @Override
+    public Collection<Pathway> getAllPathways() {
+        return get().getAllPathways();
+    }
+
+    @Override
+    public Pathway getPathwayForId(AgencyAndId id) {
+        return get().getPathwayForId(id);
+    }
+
+    @Override
+    public Route getRouteForId(AgencyAndId id) {
+        return get().getRouteForId(id);
+    }
+
+    @Override
+    public ShapePoint getShapePointForId(int id) {
+        return get().getShapePointForId(id);
+    }
+
+    @Override
+    public Stop getStopForId(AgencyAndId id) {
+        return get().getStopForId(id);
+    }
+
+    @Override
+    public StopTime getStopTimeForId(int id) {
+        return get().getStopTimeForId(id);
+    }
+
+    @Override
+    public Transfer getTransferForId(int id) {
+        return get().getTransferForId(id);
+    }
+
+    @Override
+    public Trip getTripForId(AgencyAndId id) {
+        return get().getTripForId(id);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getEntitiesByIdForEntityType(Class<K> keyType, Class<V> entityType) {
+        return get().getEntitiesByIdForEntityType(keyType, entityType);
+    }
+
+    @Override
+    public <T> Collection<T> getAllEntitiesForType(Class<T> type) {
+        return get().getAllEntitiesForType(type);
+    }
+
+    @Override
+    public <T> T getEntityForId(Class<T> type, Serializable id) {
+        return get().getEntityForId(type, id);
+    }
+
+    @Override
+    public void saveEntity(Object entity) {
+        get().saveEntity(entity);
+    }
+
+    @Override
+    public void updateEntity(Object entity) {
+        get().updateEntity(entity);
+    }
+
+    @Override
+    public void saveOrUpdateEntity(Object entity) {
+        get().saveOrUpdateEntity(entity);
+    }
+
+    @Override
+    public <T> void clearAllEntitiesForType(Class<T> type) {
+        get().clearAllEntitiesForType(type);
+    }
+
+    @Override
+    public <K extends Serializable, T extends IdentityBean<K>> void removeEntity(T entity) {
+        get().removeEntity(entity);
+    }
+
+    @Override
+    public void setGenerateIds(boolean generateIds) {
+        get().setGenerateIds(generateIds);
+    }
+
+    @Override
+    public Set<Class<?>> getEntityClasses() {
+        return get().getEntityClasses();
+    }
+
+    @Override
+    public void clear() {
+        get().clear();
+    }
+
+    @Override
+    public void open() {
+        get().open();
+    }
+
+    @Override
+    public void flush() {
+        get().flush();
+    }
+
+    @Override
+    public void close() {
+        get().close();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limits how many occurrences of each error or warning are kept for a single feed iteration.  The first occurrences
+ * up to the limit are kept, and the number of occurrences that were dropped is stored as the overflow count of the
+ * error's MessageLogModel, so a badly broken feed can't produce an unbounded number of occurrences.
+ * <p>
+ * Rules apply the limits while they run, through the OccurrenceList created by newList().  apply() then caps the lists
+ * that can still be longer - those merged from several chunks of a feed, and those of rules that don't use
+ * OccurrenceList.
+ */
+public class OccurrenceLimits {
+
+    public static final int DEFAULT_MAX_OCCURRENCES = 1000;
+
+    /**
+     * No limit for any rule
+     */
+    public static final OccurrenceLimits NONE = new OccurrenceLimits(0, Collections.emptyMap());
+
+    /**
+     * The ValidationContext attribute that holds the limits for a feed iteration
+     */
+    public static final ValidationContext.Key<OccurrenceLimits> KEY = new ValidationContext.Key<>("occurrenceLimits");
+
+    private final int mDefaultLimit;
+    private final Map<String, Integer> mRuleLimits;
+
+    /**
+     * @param defaultLimit maximum number of occurrences kept for each rule, or 0 for no limit
+     * @param ruleLimits   limits for specific rules, keyed by error ID (e.g., "E022"), that override the default limit
+     */
+    public OccurrenceLimits(int defaultLimit, Map<String, Integer> ruleLimits) {
+        if (defaultLimit < 0) {
+            throw new IllegalArgumentException("Occurrence limit must not be negative");
+        }
+        for (Integer limit : ruleLimits.values()) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Occurrence limit must not be negative");
+            }
+        }
+        mDefaultLimit = defaultLimit;
+        mRuleLimits = new HashMap<>(ruleLimits);
+    }
+
+    /**
+     * Creates limits from a default limit and a list of rule limits such as "E022=100,W009=50"
+     *
+     * @param defaultLimit maximum number of occurrences kept for each rule, or 0 for no limit
+     * @param ruleLimits   comma-separated list of errorId=limit pairs, or null if no rule has its own limit
+     * @return the limits
+     */
+    public static OccurrenceLimits parse(int defaultLimit, String ruleLimits) {
+        Map<String, Integer> limits = new HashMap<>();
+        if (ruleLimits != null && !ruleLimits.trim().isEmpty()) {
+            for (String ruleLimit : ruleLimits.split(",")) {
+                String[] parts = ruleLimit.split("=");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Occurrence limits must look like E022=100,W009=50 - found " + ruleLimit);
+                }
+                limits.put(parts[0].trim(), Integer.valueOf(parts[1].trim()));
+            }
+        }
+        return new OccurrenceLimits(defaultLimit, limits);
+    }
+
+    /**
+     * Returns the maximum number of occurrences kept for the given rule, or 0 if there is no limit
+     *
+     * @param errorId the error ID of the rule (e.g., "E022")
+     * @return the maximum number of occurrences kept for the given rule, or 0 if there is no limit
+     */
+    public int getLimit(String errorId) {
+        Integer limit = mRuleLimits.get(errorId);
+        return limit != null ? limit : mDefaultLimit;
+    }
+
+    /**
+     * Returns a new list for the occurrences of the given rule, which keeps at most the limit for the rule
+     *
+     * @param rule the rule the occurrences are for
+     * @return a new list for the occurrences of the given rule, which keeps at most the limit for the rule
+     */
+    public OccurrenceList newList(ValidationRule rule) {
+        return new OccurrenceList(rule, getLimit(rule.getErrorId()));
+    }
+
+    /**
+     * Drops the occurrences of the error list above the limit for its rule, and adds the number of dropped
+     * occurrences to the overflow count of its MessageLogModel
+     *
+     * @param errorList the errors or warnings for one rule found in a feed iteration
+     */
+    public void apply(ErrorListHelperModel errorList) {
+        int limit = getLimit(errorList.getErrorMessage().getValidationRule().getErrorId());
+        List<OccurrenceModel> occurrences = errorList.getOccurrenceList();
+        if (limit == 0 || occurrences.size() <= limit) {
+            return;
+        }
+        MessageLogModel errorMessage = errorList.getErrorMessage();
+        errorMessage.setOverflowCount(errorMessage.getOverflowCount() + occurrences.size() - limit);
+        // Copy, so the dropped occurrences aren't kept alive by a view of the full list
+        errorList.setOccurrenceList(new ArrayList<>(occurrences.subList(0, limit)));
+    }
+}
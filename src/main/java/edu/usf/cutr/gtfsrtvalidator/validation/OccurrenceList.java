@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+
+import java.util.ArrayList;
+
+/**
+ * The occurrences of one rule found by a visitor, bounded by the rule's occurrence limit.  Only the first occurrences
+ * up to the limit are kept, and the rest are only counted.  Rules should call shouldAdd() before building an
+ * occurrence, so occurrences above the limit (and their text) are never created.
+ */
+public class OccurrenceList extends ArrayList<OccurrenceModel> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ValidationRule mRule;
+    private final int mLimit;
+    private int mOverflowCount;
+
+    /**
+     * @param rule  the rule the occurrences are for
+     * @param limit maximum number of occurrences kept, or 0 for no limit
+     */
+    public OccurrenceList(ValidationRule rule, int limit) {
+        mRule = rule;
+        mLimit = limit;
+    }
+
+    /**
+     * Returns true if no more occurrences will be kept in this list
+     *
+     * @return true if no more occurrences will be kept in this list
+     */
+    public boolean isFull() {
+        return mLimit != 0 && size() >= mLimit;
+    }
+
+    /**
+     * Returns true if the next occurrence of the rule should be built and added to this list.  If the list is full,
+     * the occurrence is counted as an overflow instead and false is returned.
+     *
+     * @return true if the next occurrence of the rule should be built and added to this list
+     */
+    public boolean shouldAdd() {
+        if (isFull()) {
+            mOverflowCount++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the occurrence if the list isn't full, or counts it as an overflow if it is
+     *
+     * @param occurrence the occurrence to add
+     * @return true if the occurrence was added
+     */
+    @Override
+    public boolean add(OccurrenceModel occurrence) {
+        if (isFull()) {
+            mOverflowCount++;
+            return false;
+        }
+        return super.add(occurrence);
+    }
+
+    /**
+     * Returns the number of occurrences that were counted but not kept because the list was full
+     *
+     * @return the number of occurrences that were counted but not kept because the list was full
+     */
+    public int getOverflowCount() {
+        return mOverflowCount;
+    }
+
+    /**
+     * Returns the occurrences as the results of the rule, with the number of occurrences that weren't kept as the
+     * overflow count of the message
+     *
+     * @return the occurrences as the results of the rule
+     */
+    public ErrorListHelperModel toErrorList() {
+        MessageLogModel messageLogModel = new MessageLogModel(mRule);
+        messageLogModel.setOverflowCount(mOverflowCount);
+        return new ErrorListHelperModel(messageLogModel, this);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsFeedData;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The inputs shared by all rules while a single GTFS-realtime feed iteration is validated.  Pre-pass visitors can also
+ * leave what they learned about the whole feed here as attributes, for the visitors that run after them.
+ */
+public class ValidationContext {
+
+    private final long mCurrentTimeMillis;
+    private final Supplier<GtfsDaoImpl> mGtfsData;
+    private final GtfsMetadata mGtfsMetadata;
+    private final GtfsRealtime.FeedMessage mFeedMessage;
+    private final GtfsRealtime.FeedMessage mPreviousFeedMessage;
+    private final Map<Key<?>, Object> mAttributes = new ConcurrentHashMap<>();
+
+    /**
+     * @param currentTimeMillis   the current system time, in milliseconds
+     * @param gtfsData            GTFS schedule data
+     * @param gtfsMetadata        Data structures that contain processed information about the GTFS data
+     * @param feedMessage         Current GTFS-rt data that was most recently captured
+     * @param previousFeedMessage Previous GTFS-rt data from the previous iteration of the feed, or null if there isn't one
+     */
+    public ValidationContext(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
+        this(currentTimeMillis, () -> gtfsData, gtfsMetadata, feedMessage, previousFeedMessage);
+    }
+
+    /**
+     * @param currentTimeMillis   the current system time, in milliseconds
+     * @param gtfsFeedData        GTFS schedule data and metadata - the schedule data is only read (again, if it was released) by rules that ask for it
+     * @param feedMessage         Current GTFS-rt data that was most recently captured
+     * @param previousFeedMessage Previous GTFS-rt data from the previous iteration of the feed, or null if there isn't one
+     */
+    public ValidationContext(long currentTimeMillis, GtfsFeedData gtfsFeedData, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
+        this(currentTimeMillis, gtfsFeedData::getGtfsData, gtfsFeedData.getGtfsMetadata(), feedMessage, previousFeedMessage);
+    }
+
+    private ValidationContext(long currentTimeMillis, Supplier<GtfsDaoImpl> gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
+        mCurrentTimeMillis = currentTimeMillis;
+        mGtfsData = gtfsData;
+        mGtfsMetadata = gtfsMetadata;
+        mFeedMessage = feedMessage;
+        mPreviousFeedMessage = previousFeedMessage;
+    }
+
+    public long getCurrentTimeMillis() {
+        return mCurrentTimeMillis;
+    }
+
+    /**
+     * Returns the GTFS schedule data.  Rules should use getGtfsMetadata() where they can, as the GTFS data may have
+     * been released from memory after the metadata was built, and need to be read again.
+     *
+     * @return the GTFS schedule data
+     */
+    public GtfsDaoImpl getGtfsData() {
+        return mGtfsData.get();
+    }
+
+    public GtfsMetadata getGtfsMetadata() {
+        return mGtfsMetadata;
+    }
+
+    public GtfsRealtime.FeedMessage getFeedMessage() {
+        return mFeedMessage;
+    }
+
+    public GtfsRealtime.FeedMessage getPreviousFeedMessage() {
+        return mPreviousFeedMessage;
+    }
+
+    /**
+     * Returns a new list for the occurrences of the given rule, which keeps at most the occurrence limit for the rule
+     * (set as the OccurrenceLimits.KEY attribute - no limit if it isn't set)
+     *
+     * @param rule the rule the occurrences are for
+     * @return a new list for the occurrences of the given rule, which keeps at most the occurrence limit for the rule
+     */
+    public OccurrenceList newOccurrenceList(ValidationRule rule) {
+        OccurrenceLimits limits = getAttribute(OccurrenceLimits.KEY);
+        return (limits != null ? limits : OccurrenceLimits.NONE).newList(rule);
+    }
+
+    /**
+     * Stores a value for the rest of this feed iteration
+     *
+     * @param key   the key to store the value under
+     * @param value the value to store
+     * @param <T>   type of the value
+     */
+    public <T> void setAttribute(Key<T> key, T value) {
+        mAttributes.put(key, value);
+    }
+
+    /**
+     * Returns the value stored under the given key, or null if there isn't one
+     *
+     * @param key the key the value was stored under
+     * @param <T> type of the value
+     * @return the value stored under the given key, or null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(Key<T> key) {
+        return (T) mAttributes.get(key);
+    }
+
+    /**
+     * Returns the value stored under the given key, building and storing it first if there isn't one yet.  The value is
+     * built at most once per feed iteration, even if visitors on several threads ask for it at the same time.
+     *
+     * @param key     the key the value is stored under
+     * @param factory builds the value from this context the first time it is needed
+     * @param <T>     type of the value
+     * @return the value stored under the given key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(Key<T> key, Function<ValidationContext, T> factory) {
+        return (T) mAttributes.computeIfAbsent(key, k -> factory.apply(this));
+    }
+
+    /**
+     * Identifies a value stored in the context.  Keys are compared by identity, so each rule should keep its keys in
+     * constants.
+     *
+     * @param <T> type of the value stored under this key
+     */
+    public static final class Key<T> {
+
+        private final String mName;
+
+        public Key(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+}
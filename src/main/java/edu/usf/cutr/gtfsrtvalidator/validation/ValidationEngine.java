@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs a set of rules on a GTFS-realtime feed.  Rules that implement EntityVisitorValidator are run together in a
+ * single pass over the feed - each entity is read once and handed to the visitors of all rules.  Any other rules are
+ * run on their own through validate().
+ * <p>
+ * Visitor rules that need to see the whole feed can provide a pre-pass visitor, which is run over the whole feed
+ * before any other visitor sees an entity.
+ * <p>
+ * In parallel mode each rule is instead run as its own task on a ForkJoinPool - each visitor rule walks the feed on its
+ * own, so a large feed takes about as long as the slowest rule instead of all rules together.  In partitioned mode the
+ * feed entities are split into chunks, and each chunk is run through the visitors of all rules as its own task, so a
+ * single expensive rule is also spread over several threads.  The occurrences found in each chunk are merged in chunk
+ * order.  In all modes, results are returned in the order the rules were given to the engine.
+ * <p>
+ * The engine doesn't keep any state between calls to validate(), so it can be shared by threads validating different
+ * feeds.
+ */
+public class ValidationEngine {
+
+    private final List<FeedEntityValidator> mRules;
+    private final ForkJoinPool mPool;
+    private final int mChunkSize;
+
+    /**
+     * Creates an engine that runs all rules in a single pass over the feed, on the calling thread
+     *
+     * @param rules the rules to run, in the order their results should be returned
+     */
+    public ValidationEngine(List<? extends FeedEntityValidator> rules) {
+        this(rules, null);
+    }
+
+    /**
+     * @param rules the rules to run, in the order their results should be returned
+     * @param pool  pool to run the rules on in parallel, or null to run all rules in a single pass on the calling thread
+     */
+    public ValidationEngine(List<? extends FeedEntityValidator> rules, ForkJoinPool pool) {
+        this(rules, pool, 0);
+    }
+
+    /**
+     * @param rules     the rules to run, in the order their results should be returned
+     * @param pool      pool to run the rules on in parallel, or null to run all rules in a single pass on the calling thread
+     * @param chunkSize number of entities in each chunk the feed is split into, or 0 to run each rule on the whole feed.
+     *                  Only used if a pool is provided.
+     */
+    public ValidationEngine(List<? extends FeedEntityValidator> rules, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize must not be negative");
+        }
+        mRules = new ArrayList<>(rules);
+        mPool = pool;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Runs all rules on the feed in the given context
+     *
+     * @param context the feed iteration to validate and the GTFS data to validate it against
+     * @return the errors and warnings generated by all rules, in the order the rules were given to the engine
+     */
+    public List<ErrorListHelperModel> validate(ValidationContext context) {
+        List<List<ErrorListHelperModel>> prePassResults = prePass(context);
+
+        List<List<ErrorListHelperModel>> ruleResults;
+        if (mPool == null) {
+            ruleResults = validateSinglePass(context);
+        } else if (mChunkSize > 0) {
+            ruleResults = validatePartitioned(context);
+        } else {
+            ruleResults = validateInParallel(context);
+        }
+
+        List<ErrorListHelperModel> errors = new ArrayList<>();
+        for (int i = 0; i < mRules.size(); i++) {
+            errors.addAll(prePassResults.get(i));
+            errors.addAll(ruleResults.get(i));
+        }
+        return errors;
+    }
+
+    /**
+     * Runs the pre-pass visitors of all rules over the whole feed
+     *
+     * @param context the feed iteration being validated
+     * @return the results of the pre-pass visitor of each rule (empty for rules that don't have one)
+     */
+    private List<List<ErrorListHelperModel>> prePass(ValidationContext context) {
+        List<EntityVisitor> visitors = new ArrayList<>();
+        EntityVisitor[] visitorForRule = new EntityVisitor[mRules.size()];
+        for (int i = 0; i < mRules.size(); i++) {
+            if (mRules.get(i) instanceof EntityVisitorValidator) {
+                visitorForRule[i] = ((EntityVisitorValidator) mRules.get(i)).newPrePassVisitor(context);
+                if (visitorForRule[i] != null) {
+                    visitors.add(visitorForRule[i]);
+                }
+            }
+        }
+        if (!visitors.isEmpty()) {
+            GtfsRealtime.FeedMessage feedMessage = context.getFeedMessage();
+            visit(feedMessage.getHeader(), feedMessage.getEntityList(), visitors);
+        }
+        List<List<ErrorListHelperModel>> results = new ArrayList<>();
+        for (EntityVisitor visitor : visitorForRule) {
+            results.add(visitor != null ? nonNull(visitor.getResults()) : Collections.emptyList());
+        }
+        return results;
+    }
+
+    private List<List<ErrorListHelperModel>> validateSinglePass(ValidationContext context) {
+        List<EntityVisitor> visitors = new ArrayList<>();
+        EntityVisitor[] visitorForRule = new EntityVisitor[mRules.size()];
+        for (int i = 0; i < mRules.size(); i++) {
+            if (mRules.get(i) instanceof EntityVisitorValidator) {
+                visitorForRule[i] = ((EntityVisitorValidator) mRules.get(i)).newVisitor(context);
+                visitors.add(visitorForRule[i]);
+            }
+        }
+
+        if (!visitors.isEmpty()) {
+            GtfsRealtime.FeedMessage feedMessage = context.getFeedMessage();
+            visit(feedMessage.getHeader(), feedMessage.getEntityList(), visitors);
+        }
+
+        List<List<ErrorListHelperModel>> results = new ArrayList<>();
+        for (int i = 0; i < mRules.size(); i++) {
+            if (visitorForRule[i] != null) {
+                results.add(nonNull(visitorForRule[i].getResults()));
+            } else {
+                results.add(validateRule(mRules.get(i), context));
+            }
+        }
+        return results;
+    }
+
+    private List<List<ErrorListHelperModel>> validateInParallel(ValidationContext context) {
+        List<ForkJoinTask<List<ErrorListHelperModel>>> tasks = new ArrayList<>();
+        for (FeedEntityValidator rule : mRules) {
+            tasks.add(mPool.submit(() -> validateRule(rule, context)));
+        }
+        // Join in the order the rules were given, so results don't depend on which rule finished first
+        List<List<ErrorListHelperModel>> results = new ArrayList<>();
+        for (ForkJoinTask<List<ErrorListHelperModel>> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    private List<List<ErrorListHelperModel>> validatePartitioned(ValidationContext context) {
+        GtfsRealtime.FeedMessage feedMessage = context.getFeedMessage();
+        List<GtfsRealtime.FeedEntity> entities = feedMessage.getEntityList();
+
+        // Rules that don't use visitors can't be split, so they are run on the whole feed alongside the chunks
+        List<ForkJoinTask<List<ErrorListHelperModel>>> legacyTasks = new ArrayList<>();
+        for (FeedEntityValidator rule : mRules) {
+            legacyTasks.add(rule instanceof EntityVisitorValidator ? null : mPool.submit(() -> validateRule(rule, context)));
+        }
+
+        List<ForkJoinTask<List<List<ErrorListHelperModel>>>> chunkTasks = new ArrayList<>();
+        int chunkCount = Math.max(1, (entities.size() + mChunkSize - 1) / mChunkSize);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            List<GtfsRealtime.FeedEntity> chunkEntities = entities.subList(chunk * mChunkSize, Math.min(entities.size(), (chunk + 1) * mChunkSize));
+            // The header is part of the first chunk, so header checks are only done once
+            GtfsRealtime.FeedHeader header = chunk == 0 ? feedMessage.getHeader() : null;
+            chunkTasks.add(mPool.submit(() -> validateChunk(context, header, chunkEntities)));
+        }
+
+        // Join in order, so the merged occurrences are in the same order as in the feed
+        List<List<List<ErrorListHelperModel>>> chunkResults = new ArrayList<>();
+        for (ForkJoinTask<List<List<ErrorListHelperModel>>> task : chunkTasks) {
+            chunkResults.add(task.join());
+        }
+        List<List<ErrorListHelperModel>> results = new ArrayList<>();
+        for (int i = 0; i < mRules.size(); i++) {
+            if (legacyTasks.get(i) != null) {
+                results.add(legacyTasks.get(i).join());
+            } else {
+                List<List<ErrorListHelperModel>> parts = new ArrayList<>();
+                for (List<List<ErrorListHelperModel>> chunkResult : chunkResults) {
+                    parts.add(chunkResult.get(i));
+                }
+                results.add(merge(parts));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs the entities in one chunk of the feed through new visitors of all visitor rules
+     *
+     * @param context  the feed iteration being validated
+     * @param header   the feed header, or null if this isn't the first chunk
+     * @param entities the entities in this chunk
+     * @return the results of each rule for this chunk (empty for rules that don't use visitors)
+     */
+    private List<List<ErrorListHelperModel>> validateChunk(ValidationContext context, GtfsRealtime.FeedHeader header, List<GtfsRealtime.FeedEntity> entities) {
+        List<EntityVisitor> visitors = new ArrayList<>();
+        EntityVisitor[] visitorForRule = new EntityVisitor[mRules.size()];
+        for (int i = 0; i < mRules.size(); i++) {
+            if (mRules.get(i) instanceof EntityVisitorValidator) {
+                visitorForRule[i] = ((EntityVisitorValidator) mRules.get(i)).newVisitor(context);
+                visitors.add(visitorForRule[i]);
+            }
+        }
+        visit(header, entities, visitors);
+        List<List<ErrorListHelperModel>> results = new ArrayList<>();
+        for (EntityVisitor visitor : visitorForRule) {
+            results.add(visitor != null ? nonNull(visitor.getResults()) : Collections.emptyList());
+        }
+        return results;
+    }
+
+    /**
+     * Merges the results of the same rule for several chunks of a feed - occurrences of the same error or warning are
+     * combined into one list, in chunk order, and their overflow counts are added up
+     *
+     * @param parts the results of the rule for each chunk, in chunk order
+     * @return the merged results
+     */
+    private static List<ErrorListHelperModel> merge(List<List<ErrorListHelperModel>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        Map<String, ErrorListHelperModel> merged = new LinkedHashMap<>();
+        for (List<ErrorListHelperModel> part : parts) {
+            for (ErrorListHelperModel errorList : part) {
+                String errorId = errorList.getErrorMessage().getValidationRule().getErrorId();
+                ErrorListHelperModel mergedList = merged.get(errorId);
+                if (mergedList == null) {
+                    merged.put(errorId, new ErrorListHelperModel(errorList.getErrorMessage(), new ArrayList<>(errorList.getOccurrenceList())));
+                } else {
+                    mergedList.getOccurrenceList().addAll(errorList.getOccurrenceList());
+                    MessageLogModel errorMessage = mergedList.getErrorMessage();
+                    errorMessage.setOverflowCount(errorMessage.getOverflowCount() + errorList.getErrorMessage().getOverflowCount());
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static List<ErrorListHelperModel> validateRule(FeedEntityValidator rule, ValidationContext context) {
+        if (rule instanceof EntityVisitorValidator) {
+            EntityVisitor visitor = ((EntityVisitorValidator) rule).newVisitor(context);
+            GtfsRealtime.FeedMessage feedMessage = context.getFeedMessage();
+            visit(feedMessage.getHeader(), feedMessage.getEntityList(), Collections.singletonList(visitor));
+            return nonNull(visitor.getResults());
+        }
+        // The GTFS data is only read (again, if it was released) if the rule actually uses it
+        return nonNull(rule.validate(context.getCurrentTimeMillis(), new LazyGtfsDao(context::getGtfsData), context.getGtfsMetadata(),
+                context.getFeedMessage(), context.getPreviousFeedMessage()));
+    }
+
+    private static List<ErrorListHelperModel> nonNull(List<ErrorListHelperModel> errors) {
+        return errors != null ? errors : Collections.emptyList();
+    }
+
+    /**
+     * Hands the header and entities to the visitors
+     *
+     * @param header   the feed header, or null if the header shouldn't be visited
+     * @param entities the entities to visit, in feed order
+     * @param visitors the visitors to hand the header and entities to
+     */
+    private static void visit(GtfsRealtime.FeedHeader header, List<GtfsRealtime.FeedEntity> entities, List<EntityVisitor> visitors) {
+        if (header != null) {
+            for (EntityVisitor visitor : visitors) {
+                visitor.onHeader(header);
+            }
+        }
+        for (GtfsRealtime.FeedEntity entity : entities) {
+            for (EntityVisitor visitor : visitors) {
+                visitor.onEntity(entity);
+            }
+            if (entity.hasTripUpdate()) {
+                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+                for (EntityVisitor visitor : visitors) {
+                    visitor.onTripUpdate(entity, tripUpdate);
+                }
+            }
+            if (entity.hasVehicle()) {
+                GtfsRealtime.VehiclePosition vehiclePosition = entity.getVehicle();
+                for (EntityVisitor visitor : visitors) {
+                    visitor.onVehicle(entity, vehiclePosition);
+                }
+            }
+            if (entity.hasAlert()) {
+                GtfsRealtime.Alert alert = entity.getAlert();
+                for (EntityVisitor visitor : visitors) {
+                    visitor.onAlert(entity, alert);
+                }
+            }
+        }
+    }
+}
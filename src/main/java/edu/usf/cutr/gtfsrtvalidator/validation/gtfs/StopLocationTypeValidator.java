@@ -45,7 +45,7 @@ public class StopLocationTypeValidator implements GtfsFeedValidator {
                 checkedStops.add(stopTime.getStop());
 
                 if (stopTime.getStop().getLocationType() != 0) {
-                    OccurrenceModel om = new OccurrenceModel("stop_id " + stopTime.getStop().getId());
+                    OccurrenceModel om = new OccurrenceModel("stop_id {}", stopTime.getStop().getId());
                     occurrenceList.add(om);
                 }
             }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation.interfaces;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receives the parts of a GTFS-realtime feed as the validation engine walks it.  The header is visited first, and
+ * then each entity in feed order - for each entity, onEntity() is called first, followed by onTripUpdate(),
+ * onVehicle() and onAlert() for the parts the entity has.  A visitor only needs to implement the callbacks for the
+ * parts its rule checks.
+ * <p>
+ * A new visitor is created for each feed iteration, so visitors can keep their occurrences and any other state in
+ * fields.
+ * <p>
+ * When the engine splits a large feed into chunks, a new visitor is created for each chunk and only the visitor of the
+ * first chunk is handed the header.  Anything the other callbacks need from the header should therefore be read from
+ * the ValidationContext, and checks that need to see all entities together belong in a pre-pass visitor (see
+ * EntityVisitorValidator.newPrePassVisitor()).
+ */
+public interface EntityVisitor {
+
+    /**
+     * A visitor that doesn't check anything, for rules that do all their work in a pre-pass visitor
+     */
+    EntityVisitor NONE = Collections::emptyList;
+
+    default void onHeader(GtfsRealtime.FeedHeader header) {
+    }
+
+    default void onEntity(GtfsRealtime.FeedEntity entity) {
+    }
+
+    default void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+    }
+
+    default void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+    }
+
+    default void onAlert(GtfsRealtime.FeedEntity entity, GtfsRealtime.Alert alert) {
+    }
+
+    /**
+     * Called after all entities have been visited.  Rules that need to look at the feed as a whole can do those
+     * checks here.
+     *
+     * @return a list of errors and warnings that was generated by the rule
+     */
+    List<ErrorListHelperModel> getResults();
+}
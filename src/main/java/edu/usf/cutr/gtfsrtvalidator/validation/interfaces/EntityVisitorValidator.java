@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.validation.interfaces;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationEngine;
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rule that checks a feed through an EntityVisitor, so the ValidationEngine can run it in the same pass over the
+ * feed entities as all other visitor rules.  validate() is still available and runs the rule on its own.
+ */
+public interface EntityVisitorValidator extends FeedEntityValidator {
+
+    /**
+     * Returns a new visitor that checks this rule for one feed iteration
+     *
+     * @param context the feed iteration being validated and the GTFS data it's validated against
+     * @return a new visitor that checks this rule for one feed iteration
+     */
+    EntityVisitor newVisitor(ValidationContext context);
+
+    /**
+     * Returns a new visitor that sees the whole feed before the visitors from newVisitor(), or null if this rule doesn't
+     * need one.  Even when the engine splits the feed into chunks, the pre-pass visitor is handed all entities, so
+     * rules that compare entities with each other should do so here.  Its results are reported before the results of
+     * the other visitors of this rule, and anything it learns about the feed can be left for those visitors with
+     * ValidationContext.setAttribute().
+     *
+     * @param context the feed iteration being validated and the GTFS data it's validated against
+     * @return a new visitor that sees the whole feed before the visitors from newVisitor(), or null if this rule doesn't need one
+     */
+    default EntityVisitor newPrePassVisitor(ValidationContext context) {
+        return null;
+    }
+
+    @Override
+    default List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
+        ValidationContext context = new ValidationContext(currentTimeMillis, gtfsData, gtfsMetadata, feedMessage, previousFeedMessage);
+        return new ValidationEngine(Collections.singletonList(this)).validate(context);
+    }
+}
@@ -18,22 +18,23 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
-import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
 
 import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.W003;
 
-public class CrossFeedDescriptorValidator implements FeedEntityValidator {
+public class CrossFeedDescriptorValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(CrossFeedDescriptorValidator.class);
 
@@ -42,67 +43,74 @@ public class CrossFeedDescriptorValidator implements FeedEntityValidator {
      * Description: If both vehicle positions and trip updates are provided, VehicleDescriptor or TripDescriptor values should match between the two feeds.
      */
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<GtfsRealtime.TripUpdate> tripUpdates = new ArrayList<>();
-        List<GtfsRealtime.VehiclePosition> vehiclePositions = new ArrayList<>();
-        List<GtfsRealtime.Alert> alerts = new ArrayList<>();
-
-        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-            if (entity.hasTripUpdate()) {
-                tripUpdates.add(entity.getTripUpdate());
-            }
-            if (entity.hasVehicle()) {
-                vehiclePositions.add(entity.getVehicle());
-            }
-            if (entity.hasAlert()) {
-                alerts.add(entity.getAlert());
-            }
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return EntityVisitor.NONE;
+    }
+
+    @Override
+    public EntityVisitor newPrePassVisitor(ValidationContext context) {
+        // W003 compares entities with each other, so it needs to see the whole feed
+        return new Visitor(context);
+    }
+
+    private static class Visitor implements EntityVisitor {
+
+        private final List<GtfsRealtime.TripUpdate> mTripUpdates = new ArrayList<>();
+        private final List<GtfsRealtime.VehiclePosition> mVehiclePositions = new ArrayList<>();
+        // trip_ids and vehicle IDs of each feed, so each entity is matched with a hash lookup instead of a scan of the other feed
+        private final Set<String> mTripUpdateTripIds = new HashSet<>();
+        private final Set<String> mTripUpdateVehicleIds = new HashSet<>();
+        private final Set<String> mVehiclePositionTripIds = new HashSet<>();
+        private final Set<String> mVehiclePositionVehicleIds = new HashSet<>();
+        private final OccurrenceList mOccurrences;
+
+        Visitor(ValidationContext context) {
+            mOccurrences = context.newOccurrenceList(W003);
         }
 
-        List<OccurrenceModel> occurrences = new ArrayList<>();
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            mTripUpdates.add(tripUpdate);
+            mTripUpdateTripIds.add(tripUpdate.getTrip().getTripId());
+            mTripUpdateVehicleIds.add(tripUpdate.getVehicle().getId());
+        }
 
-        // FIXME - Should be optimized since this would be costly with a higher number of feeds
-        if (!tripUpdates.isEmpty() && !vehiclePositions.isEmpty()) {
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+            mVehiclePositions.add(vehiclePosition);
+            mVehiclePositionTripIds.add(vehiclePosition.getTrip().getTripId());
+            mVehiclePositionVehicleIds.add(vehiclePosition.getVehicle().getId());
+        }
 
-            //Checks if all TripUpdate object has a matching tripId in any of the VehicleUpdate objects
-            for (GtfsRealtime.TripUpdate trip : tripUpdates) {
-                boolean matchingTrips = false;
-                for (GtfsRealtime.VehiclePosition vehiclePosition : vehiclePositions) {
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            if (!mTripUpdates.isEmpty() && !mVehiclePositions.isEmpty()) {
+                /*
+                 * A TripUpdate and VehiclePosition match if they have the same trip_id or the same vehicle ID.  Unset
+                 * IDs are empty strings, so (as before) entities without a trip_id match each other.
+                 */
 
-                    if (Objects.equals(trip.getTrip().getTripId(), vehiclePosition.getTrip().getTripId())) {
-                        matchingTrips = true;
-                        break;
-                    } else if (Objects.equals(trip.getVehicle().getId(), vehiclePosition.getVehicle().getId())) {
-                        matchingTrips = true;
-                        break;
+                //Checks if all TripUpdate object has a matching tripId in any of the VehicleUpdate objects
+                for (GtfsRealtime.TripUpdate trip : mTripUpdates) {
+                    if (!mVehiclePositionTripIds.contains(trip.getTrip().getTripId()) &&
+                            !mVehiclePositionVehicleIds.contains(trip.getVehicle().getId()) && mOccurrences.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("trip_id {}", trip.getTrip().getTripId());
+                        mOccurrences.add(om);
+                        _log.debug("{} {}", om, W003.getOccurrenceSuffix());
                     }
                 }
-                if (!matchingTrips) {
-                    OccurrenceModel om = new OccurrenceModel("trip_id " + trip.getTrip().getTripId());
-                    occurrences.add(om);
-                    _log.debug(om.getPrefix() + " " + W003.getOccurrenceSuffix());
-                }
-            }
 
-            //Checks if all VehicleUpdate object has a matching tripId in any of the TripUpdate objects
-            for (GtfsRealtime.VehiclePosition vehiclePosition : vehiclePositions) {
-                boolean matchingTrips = false;
-                for (GtfsRealtime.TripUpdate trip : tripUpdates) {
-                    if (Objects.equals(trip.getTrip().getTripId(), vehiclePosition.getTrip().getTripId())) {
-                        matchingTrips = true;
-                        break;
-                    } else if (Objects.equals(trip.getVehicle().getId(), vehiclePosition.getVehicle().getId())) {
-                        matchingTrips = true;
-                        break;
+                //Checks if all VehicleUpdate object has a matching tripId in any of the TripUpdate objects
+                for (GtfsRealtime.VehiclePosition vehiclePosition : mVehiclePositions) {
+                    if (!mTripUpdateTripIds.contains(vehiclePosition.getTrip().getTripId()) &&
+                            !mTripUpdateVehicleIds.contains(vehiclePosition.getVehicle().getId()) && mOccurrences.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("trip_id {}", vehiclePosition.getTrip().getTripId());
+                        mOccurrences.add(om);
+                        _log.debug("{} {}", om, W003.getOccurrenceSuffix());
                     }
                 }
-                if (!matchingTrips) {
-                    OccurrenceModel om = new OccurrenceModel("trip_id " + vehiclePosition.getTrip().getTripId());
-                    occurrences.add(om);
-                    _log.debug(om.getPrefix() + " " + W003.getOccurrenceSuffix());
-                }
             }
+            return Collections.singletonList(mOccurrences.toErrorList());
         }
-        return Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(W003), occurrences));
     }
 }
@@ -17,14 +17,14 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
-import org.onebusaway.gtfs.model.Frequency;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -37,101 +37,71 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.E019;
  * <p>
  * E019 - GTFS-rt frequency type 1 trip start_time must be a multiple of GTFS data start_time
  */
-public class FrequencyTypeOneValidator implements FeedEntityValidator {
+public class FrequencyTypeOneValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(FrequencyTypeOneValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<OccurrenceModel> errorListE019 = new ArrayList<>();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
 
-        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+    private static class Visitor implements EntityVisitor {
 
-                // E019 - GTFS-rt frequency exact_times = 1 trip start_time must match GTFS data
-                List<Frequency> frequenceTypeOneList = gtfsMetadata.getExactTimesOneTrips().get(tripUpdate.getTrip().getTripId());
-                if (frequenceTypeOneList != null) {
-                    boolean foundMatch = false;
-                    String gtfsStartTimeString = null;
-                    Integer headwaySecs = null;
-                    // For at least one frequency period for this trip_id, start_time in the GTFS-rt data must be some multiple (including zero) of headway_secs later than the start_time
-                    for (Frequency f : frequenceTypeOneList) {
-                        int startTime = f.getStartTime();
-                        // See if the GTFS-rt start_time matches at least one multiple of GTFS start_time for this frequency
-                        while (startTime < f.getEndTime()) {
-                            // Convert seconds after midnight to 24hr clock time like "06:00:00"
-                            gtfsStartTimeString = TimestampUtils.secondsAfterMidnightToClock(startTime);
-                            headwaySecs = f.getHeadwaySecs();
-                            _log.debug("start time = " + startTime);
-                            _log.debug("formatted start time = " + gtfsStartTimeString);
-                            if (tripUpdate.getTrip().getStartTime().equals(gtfsStartTimeString)) {
-                                // We found a matching multiple - no error for this GTFS-rt start_time
-                                foundMatch = true;
-                                break;
-                            }
-                            startTime += f.getHeadwaySecs();
-                        }
-                        if (foundMatch) {
-                            // If we found at least one matching frequency with a matching multiple of headway_secs for the GTFS-rt start_time, then no error
-                            break;
-                        }
-                    }
-                    if (!foundMatch) {
-                        OccurrenceModel om = new OccurrenceModel("GTFS-rt trip_id " + tripUpdate.getTrip().getTripId() +
-                                " has start_time of " + tripUpdate.getTrip().getStartTime() +
-                                " and GTFS frequencies.txt start_time is " + gtfsStartTimeString + " with a headway of " + headwaySecs + " seconds ");
-                        errorListE019.add(om);
-                        _log.debug(om.getPrefix() + " " + E019.getOccurrenceSuffix());
-                    }
-                }
-            }
+        private final GtfsMetadata mGtfsMetadata;
+        private final OccurrenceList mErrorListE019;
 
-            if (entity.hasVehicle()) {
-                GtfsRealtime.VehiclePosition vehiclePosition = entity.getVehicle();
+        Visitor(ValidationContext context) {
+            mGtfsMetadata = context.getGtfsMetadata();
+            mErrorListE019 = context.newOccurrenceList(E019);
+        }
 
-                // E019 - GTFS-rt frequency exact_times = 1 trip start_date and start_time must match GTFS data
-                List<Frequency> frequenceTypeOneList = gtfsMetadata.getExactTimesOneTrips().get(vehiclePosition.getTrip().getTripId());
-                if (frequenceTypeOneList != null) {
-                    boolean foundMatch = false;
-                    String gtfsStartTimeString = null;
-                    Integer headwaySecs = null;
-                    // For at least one frequency period for this trip_id, start_time in the GTFS-rt data must be some multiple (including zero) of headway_secs later than the start_time
-                    for (Frequency f : frequenceTypeOneList) {
-                        int startTime = f.getStartTime();
-                        // See if the GTFS-rt start_time matches at least one multiple of GTFS start_time for this frequency
-                        while (startTime < f.getEndTime()) {
-                            // Convert seconds after midnight to 24hr clock time like "06:00:00"
-                            gtfsStartTimeString = String.format("%02d:%02d:%02d", startTime / 3600, startTime % 360, startTime % 60);
-                            headwaySecs = f.getHeadwaySecs();
-                            _log.debug("start time = " + startTime);
-                            _log.debug("formatted start time = " + gtfsStartTimeString);
-                            if (vehiclePosition.hasTrip() && vehiclePosition.getTrip().getStartTime().equals(gtfsStartTimeString)) {
-                                // We found a matching multiple - no error for this GTFS-rt start_time
-                                foundMatch = true;
-                                break;
-                            }
-                            startTime += f.getHeadwaySecs();
-                        }
-                        if (foundMatch) {
-                            // If we found at least one matching frequency with a matching multiple of headway_secs for the GTFS-rt start_time, then no error
-                            break;
-                        }
-                    }
-                    if (!foundMatch) {
-                        OccurrenceModel om = new OccurrenceModel("GTFS-rt trip_id " + vehiclePosition.getTrip().getTripId() +
-                                " has start_time of " + vehiclePosition.getTrip().getStartTime() +
-                                " and GTFS frequencies.txt start_time is " + gtfsStartTimeString + " with a headway of " + headwaySecs + " seconds ");
-                        errorListE019.add(om);
-                        _log.debug(om.getPrefix() + " " + E019.getOccurrenceSuffix());
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            // E019 - GTFS-rt frequency exact_times = 1 trip start_time must match GTFS data
+            checkE019(tripUpdate.getTrip());
+        }
+
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+            // E019 - GTFS-rt frequency exact_times = 1 trip start_time must match GTFS data
+            checkE019(vehiclePosition.getTrip());
+        }
+
+        /**
+         * Checks that the start_time of an exact_times = 1 trip is the GTFS start_time plus some multiple (including zero) of headway_secs, for at least one frequency period for this trip_id
+         *
+         * @param trip the trip descriptor from a trip update or vehicle position
+         */
+        private void checkE019(GtfsRealtime.TripDescriptor trip) {
+            GtfsMetadata.FrequencyWindow[] windows = mGtfsMetadata.getExactTimesOneWindows(trip.getTripId());
+            if (windows == null) {
+                return;
+            }
+            int startTime = TimestampUtils.parseClockTime(trip.getStartTime());
+            if (startTime >= 0) {
+                for (GtfsMetadata.FrequencyWindow window : windows) {
+                    if (window.isTripStart(startTime)) {
+                        // We found a matching multiple - no error for this GTFS-rt start_time
+                        return;
                     }
                 }
             }
+            GtfsMetadata.FrequencyWindow last = windows[windows.length - 1];
+            if (mErrorListE019.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("GTFS-rt trip_id {} has start_time of {} and GTFS frequencies.txt start_time is {} with a headway of {} seconds ", trip.getTripId(), trip.getStartTime(), OccurrenceModel.timeOfDay(last.getStartTime()), last.getHeadwaySecs());
+                mErrorListE019.add(om);
+                _log.debug("{} {}", om, E019.getOccurrenceSuffix());
+            }
         }
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!errorListE019.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E019), errorListE019));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mErrorListE019.isEmpty()) {
+                errors.add(mErrorListE019.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 }
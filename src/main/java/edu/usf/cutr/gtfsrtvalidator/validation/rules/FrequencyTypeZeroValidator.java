@@ -17,12 +17,13 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -37,115 +38,129 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
  * E013 - Frequency type 0 trip schedule_relationship should be UNSCHEDULED or empty
  * W005 - Missing vehicle_id in trip_update for frequency-based exact_times = 0
  */
-public class FrequencyTypeZeroValidator implements FeedEntityValidator {
+public class FrequencyTypeZeroValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(FrequencyTypeZeroValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<OccurrenceModel> errorListE006 = new ArrayList<>();
-        List<OccurrenceModel> errorListE013 = new ArrayList<>();
-        List<OccurrenceModel> errorListW005 = new ArrayList<>();
-
-        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
-
-                if (gtfsMetadata.getExactTimesZeroTripIds().contains(tripUpdate.getTrip().getTripId())) {
-                    /**
-                     * E006 - Missing required trip_update trip field for frequency-based exact_times = 0
-                     * NOTE - W006 checks for missing trip_ids, because we can't check for that here
-                     */
-
-                    // Check for missing start_date
-                    if (!tripUpdate.getTrip().hasStartDate()) {
-                        OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId() + " is missing start_date");
-                        errorListE006.add(om);
-                        _log.debug(om.getPrefix() + " " + E006.getOccurrenceSuffix());
-                    }
-
-                    // Check for missing start_time
-                    if (!tripUpdate.getTrip().hasStartTime()) {
-                        OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId() + " is missing start_time");
-                        errorListE006.add(om);
-                        _log.debug(om.getPrefix() + " " + E006.getOccurrenceSuffix());
-                    }
-
-                    /**
-                     * E013 - Validate schedule_relationship is UNSCHEDULED or empty
-                     */
-                    if (!(!tripUpdate.getTrip().hasScheduleRelationship() || tripUpdate.getTrip().getScheduleRelationship().equals(GtfsRealtime.TripDescriptor.ScheduleRelationship.UNSCHEDULED))) {
-                        OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId() + " schedule_relationship " + tripUpdate.getTrip().getScheduleRelationship());
-                        errorListE013.add(om);
-                        _log.debug(om.getPrefix() + " " + E013.getOccurrenceSuffix());
-                    }
-
-                    /**
-                     * W005 - Missing vehicle_id in trip_update for frequency-based exact_times = 0
-                     */
-                    if (!tripUpdate.hasVehicle() || !tripUpdate.getVehicle().hasId()) {
-                        OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId());
-                        errorListW005.add(om);
-                        _log.debug(om.getPrefix() + " " + W005.getOccurrenceSuffix());
-                    }
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
+
+    private static class Visitor implements EntityVisitor {
+
+        private final GtfsMetadata mGtfsMetadata;
+        private final OccurrenceList mErrorListE006;
+        private final OccurrenceList mErrorListE013;
+        private final OccurrenceList mErrorListW005;
+
+        Visitor(ValidationContext context) {
+            mGtfsMetadata = context.getGtfsMetadata();
+            mErrorListE006 = context.newOccurrenceList(E006);
+            mErrorListE013 = context.newOccurrenceList(E013);
+            mErrorListW005 = context.newOccurrenceList(W005);
+        }
+
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            if (mGtfsMetadata.getExactTimesZeroTripIds().contains(tripUpdate.getTrip().getTripId())) {
+                /**
+                 * E006 - Missing required trip_update trip field for frequency-based exact_times = 0
+                 * NOTE - W006 checks for missing trip_ids, because we can't check for that here
+                 */
+
+                // Check for missing start_date
+                if (!tripUpdate.getTrip().hasStartDate() && mErrorListE006.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("trip_id {} is missing start_date", tripUpdate.getTrip().getTripId());
+                    mErrorListE006.add(om);
+                    _log.debug("{} {}", om, E006.getOccurrenceSuffix());
                 }
-            }
 
-            if (entity.hasVehicle()) {
-                GtfsRealtime.VehiclePosition vehiclePosition = entity.getVehicle();
-                if (vehiclePosition.hasTrip() &&
-                        gtfsMetadata.getExactTimesZeroTripIds().contains(vehiclePosition.getTrip().getTripId())) {
-
-                    /**
-                     * E006 - Missing required vehicle_position trip field for frequency-based exact_times = 0
-                     * NOTE - W006 checks for missing trip_ids, because we can't check for that here
-                     */
-
-                    // Check for missing start_date
-                    if (!vehiclePosition.getTrip().hasStartDate()) {
-                        OccurrenceModel om = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId() + " trip_id " + vehiclePosition.getTrip().getTripId() + " is missing start_date");
-                        errorListE006.add(om);
-                        _log.debug(om.getPrefix() + " " + E006.getOccurrenceSuffix());
-                    }
-
-                    // Check for missing start_time
-                    if (!vehiclePosition.getTrip().hasStartTime()) {
-                        OccurrenceModel om = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId() + " trip_id " + vehiclePosition.getTrip().getTripId() + " is missing start_time");
-                        errorListE006.add(om);
-                        _log.debug(om.getPrefix() + " " + E006.getOccurrenceSuffix());
-                    }
-
-                    /**
-                     * E013 - Validate schedule_relationship is UNSCHEDULED or empty
-                     */
-                    if (!(!vehiclePosition.getTrip().hasScheduleRelationship() || vehiclePosition.getTrip().getScheduleRelationship().equals(GtfsRealtime.TripDescriptor.ScheduleRelationship.UNSCHEDULED))) {
-                        OccurrenceModel om = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId() + " trip_id " + vehiclePosition.getTrip().getTripId() + " schedule_relationship " + vehiclePosition.getTrip().getScheduleRelationship());
-                        errorListE013.add(om);
-                        _log.debug(om.getPrefix() + " " + E013.getOccurrenceSuffix());
-                    }
-
-
-                    /**
-                     * W005 - Missing vehicle_id for frequency-based exact_times = 0
-                     */
-                    if (!vehiclePosition.getVehicle().hasId()) {
-                        OccurrenceModel om = new OccurrenceModel("entity ID" + entity.getId() + "with trip_id " + vehiclePosition.getTrip().getTripId());
-                        errorListW005.add(om);
-                        _log.debug(om.getPrefix() + " " + W005.getOccurrenceSuffix());
-                    }
+                // Check for missing start_time
+                if (!tripUpdate.getTrip().hasStartTime() && mErrorListE006.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("trip_id {} is missing start_time", tripUpdate.getTrip().getTripId());
+                    mErrorListE006.add(om);
+                    _log.debug("{} {}", om, E006.getOccurrenceSuffix());
+                }
+
+                /**
+                 * E013 - Validate schedule_relationship is UNSCHEDULED or empty
+                 */
+                if ((!(!tripUpdate.getTrip().hasScheduleRelationship() || tripUpdate.getTrip().getScheduleRelationship().equals(GtfsRealtime.TripDescriptor.ScheduleRelationship.UNSCHEDULED))) && mErrorListE013.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("trip_id {} schedule_relationship {}", tripUpdate.getTrip().getTripId(), tripUpdate.getTrip().getScheduleRelationship());
+                    mErrorListE013.add(om);
+                    _log.debug("{} {}", om, E013.getOccurrenceSuffix());
+                }
+
+                /**
+                 * W005 - Missing vehicle_id in trip_update for frequency-based exact_times = 0
+                 */
+                if ((!tripUpdate.hasVehicle() || !tripUpdate.getVehicle().hasId()) && mErrorListW005.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("trip_id {}", tripUpdate.getTrip().getTripId());
+                    mErrorListW005.add(om);
+                    _log.debug("{} {}", om, W005.getOccurrenceSuffix());
                 }
             }
         }
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!errorListE006.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E006), errorListE006));
-        }
-        if (!errorListE013.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E013), errorListE013));
+
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+            if (vehiclePosition.hasTrip() &&
+                    mGtfsMetadata.getExactTimesZeroTripIds().contains(vehiclePosition.getTrip().getTripId())) {
+
+                /**
+                 * E006 - Missing required vehicle_position trip field for frequency-based exact_times = 0
+                 * NOTE - W006 checks for missing trip_ids, because we can't check for that here
+                 */
+
+                // Check for missing start_date
+                if (!vehiclePosition.getTrip().hasStartDate() && mErrorListE006.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("vehicle_id {} trip_id {} is missing start_date", vehiclePosition.getVehicle().getId(), vehiclePosition.getTrip().getTripId());
+                    mErrorListE006.add(om);
+                    _log.debug("{} {}", om, E006.getOccurrenceSuffix());
+                }
+
+                // Check for missing start_time
+                if (!vehiclePosition.getTrip().hasStartTime() && mErrorListE006.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("vehicle_id {} trip_id {} is missing start_time", vehiclePosition.getVehicle().getId(), vehiclePosition.getTrip().getTripId());
+                    mErrorListE006.add(om);
+                    _log.debug("{} {}", om, E006.getOccurrenceSuffix());
+                }
+
+                /**
+                 * E013 - Validate schedule_relationship is UNSCHEDULED or empty
+                 */
+                if ((!(!vehiclePosition.getTrip().hasScheduleRelationship() || vehiclePosition.getTrip().getScheduleRelationship().equals(GtfsRealtime.TripDescriptor.ScheduleRelationship.UNSCHEDULED))) && mErrorListE013.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("vehicle_id {} trip_id {} schedule_relationship {}", vehiclePosition.getVehicle().getId(), vehiclePosition.getTrip().getTripId(), vehiclePosition.getTrip().getScheduleRelationship());
+                    mErrorListE013.add(om);
+                    _log.debug("{} {}", om, E013.getOccurrenceSuffix());
+                }
+
+
+                /**
+                 * W005 - Missing vehicle_id for frequency-based exact_times = 0
+                 */
+                if (!vehiclePosition.getVehicle().hasId() && mErrorListW005.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("entity ID{}with trip_id {}", entity.getId(), vehiclePosition.getTrip().getTripId());
+                    mErrorListW005.add(om);
+                    _log.debug("{} {}", om, W005.getOccurrenceSuffix());
+                }
+            }
         }
-        if (!errorListW005.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W005), errorListW005));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mErrorListE006.isEmpty()) {
+                errors.add(mErrorListE006.toErrorList());
+            }
+            if (!mErrorListE013.isEmpty()) {
+                errors.add(mErrorListE013.toErrorList());
+            }
+            if (!mErrorListW005.isEmpty()) {
+                errors.add(mErrorListW005.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 }
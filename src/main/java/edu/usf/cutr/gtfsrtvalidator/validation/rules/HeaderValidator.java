@@ -17,12 +17,12 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
-import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -35,41 +35,59 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.E039;
  * E038 - Invalid header.gtfs_realtime_version
  * E039 - FULL_DATASET feeds should not include entity.is_deleted
  */
-public class HeaderValidator implements FeedEntityValidator {
+public class HeaderValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(HeaderValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<OccurrenceModel> errorListE038 = new ArrayList<>();
-        List<OccurrenceModel> errorListE039 = new ArrayList<>();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
+
+    private static class Visitor implements EntityVisitor {
 
-        String version = feedMessage.getHeader().getGtfsRealtimeVersion();
-        if (!version.equals("1.0")) {
-            // E038 - Invalid header.gtfs_realtime_version
-            OccurrenceModel om = new OccurrenceModel("header.gtfs_realtime_version of " + version);
-            errorListE038.add(om);
-            _log.debug(om.getPrefix() + " " + E038.getOccurrenceSuffix());
+        private final OccurrenceList mErrorListE038;
+        private final OccurrenceList mErrorListE039;
+        private final boolean mFullDataset;
+
+        Visitor(ValidationContext context) {
+            // Read from the context rather than in onHeader(), as only one visitor sees the header when the feed is split
+            mFullDataset = context.getFeedMessage().getHeader().getIncrementality().equals(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET);
+            mErrorListE038 = context.newOccurrenceList(E038);
+            mErrorListE039 = context.newOccurrenceList(E039);
         }
 
-        if (feedMessage.getHeader().getIncrementality().equals(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET)) {
-            for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-                if (entity.hasIsDeleted()) {
-                    // E039 - FULL_DATASET feeds should not include entity.is_deleted
-                    OccurrenceModel om = new OccurrenceModel("entity ID " + entity.getId() + " has is_deleted=" + entity.getIsDeleted());
-                    errorListE039.add(om);
-                    _log.debug(om.getPrefix() + " " + E039.getOccurrenceSuffix());
-                }
+        @Override
+        public void onHeader(GtfsRealtime.FeedHeader header) {
+            String version = header.getGtfsRealtimeVersion();
+            if (!version.equals("1.0") && mErrorListE038.shouldAdd()) {
+                // E038 - Invalid header.gtfs_realtime_version
+                OccurrenceModel om = new OccurrenceModel("header.gtfs_realtime_version of {}", version);
+                mErrorListE038.add(om);
+                _log.debug("{} {}", om, E038.getOccurrenceSuffix());
             }
         }
 
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!errorListE038.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E038), errorListE038));
+        @Override
+        public void onEntity(GtfsRealtime.FeedEntity entity) {
+            if (mFullDataset && entity.hasIsDeleted() && mErrorListE039.shouldAdd()) {
+                // E039 - FULL_DATASET feeds should not include entity.is_deleted
+                OccurrenceModel om = new OccurrenceModel("entity ID {} has is_deleted={}", entity.getId(), entity.getIsDeleted());
+                mErrorListE039.add(om);
+                _log.debug("{} {}", om, E039.getOccurrenceSuffix());
+            }
         }
-        if (!errorListE039.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E039), errorListE039));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mErrorListE038.isEmpty()) {
+                errors.add(mErrorListE038.toErrorList());
+            }
+            if (!mErrorListE039.isEmpty()) {
+                errors.add(mErrorListE039.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 }
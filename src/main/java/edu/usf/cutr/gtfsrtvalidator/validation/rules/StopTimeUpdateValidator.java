@@ -19,21 +19,20 @@ package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.common.collect.Ordering;
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
-import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils;
 import edu.usf.cutr.gtfsrtvalidator.util.RuleUtils;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.getStopTimeUpdateId;
-import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.getTripId;
+import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.stopTimeUpdateIdValue;
+import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.tripIdValue;
 import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
 
 /**
@@ -42,67 +41,78 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
  * E037 - Sequential stop_time_updates have the same stop_id
  * W009 - schedule_relationship not populated (for StopTimeUpdate)
  */
-public class StopTimeUpdateValidator implements FeedEntityValidator {
+public class StopTimeUpdateValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(StopTimeUpdateValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<GtfsRealtime.FeedEntity> entityList = feedMessage.getEntityList();
-        List<OccurrenceModel> e002List = new ArrayList<>();
-        List<OccurrenceModel> e036List = new ArrayList<>();
-        List<OccurrenceModel> e037List = new ArrayList<>();
-        List<OccurrenceModel> w009List = new ArrayList<>();
-
-        for (GtfsRealtime.FeedEntity entity : entityList) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
-                List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateList = tripUpdate.getStopTimeUpdateList();
-
-                List<Integer> stopSequenceList = new ArrayList<>();
-                Integer previousStopSequence = null;
-                String previousStopId = null;
-                for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateList) {
-                    if (previousStopSequence != null) {
-                        checkE036(entity, previousStopSequence, stopTimeUpdate, e036List);
-                    }
-                    if (previousStopId != null) {
-                        checkE037(entity, previousStopId, stopTimeUpdate, e037List);
-                    }
-                    previousStopSequence = stopTimeUpdate.getStopSequence();
-                    previousStopId = stopTimeUpdate.getStopId();
-                    if (stopTimeUpdate.hasStopSequence()) {
-                        stopSequenceList.add(stopTimeUpdate.getStopSequence());
-                    }
-                    checkW009(entity, stopTimeUpdate, w009List);
-                }
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
+
+    private class Visitor implements EntityVisitor {
 
-                boolean sorted = Ordering.natural().isOrdered(stopSequenceList);
-                if (!sorted) {
-                    String id = GtfsUtils.getTripId(entity, tripUpdate);
-                    OccurrenceModel om = new OccurrenceModel(id + " stop_sequence " + stopSequenceList.toString());
-                    e002List.add(om);
-                    _log.debug(om.getPrefix() + " " + E002.getOccurrenceSuffix());
+        private final OccurrenceList mE002List;
+        private final OccurrenceList mE036List;
+        private final OccurrenceList mE037List;
+        private final OccurrenceList mW009List;
+
+        Visitor(ValidationContext context) {
+            mE002List = context.newOccurrenceList(E002);
+            mE036List = context.newOccurrenceList(E036);
+            mE037List = context.newOccurrenceList(E037);
+            mW009List = context.newOccurrenceList(W009);
+        }
+
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateList = tripUpdate.getStopTimeUpdateList();
+
+            List<Integer> stopSequenceList = new ArrayList<>();
+            Integer previousStopSequence = null;
+            String previousStopId = null;
+            for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateList) {
+                if (previousStopSequence != null) {
+                    checkE036(entity, previousStopSequence, stopTimeUpdate, mE036List);
+                }
+                if (previousStopId != null) {
+                    checkE037(entity, previousStopId, stopTimeUpdate, mE037List);
+                }
+                previousStopSequence = stopTimeUpdate.getStopSequence();
+                previousStopId = stopTimeUpdate.getStopId();
+                if (stopTimeUpdate.hasStopSequence()) {
+                    stopSequenceList.add(stopTimeUpdate.getStopSequence());
                 }
+                checkW009(entity, stopTimeUpdate, mW009List);
+            }
 
-                // TODO - detect out-of-order stops when stop_sequence isn't provided - see https://github.com/CUTR-at-USF/gtfs-realtime-validator/issues/159
+            boolean sorted = Ordering.natural().isOrdered(stopSequenceList);
+            if (!sorted && mE002List.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("{} stop_sequence {}", tripIdValue(entity, tripUpdate), stopSequenceList);
+                mE002List.add(om);
+                _log.debug("{} {}", om, E002.getOccurrenceSuffix());
             }
-        }
 
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!e002List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E002), e002List));
-        }
-        if (!e036List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E036), e036List));
+            // TODO - detect out-of-order stops when stop_sequence isn't provided - see https://github.com/CUTR-at-USF/gtfs-realtime-validator/issues/159
         }
-        if (!e037List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E037), e037List));
-        }
-        if (!w009List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W009), w009List));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mE002List.isEmpty()) {
+                errors.add(mE002List.toErrorList());
+            }
+            if (!mE036List.isEmpty()) {
+                errors.add(mE036List.toErrorList());
+            }
+            if (!mE037List.isEmpty()) {
+                errors.add(mE037List.toErrorList());
+            }
+            if (!mW009List.isEmpty()) {
+                errors.add(mW009List.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 
     /**
@@ -114,13 +124,12 @@ public class StopTimeUpdateValidator implements FeedEntityValidator {
      * @param stopTimeUpdate       the current stopTimeUpdate
      * @param errors               the list to add the errors to
      */
-    private void checkE036(GtfsRealtime.FeedEntity entity, Integer previousStopSequence, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, List<OccurrenceModel> errors) {
+    private void checkE036(GtfsRealtime.FeedEntity entity, Integer previousStopSequence, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, OccurrenceList errors) {
         if (stopTimeUpdate.hasStopSequence() &&
-                previousStopSequence == stopTimeUpdate.getStopSequence()) {
-            String id = GtfsUtils.getTripId(entity, entity.getTripUpdate());
-            OccurrenceModel om = new OccurrenceModel(id + " has repeating stop_sequence " + previousStopSequence);
+                previousStopSequence == stopTimeUpdate.getStopSequence() && errors.shouldAdd()) {
+            OccurrenceModel om = new OccurrenceModel("{} has repeating stop_sequence {}", tripIdValue(entity, entity.getTripUpdate()), previousStopSequence);
             errors.add(om);
-            _log.debug(om.getPrefix() + " " + E036.getOccurrenceSuffix());
+            _log.debug("{} {}", om, E036.getOccurrenceSuffix());
         }
     }
 
@@ -133,21 +142,18 @@ public class StopTimeUpdateValidator implements FeedEntityValidator {
      * @param stopTimeUpdate the current stopTimeUpdate
      * @param errors         the list to add the errors to
      */
-    private void checkE037(GtfsRealtime.FeedEntity entity, String previousStopId, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, List<OccurrenceModel> errors) {
+    private void checkE037(GtfsRealtime.FeedEntity entity, String previousStopId, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, OccurrenceList errors) {
         if (!previousStopId.isEmpty() && stopTimeUpdate.hasStopId() &&
-                previousStopId.equals(stopTimeUpdate.getStopId())) {
-            String id = GtfsUtils.getTripId(entity, entity.getTripUpdate());
-            StringBuilder prefix = new StringBuilder();
-            prefix.append(id);
-            prefix.append(" has repeating stop_id ");
-            prefix.append(previousStopId);
+                previousStopId.equals(stopTimeUpdate.getStopId()) && errors.shouldAdd()) {
+            OccurrenceModel.Value id = tripIdValue(entity, entity.getTripUpdate());
+            OccurrenceModel om;
             if (stopTimeUpdate.hasStopSequence()) {
-                prefix.append(" at stop_sequence ");
-                prefix.append(stopTimeUpdate.getStopSequence());
+                om = new OccurrenceModel("{} has repeating stop_id {} at stop_sequence {}", id, previousStopId, stopTimeUpdate.getStopSequence());
+            } else {
+                om = new OccurrenceModel("{} has repeating stop_id {}", id, previousStopId);
             }
-            OccurrenceModel om = new OccurrenceModel(prefix.toString());
             errors.add(om);
-            _log.debug(om.getPrefix() + " " + E036.getOccurrenceSuffix());
+            _log.debug("{} {}", om, E036.getOccurrenceSuffix());
         }
     }
 
@@ -158,10 +164,10 @@ public class StopTimeUpdateValidator implements FeedEntityValidator {
      * @param stopTimeUpdate stop_time_update to examine to see if it has a schedule_relationship
      * @param warnings       list to add any warnings for W009 to
      */
-    private void checkW009(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, List<OccurrenceModel> warnings) {
-        if (stopTimeUpdate != null && !stopTimeUpdate.hasScheduleRelationship()) {
+    private void checkW009(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate, OccurrenceList warnings) {
+        if (stopTimeUpdate != null && !stopTimeUpdate.hasScheduleRelationship() && warnings.shouldAdd()) {
             // W009 - schedule_relationship not populated
-            RuleUtils.addW009Occurrence(getTripId(entity, entity.getTripUpdate().getTrip()) + " " + getStopTimeUpdateId(stopTimeUpdate), warnings);
+            RuleUtils.addW009Occurrence(warnings, "{} {}", tripIdValue(entity, entity.getTripUpdate().getTrip()), stopTimeUpdateIdValue(stopTimeUpdate));
         }
     }
 }
@@ -18,12 +18,13 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -38,79 +39,108 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.E015;
  * E011 - All stop_ids referenced in GTFS-rt feed must appear in the GTFS feed
  * E015 - All stop_ids referenced in GTFS-rt feeds must have the location_type = 0
  */
-public class StopValidator implements FeedEntityValidator {
+public class StopValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(StopValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<OccurrenceModel> e011List = new ArrayList<>();
-        List<OccurrenceModel> e015List = new ArrayList<>();
-        List<GtfsRealtime.FeedEntity> allEntities = feedMessage.getEntityList();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
 
-        // Checks all of the RT feeds entities and checks if matching stop_ids are available in the GTFS feed
-        for (GtfsRealtime.FeedEntity entity : allEntities) {
-            String entityId = entity.getId();
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
-                List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateList = tripUpdate.getStopTimeUpdateList();
-                for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateList) {
-                    if (stopTimeUpdate.hasStopId()) {
-                        if (!gtfsMetadata.getStopIds().contains(stopTimeUpdate.getStopId())) {
-                            OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId() + " stop_id " + stopTimeUpdate.getStopId());
-                            e011List.add(om);
-                            _log.debug(om.getPrefix() + " " + E011.getOccurrenceSuffix());
-                        }
-                        Integer locationType = gtfsMetadata.getStopToLocationTypeMap().get(stopTimeUpdate.getStopId());
-                        if (locationType != null && locationType != 0) {
-                            OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId() + " stop_id " + stopTimeUpdate.getStopId());
-                            e015List.add(om);
-                            _log.debug(om.getPrefix() + " " + E015.getOccurrenceSuffix());
-                        }
+    // Checks all of the RT feeds entities and checks if matching stop_ids are available in the GTFS feed
+    private static class Visitor implements EntityVisitor {
+
+        private final GtfsMetadata mGtfsMetadata;
+        private final OccurrenceList mE011List;
+        private final OccurrenceList mE015List;
 
+        Visitor(ValidationContext context) {
+            mGtfsMetadata = context.getGtfsMetadata();
+            mE011List = context.newOccurrenceList(E011);
+            mE015List = context.newOccurrenceList(E015);
+        }
+
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateList = tripUpdate.getStopTimeUpdateList();
+            for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateList) {
+                if (stopTimeUpdate.hasStopId()) {
+                    if (!mGtfsMetadata.hasStopId(stopTimeUpdate.getStopId()) && mE011List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("trip_id {} stop_id {}", tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopId());
+                        mE011List.add(om);
+                        _log.debug("{} {}", om, E011.getOccurrenceSuffix());
+                    }
+                    Integer locationType = mGtfsMetadata.getStopLocationType(stopTimeUpdate.getStopId());
+                    if (locationType != null && locationType != 0 && mE015List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("trip_id {} stop_id {}", tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopId());
+                        mE015List.add(om);
+                        _log.debug("{} {}", om, E015.getOccurrenceSuffix());
                     }
+
                 }
             }
-            if (entity.hasVehicle()) {
-                GtfsRealtime.VehiclePosition v = entity.getVehicle();
-                if (v.hasStopId()) {
-                    if (!gtfsMetadata.getStopIds().contains(v.getStopId())) {
-                        OccurrenceModel om = new OccurrenceModel((v.hasVehicle() && v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() + " " : "") + "stop_id " + v.getStopId());
-                        e011List.add(om);
-                    }
-                    Integer locationType = gtfsMetadata.getStopToLocationTypeMap().get(v.getStopId());
-                    if (locationType != null && locationType != 0) {
-                        OccurrenceModel om = new OccurrenceModel((v.hasVehicle() && v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() + " " : "") + "stop_id " + v.getStopId());
-                        e015List.add(om);
-                        _log.debug(om.getPrefix() + " " + E015.getOccurrenceSuffix());
-                    }
+        }
+
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition v) {
+            if (v.hasStopId()) {
+                if (!mGtfsMetadata.hasStopId(v.getStopId()) && mE011List.shouldAdd()) {
+                    OccurrenceModel om = getVehicleStopOccurrence(v);
+                    mE011List.add(om);
+                }
+                Integer locationType = mGtfsMetadata.getStopLocationType(v.getStopId());
+                if (locationType != null && locationType != 0 && mE015List.shouldAdd()) {
+                    OccurrenceModel om = getVehicleStopOccurrence(v);
+                    mE015List.add(om);
+                    _log.debug("{} {}", om, E015.getOccurrenceSuffix());
                 }
             }
-            if (entity.hasAlert()) {
-                List<GtfsRealtime.EntitySelector> informedEntityList = entity.getAlert().getInformedEntityList();
-                for (GtfsRealtime.EntitySelector entitySelector : informedEntityList) {
-                    if (entitySelector.hasStopId()) {
-                        if (!gtfsMetadata.getStopIds().contains(entitySelector.getStopId())) {
-                            OccurrenceModel errorOccurrence = new OccurrenceModel("alert entity ID " + entityId + " stop_id " + entitySelector.getStopId());
-                            e011List.add(errorOccurrence);
-                        }
-                        Integer locationType = gtfsMetadata.getStopToLocationTypeMap().get(entitySelector.getStopId());
-                        if (locationType != null && locationType != 0) {
-                            OccurrenceModel om = new OccurrenceModel("alert entity ID " + entityId + " stop_id " + entitySelector.getStopId());
-                            e015List.add(om);
-                            _log.debug(om.getPrefix() + " " + E015.getOccurrenceSuffix());
-                        }
+        }
+
+        @Override
+        public void onAlert(GtfsRealtime.FeedEntity entity, GtfsRealtime.Alert alert) {
+            String entityId = entity.getId();
+            List<GtfsRealtime.EntitySelector> informedEntityList = alert.getInformedEntityList();
+            for (GtfsRealtime.EntitySelector entitySelector : informedEntityList) {
+                if (entitySelector.hasStopId()) {
+                    if (!mGtfsMetadata.hasStopId(entitySelector.getStopId()) && mE011List.shouldAdd()) {
+                        OccurrenceModel errorOccurrence = new OccurrenceModel("alert entity ID {} stop_id {}", entityId, entitySelector.getStopId());
+                        mE011List.add(errorOccurrence);
+                    }
+                    Integer locationType = mGtfsMetadata.getStopLocationType(entitySelector.getStopId());
+                    if (locationType != null && locationType != 0 && mE015List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("alert entity ID {} stop_id {}", entityId, entitySelector.getStopId());
+                        mE015List.add(om);
+                        _log.debug("{} {}", om, E015.getOccurrenceSuffix());
                     }
                 }
             }
         }
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!e011List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E011), e011List));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mE011List.isEmpty()) {
+                errors.add(mE011List.toErrorList());
+            }
+            if (!mE015List.isEmpty()) {
+                errors.add(mE015List.toErrorList());
+            }
+            return errors;
         }
-        if (!e015List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E015), e015List));
+    }
+
+    /**
+     * Returns an occurrence for the stop_id of a vehicle position, with the vehicle_id if the vehicle has one
+     *
+     * @param v the vehicle position with the stop_id
+     * @return an occurrence for the stop_id of a vehicle position, with the vehicle_id if the vehicle has one
+     */
+    private static OccurrenceModel getVehicleStopOccurrence(GtfsRealtime.VehiclePosition v) {
+        if (v.hasVehicle() && v.getVehicle().hasId()) {
+            return new OccurrenceModel("vehicle_id {} stop_id {}", v.getVehicle().getId(), v.getStopId());
         }
-        return errors;
+        return new OccurrenceModel("stop_id {}", v.getStopId());
     }
 }
@@ -18,13 +18,13 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
-import edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -32,7 +32,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
-import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.getTripId;
+import static edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils.tripIdValue;
 import static edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils.getAge;
 import static edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils.isPosix;
 import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
@@ -46,7 +46,7 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
  *  E018 - GTFS-rt header timestamp decreased between two sequential iterations
  *  E022 - trip stop_time_update times are not increasing
  */
-public class TimestampValidator implements FeedEntityValidator {
+public class TimestampValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(TimestampValidator.class);
 
@@ -54,266 +54,322 @@ public class TimestampValidator implements FeedEntityValidator {
     public static long MAX_AGE_SECONDS = 65L; // Maximum allowed age for GTFS-realtime feed, in seconds (W008)
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        if (feedMessage.equals(previousFeedMessage)) {
-            throw new IllegalArgumentException("feedMessage and previousFeedMessage must not be the same");
-        }
-        List<OccurrenceModel> w001List = new ArrayList<>();
-        List<OccurrenceModel> w007List = new ArrayList<>();
-        List<OccurrenceModel> w008List = new ArrayList<>();
-        List<OccurrenceModel> e001List = new ArrayList<>();
-        List<OccurrenceModel> e012List = new ArrayList<>();
-        List<OccurrenceModel> e017List = new ArrayList<>();
-        List<OccurrenceModel> e018List = new ArrayList<>();
-        List<OccurrenceModel> e022List = new ArrayList<>();
-        List<OccurrenceModel> e025List = new ArrayList<>();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
 
+    private class Visitor implements EntityVisitor {
 
-        /**
-         * Validate FeedHeader timestamp - W001 and E001
-         */
-        long headerTimestamp = feedMessage.getHeader().getTimestamp();
-        if (headerTimestamp == 0) {
-            OccurrenceModel errorW001 = new OccurrenceModel("header");
-            w001List.add(errorW001);
-            _log.debug(errorW001.getPrefix() + " " + W001.getOccurrenceSuffix());
-        } else {
-            if (!isPosix(headerTimestamp)) {
-                OccurrenceModel errorE001 = new OccurrenceModel("header.timestamp");
-                e001List.add(errorE001);
-                _log.debug(errorE001.getPrefix() + " " + E001.getOccurrenceSuffix());
+        private final long mCurrentTimeMillis;
+        private final GtfsMetadata mGtfsMetadata;
+        private final GtfsRealtime.FeedMessage mFeedMessage;
+        private final GtfsRealtime.FeedMessage mPreviousFeedMessage;
+        private final OccurrenceList mW001List;
+        private final OccurrenceList mW007List;
+        private final OccurrenceList mW008List;
+        private final OccurrenceList mE001List;
+        private final OccurrenceList mE012List;
+        private final OccurrenceList mE017List;
+        private final OccurrenceList mE018List;
+        private final OccurrenceList mE022List;
+        private final OccurrenceList mE025List;
+        // Entity checks compare against the header timestamp, but only the first chunk's visitor is handed the header
+        private final long mHeaderTimestamp;
+
+        Visitor(ValidationContext context) {
+            mCurrentTimeMillis = context.getCurrentTimeMillis();
+            mGtfsMetadata = context.getGtfsMetadata();
+            mFeedMessage = context.getFeedMessage();
+            mPreviousFeedMessage = context.getPreviousFeedMessage();
+            mHeaderTimestamp = mFeedMessage.getHeader().getTimestamp();
+            mW001List = context.newOccurrenceList(W001);
+            mW007List = context.newOccurrenceList(W007);
+            mW008List = context.newOccurrenceList(W008);
+            mE001List = context.newOccurrenceList(E001);
+            mE012List = context.newOccurrenceList(E012);
+            mE017List = context.newOccurrenceList(E017);
+            mE018List = context.newOccurrenceList(E018);
+            mE022List = context.newOccurrenceList(E022);
+            mE025List = context.newOccurrenceList(E025);
+        }
+
+        @Override
+        public void onHeader(GtfsRealtime.FeedHeader header) {
+            // Checked here so the (deep) comparison is done once per feed, even when the feed is split into chunks
+            if (mFeedMessage.equals(mPreviousFeedMessage)) {
+                throw new IllegalArgumentException("feedMessage and previousFeedMessage must not be the same");
+            }
+            /**
+             * Validate FeedHeader timestamp - W001 and E001
+             */
+            if (mHeaderTimestamp == 0) {
+                if (mW001List.shouldAdd()) {
+                    OccurrenceModel errorW001 = new OccurrenceModel("header");
+                    mW001List.add(errorW001);
+                    _log.debug("{} {}", errorW001, W001.getOccurrenceSuffix());
+                }
             } else {
-                long age = getAge(currentTimeMillis, headerTimestamp);
-                if (age > TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS)) {
-                    // W008
-                    long ageMinutes = TimeUnit.MILLISECONDS.toMinutes(age);
-                    long ageSeconds = TimeUnit.MILLISECONDS.toSeconds(age);
-                    OccurrenceModel om = new OccurrenceModel(String.format("header.timestamp is " + ageMinutes + " min " + ageSeconds % 60 + " sec"));
-                    w008List.add(om);
-                    _log.debug(om.getPrefix() + " " + W008.getOccurrenceSuffix());
+                if (!isPosix(mHeaderTimestamp)) {
+                    if (mE001List.shouldAdd()) {
+                        OccurrenceModel errorE001 = new OccurrenceModel("header.timestamp");
+                        mE001List.add(errorE001);
+                        _log.debug("{} {}", errorE001, E001.getOccurrenceSuffix());
+                    }
+                } else {
+                    long age = getAge(mCurrentTimeMillis, mHeaderTimestamp);
+                    if (age > TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS)) {
+                        // W008
+                        long ageMinutes = TimeUnit.MILLISECONDS.toMinutes(age);
+                        long ageSeconds = TimeUnit.MILLISECONDS.toSeconds(age);
+                        if (mW008List.shouldAdd()) {
+                            OccurrenceModel om = new OccurrenceModel("header.timestamp is {} min {} sec", ageMinutes, ageSeconds % 60);
+                            mW008List.add(om);
+                            _log.debug("{} {}", om, W008.getOccurrenceSuffix());
+                        }
+                    }
                 }
-            }
 
-            if (previousFeedMessage != null && previousFeedMessage.getHeader().getTimestamp() != 0) {
-                long previousTimestamp = previousFeedMessage.getHeader().getTimestamp();
-                long interval = headerTimestamp - previousTimestamp;
-                if (headerTimestamp == previousTimestamp) {
-                    OccurrenceModel om = new OccurrenceModel("header.timestamp of " + headerTimestamp);
-                    e017List.add(om);
-                    _log.debug(om.getPrefix() + " " + E017.getOccurrenceSuffix());
-                } else if (headerTimestamp < previousTimestamp) {
-                    OccurrenceModel om = new OccurrenceModel("header.timestamp of " + headerTimestamp + " is less than the header.timestamp of " + previousFeedMessage.getHeader().getTimestamp());
-                    e018List.add(om);
-                    _log.debug(om.getPrefix() + " " + E018.getOccurrenceSuffix());
-                } else if (interval > MINIMUM_REFRESH_INTERVAL_SECONDS) {
-                    OccurrenceModel om = new OccurrenceModel(interval + " second interval between consecutive header.timestamps");
-                    w007List.add(om);
-                    _log.debug(om.getPrefix() + " " + W007.getOccurrenceSuffix());
+                if (mPreviousFeedMessage != null && mPreviousFeedMessage.getHeader().getTimestamp() != 0) {
+                    long previousTimestamp = mPreviousFeedMessage.getHeader().getTimestamp();
+                    long interval = mHeaderTimestamp - previousTimestamp;
+                    if (mHeaderTimestamp == previousTimestamp) {
+                        if (mE017List.shouldAdd()) {
+                            OccurrenceModel om = new OccurrenceModel("header.timestamp of {}", mHeaderTimestamp);
+                            mE017List.add(om);
+                            _log.debug("{} {}", om, E017.getOccurrenceSuffix());
+                        }
+                    } else if (mHeaderTimestamp < previousTimestamp) {
+                        if (mE018List.shouldAdd()) {
+                            OccurrenceModel om = new OccurrenceModel("header.timestamp of {} is less than the header.timestamp of {}", mHeaderTimestamp, mPreviousFeedMessage.getHeader().getTimestamp());
+                            mE018List.add(om);
+                            _log.debug("{} {}", om, E018.getOccurrenceSuffix());
+                        }
+                    } else if (interval > MINIMUM_REFRESH_INTERVAL_SECONDS) {
+                        if (mW007List.shouldAdd()) {
+                            OccurrenceModel om = new OccurrenceModel("{} second interval between consecutive header.timestamps", interval);
+                            mW007List.add(om);
+                            _log.debug("{} {}", om, W007.getOccurrenceSuffix());
+                        }
+                    }
                 }
             }
         }
 
-        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
-                long tripUpdateTimestamp = tripUpdate.getTimestamp();
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            long tripUpdateTimestamp = tripUpdate.getTimestamp();
 
-                /**
-                 * Validate TripUpdate timestamps - W001, E001, E012
-                 */
-                String id = getTripId(entity, tripUpdate);
-                if (tripUpdateTimestamp == 0) {
-                    OccurrenceModel errorW001 = new OccurrenceModel(id);
-                    w001List.add(errorW001);
-                    _log.debug(errorW001.getPrefix() + " " + W001.getOccurrenceSuffix());
-                } else {
-                    if (headerTimestamp != 0 && tripUpdateTimestamp > headerTimestamp) {
-                        OccurrenceModel errorE012 = new OccurrenceModel(id + " timestamp " + tripUpdateTimestamp);
-                        e012List.add(errorE012);
-                        _log.debug(errorE012.getPrefix() + " " + E012.getOccurrenceSuffix());
-                    }
-                    if (!isPosix(tripUpdateTimestamp)) {
-                        OccurrenceModel errorE001 = new OccurrenceModel(id + " timestamp " + tripUpdateTimestamp);
-                        e001List.add(errorE001);
-                        _log.debug(errorE001.getPrefix() + " " + E001.getOccurrenceSuffix());
-                    }
+            /**
+             * Validate TripUpdate timestamps - W001, E001, E012
+             */
+            OccurrenceModel.Value id = tripIdValue(entity, tripUpdate);
+            if (tripUpdateTimestamp == 0) {
+                if (mW001List.shouldAdd()) {
+                    OccurrenceModel errorW001 = new OccurrenceModel("{}", id);
+                    mW001List.add(errorW001);
+                    _log.debug("{} {}", errorW001, W001.getOccurrenceSuffix());
                 }
+            } else {
+                if (mHeaderTimestamp != 0 && tripUpdateTimestamp > mHeaderTimestamp && mE012List.shouldAdd()) {
+                    OccurrenceModel errorE012 = new OccurrenceModel("{} timestamp {}", id, tripUpdateTimestamp);
+                    mE012List.add(errorE012);
+                    _log.debug("{} {}", errorE012, E012.getOccurrenceSuffix());
+                }
+                if (!isPosix(tripUpdateTimestamp) && mE001List.shouldAdd()) {
+                    OccurrenceModel errorE001 = new OccurrenceModel("{} timestamp {}", id, tripUpdateTimestamp);
+                    mE001List.add(errorE001);
+                    _log.debug("{} {}", errorE001, E001.getOccurrenceSuffix());
+                }
+            }
 
-                /**
-                 * Validate TripUpdate StopTimeUpdate times
-                 */
-                List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdates = tripUpdate.getStopTimeUpdateList();
-                if (stopTimeUpdates != null) {
-
-                    Long previousArrivalTime = null;
-                    String previousArrivalTimeText = null;
-                    Long previousDepartureTime = null;
-                    String previousDepartureTimeText = null;
-                    for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdates) {
-                        String stopDescription = stopTimeUpdate.hasStopSequence() ? " stop_sequence " + stopTimeUpdate.getStopSequence() : " stop_id " + stopTimeUpdate.getStopId();
-                        Long arrivalTime = null;
-                        String arrivalTimeText;
-                        Long departureTime = null;
-                        String departureTimeText;
-                        if (stopTimeUpdate.hasArrival()) {
-                            if (stopTimeUpdate.getArrival().hasTime()) {
-                                arrivalTime = stopTimeUpdate.getArrival().getTime();
-                                arrivalTimeText = TimestampUtils.posixToClock(arrivalTime, gtfsMetadata.getTimeZone());
+            /**
+             * Validate TripUpdate StopTimeUpdate times
+             */
+            List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdates = tripUpdate.getStopTimeUpdateList();
+            if (stopTimeUpdates != null) {
 
-                                if (!isPosix(arrivalTime)) {
-                                    // E001
-                                    OccurrenceModel errorE001 = new OccurrenceModel(id + stopDescription + " arrival_time " + arrivalTime);
-                                    e001List.add(errorE001);
-                                    _log.debug(errorE001.getPrefix() + " " + E001.getOccurrenceSuffix());
-                                }
-                                if (previousArrivalTime != null && arrivalTime < previousArrivalTime) {
-                                    // E022 - this stop arrival time is < previous stop arrival time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription +
-                                            " arrival_time " + arrivalTimeText + " (" + arrivalTime + ") is less than previous stop arrival_time " + previousArrivalTimeText + " (" + previousArrivalTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousArrivalTime != null && Objects.equals(arrivalTime, previousArrivalTime)) {
-                                    // E022 - this stop arrival time is == previous stop arrival time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " arrival_time " + arrivalTimeText + " (" + arrivalTime + ") is equal to previous stop arrival_time " + previousArrivalTimeText + " (" + previousArrivalTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousDepartureTime != null && arrivalTime < previousDepartureTime) {
-                                    // E022 - this stop arrival time is < previous stop departure time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " arrival_time " + arrivalTimeText + " (" + arrivalTime + ") is less than previous stop departure_time " + previousDepartureTimeText + " (" + previousDepartureTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousDepartureTime != null && Objects.equals(arrivalTime, previousDepartureTime)) {
-                                    // E022 - this stop arrival time is == previous stop departure time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " arrival_time " + arrivalTimeText + " (" + arrivalTime + ") is equal to previous stop departure_time " + previousDepartureTimeText + " (" + previousDepartureTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
+                Long previousArrivalTime = null;
+                Long previousDepartureTime = null;
+                for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdates) {
+                    Long arrivalTime = null;
+                    Long departureTime = null;
+                    if (stopTimeUpdate.hasArrival()) {
+                        if (stopTimeUpdate.getArrival().hasTime()) {
+                            arrivalTime = stopTimeUpdate.getArrival().getTime();
+                            if (!isPosix(arrivalTime) && mE001List.shouldAdd()) {
+                                // E001
+                                OccurrenceModel errorE001 = new OccurrenceModel("{}{} arrival_time {}", id, getStopDescription(stopTimeUpdate), arrivalTime);
+                                mE001List.add(errorE001);
+                                _log.debug("{} {}", errorE001, E001.getOccurrenceSuffix());
+                            }
+                            if (previousArrivalTime != null && arrivalTime < previousArrivalTime && mE022List.shouldAdd()) {
+                                // E022 - this stop arrival time is < previous stop arrival time
+                                OccurrenceModel om = new OccurrenceModel("{}{} arrival_time {} ({}) is less than previous stop arrival_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(arrivalTime), arrivalTime, clock(previousArrivalTime), previousArrivalTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousArrivalTime != null && Objects.equals(arrivalTime, previousArrivalTime) && mE022List.shouldAdd()) {
+                                // E022 - this stop arrival time is == previous stop arrival time
+                                OccurrenceModel om = new OccurrenceModel("{}{} arrival_time {} ({}) is equal to previous stop arrival_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(arrivalTime), arrivalTime, clock(previousArrivalTime), previousArrivalTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousDepartureTime != null && arrivalTime < previousDepartureTime && mE022List.shouldAdd()) {
+                                // E022 - this stop arrival time is < previous stop departure time
+                                OccurrenceModel om = new OccurrenceModel("{}{} arrival_time {} ({}) is less than previous stop departure_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(arrivalTime), arrivalTime, clock(previousDepartureTime), previousDepartureTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousDepartureTime != null && Objects.equals(arrivalTime, previousDepartureTime) && mE022List.shouldAdd()) {
+                                // E022 - this stop arrival time is == previous stop departure time
+                                OccurrenceModel om = new OccurrenceModel("{}{} arrival_time {} ({}) is equal to previous stop departure_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(arrivalTime), arrivalTime, clock(previousDepartureTime), previousDepartureTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
                             }
                         }
+                    }
 
-                        if (stopTimeUpdate.hasDeparture()) {
-                            if (stopTimeUpdate.getDeparture().hasTime()) {
-                                departureTime = stopTimeUpdate.getDeparture().getTime();
-                                departureTimeText = TimestampUtils.posixToClock(departureTime, gtfsMetadata.getTimeZone());
-
-                                if (!isPosix(departureTime)) {
-                                    // E001
-                                    OccurrenceModel errorE001 = new OccurrenceModel(id + stopDescription + " departure_time " + departureTime);
-                                    e001List.add(errorE001);
-                                    _log.debug(errorE001.getPrefix() + " " + E001.getOccurrenceSuffix());
-                                }
-                                if (previousDepartureTime != null && departureTime < previousDepartureTime) {
-                                    // E022 - this stop departure time is < previous stop departure time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " departure_time " + departureTimeText + " (" + departureTime + ") is less than previous stop departure_time " + previousDepartureTimeText + " (" + previousDepartureTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousDepartureTime != null && Objects.equals(departureTime, previousDepartureTime)) {
-                                    // E022 - this stop departure time is == previous stop departure time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " departure_time " + departureTimeText + " (" + departureTime + ") is equal to previous stop departure_time " + previousDepartureTimeText + " (" + previousDepartureTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousArrivalTime != null && departureTime < previousArrivalTime) {
-                                    // E022 - this stop departure time is < previous stop arrival time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " departure_time " + departureTimeText + " (" + departureTime + ") is less than previous stop arrival_time " + previousArrivalTimeText + " (" + previousArrivalTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (previousArrivalTime != null && Objects.equals(departureTime, previousArrivalTime)) {
-                                    // E022 - this stop departure time is == previous stop arrival time
-                                    OccurrenceModel om = new OccurrenceModel(id + stopDescription + " departure_time " + departureTimeText + " (" + departureTime + ") is equal to previous stop arrival_time " + previousArrivalTimeText + " (" + previousArrivalTime + ")");
-                                    e022List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E022.getOccurrenceSuffix());
-                                }
-                                if (stopTimeUpdate.getArrival().hasTime() && departureTime < stopTimeUpdate.getArrival().getTime()) {
-                                    // E025 - stop_time_update departure time is before arrival time
-                                    OccurrenceModel om = new OccurrenceModel(id +
-                                            stopDescription + " departure_time " + departureTimeText
-                                            + " (" + departureTime + ") is less than the same stop arrival_time " +
-                                            TimestampUtils.posixToClock(stopTimeUpdate.getArrival().getTime(), gtfsMetadata.getTimeZone())
-                                            + " (" + stopTimeUpdate.getArrival().getTime() + ")");
-                                    e025List.add(om);
-                                    _log.debug(om.getPrefix() + " " + E025.getOccurrenceSuffix());
-                                }
+                    if (stopTimeUpdate.hasDeparture()) {
+                        if (stopTimeUpdate.getDeparture().hasTime()) {
+                            departureTime = stopTimeUpdate.getDeparture().getTime();
+                            if (!isPosix(departureTime) && mE001List.shouldAdd()) {
+                                // E001
+                                OccurrenceModel errorE001 = new OccurrenceModel("{}{} departure_time {}", id, getStopDescription(stopTimeUpdate), departureTime);
+                                mE001List.add(errorE001);
+                                _log.debug("{} {}", errorE001, E001.getOccurrenceSuffix());
+                            }
+                            if (previousDepartureTime != null && departureTime < previousDepartureTime && mE022List.shouldAdd()) {
+                                // E022 - this stop departure time is < previous stop departure time
+                                OccurrenceModel om = new OccurrenceModel("{}{} departure_time {} ({}) is less than previous stop departure_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(departureTime), departureTime, clock(previousDepartureTime), previousDepartureTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousDepartureTime != null && Objects.equals(departureTime, previousDepartureTime) && mE022List.shouldAdd()) {
+                                // E022 - this stop departure time is == previous stop departure time
+                                OccurrenceModel om = new OccurrenceModel("{}{} departure_time {} ({}) is equal to previous stop departure_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(departureTime), departureTime, clock(previousDepartureTime), previousDepartureTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousArrivalTime != null && departureTime < previousArrivalTime && mE022List.shouldAdd()) {
+                                // E022 - this stop departure time is < previous stop arrival time
+                                OccurrenceModel om = new OccurrenceModel("{}{} departure_time {} ({}) is less than previous stop arrival_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(departureTime), departureTime, clock(previousArrivalTime), previousArrivalTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (previousArrivalTime != null && Objects.equals(departureTime, previousArrivalTime) && mE022List.shouldAdd()) {
+                                // E022 - this stop departure time is == previous stop arrival time
+                                OccurrenceModel om = new OccurrenceModel("{}{} departure_time {} ({}) is equal to previous stop arrival_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(departureTime), departureTime, clock(previousArrivalTime), previousArrivalTime);
+                                mE022List.add(om);
+                                _log.debug("{} {}", om, E022.getOccurrenceSuffix());
+                            }
+                            if (stopTimeUpdate.getArrival().hasTime() && departureTime < stopTimeUpdate.getArrival().getTime() && mE025List.shouldAdd()) {
+                                // E025 - stop_time_update departure time is before arrival time
+                                OccurrenceModel om = new OccurrenceModel("{}{} departure_time {} ({}) is less than the same stop arrival_time {} ({})", id, getStopDescription(stopTimeUpdate), clock(departureTime), departureTime, clock(stopTimeUpdate.getArrival().getTime()), stopTimeUpdate.getArrival().getTime());
+                                mE025List.add(om);
+                                _log.debug("{} {}", om, E025.getOccurrenceSuffix());
                             }
-                        }
-                        if (arrivalTime != null) {
-                            previousArrivalTime = arrivalTime;
-                            previousArrivalTimeText = TimestampUtils.posixToClock(previousArrivalTime, gtfsMetadata.getTimeZone());
-                        }
-                        if (departureTime != null) {
-                            previousDepartureTime = departureTime;
-                            previousDepartureTimeText = TimestampUtils.posixToClock(previousDepartureTime, gtfsMetadata.getTimeZone());
                         }
                     }
+                    if (arrivalTime != null) {
+                        previousArrivalTime = arrivalTime;
+                    }
+                    if (departureTime != null) {
+                        previousDepartureTime = departureTime;
+                    }
                 }
             }
+        }
 
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
             /**
              * Validate VehiclePosition timestamps - W001, E001, E012
              */
-            if (entity.hasVehicle()) {
-                GtfsRealtime.VehiclePosition vehiclePosition = entity.getVehicle();
-                long vehicleTimestamp = vehiclePosition.getTimestamp();
+            long vehicleTimestamp = vehiclePosition.getTimestamp();
 
-                if (vehicleTimestamp == 0) {
-                    OccurrenceModel errorW001 = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId());
-                    w001List.add(errorW001);
-                    _log.debug(errorW001.getPrefix() + " " + W001.getOccurrenceSuffix());
-                } else {
-                    if (headerTimestamp != 0 && vehicleTimestamp > headerTimestamp) {
-                        OccurrenceModel errorE012 = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId() + " timestamp " + vehicleTimestamp);
-                        e012List.add(errorE012);
-                        _log.debug(errorE012.getPrefix() + " " + E012.getOccurrenceSuffix());
-                    }
-                    if (!isPosix(vehicleTimestamp)) {
-                        OccurrenceModel errorE001 = new OccurrenceModel("vehicle_id " + vehiclePosition.getVehicle().getId() + " timestamp " + vehicleTimestamp);
-                        e001List.add(errorE001);
-                        _log.debug(errorE001.getPrefix() + " " + E001.getOccurrenceSuffix());
-                    }
+            if (vehicleTimestamp == 0) {
+                if (mW001List.shouldAdd()) {
+                    OccurrenceModel errorW001 = new OccurrenceModel("vehicle_id {}", vehiclePosition.getVehicle().getId());
+                    mW001List.add(errorW001);
+                    _log.debug("{} {}", errorW001, W001.getOccurrenceSuffix());
+                }
+            } else {
+                if (mHeaderTimestamp != 0 && vehicleTimestamp > mHeaderTimestamp && mE012List.shouldAdd()) {
+                    OccurrenceModel errorE012 = new OccurrenceModel("vehicle_id {} timestamp {}", vehiclePosition.getVehicle().getId(), vehicleTimestamp);
+                    mE012List.add(errorE012);
+                    _log.debug("{} {}", errorE012, E012.getOccurrenceSuffix());
+                }
+                if (!isPosix(vehicleTimestamp) && mE001List.shouldAdd()) {
+                    OccurrenceModel errorE001 = new OccurrenceModel("vehicle_id {} timestamp {}", vehiclePosition.getVehicle().getId(), vehicleTimestamp);
+                    mE001List.add(errorE001);
+                    _log.debug("{} {}", errorE001, E001.getOccurrenceSuffix());
                 }
             }
+        }
 
+        @Override
+        public void onAlert(GtfsRealtime.FeedEntity entity, GtfsRealtime.Alert alert) {
             /**
              * Validate Alert time ranges - E001
              */
-            if (entity.hasAlert()) {
-                checkAlertE001(entity, e001List);
-            }
-        }
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!w001List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W001), w001List));
-        }
-        if (!w007List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W007), w007List));
-        }
-        if (!w008List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W008), w008List));
-        }
-        if (!e001List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E001), e001List));
-        }
-        if (!e012List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E012), e012List));
-        }
-        if (!e017List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E017), e017List));
-        }
-        if (!e018List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E018), e018List));
+            checkAlertE001(entity, mE001List);
         }
-        if (!e022List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E022), e022List));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mW001List.isEmpty()) {
+                errors.add(mW001List.toErrorList());
+            }
+            if (!mW007List.isEmpty()) {
+                errors.add(mW007List.toErrorList());
+            }
+            if (!mW008List.isEmpty()) {
+                errors.add(mW008List.toErrorList());
+            }
+            if (!mE001List.isEmpty()) {
+                errors.add(mE001List.toErrorList());
+            }
+            if (!mE012List.isEmpty()) {
+                errors.add(mE012List.toErrorList());
+            }
+            if (!mE017List.isEmpty()) {
+                errors.add(mE017List.toErrorList());
+            }
+            if (!mE018List.isEmpty()) {
+                errors.add(mE018List.toErrorList());
+            }
+            if (!mE022List.isEmpty()) {
+                errors.add(mE022List.toErrorList());
+            }
+            if (!mE025List.isEmpty()) {
+                errors.add(mE025List.toErrorList());
+            }
+            return errors;
         }
-        if (!e025List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E025), e025List));
+
+        /**
+         * Returns an occurrence value that renders as the clock time of a POSIX time in the agency's time zone
+         */
+        private OccurrenceModel.Value clock(long posixTime) {
+            return OccurrenceModel.clock(posixTime, mGtfsMetadata.getTimeZone());
         }
-        return errors;
+    }
+
+    /**
+     * Returns an occurrence value that renders as the stop_sequence or stop_id of a stop_time_update
+     *
+     * @param stopTimeUpdate the stop_time_update to describe
+     * @return an occurrence value that renders as the stop_sequence or stop_id of a stop_time_update
+     */
+    private static OccurrenceModel.Value getStopDescription(GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate) {
+        return builder -> {
+            if (stopTimeUpdate.hasStopSequence()) {
+                builder.append(" stop_sequence ").append(stopTimeUpdate.getStopSequence());
+            } else {
+                builder.append(" stop_id ").append(stopTimeUpdate.getStopId());
+            }
+        };
     }
 
     /**
@@ -322,23 +378,23 @@ public class TimestampValidator implements FeedEntityValidator {
      * @param entity entity that has alerts to check
      * @param errors list to which any errors can be added
      */
-    private void checkAlertE001(GtfsRealtime.FeedEntity entity, List<OccurrenceModel> errors) {
+    private void checkAlertE001(GtfsRealtime.FeedEntity entity, OccurrenceList errors) {
         GtfsRealtime.Alert alert = entity.getAlert();
         List<GtfsRealtime.TimeRange> activePeriods = alert.getActivePeriodList();
         if (activePeriods != null) {
             for (GtfsRealtime.TimeRange range : activePeriods) {
                 if (range.hasStart()) {
-                    if (!isPosix(range.getStart())) {
-                        OccurrenceModel om = new OccurrenceModel("alert in entity " + entity.getId() + " active_period.start " + range.getStart());
+                    if (!isPosix(range.getStart()) && errors.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("alert in entity {} active_period.start {}", entity.getId(), range.getStart());
                         errors.add(om);
-                        _log.debug(om.getPrefix() + " " + E001.getOccurrenceSuffix());
+                        _log.debug("{} {}", om, E001.getOccurrenceSuffix());
                     }
                 }
                 if (range.hasEnd()) {
-                    if (!isPosix(range.getEnd())) {
-                        OccurrenceModel om = new OccurrenceModel("alert in entity " + entity.getId() + " active_period.end " + range.getEnd());
+                    if (!isPosix(range.getEnd()) && errors.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("alert in entity {} active_period.end {}", entity.getId(), range.getEnd());
                         errors.add(om);
-                        _log.debug(om.getPrefix() + " " + E001.getOccurrenceSuffix());
+                        _log.debug("{} {}", om, E001.getOccurrenceSuffix());
                     }
                 }
             }
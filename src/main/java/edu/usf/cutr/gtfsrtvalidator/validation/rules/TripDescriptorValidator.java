@@ -17,16 +17,16 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.util.RuleUtils;
 import edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.hsqldb.lib.StringUtil;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
-import org.onebusaway.gtfs.model.Trip;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -67,181 +67,217 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
  *
  * W009 - schedule_relationship not populated (for TripDescriptor)
  */
-public class TripDescriptorValidator implements FeedEntityValidator {
+public class TripDescriptorValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(TripDescriptorValidator.class);
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<OccurrenceModel> errorListE003 = new ArrayList<>();
-        List<OccurrenceModel> errorListE004 = new ArrayList<>();
-        List<OccurrenceModel> errorListE016 = new ArrayList<>();
-        List<OccurrenceModel> errorListE020 = new ArrayList<>();
-        List<OccurrenceModel> errorListE021 = new ArrayList<>();
-        List<OccurrenceModel> errorListE023 = new ArrayList<>();
-        List<OccurrenceModel> errorListE024 = new ArrayList<>();
-        List<OccurrenceModel> errorListE030 = new ArrayList<>();
-        List<OccurrenceModel> errorListE031 = new ArrayList<>();
-        List<OccurrenceModel> errorListE032 = new ArrayList<>();
-        List<OccurrenceModel> errorListE033 = new ArrayList<>();
-        List<OccurrenceModel> errorListE034 = new ArrayList<>();
-        List<OccurrenceModel> errorListE035 = new ArrayList<>();
-        List<OccurrenceModel> errorListW006 = new ArrayList<>();
-        List<OccurrenceModel> errorListW009 = new ArrayList<>();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
+
+    private class Visitor implements EntityVisitor {
+
+        private final GtfsMetadata mGtfsMetadata;
+        private final OccurrenceList mErrorListE003;
+        private final OccurrenceList mErrorListE004;
+        private final OccurrenceList mErrorListE016;
+        private final OccurrenceList mErrorListE020;
+        private final OccurrenceList mErrorListE021;
+        private final OccurrenceList mErrorListE023;
+        private final OccurrenceList mErrorListE024;
+        private final OccurrenceList mErrorListE030;
+        private final OccurrenceList mErrorListE031;
+        private final OccurrenceList mErrorListE032;
+        private final OccurrenceList mErrorListE033;
+        private final OccurrenceList mErrorListE034;
+        private final OccurrenceList mErrorListE035;
+        private final OccurrenceList mErrorListW006;
+        private final OccurrenceList mErrorListW009;
+
+        Visitor(ValidationContext context) {
+            mGtfsMetadata = context.getGtfsMetadata();
+            mErrorListE003 = context.newOccurrenceList(E003);
+            mErrorListE004 = context.newOccurrenceList(E004);
+            mErrorListE016 = context.newOccurrenceList(E016);
+            mErrorListE020 = context.newOccurrenceList(E020);
+            mErrorListE021 = context.newOccurrenceList(E021);
+            mErrorListE023 = context.newOccurrenceList(E023);
+            mErrorListE024 = context.newOccurrenceList(E024);
+            mErrorListE030 = context.newOccurrenceList(E030);
+            mErrorListE031 = context.newOccurrenceList(E031);
+            mErrorListE032 = context.newOccurrenceList(E032);
+            mErrorListE033 = context.newOccurrenceList(E033);
+            mErrorListE034 = context.newOccurrenceList(E034);
+            mErrorListE035 = context.newOccurrenceList(E035);
+            mErrorListW006 = context.newOccurrenceList(W006);
+            mErrorListW009 = context.newOccurrenceList(W009);
+        }
 
         // Check the route_id values against the values from the GTFS feed
-        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
-                if (!tripUpdate.getTrip().hasTripId()) {
-                    // W006 - No trip_id
-                    OccurrenceModel om = new OccurrenceModel("entity ID " + entity.getId());
-                    errorListW006.add(om);
-                    _log.debug(om.getPrefix() + " " + W006.getOccurrenceSuffix());
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            if (!tripUpdate.getTrip().hasTripId()) {
+                // W006 - No trip_id
+                if (mErrorListW006.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("entity ID {}", entity.getId());
+                    mErrorListW006.add(om);
+                    _log.debug("{} {}", om, W006.getOccurrenceSuffix());
+                }
+            } else {
+                String tripId = tripUpdate.getTrip().getTripId();
+                if (!mGtfsMetadata.hasTripId(tripId)) {
+                    if (!isAddedTrip(tripUpdate.getTrip()) && mErrorListE003.shouldAdd()) {
+                        // Trip isn't in GTFS data and isn't an ADDED trip - E003
+                        OccurrenceModel om = new OccurrenceModel("{}", tripIdValue(entity, tripUpdate));
+                        mErrorListE003.add(om);
+                        _log.debug("{} {}", om, E003.getOccurrenceSuffix());
+                    }
                 } else {
-                    String tripId = tripUpdate.getTrip().getTripId();
-                    Trip trip = gtfsMetadata.getTrips().get(tripId);
-                    if (trip == null) {
-                        if (!isAddedTrip(tripUpdate.getTrip())) {
-                            // Trip isn't in GTFS data and isn't an ADDED trip - E003
-                            OccurrenceModel om = new OccurrenceModel(getTripId(entity, tripUpdate));
-                            errorListE003.add(om);
-                            _log.debug(om.getPrefix() + " " + E003.getOccurrenceSuffix());
-                        }
-                    } else {
-                        if (isAddedTrip(tripUpdate.getTrip())) {
-                            // Trip is in GTFS data and is an ADDED trip - E016
-                            OccurrenceModel om = new OccurrenceModel(getTripId(entity, tripUpdate));
-                            errorListE016.add(om);
-                            _log.debug(om.getPrefix() + " " + E016.getOccurrenceSuffix());
-                        }
+                    if (isAddedTrip(tripUpdate.getTrip()) && mErrorListE016.shouldAdd()) {
+                        // Trip is in GTFS data and is an ADDED trip - E016
+                        OccurrenceModel om = new OccurrenceModel("{}", tripIdValue(entity, tripUpdate));
+                        mErrorListE016.add(om);
+                        _log.debug("{} {}", om, E016.getOccurrenceSuffix());
                     }
                 }
+            }
 
-                if (tripUpdate.getTrip().hasStartTime()) {
-                    checkE020(tripUpdate, tripUpdate.getTrip(), errorListE020);
-                    checkE023(tripUpdate, tripUpdate.getTrip(), gtfsMetadata, errorListE023);
-                }
+            if (tripUpdate.getTrip().hasStartTime()) {
+                checkE020(tripUpdate, tripUpdate.getTrip(), mErrorListE020);
+                checkE023(tripUpdate, tripUpdate.getTrip(), mGtfsMetadata, mErrorListE023);
+            }
 
-                checkE021(tripUpdate, tripUpdate.getTrip(), errorListE021);
-                checkE004(tripUpdate, tripUpdate.getTrip(), gtfsMetadata, errorListE004);
-                checkE024(tripUpdate, tripUpdate.getTrip(), gtfsMetadata, errorListE024);
-                checkE035(entity, tripUpdate.getTrip(), gtfsMetadata, errorListE035);
-                if (tripUpdate.hasTrip()) {
-                    checkW009(entity, tripUpdate.getTrip(), errorListW009);
-                }
+            checkE021(tripUpdate, tripUpdate.getTrip(), mErrorListE021);
+            checkE004(tripUpdate, tripUpdate.getTrip(), mGtfsMetadata, mErrorListE004);
+            checkE024(tripUpdate, tripUpdate.getTrip(), mGtfsMetadata, mErrorListE024);
+            checkE035(entity, tripUpdate.getTrip(), mGtfsMetadata, mErrorListE035);
+            if (tripUpdate.hasTrip()) {
+                checkW009(entity, tripUpdate.getTrip(), mErrorListW009);
             }
-            if (entity.hasVehicle() && entity.getVehicle().hasTrip()) {
-                GtfsRealtime.TripDescriptor trip = entity.getVehicle().getTrip();
+        }
+
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+            if (vehiclePosition.hasTrip()) {
+                GtfsRealtime.TripDescriptor trip = vehiclePosition.getTrip();
                 if (!trip.hasTripId()) {
                     // W006 - No trip_id
-                    OccurrenceModel om = new OccurrenceModel("entity ID " + entity.getId());
-                    errorListW006.add(om);
-                    _log.debug(om.getPrefix() + " " + W006.getOccurrenceSuffix());
+                    if (mErrorListW006.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("entity ID {}", entity.getId());
+                        mErrorListW006.add(om);
+                        _log.debug("{} {}", om, W006.getOccurrenceSuffix());
+                    }
                 } else {
                     String tripId = trip.getTripId();
                     if (!StringUtil.isEmpty(tripId)) {
-                        Trip gtfsTrip = gtfsMetadata.getTrips().get(tripId);
-                        if (gtfsTrip == null) {
-                            if (!isAddedTrip(trip)) {
+                        if (!mGtfsMetadata.hasTripId(tripId)) {
+                            if (!isAddedTrip(trip) && mErrorListE003.shouldAdd()) {
                                 // Trip isn't in GTFS data and isn't an ADDED trip - E003
-                                OccurrenceModel om = new OccurrenceModel("vehicle_id " + entity.getVehicle().getVehicle().getId() + " trip_id " + tripId);
-                                errorListE003.add(om);
-                                _log.debug(om.getPrefix() + " " + E003.getOccurrenceSuffix());
+                                OccurrenceModel om = new OccurrenceModel("vehicle_id {} trip_id {}", vehiclePosition.getVehicle().getId(), tripId);
+                                mErrorListE003.add(om);
+                                _log.debug("{} {}", om, E003.getOccurrenceSuffix());
                             }
                         } else {
-                            if (isAddedTrip(trip)) {
+                            if (isAddedTrip(trip) && mErrorListE016.shouldAdd()) {
                                 // Trip is in GTFS data and is an ADDED trip - E016
-                                OccurrenceModel om = new OccurrenceModel("vehicle_id " + entity.getVehicle().getVehicle().getId() + " trip_id " + tripId);
-                                errorListE016.add(om);
-                                _log.debug(om.getPrefix() + " " + E016.getOccurrenceSuffix());
+                                OccurrenceModel om = new OccurrenceModel("vehicle_id {} trip_id {}", vehiclePosition.getVehicle().getId(), tripId);
+                                mErrorListE016.add(om);
+                                _log.debug("{} {}", om, E016.getOccurrenceSuffix());
                             }
                         }
                     }
                 }
 
                 if (trip.hasStartTime()) {
-                    checkE020(entity.getVehicle(), trip, errorListE020);
-                    checkE023(entity.getVehicle(), trip, gtfsMetadata, errorListE023);
+                    checkE020(vehiclePosition, trip, mErrorListE020);
+                    checkE023(vehiclePosition, trip, mGtfsMetadata, mErrorListE023);
                 }
 
-                checkE004(entity.getVehicle(), trip, gtfsMetadata, errorListE004);
-                checkE021(entity.getVehicle(), trip, errorListE021);
-                checkE024(entity.getVehicle(), trip, gtfsMetadata, errorListE024);
-                checkE035(entity, trip, gtfsMetadata, errorListE035);
-                checkW009(entity, trip, errorListW009);
+                checkE004(vehiclePosition, trip, mGtfsMetadata, mErrorListE004);
+                checkE021(vehiclePosition, trip, mErrorListE021);
+                checkE024(vehiclePosition, trip, mGtfsMetadata, mErrorListE024);
+                checkE035(entity, trip, mGtfsMetadata, mErrorListE035);
+                checkW009(entity, trip, mErrorListW009);
             }
-            if (entity.hasAlert()) {
-                GtfsRealtime.Alert alert = entity.getAlert();
-                List<GtfsRealtime.EntitySelector> entitySelectors = alert.getInformedEntityList();
-                if (entitySelectors != null && entitySelectors.size() > 0) {
-                    for (GtfsRealtime.EntitySelector entitySelector : entitySelectors) {
-                        checkE033(entity, entitySelector, errorListE033);
-                        checkE034(entity, entitySelector, gtfsMetadata, errorListE034);
-                        checkE035(entity, entitySelector.getTrip(), gtfsMetadata, errorListE035);
-                        if (entitySelector.hasRouteId() && entitySelector.hasTrip()) {
-                            checkE030(entity, entitySelector, gtfsMetadata, errorListE030);
-                            checkE031(entity, entitySelector, errorListE031);
-                        }
-                        if (entitySelector.hasTrip()) {
-                            checkW009(entity, entitySelector.getTrip(), errorListW009);
-                        }
+        }
+
+        @Override
+        public void onAlert(GtfsRealtime.FeedEntity entity, GtfsRealtime.Alert alert) {
+            List<GtfsRealtime.EntitySelector> entitySelectors = alert.getInformedEntityList();
+            if (entitySelectors != null && entitySelectors.size() > 0) {
+                for (GtfsRealtime.EntitySelector entitySelector : entitySelectors) {
+                    checkE033(entity, entitySelector, mErrorListE033);
+                    checkE034(entity, entitySelector, mGtfsMetadata, mErrorListE034);
+                    checkE035(entity, entitySelector.getTrip(), mGtfsMetadata, mErrorListE035);
+                    if (entitySelector.hasRouteId() && entitySelector.hasTrip()) {
+                        checkE030(entity, entitySelector, mGtfsMetadata, mErrorListE030);
+                        checkE031(entity, entitySelector, mErrorListE031);
                     }
-                } else {
-                    // E032 - Alert does not have an informed_entity
-                    OccurrenceModel om = new OccurrenceModel("alert ID " + entity.getId() + " does not have an informed_entity");
-                    errorListE032.add(om);
-                    _log.debug(om.getPrefix() + " " + E032.getOccurrenceSuffix());
+                    if (entitySelector.hasTrip()) {
+                        checkW009(entity, entitySelector.getTrip(), mErrorListW009);
+                    }
+                }
+            } else {
+                // E032 - Alert does not have an informed_entity
+                if (mErrorListE032.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("alert ID {} does not have an informed_entity", entity.getId());
+                    mErrorListE032.add(om);
+                    _log.debug("{} {}", om, E032.getOccurrenceSuffix());
                 }
             }
         }
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!errorListE003.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E003), errorListE003));
-        }
-        if (!errorListE004.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E004), errorListE004));
-        }
-        if (!errorListE016.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E016), errorListE016));
-        }
-        if (!errorListE020.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E020), errorListE020));
-        }
-        if (!errorListE021.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E021), errorListE021));
-        }
-        if (!errorListE023.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E023), errorListE023));
-        }
-        if (!errorListE024.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E024), errorListE024));
-        }
-        if (!errorListE030.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E030), errorListE030));
-        }
-        if (!errorListE031.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E031), errorListE031));
-        }
-        if (!errorListE032.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E032), errorListE032));
-        }
-        if (!errorListE033.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E033), errorListE033));
-        }
-        if (!errorListE034.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E034), errorListE034));
-        }
-        if (!errorListE035.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E035), errorListE035));
-        }
-        if (!errorListW006.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W006), errorListW006));
-        }
-        if (!errorListW009.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W009), errorListW009));
+
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mErrorListE003.isEmpty()) {
+                errors.add(mErrorListE003.toErrorList());
+            }
+            if (!mErrorListE004.isEmpty()) {
+                errors.add(mErrorListE004.toErrorList());
+            }
+            if (!mErrorListE016.isEmpty()) {
+                errors.add(mErrorListE016.toErrorList());
+            }
+            if (!mErrorListE020.isEmpty()) {
+                errors.add(mErrorListE020.toErrorList());
+            }
+            if (!mErrorListE021.isEmpty()) {
+                errors.add(mErrorListE021.toErrorList());
+            }
+            if (!mErrorListE023.isEmpty()) {
+                errors.add(mErrorListE023.toErrorList());
+            }
+            if (!mErrorListE024.isEmpty()) {
+                errors.add(mErrorListE024.toErrorList());
+            }
+            if (!mErrorListE030.isEmpty()) {
+                errors.add(mErrorListE030.toErrorList());
+            }
+            if (!mErrorListE031.isEmpty()) {
+                errors.add(mErrorListE031.toErrorList());
+            }
+            if (!mErrorListE032.isEmpty()) {
+                errors.add(mErrorListE032.toErrorList());
+            }
+            if (!mErrorListE033.isEmpty()) {
+                errors.add(mErrorListE033.toErrorList());
+            }
+            if (!mErrorListE034.isEmpty()) {
+                errors.add(mErrorListE034.toErrorList());
+            }
+            if (!mErrorListE035.isEmpty()) {
+                errors.add(mErrorListE035.toErrorList());
+            }
+            if (!mErrorListW006.isEmpty()) {
+                errors.add(mErrorListW006.toErrorList());
+            }
+            if (!mErrorListW009.isEmpty()) {
+                errors.add(mErrorListW009.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 
 
@@ -254,12 +290,12 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param gtfsMetadata metadata for the static GTFS data
      * @param errors       list to add any errors for E004 to
      */
-    private void checkE004(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE004(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         String routeId = trip.getRouteId();
-        if (!StringUtil.isEmpty(routeId) && !gtfsMetadata.getRouteIds().contains(routeId)) {
-            OccurrenceModel om = new OccurrenceModel(getVehicleAndRouteId(entity));
+        if (!StringUtil.isEmpty(routeId) && !gtfsMetadata.hasRouteId(routeId) && errors.shouldAdd()) {
+            OccurrenceModel om = new OccurrenceModel("{}", vehicleAndRouteIdValue(entity));
             errors.add(om);
-            _log.debug(om.getPrefix() + " " + E004.getOccurrenceSuffix());
+            _log.debug("{} {}", om, E004.getOccurrenceSuffix());
         }
     }
 
@@ -270,12 +306,12 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param trip   The TripDescriptor be evaluated for rule E020
      * @param errors list to add any errors for E020 to
      */
-    private void checkE020(Object entity, GtfsRealtime.TripDescriptor trip, List<OccurrenceModel> errors) {
+    private void checkE020(Object entity, GtfsRealtime.TripDescriptor trip, OccurrenceList errors) {
         String startTime = trip.getStartTime();
-        if (!TimestampUtils.isValidTimeFormat(startTime)) {
-            OccurrenceModel om = new OccurrenceModel(getVehicleAndTripIdText(entity) + " start_time is " + startTime);
+        if (!TimestampUtils.isValidTimeFormat(startTime) && errors.shouldAdd()) {
+            OccurrenceModel om = new OccurrenceModel("{} start_time is {}", vehicleAndTripIdValue(entity), startTime);
             errors.add(om);
-            _log.debug(om.getPrefix() + " " + E020.getOccurrenceSuffix());
+            _log.debug("{} {}", om, E020.getOccurrenceSuffix());
         }
     }
 
@@ -286,17 +322,16 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param trip   The TripDescriptor be evaluated for rule E023
      * @param errors list to add any errors for E023 to
      */
-    private void checkE023(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE023(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         String startTime = trip.getStartTime();
         String tripId = trip.getTripId();
-        if (tripId != null && !gtfsMetadata.getExactTimesZeroTripIds().contains(tripId) && !gtfsMetadata.getExactTimesOneTrips().containsKey(tripId)) {
+        if (tripId != null && !gtfsMetadata.getExactTimesZeroTripIds().contains(tripId) && gtfsMetadata.getExactTimesOneWindows(tripId) == null) {
             // Trip is a normal (not frequencies.txt) trip
-            int firstArrivalTime = gtfsMetadata.getTripStopTimes().get(tripId).get(0).getArrivalTime();
-            String formattedArrivalTime = TimestampUtils.secondsAfterMidnightToClock(firstArrivalTime);
-            if (!startTime.equals(formattedArrivalTime)) {
-                OccurrenceModel om = new OccurrenceModel("GTFS-rt " + getVehicleAndTripIdText(entity) + " start_time is " + startTime + " and GTFS initial arrival_time is " + formattedArrivalTime);
+            Integer firstArrivalTime = gtfsMetadata.getTripFirstArrivalTime(tripId);
+            if (firstArrivalTime != null && TimestampUtils.parseClockTime(startTime) != firstArrivalTime && errors.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("GTFS-rt {} start_time is {} and GTFS initial arrival_time is {}", vehicleAndTripIdValue(entity), startTime, OccurrenceModel.timeOfDay(firstArrivalTime));
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E023.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E023.getOccurrenceSuffix());
             }
         }
     }
@@ -308,13 +343,13 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param trip   The TripDescriptor be evaluated for rule E021
      * @param errors list to add any errors for E021 to
      */
-    private void checkE021(Object entity, GtfsRealtime.TripDescriptor trip, List<OccurrenceModel> errors) {
+    private void checkE021(Object entity, GtfsRealtime.TripDescriptor trip, OccurrenceList errors) {
         if (trip.hasStartDate()) {
-            if (!TimestampUtils.isValidDateFormat(trip.getStartDate())) {
+            if (!TimestampUtils.isValidDateFormat(trip.getStartDate()) && errors.shouldAdd()) {
                 // E021 - Invalid start_date format
-                OccurrenceModel om = new OccurrenceModel(getVehicleAndTripIdText(entity) + " start_date is " + trip.getStartDate());
+                OccurrenceModel om = new OccurrenceModel("{} start_date is {}", vehicleAndTripIdValue(entity), trip.getStartDate());
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E021.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E021.getOccurrenceSuffix());
             }
         }
     }
@@ -327,18 +362,18 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param gtfsMetadata metadata for the static GTFS data
      * @param errors       list to add any errors for E024 to
      */
-    private void checkE024(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE024(Object entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         if (trip.hasDirectionId()) {
             int directionId = trip.getDirectionId();
-            Trip gtfsTrip = gtfsMetadata.getTrips().get(trip.getTripId());
-            if (gtfsTrip != null &&
-                    (gtfsTrip.getDirectionId() == null || !gtfsTrip.getDirectionId().equals(String.valueOf(directionId)))) {
-                String ids = getVehicleAndTripIdText(entity);
+            String gtfsDirectionId = gtfsMetadata.getTripDirectionId(trip.getTripId());
+            if (gtfsMetadata.hasTripId(trip.getTripId()) &&
+                    (gtfsDirectionId == null || !gtfsDirectionId.equals(String.valueOf(directionId)))) {
                 // E024 - trip direction_id does not match GTFS data
-                OccurrenceModel om = new OccurrenceModel("GTFS-rt " + ids + " trip.direction_id is " + directionId +
-                        " but GTFS trip.direction_id is " + gtfsTrip.getDirectionId());
-                errors.add(om);
-                _log.debug(om.getPrefix() + " " + E024.getOccurrenceSuffix());
+                if (errors.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("GTFS-rt {} trip.direction_id is {} but GTFS trip.direction_id is {}", vehicleAndTripIdValue(entity), directionId, gtfsDirectionId);
+                    errors.add(om);
+                    _log.debug("{} {}", om, E024.getOccurrenceSuffix());
+                }
             }
         }
     }
@@ -352,17 +387,16 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param gtfsMetadata   metadata for the static GTFS data
      * @param errors         list to add any errors for E030 to
      */
-    private void checkE030(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE030(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         String routeId = entitySelector.getRouteId();
         GtfsRealtime.TripDescriptor tripDescriptor = entitySelector.getTrip();
         if (tripDescriptor.hasTripId()) {
-            Trip gtfsTrip = gtfsMetadata.getTrips().get(tripDescriptor.getTripId());
-            if (gtfsTrip != null && !routeId.equals(gtfsTrip.getRoute().getId().getId())) {
+            String gtfsRouteId = gtfsMetadata.getTripRouteId(tripDescriptor.getTripId());
+            if (gtfsRouteId != null && !routeId.equals(gtfsRouteId) && errors.shouldAdd()) {
                 // E030 - Alert trip_id does not belong to alert route_id
-                OccurrenceModel om = new OccurrenceModel("alert ID " + entity.getId() + " informed_entity.trip.trip_id "
-                        + tripDescriptor.getTripId() + " does not belong to informed_entity.route_id " + routeId + " (GTFS says it belongs to route_id " + gtfsTrip.getRoute().getId().getId() + ")");
+                OccurrenceModel om = new OccurrenceModel("alert ID {} informed_entity.trip.trip_id {} does not belong to informed_entity.route_id {} (GTFS says it belongs to route_id {})", entity.getId(), tripDescriptor.getTripId(), routeId, gtfsRouteId);
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E030.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E030.getOccurrenceSuffix());
             }
         }
     }
@@ -375,14 +409,14 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param entitySelector EntitySelector that has both a routeId and a tripDescriptor
      * @param errors         list to add any errors for E031 to
      */
-    private void checkE031(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, List<OccurrenceModel> errors) {
+    private void checkE031(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, OccurrenceList errors) {
         if (entitySelector.getTrip().hasRouteId()) {
             String routeId = entitySelector.getRouteId();
-            if (!entitySelector.getTrip().getRouteId().equals(routeId)) {
+            if (!entitySelector.getTrip().getRouteId().equals(routeId) && errors.shouldAdd()) {
                 // E031 - Alert informed_entity.route_id does not match informed_entity.trip.route_id
-                OccurrenceModel om = new OccurrenceModel("alert ID " + entity.getId() + " informed_entity.route_id " + routeId + " does not equal informed_entity.trip.route_id " + entitySelector.getTrip().getRouteId());
+                OccurrenceModel om = new OccurrenceModel("alert ID {} informed_entity.route_id {} does not equal informed_entity.trip.route_id {}", entity.getId(), routeId, entitySelector.getTrip().getRouteId());
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E031.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E031.getOccurrenceSuffix());
             }
         }
     }
@@ -395,7 +429,7 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param entitySelector EntitySelector to examine for specifiers
      * @param errors         list to add any errors for E033 to
      */
-    private void checkE033(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, List<OccurrenceModel> errors) {
+    private void checkE033(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, OccurrenceList errors) {
         GtfsRealtime.TripDescriptor trip = null;
         if (entitySelector.hasTrip()) {
             trip = entitySelector.getTrip();
@@ -410,9 +444,11 @@ public class TripDescriptorValidator implements FeedEntityValidator {
                     (!trip.hasTripId() &&
                             !trip.hasRouteId())) {
                 // E033 - Alert informed_entity does not have any specifiers
-                OccurrenceModel om = new OccurrenceModel("alert ID " + entity.getId() + " informed_entity and informed_entity.trip do not not reference any agency, route, trip, or stop");
-                errors.add(om);
-                _log.debug(om.getPrefix() + " " + E033.getOccurrenceSuffix());
+                if (errors.shouldAdd()) {
+                    OccurrenceModel om = new OccurrenceModel("alert ID {} informed_entity and informed_entity.trip do not not reference any agency, route, trip, or stop", entity.getId());
+                    errors.add(om);
+                    _log.debug("{} {}", om, E033.getOccurrenceSuffix());
+                }
             }
         }
     }
@@ -426,13 +462,13 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param gtfsMetadata   information about the GTFS dataset
      * @param errors         list to add any errors for E034 to
      */
-    private void checkE034(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE034(GtfsRealtime.FeedEntity entity, GtfsRealtime.EntitySelector entitySelector, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         if (entitySelector.hasAgencyId()) {
-            if (!gtfsMetadata.getAgencyIds().contains(entitySelector.getAgencyId())) {
+            if (!gtfsMetadata.getAgencyIds().contains(entitySelector.getAgencyId()) && errors.shouldAdd()) {
                 // E033 - GTFS-rt agency_id does not exist in GTFS data
-                OccurrenceModel om = new OccurrenceModel("alert ID " + entity.getId() + " agency_id " + entitySelector.getAgencyId());
+                OccurrenceModel om = new OccurrenceModel("alert ID {} agency_id {}", entity.getId(), entitySelector.getAgencyId());
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E034.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E034.getOccurrenceSuffix());
             }
         }
     }
@@ -445,23 +481,22 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param gtfsMetadata information about the GTFS dataset
      * @param errors       list to add any errors for E034 to
      */
-    private void checkE035(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE035(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripDescriptor trip, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         if (trip.hasTripId() && trip.hasRouteId()) {
-            if (!gtfsMetadata.getRouteIds().contains(trip.getRouteId())) {
+            if (!gtfsMetadata.hasRouteId(trip.getRouteId())) {
                 // route_id isn't in GTFS data (which will be caught by E004) - return;
                 return;
             }
-            Trip gtfsTrip = gtfsMetadata.getTrips().get(trip.getTripId());
-            if (gtfsTrip == null) {
+            String gtfsRouteId = gtfsMetadata.getTripRouteId(trip.getTripId());
+            if (gtfsRouteId == null) {
                 // trip_id isn't in GTFS data (which will be caught by E003) - return;
                 return;
             }
-            String gtfsRouteId = gtfsTrip.getRoute().getId().getId();
-            if (!gtfsRouteId.equals(trip.getRouteId())) {
+            if (!gtfsRouteId.equals(trip.getRouteId()) && errors.shouldAdd()) {
                 // E035 - GTFS-rt trip.trip_id does not belong to GTFS-rt trip.route_id in GTFS trips.txt
-                OccurrenceModel om = new OccurrenceModel("GTFS-rt entity ID " + entity.getId() + " trip_id " + trip.getTripId() + " has route_id " + trip.getRouteId() + " but belongs to GTFS route_id " + gtfsRouteId);
+                OccurrenceModel om = new OccurrenceModel("GTFS-rt entity ID {} trip_id {} has route_id {} but belongs to GTFS route_id {}", entity.getId(), trip.getTripId(), trip.getRouteId(), gtfsRouteId);
                 errors.add(om);
-                _log.debug(om.getPrefix() + " " + E035.getOccurrenceSuffix());
+                _log.debug("{} {}", om, E035.getOccurrenceSuffix());
             }
         }
     }
@@ -473,10 +508,10 @@ public class TripDescriptorValidator implements FeedEntityValidator {
      * @param tripDescriptor trip to examine to see if it has a schedule_relationship
      * @param warnings       list to add any warnings for W009 to
      */
-    private void checkW009(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripDescriptor tripDescriptor, List<OccurrenceModel> warnings) {
-        if (tripDescriptor != null && !tripDescriptor.hasScheduleRelationship()) {
+    private void checkW009(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripDescriptor tripDescriptor, OccurrenceList warnings) {
+        if (tripDescriptor != null && !tripDescriptor.hasScheduleRelationship() && warnings.shouldAdd()) {
             // W009 - schedule_relationship not populated
-            RuleUtils.addW009Occurrence(getTripId(entity, tripDescriptor), warnings);
+            RuleUtils.addW009Occurrence(warnings, "{}", tripIdValue(entity, tripDescriptor));
         }
     }
 }
@@ -18,15 +18,18 @@
 package edu.usf.cutr.gtfsrtvalidator.validation.rules;
 
 import com.google.transit.realtime.GtfsRealtime;
-import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
 import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils;
-import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
+import edu.usf.cutr.gtfsrtvalidator.util.PolylineIndex;
+import edu.usf.cutr.gtfsrtvalidator.validation.DetourAlertIndex;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
 import org.hsqldb.lib.StringUtil;
 import org.locationtech.spatial4j.shape.Shape;
-import org.onebusaway.gtfs.impl.GtfsDaoImpl;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
@@ -45,105 +48,127 @@ import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
  * W004 - VehiclePosition has unrealistic speed
  */
 
-public class VehicleValidator implements FeedEntityValidator {
+public class VehicleValidator implements EntityVisitorValidator {
 
     private static final org.slf4j.Logger _log = LoggerFactory.getLogger(VehicleValidator.class);
 
     public static final float MAX_REALISTIC_SPEED_METERS_PER_SECOND = 26.0f;  // Approx. 60 miles per hour
 
     @Override
-    public List<ErrorListHelperModel> validate(long currentTimeMillis, GtfsDaoImpl gtfsData, GtfsMetadata gtfsMetadata, GtfsRealtime.FeedMessage feedMessage, GtfsRealtime.FeedMessage previousFeedMessage) {
-        List<GtfsRealtime.FeedEntity> entityList = feedMessage.getEntityList();
-        List<OccurrenceModel> e026List = new ArrayList<>();
-        List<OccurrenceModel> e027List = new ArrayList<>();
-        List<OccurrenceModel> e028List = new ArrayList<>();
-        List<OccurrenceModel> e029List = new ArrayList<>();
-        List<OccurrenceModel> w002List = new ArrayList<>();
-        List<OccurrenceModel> w004List = new ArrayList<>();
+    public EntityVisitor newVisitor(ValidationContext context) {
+        return new Visitor(context);
+    }
 
-        for (GtfsRealtime.FeedEntity entity : entityList) {
-            if (entity.hasTripUpdate()) {
-                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+    private class Visitor implements EntityVisitor {
 
-                // W002: vehicle_id should be populated in trip_update
-                if (StringUtil.isEmpty(tripUpdate.getVehicle().getId())) {
-                    OccurrenceModel om = new OccurrenceModel("trip_id " + tripUpdate.getTrip().getTripId());
-                    w002List.add(om);
-                    _log.debug(om.getPrefix() + " " + W002.getOccurrenceSuffix());
-                }
+        private final ValidationContext mContext;
+        private final GtfsMetadata mGtfsMetadata;
+        private final OccurrenceList mE026List;
+        private final OccurrenceList mE027List;
+        private final OccurrenceList mE028List;
+        private final OccurrenceList mE029List;
+        private final OccurrenceList mW002List;
+        private final OccurrenceList mW004List;
+
+        Visitor(ValidationContext context) {
+            mContext = context;
+            mGtfsMetadata = context.getGtfsMetadata();
+            mE026List = context.newOccurrenceList(E026);
+            mE027List = context.newOccurrenceList(E027);
+            mE028List = context.newOccurrenceList(E028);
+            mE029List = context.newOccurrenceList(E029);
+            mW002List = context.newOccurrenceList(W002);
+            mW004List = context.newOccurrenceList(W004);
+        }
+
+        @Override
+        public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+            // W002: vehicle_id should be populated in trip_update
+            if (StringUtil.isEmpty(tripUpdate.getVehicle().getId()) && mW002List.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("trip_id {}", tripUpdate.getTrip().getTripId());
+                mW002List.add(om);
+                _log.debug("{} {}", om, W002.getOccurrenceSuffix());
             }
-            if (entity.hasVehicle()) {
-                GtfsRealtime.VehiclePosition v = entity.getVehicle();
+        }
 
-                // W002: vehicle_id should be populated in VehiclePosition
-                if (StringUtil.isEmpty(v.getVehicle().getId())) {
-                    OccurrenceModel om = new OccurrenceModel("entity ID " + entity.getId());
-                    w002List.add(om);
-                    _log.debug(om.getPrefix() + " " + W002.getOccurrenceSuffix());
-                }
+        @Override
+        public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition v) {
+            // W002: vehicle_id should be populated in VehiclePosition
+            if (StringUtil.isEmpty(v.getVehicle().getId()) && mW002List.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("entity ID {}", entity.getId());
+                mW002List.add(om);
+                _log.debug("{} {}", om, W002.getOccurrenceSuffix());
+            }
 
-                // W004: VehiclePosition has unrealistic speed
-                if (v.hasPosition() && v.getPosition().hasSpeed()) {
-                    if (v.getPosition().getSpeed() > MAX_REALISTIC_SPEED_METERS_PER_SECOND ||
-                            v.getPosition().getSpeed() < 0f) {
-                        OccurrenceModel om = new OccurrenceModel((v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() : "entity ID " + entity.getId()) +
-                                " speed of " + v.getPosition().getSpeed() + " m/s (" + String.format("%.2f", GtfsUtils.toMilesPerHour(v.getPosition().getSpeed())) + " mph)");
-                        w004List.add(om);
-                        _log.debug(om.getPrefix() + " " + W004.getOccurrenceSuffix());
+            // W004: VehiclePosition has unrealistic speed
+            if (v.hasPosition() && v.getPosition().hasSpeed()) {
+                if (v.getPosition().getSpeed() > MAX_REALISTIC_SPEED_METERS_PER_SECOND ||
+                        v.getPosition().getSpeed() < 0f) {
+                    if (mW004List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("{} speed of {} m/s ({} mph)", getVehicleId(entity), v.getPosition().getSpeed(), OccurrenceModel.decimal(GtfsUtils.toMilesPerHour(v.getPosition().getSpeed())));
+                        mW004List.add(om);
+                        _log.debug("{} {}", om, W004.getOccurrenceSuffix());
                     }
                 }
+            }
 
-                if (v.hasPosition()) {
-                    GtfsRealtime.Position position = v.getPosition();
-                    String id = (v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() : "entity ID " + entity.getId());
-                    if (!position.hasLatitude() || !position.hasLongitude()) {
-                        // E026: Invalid vehicle position - missing lat/long
-                        OccurrenceModel om = new OccurrenceModel(id + " position is missing lat/long");
-                        e026List.add(om);
-                        _log.debug(om.getPrefix() + " " + E026.getOccurrenceSuffix());
-                    } else if (!GtfsUtils.isPositionValid(position)) {
-                        // E026: Invalid vehicle position - invalid lat/long
-                        OccurrenceModel om = new OccurrenceModel(id + " has latitude/longitude of (" + position.getLatitude() + "," + position.getLongitude() + ")");
-                        e026List.add(om);
-                        _log.debug(om.getPrefix() + " " + E026.getOccurrenceSuffix());
-                    } else {
-                        // Position is valid - check E028, if it lies within the agency bounds, using shapes.txt if it exists
-                        boolean insideBounds = checkE028(entity, gtfsMetadata, e028List);
-                        if (insideBounds) {
-                            // Position is within agency bounds - check E029, if it lies within the trip bounds using shapes.txt
-                            checkE029(entityList, entity, gtfsMetadata, e029List);
-                        }
+            if (v.hasPosition()) {
+                GtfsRealtime.Position position = v.getPosition();
+                OccurrenceModel.Value id = getVehicleId(entity);
+                if (!position.hasLatitude() || !position.hasLongitude()) {
+                    // E026: Invalid vehicle position - missing lat/long
+                    if (mE026List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("{} position is missing lat/long", id);
+                        mE026List.add(om);
+                        _log.debug("{} {}", om, E026.getOccurrenceSuffix());
                     }
-                    if (!GtfsUtils.isBearingValid(position)) {
-                        // E027: Invalid vehicle bearing
-                        OccurrenceModel om = new OccurrenceModel(id + " has bearing of " + position.getBearing());
-                        e027List.add(om);
-                        _log.debug(om.getPrefix() + " " + E027.getOccurrenceSuffix());
+                } else if (!GtfsUtils.isPositionValid(position)) {
+                    // E026: Invalid vehicle position - invalid lat/long
+                    if (mE026List.shouldAdd()) {
+                        OccurrenceModel om = new OccurrenceModel("{} has latitude/longitude of ({},{})", id, position.getLatitude(), position.getLongitude());
+                        mE026List.add(om);
+                        _log.debug("{} {}", om, E026.getOccurrenceSuffix());
                     }
+                } else {
+                    // Position is valid - check E028, if it lies within the agency bounds, using shapes.txt if it exists
+                    boolean insideBounds = checkE028(entity, mGtfsMetadata, mE028List);
+                    if (insideBounds) {
+                        // Position is within agency bounds - check E029, if it lies within the trip bounds using shapes.txt
+                        checkE029(mContext, entity, mGtfsMetadata, mE029List);
+                    }
+                }
+                if (!GtfsUtils.isBearingValid(position) && mE027List.shouldAdd()) {
+                    // E027: Invalid vehicle bearing
+                    OccurrenceModel om = new OccurrenceModel("{} has bearing of {}", id, position.getBearing());
+                    mE027List.add(om);
+                    _log.debug("{} {}", om, E027.getOccurrenceSuffix());
                 }
             }
         }
 
-        List<ErrorListHelperModel> errors = new ArrayList<>();
-        if (!e026List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E026), e026List));
-        }
-        if (!e027List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E027), e027List));
-        }
-        if (!e028List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E028), e028List));
-        }
-        if (!e029List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(E029), e029List));
-        }
-        if (!w002List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W002), w002List));
-        }
-        if (!w004List.isEmpty()) {
-            errors.add(new ErrorListHelperModel(new MessageLogModel(W004), w004List));
+        @Override
+        public List<ErrorListHelperModel> getResults() {
+            List<ErrorListHelperModel> errors = new ArrayList<>();
+            if (!mE026List.isEmpty()) {
+                errors.add(mE026List.toErrorList());
+            }
+            if (!mE027List.isEmpty()) {
+                errors.add(mE027List.toErrorList());
+            }
+            if (!mE028List.isEmpty()) {
+                errors.add(mE028List.toErrorList());
+            }
+            if (!mE029List.isEmpty()) {
+                errors.add(mE029List.toErrorList());
+            }
+            if (!mW002List.isEmpty()) {
+                errors.add(mW002List.toErrorList());
+            }
+            if (!mW004List.isEmpty()) {
+                errors.add(mW004List.toErrorList());
+            }
+            return errors;
         }
-        return errors;
     }
 
     /**
@@ -154,10 +179,10 @@ public class VehicleValidator implements FeedEntityValidator {
      * @param errors       list to which any errors can be added
      * @return true if the vehicle position is within agency coverage area, false if it is not
      */
-    private boolean checkE028(GtfsRealtime.FeedEntity entity, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private boolean checkE028(GtfsRealtime.FeedEntity entity, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         GtfsRealtime.VehiclePosition v = entity.getVehicle();
         GtfsRealtime.Position position = v.getPosition();
-        String id = (v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() : "entity ID " + entity.getId());
+        OccurrenceModel.Value id = getVehicleId(entity);
 
         // See if position lies within the agency bounds, using shapes.txt if it exists
         Shape boundingBox;
@@ -173,12 +198,10 @@ public class VehicleValidator implements FeedEntityValidator {
         }
 
         boolean insideBounds = GtfsUtils.isPositionWithinShape(position, boundingBox);
-        if (!insideBounds) {
-            OccurrenceModel om = new OccurrenceModel(id + " at (" + position.getLatitude() + "," + position.getLongitude() +
-                    ") is more than " + GtfsMetadata.REGION_BUFFER_METERS + " meters (" + String.format("%.2f", GtfsUtils.toMiles(GtfsMetadata.REGION_BUFFER_METERS)) + " mile(s)) outside entire GTFS "
-                    + boundingDescription + " coverage area");
+        if (!insideBounds && errors.shouldAdd()) {
+            OccurrenceModel om = new OccurrenceModel("{} at ({},{}) is more than {} meters ({} mile(s)) outside entire GTFS {} coverage area", id, position.getLatitude(), position.getLongitude(), GtfsMetadata.REGION_BUFFER_METERS, OccurrenceModel.decimal(GtfsUtils.toMiles(GtfsMetadata.REGION_BUFFER_METERS)), boundingDescription);
             errors.add(om);
-            _log.debug(om.getPrefix() + " " + E028.getOccurrenceSuffix());
+            _log.debug("{} {}", om, E028.getOccurrenceSuffix());
         }
         return insideBounds;
     }
@@ -186,12 +209,12 @@ public class VehicleValidator implements FeedEntityValidator {
     /**
      * Vehicle position outside trip shape buffer - E029
      *
-     * @param entityList   a list of all entities for this feed iteration (needed to check if there are any detour alerts for this trip)
+     * @param context      the feed iteration being validated (needed to check if there are any detour alerts for this trip)
      * @param entity       entity that has a vehicle position to check
      * @param gtfsMetadata GTFS metadata for this entity
      * @param errors       list to which any errors can be added
      */
-    private void checkE029(List<GtfsRealtime.FeedEntity> entityList, GtfsRealtime.FeedEntity entity, GtfsMetadata gtfsMetadata, List<OccurrenceModel> errors) {
+    private void checkE029(ValidationContext context, GtfsRealtime.FeedEntity entity, GtfsMetadata gtfsMetadata, OccurrenceList errors) {
         GtfsRealtime.VehiclePosition v = entity.getVehicle();
 
         // If the vehicle doesn't have a trip_id, we can't check E029 - return
@@ -204,57 +227,44 @@ public class VehicleValidator implements FeedEntityValidator {
             routeId = v.getTrip().getRouteId();
         }
         GtfsRealtime.Position position = v.getPosition();
-        String id = (v.getVehicle().hasId() ? "vehicle_id " + v.getVehicle().getId() : "entity ID " + entity.getId());
+        OccurrenceModel.Value id = getVehicleId(entity);
 
-        Shape bufferedShape = gtfsMetadata.getBufferedTripShape(tripId);
-        if (bufferedShape == null) {
+        PolylineIndex tripShape = gtfsMetadata.getTripShapeIndex(tripId);
+        if (tripShape == null) {
             // No shape data for this trip, so we can't check E029 - return
             return;
         }
 
-        if (!GtfsUtils.isPositionWithinShape(position, bufferedShape)) {
-            if (hasDetourAlert(entityList, tripId, routeId)) {
+        if (!GtfsUtils.isPositionWithinShape(position, tripShape)) {
+            if (DetourAlertIndex.get(context).hasDetour(tripId, routeId)) {
                 // There is a DETOUR alert for this vehicle's trip_id or route_id, so it's allowed to be outside the trip shape
                 return;
             }
 
             // E029 - Vehicle position is outside of trip shape buffer and it's not on DETOUR
-            OccurrenceModel om = new OccurrenceModel(id + " trip_id " + tripId + " at (" + position.getLatitude() + "," + position.getLongitude() +
-                    ") is more than " + TRIP_BUFFER_METERS + " meters (" + String.format("%.2f", GtfsUtils.toMiles(TRIP_BUFFER_METERS)) + " mile(s)) from the GTFS trip shape");
-            errors.add(om);
-            _log.debug(om.getPrefix() + " " + E029.getOccurrenceSuffix());
+            if (errors.shouldAdd()) {
+                OccurrenceModel om = new OccurrenceModel("{} trip_id {} at ({},{}) is more than {} meters ({} mile(s)) from the GTFS trip shape", id, tripId, position.getLatitude(), position.getLongitude(), TRIP_BUFFER_METERS, OccurrenceModel.decimal(GtfsUtils.toMiles(TRIP_BUFFER_METERS)));
+                errors.add(om);
+                _log.debug("{} {}", om, E029.getOccurrenceSuffix());
+            }
         }
     }
 
     /**
-     * Returns true if there is a DETOUR service alert for either the provided trip_id or the provided route_id, or false if there is not
+     * Returns an occurrence value that renders as the vehicle_id of the entity's vehicle position, or the entity ID if
+     * the vehicle doesn't have an ID
      *
-     * @param entityList GTFS-rt entities to check for DETOUR service alerts
-     * @param tripId     trip_id to check in the service alerts
-     * @param routeId    route_id to check in the service alerts
-     * @return true if there is a DETOUR service alert for either the provided trip_id or the provided route_id, or false if there is not
+     * @param entity entity that has a vehicle position
+     * @return an occurrence value that renders as the vehicle_id of the entity's vehicle position, or the entity ID if the vehicle doesn't have an ID
      */
-    private boolean hasDetourAlert(List<GtfsRealtime.FeedEntity> entityList, String tripId, String routeId) {
-        // This could get expensive for a lot of alerts
-        for (GtfsRealtime.FeedEntity e : entityList) {
-            if (e.hasAlert()) {
-                GtfsRealtime.Alert a = e.getAlert();
-                if (a.hasEffect() && a.getEffect().equals(GtfsRealtime.Alert.Effect.DETOUR)) {
-                    for (GtfsRealtime.EntitySelector entitySelector : a.getInformedEntityList()) {
-                        if (entitySelector.hasTrip()) {
-                            if (tripId.equals(entitySelector.getTrip().getTripId())) {
-                                // There is a DETOUR alert for this vehicle's trip, so it's allowed to be outside the trip shape
-                                return true;
-                            }
-                            if (routeId != null && routeId.equals(entitySelector.getTrip().getRouteId())) {
-                                // There is a DETOUR alert for this vehicle's route, so it's allowed to be outside the trip shape
-                                return true;
-                            }
-                        }
-                    }
-                }
+    private static OccurrenceModel.Value getVehicleId(GtfsRealtime.FeedEntity entity) {
+        return builder -> {
+            GtfsRealtime.VehicleDescriptor vehicle = entity.getVehicle().getVehicle();
+            if (vehicle.hasId()) {
+                builder.append("vehicle_id ").append(vehicle.getId());
+            } else {
+                builder.append("entity ID ").append(entity.getId());
             }
-        }
-        return false;
+        };
     }
 }
@@ -236,6 +236,7 @@ downloadGTFSFeed();
 
 //Set the update interval that will be used to update the GTFS-rt feed
 localStorage.setItem("updateInterval", getUrlParameter("updateInterval"));
+localStorage.setItem("adaptiveInterval", getUrlParameter("adaptiveInterval") === "on");
 
 //Start monitoring gtfs feeds starts on click
 function startMonitoring() {
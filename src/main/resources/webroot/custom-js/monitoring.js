@@ -30,6 +30,7 @@ var setIntervalClock;
 //Retrieve the update interval value
 var serverUpdateInterval = localStorage.getItem("updateInterval");
 var updateInterval = (serverUpdateInterval / 2) * 1000;
+var adaptiveInterval = localStorage.getItem("adaptiveInterval") === "true";
 
 var hideErrors = [];
 var paginationLog = [];
@@ -46,7 +47,7 @@ var toggleDataOff = '<input type="checkbox" data-toggle="toggle" data-onstyle="s
 for (var gtfsRtFeed in gtfsRtFeeds) {
     if (gtfsRtFeeds.hasOwnProperty(gtfsRtFeed)) {
         $.ajax({
-            url: server + "/api/gtfs-rt-feed/monitor/" + gtfsRtFeeds[gtfsRtFeed]["feedId"] + "?clientId=" + clientId + "&updateInterval=" + serverUpdateInterval,
+            url: server + "/api/gtfs-rt-feed/monitor/" + gtfsRtFeeds[gtfsRtFeed]["feedId"] + "?clientId=" + clientId + "&updateInterval=" + serverUpdateInterval + "&adaptive=" + adaptiveInterval,
             type: 'PUT',
             success: function (data) {
                 initializeInterface(data["gtfsRtFeedModel"]);
@@ -22,9 +22,11 @@ import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
 import edu.usf.cutr.gtfsrtvalidator.test.util.TestUtils;
 import edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils;
+import edu.usf.cutr.gtfsrtvalidator.util.PolylineIndex;
 import edu.usf.cutr.gtfsrtvalidator.util.TimestampUtils;
 import edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules;
 import org.junit.Test;
+import org.locationtech.spatial4j.distance.DistanceUtils;
 import org.locationtech.spatial4j.shape.Shape;
 import org.locationtech.spatial4j.shape.ShapeFactory;
 
@@ -216,6 +218,35 @@ public class UtilTest {
         TimeZone timeZone = TimeZone.getTimeZone(timeZoneText);
         String clockTime = TimestampUtils.posixToClock(time, timeZone);
         assertEquals("08:51:26", clockTime);
+
+        // Times on both sides of daylight saving time changes use the right offset
+        assertEquals("01:59:59", TimestampUtils.posixToClock(1489301999L, timeZone)); // Mar 12 2017, EST
+        assertEquals("03:00:00", TimestampUtils.posixToClock(1489302000L, timeZone)); // Mar 12 2017, EDT
+        assertEquals("01:59:59", TimestampUtils.posixToClock(1509861599L, timeZone)); // Nov 5 2017, EDT
+        assertEquals("01:00:00", TimestampUtils.posixToClock(1509861600L, timeZone)); // Nov 5 2017, EST
+        assertEquals("08:51:26", TimestampUtils.posixToClock(time, timeZone));
+
+        assertEquals("12:51:26", TimestampUtils.posixToClock(time, TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void testParseClockTime() {
+        assertEquals(0, TimestampUtils.parseClockTime("00:00:00"));
+        assertEquals(21901, TimestampUtils.parseClockTime("06:05:01"));
+        assertEquals(25 * 3600 + 15 * 60 + 35, TimestampUtils.parseClockTime("25:15:35"));
+        assertEquals(-1, TimestampUtils.parseClockTime("6:05:01"));
+        assertEquals(-1, TimestampUtils.parseClockTime("06:60:01"));
+        assertEquals(-1, TimestampUtils.parseClockTime("06-05-01"));
+        assertEquals(-1, TimestampUtils.parseClockTime(""));
+    }
+
+    @Test
+    public void testParseDate() {
+        assertEquals(20170427, TimestampUtils.parseDate("20170427"));
+        assertEquals(20160229, TimestampUtils.parseDate("20160229"));
+        assertEquals(-1, TimestampUtils.parseDate("20170229"));
+        assertEquals(-1, TimestampUtils.parseDate("20170431"));
+        assertEquals(-1, TimestampUtils.parseDate("2017042a"));
     }
 
     @Test
@@ -350,6 +381,40 @@ public class UtilTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testPolylineIndex() {
+        // An L-shaped polyline on the USF campus - 2 km east, then 2 km north, projected around its mean latitude like the index
+        double metersPerDegree = DistanceUtils.DEG_TO_KM * 1000;
+        double lat = 28.0587;
+        double lon = -82.4139;
+        double metersPerDegreeLon = metersPerDegree * Math.cos(Math.toRadians(lat + 2000.0 / 3 / metersPerDegree));
+        double[] latitudes = {lat, lat, lat + 2000 / metersPerDegree};
+        double[] longitudes = {lon, lon + 2000 / metersPerDegreeLon, lon + 2000 / metersPerDegreeLon};
+        PolylineIndex index = new PolylineIndex(latitudes, longitudes, 200);
+        assertEquals(2, index.getSegmentCount());
+
+        // On the first segment, and 150 m and 250 m south of its middle
+        assertTrue(index.isWithinDistance(lat, lon + 1000 / metersPerDegreeLon));
+        assertTrue(index.isWithinDistance(lat - 150 / metersPerDegree, lon + 1000 / metersPerDegreeLon));
+        assertFalse(index.isWithinDistance(lat - 250 / metersPerDegree, lon + 1000 / metersPerDegreeLon));
+
+        // 150 m east of the middle of the second segment, and 150 m inside the corner
+        assertTrue(index.isWithinDistance(lat + 1000 / metersPerDegree, lon + 2150 / metersPerDegreeLon));
+        assertTrue(index.isWithinDistance(lat + 150 / metersPerDegree, lon + 1850 / metersPerDegreeLon));
+
+        // 150 m past the corner in both directions is about 212 m from it
+        assertFalse(index.isWithinDistance(lat - 150 / metersPerDegree, lon + 2150 / metersPerDegreeLon));
+
+        // Before the start of the polyline
+        assertTrue(index.isWithinDistance(lat, lon - 190 / metersPerDegreeLon));
+        assertFalse(index.isWithinDistance(lat, lon - 210 / metersPerDegreeLon));
+
+        // A polyline with a single vertex is a circle
+        PolylineIndex point = new PolylineIndex(new double[]{lat}, new double[]{lon}, 200);
+        assertTrue(point.isWithinDistance(lat + 190 / metersPerDegree, lon));
+        assertFalse(point.isWithinDistance(lat + 210 / metersPerDegree, lon));
+    }
+
     @Test
     public void testGetTripIdText() {
         GtfsRealtime.FeedEntity.Builder feedEntityBuilder = GtfsRealtime.FeedEntity.newBuilder();
@@ -382,4 +447,37 @@ public class UtilTest {
         // Make sure we throw an exception if the method is provided objects other than TripUpdate or VehiclePosition
         GtfsUtils.getVehicleAndRouteId(GtfsRealtime.TripDescriptor.newBuilder().setRouteId("1").build());
     }
+
+    @Test
+    public void testOccurrencePrefix() {
+        OccurrenceModel om = new OccurrenceModel("trip_id {} stop_sequence {} arrival_time {}", "1.1", 3, 1493383886L);
+        assertEquals(3, om.getArguments().length);
+        assertEquals("trip_id 1.1 stop_sequence 3 arrival_time 1493383886", om.getPrefix());
+        assertEquals(om.getPrefix(), om.toString());
+
+        // Missing values are left as placeholders, extra values are ignored
+        assertEquals("trip_id 1.1 stop_id {}", new OccurrenceModel("trip_id {} stop_id {}", "1.1").getPrefix());
+        assertEquals("trip_id 1.1", new OccurrenceModel("trip_id {}", "1.1", "A").getPrefix());
+
+        // Prefix text is used as-is
+        assertEquals("header {}", new OccurrenceModel("header {}").getPrefix());
+    }
+
+    @Test
+    public void testOccurrenceValues() {
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        OccurrenceModel om = new OccurrenceModel("arrival_time {} ({}) at {} mph, start_time {}",
+                OccurrenceModel.clock(1489302000L, timeZone), 1489302000L, OccurrenceModel.decimal(12.345), OccurrenceModel.timeOfDay(3661));
+        assertEquals("arrival_time 03:00:00 (1489302000) at 12.35 mph, start_time 01:01:01", om.getPrefix());
+
+        GtfsRealtime.FeedEntity entity = GtfsRealtime.FeedEntity.newBuilder().setId("4321").build();
+        GtfsRealtime.TripUpdate tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("1234").setRouteId("1"))
+                .build();
+        GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate = GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder().setStopId("9876").build();
+        om = new OccurrenceModel("{} {} {} {}", GtfsUtils.tripIdValue(entity, tripUpdate), GtfsUtils.stopTimeUpdateIdValue(stopTimeUpdate),
+                GtfsUtils.vehicleAndTripIdValue(tripUpdate), GtfsUtils.vehicleAndRouteIdValue(tripUpdate));
+        assertEquals("trip_id 1234 stop_id 9876 trip_id 1234 route_id 1", om.getPrefix());
+        assertEquals("entity ID 4321", new OccurrenceModel("{}", GtfsUtils.tripIdValue(entity, GtfsRealtime.TripDescriptor.getDefaultInstance())).getPrefix());
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.AdaptiveInterval;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for learning a feed's refresh period and planning polls around it
+ */
+public class AdaptiveIntervalTest {
+
+    private static final long START = 1493383886000L;
+
+    @Test
+    public void testInitialInterval() {
+        AdaptiveInterval interval = new AdaptiveInterval(10000, 5000, 120000);
+        assertEquals(10000, interval.getNextDelayMillis(START));
+        assertEquals(0, interval.getRefreshPeriodMillis());
+
+        // Initial interval is kept within the bounds
+        assertEquals(5000, new AdaptiveInterval(1000, 5000, 120000).getNextDelayMillis(START));
+        assertEquals(120000, new AdaptiveInterval(300000, 5000, 120000).getNextDelayMillis(START));
+    }
+
+    @Test
+    public void testLearnsRefreshPeriod() {
+        AdaptiveInterval interval = new AdaptiveInterval(10000, 5000, 120000);
+        // Producer publishes every 30 seconds, and we see each feed 2 seconds after its header timestamp
+        for (int i = 0; i < 3; i++) {
+            assertTrue(interval.observe(START + i * 30000 + 2000, START + i * 30000));
+            // Polling again before the next update doesn't tell us anything new
+            assertFalse(interval.observe(START + i * 30000 + 12000, START + i * 30000));
+        }
+        assertEquals(30000, interval.getRefreshPeriodMillis());
+
+        // Next update is expected at 90 s (+2 s latency), so poll just after 92 s
+        long now = START + 60000 + 2000;
+        assertEquals(30000 + AdaptiveInterval.MARGIN_MILLIS, interval.getNextDelayMillis(now));
+    }
+
+    @Test
+    public void testLateUpdate() {
+        AdaptiveInterval interval = new AdaptiveInterval(10000, 5000, 120000);
+        for (int i = 0; i < 3; i++) {
+            interval.observe(START + i * 40000, START + i * 40000);
+        }
+        // Expected update at 120 s didn't happen - check again after a quarter of the period
+        assertEquals(10000, interval.getNextDelayMillis(START + 130000));
+    }
+
+    @Test
+    public void testBounds() {
+        AdaptiveInterval slow = new AdaptiveInterval(10000, 5000, 60000);
+        for (int i = 0; i < 3; i++) {
+            slow.observe(START + i * 300000, START + i * 300000);
+        }
+        assertEquals(60000, slow.getNextDelayMillis(START + 600000));
+
+        AdaptiveInterval fast = new AdaptiveInterval(10000, 5000, 60000);
+        for (int i = 0; i < 3; i++) {
+            fast.observe(START + i * 1000, START + i * 1000);
+        }
+        assertEquals(5000, fast.getNextDelayMillis(START + 2000));
+    }
+
+    @Test
+    public void testIgnoresMissingAndOlderTimestamps() {
+        AdaptiveInterval interval = new AdaptiveInterval(10000, 5000, 120000);
+        assertFalse(interval.observe(START, 0));
+        assertTrue(interval.observe(START, START));
+        assertFalse(interval.observe(START + 1000, START - 30000));
+        assertEquals(0, interval.getRefreshPeriodMillis());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.CompactGtfsStore;
+import edu.usf.cutr.gtfsrtvalidator.test.FeedMessageTest;
+import edu.usf.cutr.gtfsrtvalidator.util.StringDictionary;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static edu.usf.cutr.gtfsrtvalidator.util.StringDictionary.NO_ID;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the primitive-array store of GTFS trips, stop times, stops and shapes
+ */
+public class CompactGtfsStoreTest extends FeedMessageTest {
+
+    public CompactGtfsStoreTest() throws IOException {
+    }
+
+    @Test
+    public void testStringDictionary() {
+        StringDictionary dictionary = new StringDictionary(2);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.add("trip" + i));
+        }
+        // Adding a string again returns the same id
+        assertEquals(42, dictionary.add("trip42"));
+        assertEquals(1000, dictionary.size());
+        assertEquals(999, dictionary.getId("trip999"));
+        assertEquals("trip7", dictionary.get(7));
+        assertTrue(dictionary.contains("trip0"));
+        assertFalse(dictionary.contains("trip1000"));
+        assertEquals(NO_ID, dictionary.getId(null));
+
+        dictionary.trim();
+        assertEquals(1000, dictionary.add("trip1000"));
+        assertEquals("trip1000", dictionary.get(1000));
+    }
+
+    @Test
+    public void testTripsAndStopTimes() {
+        CompactGtfsStore store = gtfsDataMetadata.getStore();
+        int trip = store.getTripIndex("15.1");
+        assertNotEquals(NO_ID, trip);
+        assertEquals("15.1", store.getTripId(trip));
+        assertEquals("15", store.getTripRouteId(trip));
+        assertNull(store.getTripDirectionId(trip));
+        assertEquals(NO_ID, store.getTripShape(trip));
+        assertEquals(NO_ID, store.getTripIndex("not a trip"));
+
+        // Stop times are in stop_sequence order
+        assertTrue(store.getStopTimeCount(trip) >= 2);
+        assertEquals("U", store.getStopTimeStopId(trip, 0));
+        assertEquals(0, store.getArrivalTime(trip, 0));
+        assertEquals(40 * 60, store.getDepartureTime(trip, 1));
+        for (int i = 1; i < store.getStopTimeCount(trip); i++) {
+            assertTrue(store.getStopSequence(trip, i - 1) < store.getStopSequence(trip, i));
+        }
+
+        assertEquals(Integer.valueOf(0), gtfsDataMetadata.getTripFirstArrivalTime("15.1"));
+        assertNull(gtfsDataMetadata.getTripFirstArrivalTime("not a trip"));
+        assertTrue(gtfsDataMetadata.hasRouteId("15"));
+        assertFalse(gtfsDataMetadata.hasRouteId("not a route"));
+    }
+
+    @Test
+    public void testStops() {
+        assertTrue(gtfsDataMetadata.hasStopId("A"));
+        assertEquals(Integer.valueOf(0), gtfsDataMetadata.getStopLocationType("A"));
+        assertFalse(gtfsDataMetadata.hasStopId("not a stop"));
+        assertNull(gtfsDataMetadata.getStopLocationType("not a stop"));
+    }
+
+    @Test
+    public void testShapes() {
+        // USF Bull Runner trip_id 2 uses shape_id 0, which has 245 points
+        CompactGtfsStore store = bullRunnerGtfsMetadata.getStore();
+        int shape = store.getTripShape(store.getTripIndex("2"));
+        assertEquals("0", store.getShapeId(shape));
+        assertEquals(245, store.getShapePointCount(shape));
+        assertEquals(28.0638055258, store.getShapeLat(shape, 0), 0.00001);
+        assertEquals(-82.4189883471, store.getShapeLon(shape, 0), 0.00001);
+        assertEquals(28.0631806766, store.getShapeLat(shape, 1), 0.00001);
+
+        // Trips with the same shape_id share the same shape geometry
+        assertEquals(store.getTripShape(store.getTripIndex("1")), store.getTripShape(store.getTripIndex("2")));
+        assertSame(bullRunnerGtfsMetadata.getTripShapeIndex("1"), bullRunnerGtfsMetadata.getTripShapeIndex("2"));
+        assertNotSame(bullRunnerGtfsMetadata.getTripShapeIndex("2"), bullRunnerGtfsMetadata.getTripShapeIndex("3"));
+
+        // No shapes.txt
+        CompactGtfsStore noShapes = bullRunnerGtfsNoShapesMetadata.getStore();
+        assertEquals(0, noShapes.getShapeCount());
+        assertEquals(NO_ID, noShapes.getTripShape(noShapes.getTripIndex("2")));
+    }
+
+    @Test
+    public void testParallelBuildMatchesSequentialBuild() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CompactGtfsStore parallel = new CompactGtfsStore(bullRunnerGtfs, pool);
+        pool.shutdown();
+        CompactGtfsStore sequential = new CompactGtfsStore(bullRunnerGtfs, null);
+
+        assertEquals(sequential.getTripCount(), parallel.getTripCount());
+        for (int trip = 0; trip < sequential.getTripCount(); trip++) {
+            assertEquals(sequential.getTripId(trip), parallel.getTripId(trip));
+            assertEquals(sequential.getTripRouteId(trip), parallel.getTripRouteId(trip));
+            assertEquals(sequential.getTripShape(trip), parallel.getTripShape(trip));
+            assertEquals(sequential.getStopTimeCount(trip), parallel.getStopTimeCount(trip));
+            for (int i = 0; i < sequential.getStopTimeCount(trip); i++) {
+                assertEquals(sequential.getStopTimeStopId(trip, i), parallel.getStopTimeStopId(trip, i));
+                assertEquals(sequential.getArrivalTime(trip, i), parallel.getArrivalTime(trip, i));
+                assertEquals(sequential.getStopSequence(trip, i), parallel.getStopSequence(trip, i));
+            }
+        }
+        assertEquals(sequential.getShapeCount(), parallel.getShapeCount());
+        for (int shape = 0; shape < sequential.getShapeCount(); shape++) {
+            assertEquals(sequential.getShapeId(shape), parallel.getShapeId(shape));
+            assertEquals(sequential.getShapePointCount(shape), parallel.getShapePointCount(shape));
+            for (int i = 0; i < sequential.getShapePointCount(shape); i++) {
+                assertEquals(sequential.getShapeLat(shape, i), parallel.getShapeLat(shape, i), 0);
+                assertEquals(sequential.getShapeLon(shape, i), parallel.getShapeLon(shape, i), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.AdaptiveInterval;
+import edu.usf.cutr.gtfsrtvalidator.background.FeedScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the shared feed scheduler
+ */
+public class FeedSchedulerTest {
+
+    private FeedScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FeedScheduler(2);
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void testOneRegistrationPerFeed() {
+        FeedScheduler.ScheduledFeed first = mScheduler.schedule("http://example.com/a", () -> {
+        }, 10);
+        FeedScheduler.ScheduledFeed second = mScheduler.schedule("http://example.com/a", () -> {
+        }, 10);
+        mScheduler.schedule("http://example.com/b", () -> {
+        }, 10);
+
+        // Registering the same feed twice keeps the original schedule
+        assertSame(first, second);
+        assertEquals(2, mScheduler.getScheduledFeeds().size());
+
+        assertTrue(mScheduler.cancel("http://example.com/a"));
+        assertFalse(mScheduler.cancel("http://example.com/a"));
+        assertNull(mScheduler.getScheduledFeed("http://example.com/a"));
+        assertEquals(1, mScheduler.getScheduledFeeds().size());
+    }
+
+    @Test
+    public void testSchedulingLag() throws InterruptedException {
+        CountDownLatch slowFeedStarted = new CountDownLatch(1);
+        CountDownLatch fastFeedRan = new CountDownLatch(1);
+
+        // Occupy both worker threads so the next feed can't start on time
+        mScheduler.schedule("http://example.com/slow1", () -> sleep(slowFeedStarted, 300), 10);
+        mScheduler.schedule("http://example.com/slow2", () -> sleep(slowFeedStarted, 300), 10);
+        assertTrue(slowFeedStarted.await(5, TimeUnit.SECONDS));
+        FeedScheduler.ScheduledFeed fast = mScheduler.schedule("http://example.com/fast", fastFeedRan::countDown, 10);
+
+        assertTrue(fastFeedRan.await(5, TimeUnit.SECONDS));
+        assertEquals(1, fast.getIterationCount());
+        assertTrue(fast.getLastLagMillis() >= 100);
+        assertEquals(fast.getLastLagMillis(), fast.getMaxLagMillis());
+    }
+
+    @Test
+    public void testExceptionDoesNotCancelFeed() throws InterruptedException {
+        CountDownLatch twoIterations = new CountDownLatch(2);
+        mScheduler.schedule("http://example.com/a", () -> {
+            twoIterations.countDown();
+            throw new IllegalStateException("Bad feed");
+        }, 1);
+        assertTrue(twoIterations.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualFetchModeCapsInFlightIterations() throws InterruptedException {
+        FeedScheduler scheduler = new FeedScheduler(1, FeedScheduler.FetchMode.VIRTUAL, 2);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch allRan = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                scheduler.schedule("http://example.com/" + i, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    allRan.countDown();
+                }, 10);
+            }
+            // A single scheduler thread can start all five iterations, but only two may run at the same time
+            assertTrue(allRan.await(5, TimeUnit.SECONDS));
+            assertEquals(2, maxRunning.get());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualFetchModeSkipsOverlappingIterations() throws InterruptedException {
+        FeedScheduler scheduler = new FeedScheduler(1, FeedScheduler.FetchMode.VIRTUAL, 2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            FeedScheduler.ScheduledFeed feed = scheduler.schedule("http://example.com/a", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 1);
+            // The first iteration blocks, so the next iterations should be skipped instead of piling up
+            Thread.sleep(2500);
+            assertEquals(1, feed.getIterationCount());
+            assertTrue(feed.getSkippedCount() >= 1);
+            release.countDown();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdaptiveInterval() throws InterruptedException {
+        CountDownLatch initialIterations = new CountDownLatch(3);
+        FeedScheduler.ScheduledFeed feed = mScheduler.scheduleAdaptive("http://example.com/a", initialIterations::countDown,
+                new AdaptiveInterval(50, 10, 60000));
+        assertTrue(feed.isAdaptive());
+        // Polled at the initial interval until the refresh period is known
+        assertTrue(initialIterations.await(5, TimeUnit.SECONDS));
+
+        // Feed changes every 10 seconds, and the latest feed was just published
+        long now = System.currentTimeMillis();
+        feed.onFeedTimestamp(now, now - 20000);
+        feed.onFeedTimestamp(now, now - 10000);
+        feed.onFeedTimestamp(now, now);
+        long iterationCount = feed.getIterationCount();
+        assertEquals(10000, feed.getRefreshPeriodMillis());
+        assertTrue(feed.getUpdateIntervalMillis() > 5000);
+
+        // Next poll is planned for when the next feed is expected, not at the initial interval
+        Thread.sleep(500);
+        assertTrue(feed.getIterationCount() <= iterationCount + 1);
+    }
+
+    @Test
+    public void testJitterSpreadsFeedsOverInterval() throws InterruptedException {
+        FeedScheduler scheduler = new FeedScheduler(1, FeedScheduler.FetchMode.POOLED, 1, true, 0);
+        try {
+            CountDownLatch firstRan = new CountDownLatch(1);
+            scheduler.schedule("http://example.com/0", firstRan::countDown, 100);
+            for (int i = 1; i < 10; i++) {
+                scheduler.schedule("http://example.com/" + i, () -> {
+                }, 100);
+            }
+            // The first feed starts right away, and the rest start at different times within the 100 second interval
+            assertTrue(firstRan.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            for (int i = 1; i < 10; i++) {
+                assertEquals(0, scheduler.getScheduledFeed("http://example.com/" + i).getIterationCount());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testHostRateLimit() throws InterruptedException {
+        // At most 2 requests per second to the same host
+        FeedScheduler scheduler = new FeedScheduler(2, FeedScheduler.FetchMode.POOLED, 1, false, 2);
+        try {
+            CountDownLatch allRan = new CountDownLatch(4);
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < 4; i++) {
+                scheduler.schedule("http://example.com/" + i, allRan::countDown, 100);
+            }
+            scheduler.schedule("http://other.example.com/", () -> {
+            }, 100);
+            assertTrue(allRan.await(5, TimeUnit.SECONDS));
+
+            // Two requests go out right away, the other two are delayed by half a second each
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= 900);
+            long rateLimited = 0;
+            for (int i = 0; i < 4; i++) {
+                FeedScheduler.ScheduledFeed feed = scheduler.getScheduledFeed("http://example.com/" + i);
+                rateLimited += feed.getRateLimitedCount();
+                if (feed.getRateLimitedCount() > 0) {
+                    // Waiting for the rate limit is reported separately from scheduling lag
+                    assertTrue(feed.getLastRateLimitWaitMillis() >= 400);
+                    assertTrue(feed.getLastLagMillis() < 400);
+                }
+            }
+            assertEquals(2, rateLimited);
+            assertEquals(0, scheduler.getScheduledFeed("http://other.example.com/").getRateLimitedCount());
+            assertEquals("example.com", scheduler.getScheduledFeed("http://example.com/0").getHost());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void sleep(CountDownLatch started, long millis) {
+        started.countDown();
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
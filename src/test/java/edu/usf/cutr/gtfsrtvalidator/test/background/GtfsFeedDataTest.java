@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.CompactGtfsStore;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsFeedData;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadataSnapshot;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for keeping or releasing the parsed GTFS data once its metadata has been built, and for metadata snapshots
+ */
+public class GtfsFeedDataTest {
+
+    private static final File GTFS_FILE = new File("src/test/resources/bullrunner-gtfs.zip");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        GtfsFeedData.setReleaseGtfsData(false);
+        GtfsFeedData.setSnapshotGtfsMetadata(true);
+    }
+
+    @Test
+    public void testKeepGtfsData() throws IOException {
+        GtfsDaoImpl gtfsData = GtfsFeedData.read(GTFS_FILE);
+        GtfsFeedData feedData = new GtfsFeedData(GTFS_FILE, "bullrunner-gtfs.zip", TimeZone.getTimeZone("America/New_York"), gtfsData);
+        assertTrue(feedData.getGtfsMetadata().hasTripId("2"));
+        assertSame(feedData.getGtfsMetadata(), feedData.getGtfsMetadata());
+        assertTrue(feedData.isGtfsDataLoaded());
+        assertSame(gtfsData, feedData.getGtfsData());
+    }
+
+    @Test
+    public void testReleaseGtfsData() throws IOException {
+        GtfsFeedData.setReleaseGtfsData(true);
+        GtfsDaoImpl gtfsData = GtfsFeedData.read(GTFS_FILE);
+        int tripCount = gtfsData.getAllTrips().size();
+        GtfsFeedData feedData = new GtfsFeedData(GTFS_FILE, "bullrunner-gtfs.zip", TimeZone.getTimeZone("America/New_York"), gtfsData);
+
+        // Metadata is built right away, and the GTFS data is released
+        assertFalse(feedData.isGtfsDataLoaded());
+        assertTrue(feedData.getGtfsMetadata().hasTripId("2"));
+        assertNotNull(feedData.getGtfsMetadata().getTripShapeIndex("2"));
+
+        // GTFS data is read again from the zip file when it is needed, and then kept
+        GtfsDaoImpl reloaded = feedData.getGtfsData();
+        assertNotSame(gtfsData, reloaded);
+        assertEquals(tripCount, reloaded.getAllTrips().size());
+        assertTrue(feedData.isGtfsDataLoaded());
+        assertSame(reloaded, feedData.getGtfsData());
+    }
+
+    @Test
+    public void testGtfsMetadataSnapshot() throws IOException {
+        File gtfsFile = new File(mFolder.getRoot(), GTFS_FILE.getName());
+        Files.copy(GTFS_FILE.toPath(), gtfsFile.toPath());
+        File snapshotFile = GtfsMetadataSnapshot.getSnapshotFile(gtfsFile);
+        byte[] checksum = FingerprintStrategy.getDefault().fingerprint(gtfsFile.getPath());
+
+        // First load reads the zip file, and saves the metadata once it's built
+        GtfsFeedData feedData = GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum);
+        assertTrue(feedData.isGtfsDataLoaded());
+        assertEquals("America/New_York", feedData.getTimeZone().getID());
+        assertEquals("America/New_York", feedData.getAgencyTimeZone());
+        GtfsMetadata built = feedData.getGtfsMetadata();
+        assertTrue(snapshotFile.isFile());
+
+        // Next load uses the snapshot without reading the zip file
+        GtfsFeedData reloaded = GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum);
+        assertFalse(reloaded.isGtfsDataLoaded());
+        assertEquals(feedData.getAgencyTimeZone(), reloaded.getAgencyTimeZone());
+        GtfsMetadata snapshot = reloaded.getGtfsMetadata();
+        assertEquals(built.getTimeZone(), snapshot.getTimeZone());
+        assertEquals(built.getAgencyIds(), snapshot.getAgencyIds());
+        assertEquals(built.getExactTimesZeroTripIds(), snapshot.getExactTimesZeroTripIds());
+        assertEquals(built.getStopBoundingBox(), snapshot.getStopBoundingBox());
+        assertEquals(built.getShapeBoundingBoxWithBuffer(), snapshot.getShapeBoundingBoxWithBuffer());
+        CompactGtfsStore builtStore = built.getStore();
+        CompactGtfsStore snapshotStore = snapshot.getStore();
+        assertEquals(builtStore.getTripCount(), snapshotStore.getTripCount());
+        for (int trip = 0; trip < builtStore.getTripCount(); trip++) {
+            assertEquals(builtStore.getTripId(trip), snapshotStore.getTripId(trip));
+            assertEquals(builtStore.getTripRouteId(trip), snapshotStore.getTripRouteId(trip));
+            assertEquals(builtStore.getTripDirectionId(trip), snapshotStore.getTripDirectionId(trip));
+            assertEquals(builtStore.getStopTimeCount(trip), snapshotStore.getStopTimeCount(trip));
+            for (int i = 0; i < builtStore.getStopTimeCount(trip); i++) {
+                assertEquals(builtStore.getStopTimeStopId(trip, i), snapshotStore.getStopTimeStopId(trip, i));
+                assertEquals(builtStore.getDepartureTime(trip, i), snapshotStore.getDepartureTime(trip, i));
+            }
+        }
+        assertEquals(builtStore.getShapeCount(), snapshotStore.getShapeCount());
+        int shape = snapshotStore.getTripShape(snapshotStore.getTripIndex("2"));
+        assertEquals(245, snapshotStore.getShapePointCount(shape));
+        assertEquals(builtStore.getShapeLat(shape, 100), snapshotStore.getShapeLat(shape, 100), 0);
+        assertNotNull(snapshot.getTripShapeIndex("2"));
+
+        // GTFS data is still read from the zip file if something needs it
+        assertFalse(reloaded.getGtfsData().getAllTrips().isEmpty());
+
+        // A snapshot of different GTFS data isn't used
+        byte[] otherChecksum = checksum.clone();
+        otherChecksum[0]++;
+        assertNull(GtfsMetadataSnapshot.read(snapshotFile, "bullrunner-gtfs.zip", otherChecksum));
+        assertTrue(GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", otherChecksum).isGtfsDataLoaded());
+    }
+
+    @Test
+    public void testTruncatedGtfsMetadataSnapshot() throws IOException {
+        File gtfsFile = new File(mFolder.getRoot(), GTFS_FILE.getName());
+        Files.copy(GTFS_FILE.toPath(), gtfsFile.toPath());
+        File snapshotFile = GtfsMetadataSnapshot.getSnapshotFile(gtfsFile);
+        byte[] checksum = FingerprintStrategy.getDefault().fingerprint(gtfsFile.getPath());
+        GtfsMetadata built = GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum).getGtfsMetadata();
+        byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+
+        // A snapshot cut off in the middle can't be read...
+        Files.write(snapshotFile.toPath(), Arrays.copyOf(snapshot, snapshot.length / 2));
+        try {
+            GtfsMetadataSnapshot.read(snapshotFile, "bullrunner-gtfs.zip", checksum);
+            fail("Truncated snapshot was read");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // ...so the zip file is read instead, and gives the same metadata
+        GtfsFeedData feedData = GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum);
+        assertTrue(feedData.isGtfsDataLoaded());
+        assertEquals(built.getStore().getTripCount(), feedData.getGtfsMetadata().getStore().getTripCount());
+        assertEquals(built.getAgencyIds(), feedData.getGtfsMetadata().getAgencyIds());
+
+        // A length that is larger than the rest of the snapshot is rejected before anything is allocated for it
+        ByteBuffer corrupt = ByteBuffer.wrap(snapshot.clone());
+        int timeZoneLengthPosition = 12 + corrupt.getInt(8);
+        corrupt.putInt(timeZoneLengthPosition, Integer.MAX_VALUE);
+        Files.write(snapshotFile.toPath(), corrupt.array());
+        try {
+            GtfsMetadataSnapshot.read(snapshotFile, "bullrunner-gtfs.zip", checksum);
+            fail("Snapshot with an invalid length was read");
+        } catch (IOException e) {
+            // Expected
+        }
+        corrupt.putInt(timeZoneLengthPosition, -2);
+        Files.write(snapshotFile.toPath(), corrupt.array());
+        assertTrue(GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum).isGtfsDataLoaded());
+    }
+
+    @Test
+    public void testGtfsMetadataSnapshotTempFile() throws IOException {
+        GtfsMetadata metadata = new GtfsFeedData(GTFS_FILE, "bullrunner-gtfs.zip", TimeZone.getTimeZone("America/New_York"), GtfsFeedData.read(GTFS_FILE)).getGtfsMetadata();
+        File snapshotFile = new File(mFolder.getRoot(), "bullrunner-gtfs.zip.metadata");
+
+        // The temporary file is moved into place...
+        GtfsMetadataSnapshot.write(metadata, new byte[]{1, 2, 3}, snapshotFile);
+        assertArrayEquals(new String[]{snapshotFile.getName()}, mFolder.getRoot().list());
+
+        // ...or deleted if the snapshot can't be written
+        try {
+            GtfsMetadataSnapshot.write(metadata, null, new File(mFolder.getRoot(), "other.zip.metadata"));
+            fail("Snapshot was written without a checksum");
+        } catch (NullPointerException e) {
+            // Expected
+        }
+        assertArrayEquals(new String[]{snapshotFile.getName()}, mFolder.getRoot().list());
+    }
+
+    @Test
+    public void testGtfsMetadataSnapshotDisabled() throws IOException {
+        GtfsFeedData.setSnapshotGtfsMetadata(false);
+        File gtfsFile = new File(mFolder.getRoot(), GTFS_FILE.getName());
+        Files.copy(GTFS_FILE.toPath(), gtfsFile.toPath());
+        byte[] checksum = FingerprintStrategy.getDefault().fingerprint(gtfsFile.getPath());
+
+        GtfsFeedData feedData = GtfsFeedData.load(gtfsFile, "bullrunner-gtfs.zip", checksum);
+        assertTrue(feedData.getGtfsMetadata().hasTripId("2"));
+        assertFalse(GtfsMetadataSnapshot.getSnapshotFile(gtfsFile).exists());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsRtPayload;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for reading, hashing and parsing GTFS-realtime payloads in a single pass
+ */
+public class GtfsRtPayloadTest {
+
+    @Test
+    public void testKnownContentLength() throws IOException, NoSuchAlgorithmException {
+        byte[] feed = buildFeed(1000);
+        GtfsRtPayload payload = GtfsRtPayload.read(new ByteArrayInputStream(feed), feed.length, FingerprintStrategy.MD5);
+
+        assertEquals(feed.length, payload.getLength());
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(feed), payload.getDigest());
+        assertEquals(GtfsRealtime.FeedMessage.parseFrom(feed), payload.parse());
+        // Buffer was presized, so it doesn't need to be copied to get the exact payload
+        assertSame(payload.toByteArray(), payload.toByteArray());
+        assertArrayEquals(feed, payload.toByteArray());
+    }
+
+    @Test
+    public void testUnknownOrWrongContentLength() throws IOException, NoSuchAlgorithmException {
+        byte[] feed = buildFeed(10000);
+        for (long contentLength : new long[]{-1, 10, feed.length - 1, feed.length + 100}) {
+            // Return a few bytes at a time, like a slow network connection
+            GtfsRtPayload payload = GtfsRtPayload.read(new SlowInputStream(new ByteArrayInputStream(feed)), contentLength, FingerprintStrategy.MD5);
+
+            assertEquals(feed.length, payload.getLength());
+            assertArrayEquals(MessageDigest.getInstance("MD5").digest(feed), payload.getDigest());
+            assertEquals(GtfsRealtime.FeedMessage.parseFrom(feed), payload.parse());
+            assertArrayEquals(feed, payload.toByteArray());
+        }
+    }
+
+    @Test
+    public void testFingerprintStrategies() throws IOException, NoSuchAlgorithmException {
+        byte[] feed = buildFeed(1000);
+        for (FingerprintStrategy strategy : FingerprintStrategy.values()) {
+            GtfsRtPayload payload = GtfsRtPayload.read(new SlowInputStream(new ByteArrayInputStream(feed)), -1, strategy);
+            assertEquals(strategy, payload.getFingerprintStrategy());
+            assertEquals(16, payload.getDigest().length);
+            // Streaming fingerprint must match the fingerprint of the whole payload
+            assertArrayEquals(strategy.fingerprint(feed), payload.getDigest());
+        }
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(feed), FingerprintStrategy.MD5.fingerprint(feed));
+        assertFalse(Arrays.equals(FingerprintStrategy.MD5.fingerprint(feed), FingerprintStrategy.MURMUR3_128.fingerprint(feed)));
+
+        // Legacy fingerprints were stored without an algorithm name
+        assertEquals(FingerprintStrategy.MD5, FingerprintStrategy.fromName(null));
+        assertEquals(FingerprintStrategy.MURMUR3_128, FingerprintStrategy.fromName("MURMUR3_128"));
+    }
+
+    @Test(expected = InvalidProtocolBufferException.class)
+    public void testInvalidPayload() throws IOException, NoSuchAlgorithmException {
+        byte[] notAFeed = "<html>Not found</html>".getBytes("UTF-8");
+        GtfsRtPayload.read(new ByteArrayInputStream(notAFeed), notAFeed.length, FingerprintStrategy.MD5).parse();
+    }
+
+    private static byte[] buildFeed(int entityCount) {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0").setTimestamp(1493383886));
+        for (int i = 0; i < entityCount; i++) {
+            GtfsRealtime.TripDescriptor.Builder trip = GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip" + i);
+            feedMessageBuilder.addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                    .setId(String.valueOf(i))
+                    .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder().setTrip(trip)));
+        }
+        return feedMessageBuilder.build().toByteArray();
+    }
+
+    private static class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.HostRateLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for limiting the number of requests per second to the same host
+ */
+public class HostRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenRate() {
+        HostRateLimiter limiter = new HostRateLimiter(2, 2);
+        long now = 1000 * SECOND;
+
+        // An idle host allows a burst of requests
+        assertEquals(0, limiter.reserve("a.com", now));
+        assertEquals(0, limiter.reserve("a.com", now));
+
+        // Further requests are spread out at the sustained rate, in the order they were made
+        assertEquals(SECOND / 2, limiter.reserve("a.com", now));
+        assertEquals(SECOND, limiter.reserve("a.com", now));
+
+        // Other hosts have their own bucket
+        assertEquals(0, limiter.reserve("b.com", now));
+    }
+
+    @Test
+    public void testRefill() {
+        HostRateLimiter limiter = new HostRateLimiter(2, 2);
+        long now = 1000 * SECOND;
+        for (int i = 0; i < 4; i++) {
+            limiter.reserve("a.com", now);
+        }
+        // Two requests are owed - after one second they have been paid off, but the bucket is still empty
+        assertEquals(SECOND / 2, limiter.reserve("a.com", now + SECOND));
+
+        // Bucket never holds more than the burst
+        assertEquals(0, limiter.reserve("a.com", now + 100 * SECOND));
+        assertEquals(0, limiter.reserve("a.com", now + 100 * SECOND));
+        assertEquals(SECOND / 2, limiter.reserve("a.com", now + 100 * SECOND));
+    }
+}
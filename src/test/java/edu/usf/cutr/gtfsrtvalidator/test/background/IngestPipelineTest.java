@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.IngestPipeline;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for passing feed iterations through the stages of the ingest pipeline
+ */
+public class IngestPipelineTest {
+
+    @Test
+    public void testUnchangedIterationStoredAfterChangedIteration() throws InterruptedException {
+        List<String> persisted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+        IngestPipeline<Iteration> pipeline = new IngestPipeline<>(2, 2, 2, 10, new IngestPipeline.Handler<Iteration>() {
+            @Override
+            public Object getKey(Iteration iteration) {
+                return iteration.mFeed;
+            }
+
+            @Override
+            public boolean decode(Iteration iteration) {
+                return true;
+            }
+
+            @Override
+            public void validate(Iteration iteration) {
+                if (iteration.mChanged) {
+                    // Running the rules on a changed feed takes a while
+                    sleep(300);
+                }
+            }
+
+            @Override
+            public void persist(Iteration iteration) {
+                persisted.add(iteration.mFeed + iteration.mSequence);
+                done.countDown();
+            }
+        });
+
+        // A changed iteration of each feed is fetched, and then an unchanged one
+        pipeline.decode(new Iteration("a", 1, true));
+        pipeline.decode(new Iteration("b", 1, true));
+        pipeline.decode(new Iteration("a", 2, false));
+        pipeline.decode(new Iteration("b", 2, false));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pipeline.shutdown();
+
+        // Iterations of each feed are stored in the order they were fetched
+        assertEquals(4, persisted.size());
+        assertTrue(persisted.indexOf("a1") < persisted.indexOf("a2"));
+        assertTrue(persisted.indexOf("b1") < persisted.indexOf("b2"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Iteration {
+        private final String mFeed;
+        private final int mSequence;
+        private final boolean mChanged;
+
+        Iteration(String feed, int sequence, boolean changed) {
+            mFeed = feed;
+            mSequence = sequence;
+            mChanged = changed;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.background.LastIterationCache;
+import edu.usf.cutr.gtfsrtvalidator.util.FingerprintStrategy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for keeping the last iteration of each feed in memory
+ */
+public class LastIterationCacheTest {
+
+    // Weight of an iteration with a 100 byte feed - the estimated heap size of the parsed feed, plus its fingerprint
+    private static final long WEIGHT = 100 * 13 + 16;
+
+    @Test
+    public void testGetAndReplace() {
+        LastIterationCache cache = new LastIterationCache(10 * WEIGHT);
+        assertNull(cache.get(1));
+
+        LastIterationCache.LastIteration first = iteration(100);
+        cache.put(1, first);
+        assertSame(first, cache.get(1));
+        assertEquals(100, cache.get(1).getLastUniqueFeed().getSerializedSize());
+        assertEquals(WEIGHT, cache.getBytes());
+
+        // Replacing a feed's iteration releases the size of the old one
+        cache.put(1, iteration(200));
+        assertEquals(1, cache.size());
+        assertEquals(200 * 13 + 16, cache.getBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LastIterationCache cache = new LastIterationCache(3 * WEIGHT);
+        cache.put(1, iteration(100));
+        cache.put(2, iteration(100));
+        cache.put(3, iteration(100));
+
+        // Polling feed 1 makes feed 2 the least recently used
+        assertNotNull(cache.get(1));
+        cache.put(4, iteration(100));
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+        assertEquals(3 * WEIGHT, cache.getBytes());
+    }
+
+    @Test
+    public void testKeepsFeedLargerThanCache() {
+        LastIterationCache cache = new LastIterationCache(5 * WEIGHT);
+        cache.put(1, iteration(100));
+        cache.put(2, iteration(1000));
+
+        // Everything else is evicted, but the feed just stored is kept
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Returns an iteration whose last unique feed is encoded in the given number of bytes
+     */
+    private static LastIterationCache.LastIteration iteration(int length) {
+        // Pad the version string until the encoded feed has the given size
+        StringBuilder version = new StringBuilder();
+        GtfsRealtime.FeedMessage feed;
+        do {
+            version.append('1');
+            feed = GtfsRealtime.FeedMessage.newBuilder()
+                    .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion(version.toString()))
+                    .build();
+        } while (feed.getSerializedSize() < length);
+        assertEquals(length, feed.getSerializedSize());
+        return new LastIterationCache.LastIteration(1493383886000L, length, new byte[16], FingerprintStrategy.MURMUR3_128, feed);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.background;
+
+import edu.usf.cutr.gtfsrtvalidator.background.PipelineStage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for a stage of the ingest pipeline
+ */
+public class PipelineStageTest {
+
+    @Test
+    public void testSameKeyProcessedInOrder() throws InterruptedException {
+        List<Integer> feedA = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> feedB = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(200);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 4, 10, item -> {
+            (item % 2 == 0 ? feedA : feedB).add(item);
+            done.countDown();
+        });
+        for (int i = 0; i < 200; i++) {
+            stage.submit(i % 2 == 0 ? "a" : "b", i);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        stage.shutdown();
+
+        for (int i = 1; i < feedA.size(); i++) {
+            assertTrue(feedA.get(i - 1) < feedA.get(i));
+            assertTrue(feedB.get(i - 1) < feedB.get(i));
+        }
+        assertEquals(100, feedA.size());
+        assertEquals(100, feedB.size());
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 2, item -> {
+            started.countDown();
+            await(release);
+            done.countDown();
+        });
+
+        // One item is being processed, two wait in the queue, and the next submit has to wait for room
+        stage.submit("a", 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        stage.submit("a", 2);
+        stage.submit("a", 3);
+        Thread submitter = new Thread(() -> {
+            try {
+                stage.submit("a", 4);
+                stage.submit("a", 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        submitter.join(300);
+        assertTrue(submitter.isAlive());
+        assertTrue(stage.getQueueDepth() <= stage.getQueueCapacity());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        submitter.join(5000);
+        assertTrue(stage.getBlockedCount() >= 1);
+        assertEquals(2, stage.getMaxQueueDepth());
+        stage.shutdown();
+    }
+
+    @Test
+    public void testExceptionDoesNotStopWorker() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 10, item -> {
+            if (item == 1) {
+                throw new IllegalStateException("Expected");
+            }
+            done.countDown();
+        });
+        stage.submit("a", 1);
+        stage.submit("a", 2);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        stage.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.benchmark;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.validation.rules.CrossFeedDescriptorValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time W003 (CrossFeedDescriptorValidator) takes on a large combined feed with the time the earlier
+ * nested-loop matching took.  Not a unit test - run it with:
+ * <p>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=edu.usf.cutr.gtfsrtvalidator.test.benchmark.CrossFeedDescriptorBenchmark
+ * <p>
+ * Optional arguments are the number of TripUpdates, VehiclePositions and timed runs (default 5000 3000 10).
+ */
+public class CrossFeedDescriptorBenchmark {
+
+    public static void main(String[] args) {
+        int tripUpdates = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int vehiclePositions = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        GtfsRealtime.FeedMessage feedMessage = buildFeed(tripUpdates, vehiclePositions);
+        CrossFeedDescriptorValidator validator = new CrossFeedDescriptorValidator();
+
+        // Warm up both implementations, and make sure they agree
+        int indexed = 0;
+        int nested = 0;
+        for (int i = 0; i < 3; i++) {
+            indexed = countOccurrences(validator.validate(0, null, null, feedMessage, null));
+            nested = nestedLoopOccurrences(feedMessage);
+        }
+        if (indexed != nested) {
+            throw new IllegalStateException("Indexed matching found " + indexed + " W003 occurrences, nested loops found " + nested);
+        }
+
+        long indexedNanos = Long.MAX_VALUE;
+        long nestedNanos = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            validator.validate(0, null, null, feedMessage, null);
+            indexedNanos = Math.min(indexedNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            nestedLoopOccurrences(feedMessage);
+            nestedNanos = Math.min(nestedNanos, System.nanoTime() - start);
+        }
+
+        System.out.println(tripUpdates + " TripUpdates, " + vehiclePositions + " VehiclePositions, " + indexed + " W003 occurrences (best of " + runs + " runs)");
+        System.out.println("Indexed matching: " + TimeUnit.NANOSECONDS.toMicros(indexedNanos) + " us");
+        System.out.println("Nested loops:     " + TimeUnit.NANOSECONDS.toMicros(nestedNanos) + " us");
+        System.out.println("Speedup:          " + String.format("%.1fx", (double) nestedNanos / indexedNanos));
+    }
+
+    /**
+     * Builds a combined feed where most trips have both a TripUpdate and a VehiclePosition, some only match by
+     * vehicle ID, and the rest only appear in one of the feeds
+     */
+    private static GtfsRealtime.FeedMessage buildFeed(int tripUpdates, int vehiclePositions) {
+        GtfsRealtime.FeedMessage.Builder feedMessage = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"));
+        for (int i = 0; i < tripUpdates; i++) {
+            feedMessage.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("tu" + i)
+                    .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                            .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip" + i))
+                            .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("vehicle" + i))));
+        }
+        for (int i = 0; i < vehiclePositions; i++) {
+            // Every tenth vehicle reports a different trip_id, so it only matches by vehicle ID
+            String tripId = i % 10 == 0 ? "other" + i : "trip" + (i * 2);
+            feedMessage.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("vp" + i)
+                    .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                            .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId(tripId))
+                            .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("vehicle" + i))));
+        }
+        return feedMessage.build();
+    }
+
+    private static int countOccurrences(List<ErrorListHelperModel> errors) {
+        int count = 0;
+        for (ErrorListHelperModel error : errors) {
+            count += error.getOccurrenceList().size();
+        }
+        return count;
+    }
+
+    /**
+     * The earlier W003 implementation, which compared every TripUpdate with every VehiclePosition in both directions
+     */
+    private static int nestedLoopOccurrences(GtfsRealtime.FeedMessage feedMessage) {
+        List<GtfsRealtime.TripUpdate> tripUpdates = new ArrayList<>();
+        List<GtfsRealtime.VehiclePosition> vehiclePositions = new ArrayList<>();
+        for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
+            if (entity.hasTripUpdate()) {
+                tripUpdates.add(entity.getTripUpdate());
+            }
+            if (entity.hasVehicle()) {
+                vehiclePositions.add(entity.getVehicle());
+            }
+        }
+        int count = 0;
+        for (GtfsRealtime.TripUpdate trip : tripUpdates) {
+            boolean matchingTrips = false;
+            for (GtfsRealtime.VehiclePosition vehiclePosition : vehiclePositions) {
+                if (Objects.equals(trip.getTrip().getTripId(), vehiclePosition.getTrip().getTripId()) ||
+                        Objects.equals(trip.getVehicle().getId(), vehiclePosition.getVehicle().getId())) {
+                    matchingTrips = true;
+                    break;
+                }
+            }
+            if (!matchingTrips) {
+                count++;
+            }
+        }
+        for (GtfsRealtime.VehiclePosition vehiclePosition : vehiclePositions) {
+            boolean matchingTrips = false;
+            for (GtfsRealtime.TripUpdate trip : tripUpdates) {
+                if (Objects.equals(trip.getTrip().getTripId(), vehiclePosition.getTrip().getTripId()) ||
+                        Objects.equals(trip.getVehicle().getId(), vehiclePosition.getVehicle().getId())) {
+                    matchingTrips = true;
+                    break;
+                }
+            }
+            if (!matchingTrips) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.benchmark;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
+import edu.usf.cutr.gtfsrtvalidator.test.util.TestUtils;
+import edu.usf.cutr.gtfsrtvalidator.util.GtfsUtils;
+import edu.usf.cutr.gtfsrtvalidator.util.PolylineIndex;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.Shape;
+import org.onebusaway.gtfs.impl.GtfsDaoImpl;
+import org.onebusaway.gtfs.serialization.GtfsReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time the E029 trip shape check takes with PolylineIndex against the earlier spatial4j path, which
+ * buffered each trip shape into a polygon and tested positions with relate().  Not a unit test - run it with:
+ * <p>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=edu.usf.cutr.gtfsrtvalidator.test.benchmark.TripShapeBenchmark
+ * <p>
+ * Optional arguments are the number of vehicle positions per trip and timed runs (default 2000 5).  Positions are
+ * spread over the shapes.txt bounding box plus REGION_BUFFER_METERS, like the positions that pass the E028 check.
+ * Both polygons and indexes are built once per shape_id and shared by trips with the same shape_id.
+ */
+public class TripShapeBenchmark {
+
+    private static final File GTFS_FILE = new File("src/test/resources/bullrunner-gtfs.zip");
+
+    public static void main(String[] args) throws IOException {
+        int positionsPerTrip = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        GtfsDaoImpl gtfsData = new GtfsDaoImpl();
+        GtfsReader reader = new GtfsReader();
+        reader.setInputLocation(GTFS_FILE);
+        reader.setEntityStore(gtfsData);
+        reader.run();
+
+        GtfsMetadata metadata = new GtfsMetadata(GTFS_FILE.getName(), TimeZone.getDefault(), gtfsData);
+        List<String> tripIds = new ArrayList<>();
+        for (int trip = 0; trip < metadata.getStore().getTripCount(); trip++) {
+            if (metadata.getTripShapeIndex(metadata.getStore().getTripId(trip)) != null) {
+                tripIds.add(metadata.getStore().getTripId(trip));
+            }
+        }
+        List<GtfsRealtime.Position> positions = buildPositions(metadata.getShapeBoundingBoxWithBuffer(), tripIds.size() * positionsPerTrip);
+
+        long bufferNanos = Long.MAX_VALUE;
+        long indexNanos = Long.MAX_VALUE;
+        long relateNanos = Long.MAX_VALUE;
+        long distanceNanos = Long.MAX_VALUE;
+        int relateInside = 0;
+        int distanceInside = 0;
+        int disagreements = 0;
+        for (int run = 0; run < runs; run++) {
+            // Fresh metadata each run, so the buffered shapes and shape indexes have to be built again
+            GtfsMetadata fresh = new GtfsMetadata(GTFS_FILE.getName(), TimeZone.getDefault(), gtfsData);
+            Shape[] buffered = new Shape[tripIds.size()];
+            PolylineIndex[] indexes = new PolylineIndex[tripIds.size()];
+
+            long start = System.nanoTime();
+            Map<Integer, Shape> bufferedShapes = new HashMap<>();
+            for (int i = 0; i < buffered.length; i++) {
+                String tripId = tripIds.get(i);
+                int shape = fresh.getStore().getTripShape(fresh.getStore().getTripIndex(tripId));
+                buffered[i] = bufferedShapes.computeIfAbsent(shape, k -> TestUtils.getBufferedTripShape(fresh, tripId));
+            }
+            bufferNanos = Math.min(bufferNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = fresh.getTripShapeIndex(tripIds.get(i));
+            }
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+
+            boolean[] relate = new boolean[positions.size()];
+            start = System.nanoTime();
+            for (int p = 0; p < relate.length; p++) {
+                relate[p] = GtfsUtils.isPositionWithinShape(positions.get(p), buffered[p % buffered.length]);
+            }
+            relateNanos = Math.min(relateNanos, System.nanoTime() - start);
+
+            boolean[] distance = new boolean[positions.size()];
+            start = System.nanoTime();
+            for (int p = 0; p < distance.length; p++) {
+                distance[p] = GtfsUtils.isPositionWithinShape(positions.get(p), indexes[p % indexes.length]);
+            }
+            distanceNanos = Math.min(distanceNanos, System.nanoTime() - start);
+
+            relateInside = 0;
+            distanceInside = 0;
+            disagreements = 0;
+            for (int p = 0; p < relate.length; p++) {
+                relateInside += relate[p] ? 1 : 0;
+                distanceInside += distance[p] ? 1 : 0;
+                disagreements += relate[p] != distance[p] ? 1 : 0;
+            }
+        }
+
+        System.out.println(tripIds.size() + " trip shapes, " + positions.size() + " vehicle positions (best of " + runs + " runs)");
+        System.out.println("Build - buffered polygons:  " + TimeUnit.NANOSECONDS.toMicros(bufferNanos) + " us");
+        System.out.println("Build - polyline indexes:   " + TimeUnit.NANOSECONDS.toMicros(indexNanos) + " us");
+        System.out.println("Check - spatial4j relate(): " + TimeUnit.NANOSECONDS.toMicros(relateNanos) + " us (" + relateInside + " inside)");
+        System.out.println("Check - polyline distance:  " + TimeUnit.NANOSECONDS.toMicros(distanceNanos) + " us (" + distanceInside + " inside)");
+        System.out.println("Speedup - build " + String.format("%.1fx", (double) bufferNanos / indexNanos) + ", check " + String.format("%.1fx", (double) relateNanos / distanceNanos));
+        // The buffered polygons are TRIP_BUFFER_METERS converted to degrees in both directions, so they are narrower
+        // east-west than the true distance the index measures - positions near the edge can disagree
+        System.out.println("Positions near the buffer edge where the two disagree: " + disagreements);
+    }
+
+    private static List<GtfsRealtime.Position> buildPositions(Rectangle bounds, int count) {
+        Random random = new Random(42);
+        List<GtfsRealtime.Position> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            positions.add(GtfsRealtime.Position.newBuilder()
+                    .setLatitude((float) (bounds.getMinY() + random.nextDouble() * bounds.getHeight()))
+                    .setLongitude((float) (bounds.getMinX() + random.nextDouble() * bounds.getWidth()))
+                    .build());
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.helper;
+
+import com.google.transit.realtime.GtfsRealtime;
+import com.sun.net.httpserver.HttpServer;
+import edu.usf.cutr.gtfsrtvalidator.helper.FeedFetcher;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for downloading feeds with the shared HTTP client
+ */
+public class FeedFetcherTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer mServer;
+    private FeedFetcher mFetcher;
+    private String mUrl;
+    private byte[] mFeed;
+    private String mLastAcceptEncoding;
+
+    @Before
+    public void setUp() throws IOException {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0").setTimestamp(1493383886));
+        mFeed = feedMessageBuilder.build().toByteArray();
+
+        mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        mServer.createContext("/feed", exchange -> {
+            mLastAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(mFeed);
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, gzipped.size());
+            try (OutputStream os = exchange.getResponseBody()) {
+                gzipped.writeTo(os);
+            }
+        });
+        mServer.start();
+        mUrl = "http://localhost:" + mServer.getAddress().getPort() + "/feed";
+        mFetcher = new FeedFetcher(1000, 1000, 2, 10);
+    }
+
+    @After
+    public void tearDown() {
+        mFetcher.shutdown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void testCompressedResponse() throws IOException {
+        try (FeedFetcher.Response response = mFetcher.fetch(mUrl)) {
+            assertTrue(response.isSuccessful());
+            assertEquals(ETAG, response.getHeader("ETag"));
+            // Body is transparently decompressed
+            assertArrayEquals(mFeed, IOUtils.toByteArray(response.getInputStream()));
+        }
+        assertTrue(mLastAcceptEncoding.contains("gzip"));
+        assertTrue(mLastAcceptEncoding.contains("deflate"));
+    }
+
+    @Test
+    public void testConditionalRequest() throws IOException {
+        try (FeedFetcher.Response response = mFetcher.fetch(mUrl, ETAG, null)) {
+            assertTrue(response.isNotModified());
+            assertFalse(response.isSuccessful());
+            assertEquals(0, IOUtils.toByteArray(response.getInputStream()).length);
+        }
+        try (FeedFetcher.Response response = mFetcher.fetch(mUrl, "\"v0\"", null)) {
+            assertTrue(response.isSuccessful());
+        }
+    }
+
+    @Test
+    public void testConnectionReuse() throws IOException {
+        // More sequential requests than connections allowed per host - each must release its connection to the pool
+        for (int i = 0; i < 5; i++) {
+            try (FeedFetcher.Response response = mFetcher.fetch(mUrl)) {
+                assertArrayEquals(mFeed, IOUtils.toByteArray(response.getInputStream()));
+            }
+        }
+    }
+
+    @Test
+    public void testNotFound() throws IOException {
+        try (FeedFetcher.Response response = mFetcher.fetch(mUrl.replace("/feed", "/missing"))) {
+            assertEquals(404, response.getStatusCode());
+            assertFalse(response.isSuccessful());
+        }
+    }
+}
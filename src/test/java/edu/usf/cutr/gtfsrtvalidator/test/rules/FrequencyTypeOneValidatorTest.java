@@ -118,6 +118,60 @@ public class FrequencyTypeOneValidatorTest extends FeedMessageTest {
         results = frequencyTypeOneValidator.validate(MIN_POSIX_TIME, gtfsData, gtfsDataMetadata, feedMessageBuilder.build(), null);
         TestUtils.assertResults(E019, results, 2);
 
+        /**
+         * Set start_time to the last multiple of headway_secs in the second frequency period at 6pm - no errors
+         */
+
+        tripDescriptorBuilder.setTripId("15.1");
+        tripDescriptorBuilder.setStartTime("18:00:00");
+
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setTripUpdate(tripUpdateBuilder);
+
+        vehiclePositionBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setVehicle(vehiclePositionBuilder.build());
+
+        feedMessageBuilder.setEntity(0, feedEntityBuilder.build());
+
+        results = frequencyTypeOneValidator.validate(MIN_POSIX_TIME, gtfsData, gtfsDataMetadata, feedMessageBuilder.build(), null);
+        TestUtils.assertResults(E019, results, 0);
+
+        /**
+         * Set start_time to a multiple of headway_secs before the first frequency period at 5am - 2 errors
+         */
+
+        tripDescriptorBuilder.setTripId("15.1");
+        tripDescriptorBuilder.setStartTime("05:00:00");
+
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setTripUpdate(tripUpdateBuilder);
+
+        vehiclePositionBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setVehicle(vehiclePositionBuilder.build());
+
+        feedMessageBuilder.setEntity(0, feedEntityBuilder.build());
+
+        results = frequencyTypeOneValidator.validate(MIN_POSIX_TIME, gtfsData, gtfsDataMetadata, feedMessageBuilder.build(), null);
+        TestUtils.assertResults(E019, results, 2);
+
+        /**
+         * Set start_time to a multiple of headway_secs after the last frequency period at 7pm - 2 errors
+         */
+
+        tripDescriptorBuilder.setTripId("15.1");
+        tripDescriptorBuilder.setStartTime("19:00:00");
+
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setTripUpdate(tripUpdateBuilder);
+
+        vehiclePositionBuilder.setTrip(tripDescriptorBuilder.build());
+        feedEntityBuilder.setVehicle(vehiclePositionBuilder.build());
+
+        feedMessageBuilder.setEntity(0, feedEntityBuilder.build());
+
+        results = frequencyTypeOneValidator.validate(MIN_POSIX_TIME, gtfsData, gtfsDataMetadata, feedMessageBuilder.build(), null);
+        TestUtils.assertResults(E019, results, 2);
+
         clearAndInitRequiredFeedFields();
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.rules;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceLimits;
+import edu.usf.cutr.gtfsrtvalidator.validation.OccurrenceList;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationEngine;
+import edu.usf.cutr.gtfsrtvalidator.validation.rules.HeaderValidator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.E022;
+import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.E039;
+import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.W009;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for limiting the number of occurrences stored per rule and iteration
+ */
+public class OccurrenceLimitsTest {
+
+    @Test
+    public void testLimits() {
+        OccurrenceLimits limits = OccurrenceLimits.parse(10, "E022=3, W009=0");
+        assertEquals(3, limits.getLimit(E022.getErrorId()));
+        assertEquals(0, limits.getLimit(W009.getErrorId()));
+        assertEquals(10, limits.getLimit("E001"));
+
+        // First occurrences are kept, and the rest are counted
+        ErrorListHelperModel e022 = errorList(new MessageLogModel(E022), 5);
+        limits.apply(e022);
+        assertEquals(3, e022.getOccurrenceList().size());
+        assertEquals("stop_sequence 0", e022.getOccurrenceList().get(0).getPrefix());
+        assertEquals("stop_sequence 2", e022.getOccurrenceList().get(2).getPrefix());
+        assertEquals(2, e022.getErrorMessage().getOverflowCount());
+
+        // No limit for W009
+        ErrorListHelperModel w009 = errorList(new MessageLogModel(W009), 50);
+        limits.apply(w009);
+        assertEquals(50, w009.getOccurrenceList().size());
+        assertEquals(0, w009.getErrorMessage().getOverflowCount());
+    }
+
+    @Test
+    public void testOccurrenceList() {
+        OccurrenceList list = OccurrenceLimits.parse(10, "E022=2").newList(E022);
+        int built = 0;
+        for (int i = 0; i < 5; i++) {
+            if (list.shouldAdd()) {
+                list.add(new OccurrenceModel("stop_sequence {}", i));
+                built++;
+            }
+        }
+        // Only the occurrences that are kept are built, and the rest are counted
+        assertEquals(2, built);
+        assertTrue(list.isFull());
+        assertEquals(2, list.size());
+        assertEquals(3, list.getOverflowCount());
+        ErrorListHelperModel errorList = list.toErrorList();
+        assertEquals(E022, errorList.getErrorMessage().getValidationRule());
+        assertEquals(3, errorList.getErrorMessage().getOverflowCount());
+
+        // Adding to a full list only counts the occurrence
+        assertFalse(list.add(new OccurrenceModel("stop_sequence {}", 5)));
+        assertEquals(2, list.size());
+        assertEquals(4, list.getOverflowCount());
+
+        // No limit
+        list = OccurrenceLimits.NONE.newList(E022);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(list.shouldAdd());
+            list.add(new OccurrenceModel("stop_sequence {}", i));
+        }
+        assertFalse(list.isFull());
+        assertEquals(0, list.getOverflowCount());
+    }
+
+    @Test
+    public void testLimitsWhileValidating() {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("1.0")
+                .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET));
+        for (int i = 0; i < 5; i++) {
+            feedMessageBuilder.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(String.valueOf(i)).setIsDeleted(true));
+        }
+        GtfsRealtime.FeedMessage feedMessage = feedMessageBuilder.build();
+        OccurrenceLimits limits = OccurrenceLimits.parse(10, "E039=2");
+
+        // Single pass - the visitor stops building occurrences at the limit
+        ValidationContext context = new ValidationContext(0, null, null, feedMessage, null);
+        context.setAttribute(OccurrenceLimits.KEY, limits);
+        List<ErrorListHelperModel> results = new ValidationEngine(Collections.singletonList(new HeaderValidator())).validate(context);
+        assertEquals(1, results.size());
+        assertEquals(2, results.get(0).getOccurrenceList().size());
+        assertEquals("entity ID 0 has is_deleted=true", results.get(0).getOccurrenceList().get(0).getPrefix());
+        assertEquals(3, results.get(0).getErrorMessage().getOverflowCount());
+
+        // Partitioned - each chunk is limited, and the overflow of the merged list is added to that of the chunks
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            context = new ValidationContext(0, null, null, feedMessage, null);
+            context.setAttribute(OccurrenceLimits.KEY, limits);
+            results = new ValidationEngine(Collections.singletonList(new HeaderValidator()), pool, 3).validate(context);
+            ErrorListHelperModel e039 = results.get(0);
+            // Chunks of 3 and 2 entities each keep 2 occurrences, and the first chunk counts 1 more
+            assertEquals(4, e039.getOccurrenceList().size());
+            assertEquals(1, e039.getErrorMessage().getOverflowCount());
+            limits.apply(e039);
+            assertEquals(2, e039.getOccurrenceList().size());
+            assertEquals("entity ID 1 has is_deleted=true", e039.getOccurrenceList().get(1).getPrefix());
+            assertEquals(3, e039.getErrorMessage().getOverflowCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRuleLimits() {
+        OccurrenceLimits.parse(10, "E022:3");
+    }
+
+    private static ErrorListHelperModel errorList(MessageLogModel messageLogModel, int occurrenceCount) {
+        List<OccurrenceModel> occurrences = new ArrayList<>();
+        for (int i = 0; i < occurrenceCount; i++) {
+            occurrences.add(new OccurrenceModel("stop_sequence {}", i));
+        }
+        return new ErrorListHelperModel(messageLogModel, occurrences);
+    }
+}
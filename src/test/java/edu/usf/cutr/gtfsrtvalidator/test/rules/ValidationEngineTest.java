@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2017 University of South Florida.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.usf.cutr.gtfsrtvalidator.test.rules;
+
+import com.google.transit.realtime.GtfsRealtime;
+import edu.usf.cutr.gtfsrtvalidator.api.model.MessageLogModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.OccurrenceModel;
+import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsFeedData;
+import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationContext;
+import edu.usf.cutr.gtfsrtvalidator.validation.ValidationEngine;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitor;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.EntityVisitorValidator;
+import edu.usf.cutr.gtfsrtvalidator.validation.interfaces.FeedEntityValidator;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+import static edu.usf.cutr.gtfsrtvalidator.validation.ValidationRules.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for running rules in a single pass over the feed
+ */
+public class ValidationEngineTest {
+
+    private static final File GTFS_FILE = new File("src/test/resources/bullrunner-gtfs.zip");
+
+    @Test
+    public void testDispatchOrder() {
+        GtfsRealtime.FeedMessage feedMessage = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("1")
+                        .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder().setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("a")))
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("2")
+                        .setAlert(GtfsRealtime.Alert.newBuilder()))
+                .build();
+
+        RecordingRule first = new RecordingRule(W001);
+        RecordingRule second = new RecordingRule(W002);
+        List<ErrorListHelperModel> results = new ValidationEngine(Arrays.asList(first, second))
+                .validate(new ValidationContext(0, null, null, feedMessage, null));
+
+        List<String> expected = Arrays.asList("header", "entity 1", "trip_update 1", "vehicle 1", "entity 2", "alert 2");
+        assertEquals(2, results.size());
+        assertEquals(W001.getErrorId(), results.get(0).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(W002.getErrorId(), results.get(1).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(expected, prefixes(results.get(0)));
+        assertEquals(expected, prefixes(results.get(1)));
+
+        // The compatibility adapter runs the rule on its own and gives the same result
+        List<ErrorListHelperModel> adapterResults = first.validate(0, null, null, feedMessage, null);
+        assertEquals(1, adapterResults.size());
+        assertEquals(expected, prefixes(adapterResults.get(0)));
+    }
+
+    @Test
+    public void testResultsInRuleOrder() {
+        GtfsRealtime.FeedMessage feedMessage = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"))
+                .build();
+
+        // Rules that don't use a visitor are run on their own, but their results keep their place
+        FeedEntityValidator legacyRule = (currentTimeMillis, gtfsData, gtfsMetadata, feed, previousFeed) ->
+                Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(E001), new ArrayList<>()));
+        List<ErrorListHelperModel> results = new ValidationEngine(Arrays.asList(new RecordingRule(W001), legacyRule, new RecordingRule(W002)))
+                .validate(new ValidationContext(0, null, null, feedMessage, null));
+
+        assertEquals(3, results.size());
+        assertEquals(W001.getErrorId(), results.get(0).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(E001.getErrorId(), results.get(1).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(W002.getErrorId(), results.get(2).getErrorMessage().getValidationRule().getErrorId());
+    }
+
+    @Test
+    public void testLegacyRuleReadsReleasedGtfsDataLazily() throws IOException {
+        GtfsRealtime.FeedMessage feedMessage = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"))
+                .build();
+        GtfsFeedData.setReleaseGtfsData(true);
+        try {
+            GtfsFeedData feedData = new GtfsFeedData(GTFS_FILE, "bullrunner-gtfs.zip", TimeZone.getTimeZone("America/New_York"), GtfsFeedData.read(GTFS_FILE));
+            assertFalse(feedData.isGtfsDataLoaded());
+
+            // A legacy rule that doesn't look at the GTFS data doesn't cause it to be read again
+            FeedEntityValidator metadataRule = (currentTimeMillis, gtfsData, gtfsMetadata, feed, previousFeed) ->
+                    Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(E001), new ArrayList<>()));
+            new ValidationEngine(Collections.singletonList(metadataRule)).validate(new ValidationContext(0, feedData, feedMessage, null));
+            assertFalse(feedData.isGtfsDataLoaded());
+
+            // ...but one that does still gets the GTFS data
+            List<Integer> tripCounts = new ArrayList<>();
+            FeedEntityValidator gtfsRule = (currentTimeMillis, gtfsData, gtfsMetadata, feed, previousFeed) -> {
+                tripCounts.add(gtfsData.getAllTrips().size());
+                return Collections.emptyList();
+            };
+            new ValidationEngine(Collections.singletonList(gtfsRule)).validate(new ValidationContext(0, feedData, feedMessage, null));
+            assertTrue(feedData.isGtfsDataLoaded());
+            assertEquals(Collections.singletonList(feedData.getGtfsData().getAllTrips().size()), tripCounts);
+        } finally {
+            GtfsFeedData.setReleaseGtfsData(false);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"));
+        for (int i = 0; i < 100; i++) {
+            feedMessageBuilder.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(String.valueOf(i))
+                    .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()));
+        }
+        ValidationContext context = new ValidationContext(0, null, null, feedMessageBuilder.build(), null);
+
+        FeedEntityValidator legacyRule = (currentTimeMillis, gtfsData, gtfsMetadata, feed, previousFeed) ->
+                Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(E001), new ArrayList<>()));
+        List<FeedEntityValidator> rules = Arrays.asList(new RecordingRule(W001), legacyRule, new RecordingRule(W002), new RecordingRule(W004));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ErrorListHelperModel> singlePass = new ValidationEngine(rules).validate(context);
+        List<ErrorListHelperModel> parallel = new ValidationEngine(rules, pool).validate(context);
+        pool.shutdown();
+
+        // Same results, in the same order
+        assertEquals(singlePass.size(), parallel.size());
+        for (int i = 0; i < singlePass.size(); i++) {
+            assertEquals(singlePass.get(i).getErrorMessage().getValidationRule().getErrorId(), parallel.get(i).getErrorMessage().getValidationRule().getErrorId());
+            assertEquals(prefixes(singlePass.get(i)), prefixes(parallel.get(i)));
+        }
+        assertEquals(201, prefixes(parallel.get(3)).size());
+    }
+
+    @Test
+    public void testPartitioned() {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"));
+        for (int i = 0; i < 100; i++) {
+            feedMessageBuilder.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(String.valueOf(i))
+                    .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()));
+        }
+        ValidationContext context = new ValidationContext(0, null, null, feedMessageBuilder.build(), null);
+
+        FeedEntityValidator legacyRule = (currentTimeMillis, gtfsData, gtfsMetadata, feed, previousFeed) ->
+                Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(E001), new ArrayList<>()));
+        List<FeedEntityValidator> rules = Arrays.asList(new RecordingRule(W001), legacyRule, new RecordingRule(W002));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ErrorListHelperModel> singlePass = new ValidationEngine(rules).validate(context);
+        // 100 entities in chunks of 7, so the last chunk isn't full
+        List<ErrorListHelperModel> partitioned = new ValidationEngine(rules, pool, 7).validate(context);
+        pool.shutdown();
+
+        // Occurrences of all chunks are merged in feed order, and the header is only visited once
+        assertEquals(singlePass.size(), partitioned.size());
+        for (int i = 0; i < singlePass.size(); i++) {
+            assertEquals(singlePass.get(i).getErrorMessage().getValidationRule().getErrorId(), partitioned.get(i).getErrorMessage().getValidationRule().getErrorId());
+            assertEquals(prefixes(singlePass.get(i)), prefixes(partitioned.get(i)));
+        }
+        assertEquals(201, prefixes(partitioned.get(0)).size());
+        assertEquals("header", prefixes(partitioned.get(0)).get(0));
+    }
+
+    @Test
+    public void testPrePass() {
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0"));
+        for (int i = 0; i < 10; i++) {
+            feedMessageBuilder.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(String.valueOf(i))
+                    .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()));
+        }
+        ValidationContext context = new ValidationContext(0, null, null, feedMessageBuilder.build(), null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ErrorListHelperModel> results = new ValidationEngine(Collections.singletonList(new CountingRule()), pool, 3).validate(context);
+        pool.shutdown();
+
+        // The pre-pass saw all 10 entities before any chunk was validated, and its results come first
+        assertEquals(2, results.size());
+        assertEquals(W001.getErrorId(), results.get(0).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(Collections.singletonList("10 entities"), prefixes(results.get(0)));
+        assertEquals(W002.getErrorId(), results.get(1).getErrorMessage().getValidationRule().getErrorId());
+        assertEquals(10, prefixes(results.get(1)).size());
+        assertEquals("entity 0 of 10", prefixes(results.get(1)).get(0));
+        assertEquals("entity 9 of 10", prefixes(results.get(1)).get(9));
+    }
+
+    private static List<String> prefixes(ErrorListHelperModel errorList) {
+        List<String> prefixes = new ArrayList<>();
+        for (OccurrenceModel occurrence : errorList.getOccurrenceList()) {
+            prefixes.add(occurrence.getPrefix());
+        }
+        return prefixes;
+    }
+
+    /**
+     * Records an occurrence for every callback of its visitor
+     */
+    private static class RecordingRule implements EntityVisitorValidator {
+
+        private final ValidationRule mRule;
+
+        RecordingRule(ValidationRule rule) {
+            mRule = rule;
+        }
+
+        @Override
+        public EntityVisitor newVisitor(ValidationContext context) {
+            List<OccurrenceModel> occurrences = new ArrayList<>();
+            return new EntityVisitor() {
+                @Override
+                public void onHeader(GtfsRealtime.FeedHeader header) {
+                    occurrences.add(new OccurrenceModel("header"));
+                }
+
+                @Override
+                public void onEntity(GtfsRealtime.FeedEntity entity) {
+                    occurrences.add(new OccurrenceModel("entity " + entity.getId()));
+                }
+
+                @Override
+                public void onTripUpdate(GtfsRealtime.FeedEntity entity, GtfsRealtime.TripUpdate tripUpdate) {
+                    occurrences.add(new OccurrenceModel("trip_update " + entity.getId()));
+                }
+
+                @Override
+                public void onVehicle(GtfsRealtime.FeedEntity entity, GtfsRealtime.VehiclePosition vehiclePosition) {
+                    occurrences.add(new OccurrenceModel("vehicle " + entity.getId()));
+                }
+
+                @Override
+                public void onAlert(GtfsRealtime.FeedEntity entity, GtfsRealtime.Alert alert) {
+                    occurrences.add(new OccurrenceModel("alert " + entity.getId()));
+                }
+
+                @Override
+                public List<ErrorListHelperModel> getResults() {
+                    return Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(mRule), occurrences));
+                }
+            };
+        }
+    }
+
+    /**
+     * Counts the feed entities in a pre-pass, and records that count for every entity in the chunk visitors
+     */
+    private static class CountingRule implements EntityVisitorValidator {
+
+        private static final ValidationContext.Key<Integer> ENTITY_COUNT = new ValidationContext.Key<>("entityCount");
+
+        @Override
+        public EntityVisitor newPrePassVisitor(ValidationContext context) {
+            return new EntityVisitor() {
+                private int mCount = 0;
+
+                @Override
+                public void onEntity(GtfsRealtime.FeedEntity entity) {
+                    mCount++;
+                }
+
+                @Override
+                public List<ErrorListHelperModel> getResults() {
+                    context.setAttribute(ENTITY_COUNT, mCount);
+                    List<OccurrenceModel> occurrences = Collections.singletonList(new OccurrenceModel(mCount + " entities"));
+                    return Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(W001), occurrences));
+                }
+            };
+        }
+
+        @Override
+        public EntityVisitor newVisitor(ValidationContext context) {
+            int count = context.getAttribute(ENTITY_COUNT);
+            List<OccurrenceModel> occurrences = new ArrayList<>();
+            return new EntityVisitor() {
+                @Override
+                public void onEntity(GtfsRealtime.FeedEntity entity) {
+                    occurrences.add(new OccurrenceModel("entity " + entity.getId() + " of " + count));
+                }
+
+                @Override
+                public List<ErrorListHelperModel> getResults() {
+                    return Collections.singletonList(new ErrorListHelperModel(new MessageLogModel(W002), occurrences));
+                }
+            };
+        }
+    }
+}
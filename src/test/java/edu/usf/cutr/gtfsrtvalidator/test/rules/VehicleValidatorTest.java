@@ -348,7 +348,7 @@ public class VehicleValidatorTest extends FeedMessageTest {
          * Point is inside of USF Bull Runner Route A (trip_id=2) polygon (buffer surrounding shapes.txt shape)
          */
         String tripId = "2";
-        Shape routeABuffered = bullRunnerGtfsMetadata.getBufferedTripShape(tripId);
+        Shape routeABuffered = TestUtils.getBufferedTripShape(bullRunnerGtfsMetadata, tripId);
 
         p = sf.pointXY(-82.4131679534912, 28.064065878608385);  // USF Marshall Center
         spatialRelation = routeABuffered.relate(p);
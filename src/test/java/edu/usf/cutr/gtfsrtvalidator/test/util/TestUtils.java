@@ -17,10 +17,17 @@
 package edu.usf.cutr.gtfsrtvalidator.test.util;
 
 import edu.usf.cutr.gtfsrtvalidator.api.model.ValidationRule;
+import edu.usf.cutr.gtfsrtvalidator.background.CompactGtfsStore;
+import edu.usf.cutr.gtfsrtvalidator.background.GtfsMetadata;
 import edu.usf.cutr.gtfsrtvalidator.helper.ErrorListHelperModel;
+import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Shape;
+import org.locationtech.spatial4j.shape.ShapeFactory;
 
 import java.util.List;
 
+import static edu.usf.cutr.gtfsrtvalidator.util.StringDictionary.NO_ID;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -28,6 +35,9 @@ import static org.junit.Assert.assertEquals;
  */
 public class TestUtils {
 
+    // GtfsMetadata.TRIP_BUFFER_METERS in degrees
+    public static final double TRIP_BUFFER_DEGREES = DistanceUtils.KM_TO_DEG * (GtfsMetadata.TRIP_BUFFER_METERS / 1000.0d);
+
     /**
      * Asserts that for a given rule and error/warning results (results), there should be a certain number of
      * results (totalExpectedErrorsWarnings).  There should be 0 results for all other rules.
@@ -51,4 +61,28 @@ public class TestUtils {
             }
         }
     }
+
+    /**
+     * Returns a polygon of the GTFS trip shape from shapes.txt for the given tripId buffered by TRIP_BUFFER_METERS, or
+     * null if a shape doesn't exist for the given tripId.  The validator checks trip shapes with
+     * GtfsMetadata.getTripShapeIndex() instead - the polygon is for comparing with it and for drawing the shape.
+     *
+     * @param gtfsMetadata metadata for the GTFS data with the trip
+     * @param tripId       the GTFS trip_id to build a buffered trip shape for
+     * @return a polygon of the GTFS trip shape from shapes.txt for the given tripId buffered by TRIP_BUFFER_METERS, or null if a shape doesn't exist for the given tripId
+     */
+    public static Shape getBufferedTripShape(GtfsMetadata gtfsMetadata, String tripId) {
+        CompactGtfsStore store = gtfsMetadata.getStore();
+        int trip = store.getTripIndex(tripId);
+        int shape = trip == NO_ID ? NO_ID : store.getTripShape(trip);
+        if (shape == NO_ID) {
+            return null;
+        }
+        ShapeFactory.LineStringBuilder lineBuilder = JtsSpatialContext.GEO.getShapeFactory().lineString();
+        for (int i = 0; i < store.getShapePointCount(shape); i++) {
+            lineBuilder.pointXY(store.getShapeLon(shape, i), store.getShapeLat(shape, i));
+        }
+        Shape s = lineBuilder.build();
+        return s.getBuffered(TRIP_BUFFER_DEGREES, s.getContext());
+    }
 }